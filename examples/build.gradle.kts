@@ -6,6 +6,7 @@ plugins {
 dependencies {
     implementation(project(":mochaapi-runtime"))
     implementation(project(":mochaapi-annotations"))
+    annotationProcessor(project(":mochaapi-processor"))
     
     // Add Jackson for JSON serialization
     implementation("com.fasterxml.jackson.core:jackson-databind:2.16.0")
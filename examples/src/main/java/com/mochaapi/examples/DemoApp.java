@@ -2,6 +2,14 @@ package com.mochaapi.examples;
 
 import com.mochaapi.annotations.*;
 import com.mochaapi.runtime.MochaAPI;
+import com.mochaapi.runtime.websocket.WebSocketMessage;
+import com.mochaapi.runtime.websocket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Example MochaAPI application demonstrating the framework capabilities.
@@ -19,8 +27,18 @@ public class DemoApp {
     }
     
     @GetMapping("/users/{id}")
+    @Batched(maxSize = 50, maxDelayMicros = 2000)
     public User getUser(@PathVariable("id") String id) {
-        return new User(id, "John Doe", "john.doe@example.com");
+        return loadAll(Set.of(id)).get(id);
+    }
+    
+    public Map<String, User> loadAll(Set<String> ids) {
+        // A real backend would fetch every user in one round trip
+        Map<String, User> users = new HashMap<>();
+        for (String id : ids) {
+            users.put(id, new User(id, "John Doe", "john.doe@example.com"));
+        }
+        return users;
     }
     
     @PostMapping("/users")
@@ -30,6 +48,13 @@ public class DemoApp {
         return new User(newId, user.getName(), user.getEmail());
     }
     
+    @GetMapping("/users/export")
+    public Stream<User> exportUsers(@RequestParam("count") int count) {
+        // Written to the client as the rows are produced, so the export is never held in memory
+        return IntStream.range(0, count)
+            .mapToObj(i -> new User(String.valueOf(i), "User " + i, "user" + i + "@example.com"));
+    }
+    
     @GetMapping("/calc")
     @CpuBound
     public CalcResult calculate(@RequestParam("a") int a, @RequestParam("b") int b) {
@@ -51,6 +76,18 @@ public class DemoApp {
         return "User-Agent: " + userAgent;
     }
     
+    @WebSocketMapping("/ws/echo")
+    public void echo(WebSocketSession session) throws InterruptedException {
+        WebSocketMessage message;
+        while ((message = session.receive()) != null) {
+            if (message.isText()) {
+                session.sendText(message.getText());
+            } else {
+                session.sendBinary(message.getBinary());
+            }
+        }
+    }
+    
     // DTO classes
     public static class User {
         private String id;
@@ -1,6 +1,14 @@
 package com.mochaapi.examples;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mochaapi.generated.JsonCodecRegistration;
+import com.mochaapi.runtime.json.JsonCodecs;
+import com.mochaapi.runtime.json.JsonReader;
+import com.mochaapi.runtime.json.JsonWriter;
 import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -76,4 +84,22 @@ public class DemoAppTest {
         assertTrue(info.contains("User-Agent"));
         assertTrue(info.contains("MochaAPI-Test"));
     }
+    
+    @Test
+    public void testGeneratedJsonCodecsMatchJackson() throws Exception {
+        JsonCodecRegistration.registerCodecs();
+        ObjectMapper mapper = new ObjectMapper();
+        DemoApp.User user = new DemoApp.User("7", "Ada \"Countess\" Lovelace", "ada@example.com");
+        DemoApp.HealthStatus health = new DemoApp.HealthStatus("UP", 1700000000000L);
+        
+        assertEquals(mapper.writeValueAsString(user), new String(JsonWriter.toBytes(user), StandardCharsets.UTF_8));
+        assertEquals(mapper.writeValueAsString(health), new String(JsonWriter.toBytes(health), StandardCharsets.UTF_8));
+        
+        try (JsonReader reader = JsonReader.of(mapper.writeValueAsString(user))) {
+            DemoApp.User decoded = JsonCodecs.decoderFor(DemoApp.User.class).decode(reader);
+            assertEquals(user.getId(), decoded.getId());
+            assertEquals(user.getName(), decoded.getName());
+            assertEquals(user.getEmail(), decoded.getEmail());
+        }
+    }
 }
@@ -0,0 +1,41 @@
+package com.mochaapi.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation which collects concurrent requests to a single-item handler and serves them with one
+ * call to a batch method on the same controller. The handler's only bound parameter is the key;
+ * the batch method takes a {@code Set} of keys and returns a {@code Map} from key to response.
+ * Keys missing from the map are answered with a 404. The handler body itself is not called for
+ * routed requests.
+ * 
+ * <pre>{@code
+ * @GetMapping("/users/{id}")
+ * @Batched(maxSize = 50, maxDelayMicros = 2000)
+ * public User getUser(@PathVariable("id") String id) { ... }
+ * 
+ * public Map<String, User> loadAll(Set<String> ids) { ... }
+ * }</pre>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Batched {
+    
+    /**
+     * The most distinct keys in one batch. A batch is sent as soon as it is full. Must be positive.
+     */
+    int maxSize() default 100;
+    
+    /**
+     * How long the first request of a batch waits for others, in microseconds.
+     */
+    long maxDelayMicros() default 1000;
+    
+    /**
+     * The name of the batch method on the controller.
+     */
+    String loader() default "loadAll";
+}
@@ -0,0 +1,31 @@
+package com.mochaapi.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation which limits how many requests to a handler method run at the same time, so that a
+ * slow endpoint cannot tie up threads and connections needed by the rest of the application.
+ * Requests beyond the limit wait in a FIFO queue; once the queue is full they are rejected with a 503.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Bulkhead {
+    
+    /**
+     * The maximum number of concurrently running invocations. Must be positive.
+     */
+    int maxConcurrent();
+    
+    /**
+     * The maximum number of requests waiting for a slot. Zero rejects as soon as all slots are taken.
+     */
+    int maxQueue() default 0;
+    
+    /**
+     * How long a request may wait for a slot, in milliseconds. Zero waits until the request's deadline.
+     */
+    long queueTimeout() default 0;
+}
@@ -0,0 +1,21 @@
+package com.mochaapi.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation which runs a handler method on a named executor defined in the application
+ * configuration instead of the default virtual thread executor. The built-in executors are
+ * available as {@code "virtual"} and {@code "cpu"}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ExecuteOn {
+    
+    /**
+     * The name of the executor.
+     */
+    String value();
+}
@@ -0,0 +1,26 @@
+package com.mochaapi.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Annotation which sets the deadline for a handler method, overriding the application default.
+ * When the deadline expires the client receives a 504 and the handler's thread is interrupted.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Timeout {
+    
+    /**
+     * The time budget for the request, in {@link #unit()}s. Must be positive.
+     */
+    long value();
+    
+    /**
+     * The unit of {@link #value()}.
+     */
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
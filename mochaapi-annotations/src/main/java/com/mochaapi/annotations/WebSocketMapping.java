@@ -0,0 +1,22 @@
+package com.mochaapi.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation for mapping WebSocket upgrade requests onto specific handler methods.
+ * The handler runs on its own virtual thread for the lifetime of the connection and
+ * receives a {@code WebSocketSession} parameter with a blocking receive/send API.
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface WebSocketMapping {
+    
+    /**
+     * The path mapping URIs (e.g. "/ws/chat").
+     * Path mapping URIs may contain placeholders (e.g. "/ws/rooms/{id}").
+     */
+    String[] value() default {};
+}
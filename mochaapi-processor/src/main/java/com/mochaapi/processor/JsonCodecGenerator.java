@@ -0,0 +1,563 @@
+package com.mochaapi.processor;
+
+import com.squareup.javapoet.*;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Generates JSON encoders and decoders for the DTOs that routes return and accept as request
+ * bodies, plus the {@code JsonCodecRegistration} class that registers them with the runtime.
+ * Getter/setter beans, records and public fields are supported; a type is left to Jackson when it
+ * carries Jackson annotations, is generic or abstract, or is not accessible from generated code.
+ * A type gets only an encoder when some property cannot be set without reflection.
+ */
+class JsonCodecGenerator {
+    
+    static final String PACKAGE = "com.mochaapi.generated";
+    static final String REGISTRATION_CLASS = "JsonCodecRegistration";
+    
+    private static final String JSON_PACKAGE = "com.mochaapi.runtime.json";
+    private static final ClassName JSON_WRITER = ClassName.get(JSON_PACKAGE, "JsonWriter");
+    private static final ClassName JSON_READER = ClassName.get(JSON_PACKAGE, "JsonReader");
+    private static final ClassName JSON_ENCODER = ClassName.get(JSON_PACKAGE, "JsonEncoder");
+    private static final ClassName JSON_DECODER = ClassName.get(JSON_PACKAGE, "JsonDecoder");
+    private static final ClassName JSON_CODECS = ClassName.get(JSON_PACKAGE, "JsonCodecs");
+    private static final List<String> EXCLUDED_PACKAGES = List.of("java.", "javax.", "jdk.", "com.mochaapi.runtime.");
+    private static final List<String> LIST_TYPES = List.of("java.util.List", "java.util.Collection", "java.lang.Iterable");
+    private static final List<String> WRAPPER_TYPES = List.of(
+        "java.util.concurrent.CompletionStage", "java.util.concurrent.CompletableFuture", "java.util.concurrent.Future");
+    
+    private final ProcessingEnvironment processingEnv;
+    private final Map<String, Dto> dtos = new LinkedHashMap<>();
+    private final Set<String> visited = new HashSet<>();
+    private final Set<String> codecNames = new HashSet<>();
+    
+    JsonCodecGenerator(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+    }
+    
+    /**
+     * Collect the DTOs reachable from a handler's return type, looking through futures.
+     */
+    void addReturnType(TypeMirror type) {
+        if (type.getKind() == TypeKind.DECLARED) {
+            DeclaredType declared = (DeclaredType) type;
+            String name = ((TypeElement) declared.asElement()).getQualifiedName().toString();
+            if (WRAPPER_TYPES.contains(name) && declared.getTypeArguments().size() == 1) {
+                collect(declared.getTypeArguments().get(0));
+                return;
+            }
+        }
+        collect(type);
+    }
+    
+    /**
+     * Collect the DTOs reachable from a request body parameter's type.
+     */
+    void addBodyType(TypeMirror type) {
+        collect(type);
+    }
+    
+    void generate(Filer filer) throws IOException {
+        MethodSpec.Builder register = MethodSpec.methodBuilder("registerCodecs")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .returns(void.class);
+        
+        for (Dto dto : dtos.values()) {
+            ClassName codec = ClassName.get(PACKAGE, dto.codecName);
+            JavaFile.builder(PACKAGE, codecType(dto)).build().writeTo(filer);
+            register.addStatement("$T.registerEncoder($T.class, new $T())", JSON_CODECS, dto.type, codec);
+            if (dto.decodable) {
+                register.addStatement("$T.registerDecoder($T.class, new $T())", JSON_CODECS, dto.type, codec);
+            }
+        }
+        
+        TypeSpec registration = TypeSpec.classBuilder(REGISTRATION_CLASS)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addMethod(register.build())
+            .build();
+        JavaFile.builder(PACKAGE, registration).build().writeTo(filer);
+    }
+    
+    private void collect(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            collect(((ArrayType) type).getComponentType());
+            return;
+        }
+        if (type.getKind() == TypeKind.WILDCARD) {
+            TypeMirror bound = ((WildcardType) type).getExtendsBound();
+            if (bound != null) {
+                collect(bound);
+            }
+            return;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return;
+        }
+        DeclaredType declared = (DeclaredType) type;
+        // Element types of collections and maps get codecs too
+        for (TypeMirror argument : declared.getTypeArguments()) {
+            collect(argument);
+        }
+        TypeElement element = (TypeElement) declared.asElement();
+        String name = element.getQualifiedName().toString();
+        if (!visited.add(name) || !isCandidate(element)) {
+            return;
+        }
+        Dto dto = element.getKind() == ElementKind.RECORD ? recordDto(element) : beanDto(element);
+        if (dto == null || dto.properties.isEmpty()) {
+            return;
+        }
+        dto.codecName = codecName(element);
+        dtos.put(name, dto);
+        for (Property property : dto.properties) {
+            collect(property.type);
+        }
+    }
+    
+    private boolean isCandidate(TypeElement element) {
+        if (element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.RECORD) {
+            return false;
+        }
+        String name = element.getQualifiedName().toString();
+        if (EXCLUDED_PACKAGES.stream().anyMatch(name::startsWith)
+            || element.getModifiers().contains(Modifier.ABSTRACT)
+            || !element.getTypeParameters().isEmpty()
+            || hasJacksonAnnotations(element)) {
+            return false;
+        }
+        // Generated code lives in another package, so the type and every enclosing type must be public
+        Element current = element;
+        while (current instanceof TypeElement) {
+            TypeElement type = (TypeElement) current;
+            if (!type.getModifiers().contains(Modifier.PUBLIC)
+                || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)
+                    && type.getKind() == ElementKind.CLASS)
+                || type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+                return false;
+            }
+            current = type.getEnclosingElement();
+        }
+        return true;
+    }
+    
+    private boolean hasJacksonAnnotations(TypeElement element) {
+        List<Element> annotated = new ArrayList<>(processingEnv.getElementUtils().getAllMembers(element));
+        annotated.add(element);
+        for (Element member : annotated) {
+            if (isJacksonAnnotated(member)) {
+                return true;
+            }
+            if (member instanceof ExecutableElement) {
+                for (VariableElement parameter : ((ExecutableElement) member).getParameters()) {
+                    if (isJacksonAnnotated(parameter)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        for (RecordComponentElement component : element.getRecordComponents()) {
+            if (isJacksonAnnotated(component)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isJacksonAnnotated(Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().toString().startsWith("com.fasterxml.jackson.")) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private Dto recordDto(TypeElement element) {
+        // Jackson also serializes getter-style methods on records, which the generated codec would miss
+        for (ExecutableElement method : ElementFilter.methodsIn(element.getEnclosedElements())) {
+            if (getterName(method) != null) {
+                return null;
+            }
+        }
+        Dto dto = new Dto(element);
+        dto.record = true;
+        for (RecordComponentElement component : element.getRecordComponents()) {
+            Property property = new Property(component.getSimpleName().toString());
+            property.type = component.asType();
+            property.accessor = component.getAccessor().getSimpleName() + "()";
+            property.mutatorType = component.asType();
+            dto.properties.add(property);
+        }
+        dto.decodable = dto.properties.stream().allMatch(property -> readExpression(property.mutatorType) != null);
+        return dto;
+    }
+    
+    private Dto beanDto(TypeElement element) {
+        List<TypeElement> hierarchy = new ArrayList<>();
+        for (TypeElement type = element; type != null; type = superclass(type)) {
+            String name = type.getQualifiedName().toString();
+            if (name.equals("java.lang.Object")) {
+                break;
+            }
+            if (EXCLUDED_PACKAGES.stream().anyMatch(name::startsWith)) {
+                // Properties inherited from library classes are not visible to the generator
+                return null;
+            }
+            hierarchy.add(0, type);
+        }
+        
+        // Like Jackson, order properties by field declaration first, superclass fields before subclass ones
+        Map<String, Property> properties = new LinkedHashMap<>();
+        Set<String> privateFields = new HashSet<>();
+        for (TypeElement type : hierarchy) {
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC)) {
+                    continue;
+                }
+                String name = field.getSimpleName().toString();
+                Property property = properties.computeIfAbsent(name, Property::new);
+                if (!modifiers.contains(Modifier.PUBLIC)) {
+                    privateFields.add(name);
+                    continue;
+                }
+                if (!modifiers.contains(Modifier.TRANSIENT)) {
+                    property.type = field.asType();
+                    property.accessor = name;
+                }
+                if (!modifiers.contains(Modifier.FINAL)) {
+                    property.mutator = name;
+                    property.mutatorIsField = true;
+                    property.mutatorType = field.asType();
+                }
+            }
+        }
+        for (TypeElement type : hierarchy) {
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                String getter = getterName(method);
+                if (getter != null) {
+                    Property property = properties.computeIfAbsent(getter, Property::new);
+                    property.type = method.getReturnType();
+                    property.accessor = method.getSimpleName() + "()";
+                    continue;
+                }
+                String setter = setterName(method);
+                if (setter != null) {
+                    Property property = properties.computeIfAbsent(setter, Property::new);
+                    property.mutator = method.getSimpleName().toString();
+                    property.mutatorIsField = false;
+                    property.mutatorType = method.getParameters().get(0).asType();
+                }
+            }
+        }
+        
+        Dto dto = new Dto(element);
+        boolean decodable = hasPublicNoArgConstructor(element);
+        for (Property property : properties.values()) {
+            if (property.accessor != null) {
+                dto.properties.add(property);
+            }
+            if (property.mutator != null) {
+                decodable &= readExpression(property.mutatorType) != null;
+                dto.mutators.add(property);
+            } else if (property.accessor != null && privateFields.contains(property.name)) {
+                // Jackson would set the private field reflectively
+                decodable = false;
+            }
+        }
+        dto.decodable = decodable;
+        return dto;
+    }
+    
+    private TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+    
+    private static boolean hasPublicNoArgConstructor(TypeElement element) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String getterName(ExecutableElement method) {
+        if (!isPublicInstance(method) || !method.getParameters().isEmpty() || method.getReturnType().getKind() == TypeKind.VOID) {
+            return null;
+        }
+        String name = method.getSimpleName().toString();
+        if (name.startsWith("get") && name.length() > 3 && !name.equals("getClass")) {
+            return propertyName(name.substring(3));
+        }
+        if (name.startsWith("is") && name.length() > 2 && method.getReturnType().getKind() == TypeKind.BOOLEAN) {
+            return propertyName(name.substring(2));
+        }
+        return null;
+    }
+    
+    private static String setterName(ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        if (!isPublicInstance(method) || method.getParameters().size() != 1 || !name.startsWith("set") || name.length() <= 3) {
+            return null;
+        }
+        return propertyName(name.substring(3));
+    }
+    
+    private static boolean isPublicInstance(ExecutableElement method) {
+        return method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC);
+    }
+    
+    /**
+     * Jackson's default name mangling: lower-case the leading run of upper-case letters,
+     * so {@code getId} is {@code id} and {@code getURL} is {@code url}.
+     */
+    private static String propertyName(String suffix) {
+        StringBuilder name = new StringBuilder(suffix);
+        for (int i = 0; i < name.length() && Character.isUpperCase(name.charAt(i)); i++) {
+            name.setCharAt(i, Character.toLowerCase(name.charAt(i)));
+        }
+        return name.toString();
+    }
+    
+    private String codecName(TypeElement element) {
+        StringBuilder simpleNames = new StringBuilder(element.getSimpleName());
+        for (Element enclosing = element.getEnclosingElement(); enclosing instanceof TypeElement;
+             enclosing = enclosing.getEnclosingElement()) {
+            simpleNames.insert(0, enclosing.getSimpleName() + "_");
+        }
+        String name = simpleNames + "JsonCodec";
+        for (int suffix = 2; !codecNames.add(name); suffix++) {
+            name = simpleNames + "JsonCodec" + suffix;
+        }
+        return name;
+    }
+    
+    private TypeSpec codecType(Dto dto) {
+        TypeSpec.Builder codec = TypeSpec.classBuilder(dto.codecName)
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addSuperinterface(ParameterizedTypeName.get(JSON_ENCODER, dto.type));
+        
+        MethodSpec.Builder encode = MethodSpec.methodBuilder("encode")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(dto.type, "value")
+            .addParameter(JSON_WRITER, "out");
+        for (int i = 0; i < dto.properties.size(); i++) {
+            Property property = dto.properties.get(i);
+            String constant = "FIELD_" + i;
+            codec.addField(FieldSpec.builder(byte[].class, constant, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$T.fieldName($S, $L)", JSON_WRITER, property.name, i == 0)
+                .build());
+            encode.addStatement("out.writeRaw($L)", constant);
+            encode.addStatement(writeStatement(property.type, "value." + property.accessor));
+        }
+        encode.addStatement("out.writeObjectEnd()");
+        codec.addMethod(encode.build());
+        
+        if (dto.decodable) {
+            codec.addSuperinterface(ParameterizedTypeName.get(JSON_DECODER, dto.type));
+            codec.addMethod(decodeMethod(dto));
+        }
+        return codec.build();
+    }
+    
+    private MethodSpec decodeMethod(Dto dto) {
+        MethodSpec.Builder decode = MethodSpec.methodBuilder("decode")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(dto.type)
+            .addParameter(JSON_READER, "in")
+            .addException(IOException.class)
+            .beginControlFlow("if (!in.beginObject())")
+            .addStatement("return null")
+            .endControlFlow();
+        
+        List<Property> mutators = dto.record ? dto.properties : dto.mutators;
+        if (dto.record) {
+            for (int i = 0; i < mutators.size(); i++) {
+                TypeMirror type = mutators.get(i).mutatorType;
+                decode.addStatement("$T p$L = $L", TypeName.get(type), i, defaultValue(type));
+            }
+        } else {
+            decode.addStatement("$T value = new $T()", dto.type, dto.type);
+        }
+        
+        CodeBlock.Builder cases = CodeBlock.builder();
+        for (int i = 0; i < mutators.size(); i++) {
+            Property property = mutators.get(i);
+            CodeBlock read = readExpression(property.mutatorType);
+            cases.add("case $S:\n", property.name).indent();
+            if (dto.record) {
+                cases.addStatement("p$L = $L", i, read);
+            } else if (property.mutatorIsField) {
+                cases.addStatement("value.$L = $L", property.mutator, read);
+            } else {
+                cases.addStatement("value.$L($L)", property.mutator, read);
+            }
+            cases.addStatement("break").unindent();
+        }
+        cases.add("default:\n").indent()
+            .addStatement("throw in.unknownField(field, $T.class)", dto.type)
+            .unindent();
+        
+        decode.addStatement("$T field", String.class)
+            .beginControlFlow("while ((field = in.nextField()) != null)")
+            .beginControlFlow("switch (field)")
+            .addCode(cases.build())
+            .endControlFlow()
+            .endControlFlow();
+        
+        if (dto.record) {
+            CodeBlock.Builder arguments = CodeBlock.builder();
+            for (int i = 0; i < mutators.size(); i++) {
+                arguments.add(i == 0 ? "p$L" : ", p$L", i);
+            }
+            decode.addStatement("return new $T($L)", dto.type, arguments.build());
+        } else {
+            decode.addStatement("return value");
+        }
+        return decode.build();
+    }
+    
+    private static CodeBlock writeStatement(TypeMirror type, String value) {
+        switch (type.getKind()) {
+            case INT:
+            case SHORT:
+            case BYTE:
+                return CodeBlock.of("out.writeInt($L)", value);
+            case LONG:
+                return CodeBlock.of("out.writeLong($L)", value);
+            case DOUBLE:
+                return CodeBlock.of("out.writeDouble($L)", value);
+            case FLOAT:
+                return CodeBlock.of("out.writeFloat($L)", value);
+            case BOOLEAN:
+                return CodeBlock.of("out.writeBoolean($L)", value);
+            case CHAR:
+                return CodeBlock.of("out.writeString($T.valueOf($L))", String.class, value);
+            default:
+                return isString(type)
+                    ? CodeBlock.of("out.writeString($L)", value)
+                    : CodeBlock.of("out.writeValue($L)", value);
+        }
+    }
+    
+    /**
+     * The expression that reads a value of the given type, or null if the type has type arguments
+     * that a class literal cannot carry. Lists of a non-generic element type are the exception.
+     */
+    private CodeBlock readExpression(TypeMirror type) {
+        switch (type.getKind()) {
+            case INT:
+                return CodeBlock.of("in.readInt()");
+            case SHORT:
+                return CodeBlock.of("(short) in.readInt()");
+            case BYTE:
+                return CodeBlock.of("(byte) in.readInt()");
+            case LONG:
+                return CodeBlock.of("in.readLong()");
+            case DOUBLE:
+                return CodeBlock.of("in.readDouble()");
+            case FLOAT:
+                return CodeBlock.of("(float) in.readDouble()");
+            case BOOLEAN:
+                return CodeBlock.of("in.readBoolean()");
+            case CHAR:
+                return CodeBlock.of("in.readChar()");
+            case DECLARED:
+                if (isString(type)) {
+                    return CodeBlock.of("in.readString()");
+                }
+                DeclaredType declared = (DeclaredType) type;
+                if (LIST_TYPES.contains(((TypeElement) declared.asElement()).getQualifiedName().toString())
+                    && declared.getTypeArguments().size() == 1) {
+                    TypeMirror element = declared.getTypeArguments().get(0);
+                    if (element.getKind() == TypeKind.DECLARED && ((DeclaredType) element).getTypeArguments().isEmpty()
+                        && isAccessible((TypeElement) ((DeclaredType) element).asElement())) {
+                        return CodeBlock.of("in.readList($T.class)", ClassName.get((TypeElement) ((DeclaredType) element).asElement()));
+                    }
+                    return null;
+                }
+                if (!declared.getTypeArguments().isEmpty() || !isAccessible((TypeElement) declared.asElement())) {
+                    return null;
+                }
+                return CodeBlock.of("in.readValue($T.class)", ClassName.get((TypeElement) declared.asElement()));
+            default:
+                return null;
+        }
+    }
+    
+    private static boolean isAccessible(TypeElement element) {
+        for (Element current = element; current instanceof TypeElement; current = current.getEnclosingElement()) {
+            if (!current.getModifiers().contains(Modifier.PUBLIC)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isString(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED
+            && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals("java.lang.String");
+    }
+    
+    private static String defaultValue(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "false";
+            case CHAR:
+                return "'\\0'";
+            case LONG:
+                return "0L";
+            case FLOAT:
+                return "0f";
+            case DOUBLE:
+                return "0.0";
+            case INT:
+                return "0";
+            case SHORT:
+                return "(short) 0";
+            case BYTE:
+                return "(byte) 0";
+            default:
+                return "null";
+        }
+    }
+    
+    private static final class Dto {
+        
+        final ClassName type;
+        String codecName;
+        final List<Property> properties = new ArrayList<>();
+        final List<Property> mutators = new ArrayList<>();
+        boolean record;
+        boolean decodable;
+        
+        Dto(TypeElement element) {
+            this.type = ClassName.get(element);
+        }
+    }
+    
+    private static final class Property {
+        
+        final String name;
+        TypeMirror type;
+        String accessor;
+        String mutator;
+        boolean mutatorIsField;
+        TypeMirror mutatorType;
+        
+        Property(String name) {
+            this.name = name;
+        }
+    }
+}
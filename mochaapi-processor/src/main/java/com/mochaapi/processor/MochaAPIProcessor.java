@@ -26,11 +26,28 @@ import java.util.stream.Collectors;
     "com.mochaapi.annotations.Controller"
 })
 @SupportedSourceVersion(SourceVersion.RELEASE_21)
+@SupportedOptions(MochaAPIProcessor.EXECUTORS_OPTION)
 public class MochaAPIProcessor extends AbstractProcessor {
     
+    /**
+     * Comma-separated names of the executors the application defines. When set, {@code @ExecuteOn}
+     * names are checked against it at compile time.
+     */
+    static final String EXECUTORS_OPTION = "mochaapi.executors";
+    private static final Set<String> BUILT_IN_EXECUTORS = Set.of("virtual", "cpu");
+    
+    private static final String WEBSOCKET_METHOD = "WEBSOCKET";
+    private static final String REQUEST_CONTEXT_TYPE = "com.mochaapi.runtime.context.RequestContext";
+    private static final Set<String> WEBSOCKET_PARAMETER_TYPES = Set.of(
+        "com.mochaapi.runtime.websocket.WebSocketSession",
+        REQUEST_CONTEXT_TYPE
+    );
+    
     private Filer filer;
     private Messager messager;
     private ObjectMapper yamlMapper;
+    private Set<String> declaredExecutors;
+    private JsonCodecGenerator jsonCodecs;
     
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
@@ -38,10 +55,23 @@ public class MochaAPIProcessor extends AbstractProcessor {
         this.filer = processingEnv.getFiler();
         this.messager = processingEnv.getMessager();
         this.yamlMapper = new ObjectMapper(new YAMLFactory());
+        this.jsonCodecs = new JsonCodecGenerator(processingEnv);
+        String executors = processingEnv.getOptions().get(EXECUTORS_OPTION);
+        if (executors != null) {
+            this.declaredExecutors = Arrays.stream(executors.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toSet());
+        }
     }
     
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        // Generated sources are written once, in the round that sees the controllers
+        if (annotations.isEmpty() || roundEnv.processingOver()) {
+            return false;
+        }
+        
         try {
             Map<String, RouteInfo> routes = new HashMap<>();
             Map<String, Object> openApiSpec = new HashMap<>();
@@ -61,6 +91,9 @@ public class MochaAPIProcessor extends AbstractProcessor {
             // Generate router registrations
             generateRouterRegistrations(routes);
             
+            // Generate JSON codecs for the DTOs routes return and accept
+            jsonCodecs.generate(filer);
+            
             // Generate OpenAPI spec
             generateOpenApiSpec(openApiSpec);
             
@@ -85,6 +118,11 @@ public class MochaAPIProcessor extends AbstractProcessor {
     private void processMethod(TypeElement controllerClass, ExecutableElement method, String controllerPath, 
                              Map<String, RouteInfo> routes, Map<String, Object> openApiSpec) {
         
+        if (method.getAnnotation(WebSocketMapping.class) != null) {
+            processWebSocketMethod(controllerClass, method, controllerPath, routes);
+            return;
+        }
+        
         // Check for HTTP mapping annotations
         String httpMethod = null;
         String[] paths = {};
@@ -105,6 +143,36 @@ public class MochaAPIProcessor extends AbstractProcessor {
         
         if (httpMethod == null) return;
         
+        Timeout timeout = method.getAnnotation(Timeout.class);
+        if (timeout != null && timeout.value() <= 0) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@Timeout value must be positive", method);
+            return;
+        }
+        if (!validateExecuteOn(method)) {
+            return;
+        }
+        Bulkhead bulkhead = method.getAnnotation(Bulkhead.class);
+        if (bulkhead != null && (bulkhead.maxConcurrent() <= 0 || bulkhead.maxQueue() < 0 || bulkhead.queueTimeout() < 0)) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                "@Bulkhead maxConcurrent must be positive, maxQueue and queueTimeout must not be negative", method);
+            return;
+        }
+        if (!validateBatched(controllerClass, method)) {
+            return;
+        }
+        if ((method.getAnnotation(CpuBound.class) != null || method.getAnnotation(ExecuteOn.class) != null)
+            && isCompletionStage(method.getReturnType())) {
+            messager.printMessage(Diagnostic.Kind.WARNING,
+                "Handlers returning a CompletionStage run on the calling thread; @CpuBound and @ExecuteOn are ignored", method);
+        }
+        
+        jsonCodecs.addReturnType(method.getReturnType());
+        for (VariableElement param : method.getParameters()) {
+            if (param.getAnnotation(RequestBody.class) != null) {
+                jsonCodecs.addBodyType(param.asType());
+            }
+        }
+        
         // Process each path
         for (String path : paths.length > 0 ? paths : new String[]{""}) {
             String fullPath = controllerPath + path;
@@ -116,9 +184,14 @@ public class MochaAPIProcessor extends AbstractProcessor {
             routeInfo.controllerClass = controllerClass.getQualifiedName().toString();
             routeInfo.methodName = method.getSimpleName().toString();
             routeInfo.isCpuBound = method.getAnnotation(CpuBound.class) != null;
+            routeInfo.cpuPriority = routeInfo.isCpuBound ? method.getAnnotation(CpuBound.class).priority() : 0;
             
             // Process parameters
             for (VariableElement param : method.getParameters()) {
+                // The request context is supplied by the runtime, not bound from the request
+                if (REQUEST_CONTEXT_TYPE.equals(param.asType().toString())) {
+                    continue;
+                }
                 ParameterInfo paramInfo = new ParameterInfo();
                 paramInfo.name = param.getSimpleName().toString();
                 paramInfo.type = param.asType().toString();
@@ -149,6 +222,90 @@ public class MochaAPIProcessor extends AbstractProcessor {
         }
     }
     
+    private boolean validateExecuteOn(ExecutableElement method) {
+        ExecuteOn executeOn = method.getAnnotation(ExecuteOn.class);
+        if (executeOn == null) {
+            return true;
+        }
+        String name = executeOn.value();
+        if (method.getAnnotation(CpuBound.class) != null) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@ExecuteOn and @CpuBound cannot be combined", method);
+            return false;
+        }
+        if (name.isBlank()) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@ExecuteOn requires an executor name", method);
+            return false;
+        }
+        if (declaredExecutors != null && !BUILT_IN_EXECUTORS.contains(name) && !declaredExecutors.contains(name)) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                "Unknown executor '" + name + "'; declared executors are " + declaredExecutors, method);
+            return false;
+        }
+        return true;
+    }
+    
+    private boolean validateBatched(TypeElement controllerClass, ExecutableElement method) {
+        Batched batched = method.getAnnotation(Batched.class);
+        if (batched == null) {
+            return true;
+        }
+        if (batched.maxSize() <= 0 || batched.maxDelayMicros() < 0) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@Batched maxSize must be positive and maxDelayMicros must not be negative", method);
+            return false;
+        }
+        long keys = method.getParameters().stream()
+            .filter(param -> !REQUEST_CONTEXT_TYPE.equals(param.asType().toString()))
+            .count();
+        if (keys != 1) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "@Batched handlers must bind exactly one parameter, the key", method);
+            return false;
+        }
+        for (Element element : controllerClass.getEnclosedElements()) {
+            if (element.getKind() == ElementKind.METHOD && element.getSimpleName().contentEquals(batched.loader())) {
+                ExecutableElement loader = (ExecutableElement) element;
+                if (loader.getParameters().size() == 1
+                    && erasure(loader.getParameters().get(0).asType()).equals("java.util.Set")
+                    && erasure(loader.getReturnType()).equals("java.util.Map")) {
+                    return true;
+                }
+            }
+        }
+        messager.printMessage(Diagnostic.Kind.ERROR,
+            "@Batched needs a method Map<K, V> " + batched.loader() + "(Set<K> keys) on " + controllerClass.getSimpleName(), method);
+        return false;
+    }
+    
+    private boolean isCompletionStage(TypeMirror type) {
+        TypeElement completionStage = processingEnv.getElementUtils().getTypeElement("java.util.concurrent.CompletionStage");
+        return completionStage != null && processingEnv.getTypeUtils().isAssignable(
+            processingEnv.getTypeUtils().erasure(type), processingEnv.getTypeUtils().erasure(completionStage.asType()));
+    }
+    
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+    
+    private void processWebSocketMethod(TypeElement controllerClass, ExecutableElement method, String controllerPath,
+                                        Map<String, RouteInfo> routes) {
+        for (VariableElement param : method.getParameters()) {
+            if (!WEBSOCKET_PARAMETER_TYPES.contains(param.asType().toString())) {
+                messager.printMessage(Diagnostic.Kind.ERROR,
+                    "WebSocket handler parameters must be WebSocketSession or RequestContext", param);
+                return;
+            }
+        }
+        
+        String[] paths = method.getAnnotation(WebSocketMapping.class).value();
+        for (String path : paths.length > 0 ? paths : new String[]{""}) {
+            RouteInfo routeInfo = new RouteInfo();
+            routeInfo.httpMethod = WEBSOCKET_METHOD;
+            routeInfo.path = controllerPath + path;
+            routeInfo.controllerClass = controllerClass.getQualifiedName().toString();
+            routeInfo.methodName = method.getSimpleName().toString();
+            routes.put(WEBSOCKET_METHOD + " " + routeInfo.path, routeInfo);
+        }
+    }
+    
     private String getControllerPath(TypeElement controllerClass) {
         RestController restController = controllerClass.getAnnotation(RestController.class);
         Controller controller = controllerClass.getAnnotation(Controller.class);
@@ -173,17 +330,26 @@ public class MochaAPIProcessor extends AbstractProcessor {
         MethodSpec.Builder registerMethodBuilder = MethodSpec.methodBuilder("registerRoutes")
             .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
             .returns(void.class)
-            .addParameter(ClassName.get("com.mochaapi.runtime", "Router"), "router");
+            .addParameter(ClassName.get("com.mochaapi.runtime.router", "Router"), "router");
         
         for (RouteInfo route : routes.values()) {
-            String routeKey = route.httpMethod + " " + route.path;
+            if (WEBSOCKET_METHOD.equals(route.httpMethod)) {
+                registerMethodBuilder.addStatement(
+                    "router.addWebSocketRoute($S, $T.class, $S)",
+                    route.path,
+                    ClassName.bestGuess(route.controllerClass),
+                    route.methodName
+                );
+                continue;
+            }
             registerMethodBuilder.addStatement(
-                "router.addRoute($S, $S, $T.class, $S, $L)",
+                "router.addRoute($S, $S, $T.class, $S, $L, $L)",
                 route.httpMethod,
                 route.path,
                 ClassName.bestGuess(route.controllerClass),
                 route.methodName,
-                route.isCpuBound
+                route.isCpuBound,
+                route.cpuPriority
             );
         }
         
@@ -266,6 +432,7 @@ public class MochaAPIProcessor extends AbstractProcessor {
         String controllerClass;
         String methodName;
         boolean isCpuBound;
+        int cpuPriority;
         List<ParameterInfo> parameters = new ArrayList<>();
     }
     
@@ -1,7 +1,14 @@
+plugins {
+    id("me.champeau.jmh") version "0.7.3"
+}
+
 dependencies {
     implementation(project(":mochaapi-annotations"))
     implementation("io.netty:netty-all:4.1.104.Final")
     implementation("com.fasterxml.jackson.core:jackson-databind:2.16.0")
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-cbor:2.16.0")
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-smile:2.16.0")
+    implementation("com.fasterxml.jackson.module:jackson-module-blackbird:2.16.0")
     implementation("io.micrometer:micrometer-core:1.12.0")
     implementation("io.micrometer:micrometer-registry-prometheus:1.12.0")
     
@@ -11,4 +18,17 @@ dependencies {
     
     testImplementation("org.junit.jupiter:junit-jupiter")
     testImplementation("org.mockito:mockito-core:5.8.0")
+    
+    // Benchmarks compare the codecs the processor generates with plain Jackson
+    "jmhAnnotationProcessor"(project(":mochaapi-processor"))
+}
+
+jmh {
+    // Benchmarks run on demand with ./gradlew :mochaapi-runtime:jmh, never as part of the build
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // Narrow a run to matching benchmarks with -PjmhIncludes=<regex>
+    (findProperty("jmhIncludes") as String?)?.let { includes.add(it) }
 }
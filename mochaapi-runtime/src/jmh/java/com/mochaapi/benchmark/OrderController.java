@@ -0,0 +1,45 @@
+package com.mochaapi.benchmark;
+
+import com.mochaapi.annotations.GetMapping;
+import com.mochaapi.annotations.PostMapping;
+import com.mochaapi.annotations.RequestBody;
+import com.mochaapi.annotations.RestController;
+
+import java.util.List;
+
+/**
+ * Routes that give the annotation processor DTOs to generate JSON codecs for. The DTOs live
+ * outside the runtime's packages, which the processor leaves to Jackson.
+ */
+@RestController("/benchmark")
+public class OrderController {
+    
+    @GetMapping("/order")
+    public Order getOrder() {
+        return new Order();
+    }
+    
+    @PostMapping("/order")
+    public Order createOrder(@RequestBody Order order) {
+        return order;
+    }
+    
+    public static class Order {
+        private long id;
+        private String customer;
+        private boolean paid;
+        private List<LineItem> items;
+        
+        public long getId() { return id; }
+        public void setId(long id) { this.id = id; }
+        public String getCustomer() { return customer; }
+        public void setCustomer(String customer) { this.customer = customer; }
+        public boolean isPaid() { return paid; }
+        public void setPaid(boolean paid) { this.paid = paid; }
+        public List<LineItem> getItems() { return items; }
+        public void setItems(List<LineItem> items) { this.items = items; }
+    }
+    
+    public record LineItem(String sku, int quantity, double price) {
+    }
+}
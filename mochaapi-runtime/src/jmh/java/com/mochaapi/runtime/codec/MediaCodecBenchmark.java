@@ -0,0 +1,90 @@
+package com.mochaapi.runtime.codec;
+
+import com.mochaapi.benchmark.OrderController.LineItem;
+import com.mochaapi.benchmark.OrderController.Order;
+import com.mochaapi.generated.JsonCodecRegistration;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode time of the same response in each built-in media type. The payload size is
+ * reported as the {@code payloadBytes} secondary result next to each encode score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MediaCodecBenchmark {
+    
+    @Param({MediaCodecs.JSON, MediaCodecs.CBOR, MediaCodecs.SMILE})
+    public String mediaType;
+    
+    private MediaCodec codec;
+    private Order order;
+    private byte[] encoded;
+    
+    /**
+     * Size of the encoded payload; constant per media type, so the reported value is the size itself.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Payload {
+        public long payloadBytes;
+    }
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        JsonCodecRegistration.registerCodecs();
+        codec = MediaCodecs.load().find(mediaType);
+        
+        order = new Order();
+        order.setId(981_234_567L);
+        order.setCustomer("Ada Lovelace");
+        order.setPaid(true);
+        List<LineItem> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items.add(new LineItem("SKU-" + i, i + 1, 9.99 * (i + 1)));
+        }
+        order.setItems(items);
+        
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.buffer();
+        try {
+            codec.write(order, new ByteBufOutputStream(buffer));
+            encoded = ByteBufUtil.getBytes(buffer);
+        } finally {
+            buffer.release();
+        }
+    }
+    
+    @Benchmark
+    public int encode(Payload payload) throws Exception {
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.buffer();
+        try {
+            codec.write(order, new ByteBufOutputStream(buffer));
+            payload.payloadBytes = buffer.readableBytes();
+            return buffer.readableBytes();
+        } finally {
+            buffer.release();
+        }
+    }
+    
+    @Benchmark
+    public Order decode() throws Exception {
+        return codec.read(encoded, Order.class);
+    }
+}
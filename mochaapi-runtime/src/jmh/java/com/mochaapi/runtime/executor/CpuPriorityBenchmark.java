@@ -0,0 +1,78 @@
+package com.mochaapi.runtime.executor;
+
+import com.mochaapi.runtime.MochaAPIConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a CPU-bound request while a background producer keeps the pool saturated with
+ * low-priority work. With priority 10 the sampled latency stays close to a single task's run time;
+ * with priority 0 it includes the whole backlog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CpuPriorityBenchmark {
+    
+    private static final int THREADS = 2;
+    private static final int BACKLOG = 64;
+    private static final long WORK_TOKENS = 200_000;
+    
+    @Param({"0", "10"})
+    public int priority;
+    
+    private ExecutorManager executorManager;
+    private Thread flooder;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        MochaAPIConfig config = new MochaAPIConfig();
+        config.setCpuBoundThreads(THREADS);
+        executorManager = new ExecutorManager(config);
+        
+        // Keep a fixed backlog of low-priority batch work queued at all times
+        Semaphore backlog = new Semaphore(BACKLOG);
+        flooder = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    backlog.acquire();
+                    executorManager.executeCpuBound(() -> {
+                        Blackhole.consumeCPU(WORK_TOKENS);
+                        return null;
+                    }, 0).whenComplete((result, throwable) -> backlog.release());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "benchmark-flooder");
+        flooder.setDaemon(true);
+        flooder.start();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        flooder.interrupt();
+        flooder.join();
+        executorManager.shutdown();
+    }
+    
+    @Benchmark
+    public Object request() {
+        return executorManager.executeCpuBound(() -> {
+            Blackhole.consumeCPU(WORK_TOKENS);
+            return null;
+        }, priority).join();
+    }
+}
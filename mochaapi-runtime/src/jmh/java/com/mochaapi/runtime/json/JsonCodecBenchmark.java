@@ -0,0 +1,91 @@
+package com.mochaapi.runtime.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mochaapi.benchmark.OrderController.LineItem;
+import com.mochaapi.benchmark.OrderController.Order;
+import com.mochaapi.generated.JsonCodecRegistration;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding a response DTO with the codecs generated by the annotation processor,
+ * against the Jackson path the server and router use for types without one: serialize to a
+ * String and copy it into a buffer, and bind request bodies with {@code readValue}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonCodecBenchmark {
+    
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    
+    private Order order;
+    private String orderJson;
+    private JsonEncoder<Order> encoder;
+    private JsonDecoder<Order> decoder;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        JsonCodecRegistration.registerCodecs();
+        encoder = JsonCodecs.encoderFor(Order.class);
+        decoder = JsonCodecs.decoderFor(Order.class);
+        
+        order = new Order();
+        order.setId(981_234_567L);
+        order.setCustomer("Ada \"Countess\" Lovelace");
+        order.setPaid(true);
+        List<LineItem> items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            items.add(new LineItem("SKU-" + i, i + 1, 9.99 * (i + 1)));
+        }
+        order.setItems(items);
+        orderJson = OBJECT_MAPPER.writeValueAsString(order);
+    }
+    
+    @Benchmark
+    public int encodeGenerated() {
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.buffer();
+        try {
+            encoder.encode(order, new JsonWriter(buffer));
+            return buffer.readableBytes();
+        } finally {
+            buffer.release();
+        }
+    }
+    
+    @Benchmark
+    public int encodeJackson() throws Exception {
+        ByteBuf buffer = Unpooled.copiedBuffer(OBJECT_MAPPER.writeValueAsString(order), CharsetUtil.UTF_8);
+        try {
+            return buffer.readableBytes();
+        } finally {
+            buffer.release();
+        }
+    }
+    
+    @Benchmark
+    public Order decodeGenerated() throws Exception {
+        try (JsonReader reader = JsonReader.of(orderJson)) {
+            return decoder.decode(reader);
+        }
+    }
+    
+    @Benchmark
+    public Order decodeJackson() throws Exception {
+        return OBJECT_MAPPER.readValue(orderJson, Order.class);
+    }
+}
@@ -3,6 +3,7 @@ package com.mochaapi.runtime;
 import com.mochaapi.runtime.server.MochaServer;
 import com.mochaapi.runtime.router.Router;
 import com.mochaapi.runtime.executor.ExecutorManager;
+import com.mochaapi.runtime.codec.ObjectMappers;
 
 import java.util.concurrent.CompletableFuture;
 
@@ -40,17 +41,24 @@ public class MochaAPI {
             // Parse command line arguments
             long parseTime = System.currentTimeMillis();
             parseArguments(args, config);
+            ObjectMappers.configure(config);
             long parseDuration = System.currentTimeMillis() - parseTime;
             
             // Initialize router and register routes
             long routerTime = System.currentTimeMillis();
             Router router = new Router();
+            router.setDefaultTimeoutMillis(config.getDefaultRequestTimeoutMillis());
+            if (config.isAdaptiveLanesEnabled()) {
+                router.enableAdaptiveLanes(config.getAdaptiveLaneSampleInterval(),
+                    config.getAdaptiveLanePromoteThreshold(), config.getAdaptiveLaneDemoteThreshold());
+            }
             registerRoutes(router, primarySource);
             long routerDuration = System.currentTimeMillis() - routerTime;
             
             // Initialize executor manager
             long executorTime = System.currentTimeMillis();
-            ExecutorManager executorManager = new ExecutorManager();
+            ExecutorManager executorManager = new ExecutorManager(config);
+            router.verifyExecutors(executorManager);
             long executorDuration = System.currentTimeMillis() - executorTime;
             
             // Create and start server
@@ -90,6 +98,7 @@ public class MochaAPI {
     }
     
     private static void registerRoutes(Router router, Class<?> primarySource) {
+        registerJsonCodecs();
         try {
             // Try to load generated router registration
             Class<?> routerRegistrationClass = Class.forName("com.mochaapi.generated.RouterRegistration");
@@ -101,6 +110,17 @@ public class MochaAPI {
         }
     }
     
+    private static void registerJsonCodecs() {
+        try {
+            // Load the JSON codecs generated for the application's DTOs; without them Jackson handles every type
+            Class.forName("com.mochaapi.generated.JsonCodecRegistration")
+                .getMethod("registerCodecs")
+                .invoke(null);
+        } catch (Exception e) {
+            // No generated codecs
+        }
+    }
+    
     private static void scanAndRegisterControllers(Router router, Class<?> primarySource) {
         // Manual registration for development - scan the primary source class for annotations
         if (primarySource.isAnnotationPresent(com.mochaapi.annotations.RestController.class) ||
@@ -114,6 +134,7 @@ public class MochaAPI {
                 router.addRoute("GET", "/calc", primarySource, "calculate", true);
                 router.addRoute("GET", "/health", primarySource, "health", false);
                 router.addRoute("GET", "/info", primarySource, "getInfo", false);
+                router.addWebSocketRoute("/ws/echo", primarySource, "echo");
             }
         }
     }
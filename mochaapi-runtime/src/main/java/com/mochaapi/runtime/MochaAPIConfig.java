@@ -1,5 +1,13 @@
 package com.mochaapi.runtime;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mochaapi.runtime.executor.ExecutorDefinition;
+import com.mochaapi.runtime.trace.SpanExporter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
 /**
  * Configuration class for MochaAPI applications.
  */
@@ -13,6 +21,64 @@ public class MochaAPIConfig {
     private String openApiPath = "/docs";
     private int maxThreads = Runtime.getRuntime().availableProcessors();
     private int cpuBoundThreads = Runtime.getRuntime().availableProcessors();
+    private int webSocketMaxFrameSize = 65536;
+    private int webSocketMaxMessageSize = 1048576;
+    private boolean webSocketCompressionEnabled = false;
+    private int webSocketOutboundQueueLimit = 64;
+    private String tlsCertificatePath;
+    private String tlsPrivateKeyPath;
+    private String tlsPrivateKeyPassword;
+    private long tlsSessionCacheSize = 20480;
+    private long tlsSessionTimeoutSeconds = 3600;
+    private boolean tlsSessionTicketsEnabled = true;
+    private boolean http2Enabled = true;
+    private long defaultRequestTimeoutMillis = 30000;
+    private long cpuPriorityAgingMillis = 50;
+    private List<ExecutorDefinition> executors = new ArrayList<>();
+    private long executorShutdownTimeoutMillis = 10000;
+    private boolean pinningMonitorEnabled = false;
+    private long pinningThresholdMillis = 20;
+    private long pinningWarnThresholdMillis = 200;
+    private boolean adaptiveLanesEnabled = false;
+    private int adaptiveLaneSampleInterval = 20;
+    private double adaptiveLanePromoteThreshold = 0.8;
+    private double adaptiveLaneDemoteThreshold = 0.4;
+    private Consumer<ObjectMapper> objectMapperCustomizer;
+    private boolean jacksonBlackbirdEnabled = false;
+    private int streamingFlushBytes = 16384;
+    private long streamingFlushIntervalMillis = 50;
+    private int streamingCollectionThreshold = 10000;
+    private String fieldsParameter = "fields";
+    private String metricsPath = "/actuator/prometheus";
+    private int metricsPort = 0;
+    private long[] metricsSloMillis = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+    private long metricsRefreshMillis = 1000;
+    private boolean phaseTimingEnabled = false;
+    private String phaseTimingPath = "/actuator/phases";
+    private boolean serverTimingEnabled = false;
+    private boolean tracingEnabled = false;
+    private double tracingSampleRatio = 0.01;
+    private long tracingSlowThresholdMillis = 1000;
+    private int tracingBufferSize = 4096;
+    private int tracingExportBatchSize = 512;
+    private long tracingExportIntervalMillis = 1000;
+    private String tracingServiceName = "mochaapi";
+    private String tracingOtlpFile;
+    private SpanExporter tracingExporter;
+    private boolean accessLogEnabled = false;
+    private String accessLogDirectory = "logs/access";
+    private int accessLogBufferSize = 65536;
+    private long accessLogFileSize = 64L * 1024 * 1024;
+    private int accessLogMaxFiles = 10;
+    private long accessLogWriteIntervalMillis = 100;
+    private boolean slowRequestSamplingEnabled = false;
+    private long slowRequestThresholdMillis = 1000;
+    private long slowRequestSampleIntervalMillis = 50;
+    private int slowRequestMaxSamples = 20;
+    private int slowRequestCapacity = 100;
+    private List<String> slowRequestRedactedParameters = List.of("password", "secret", "token", "key", "auth", "session");
+    private String slowRequestPath = "/actuator/slow-requests";
+    private String slowRequestDumpFile;
     
     public String getHost() {
         return host;
@@ -77,4 +143,782 @@ public class MochaAPIConfig {
     public void setCpuBoundThreads(int cpuBoundThreads) {
         this.cpuBoundThreads = cpuBoundThreads;
     }
+    
+    public int getWebSocketMaxFrameSize() {
+        return webSocketMaxFrameSize;
+    }
+    
+    public void setWebSocketMaxFrameSize(int webSocketMaxFrameSize) {
+        this.webSocketMaxFrameSize = webSocketMaxFrameSize;
+    }
+    
+    public int getWebSocketMaxMessageSize() {
+        return webSocketMaxMessageSize;
+    }
+    
+    public void setWebSocketMaxMessageSize(int webSocketMaxMessageSize) {
+        this.webSocketMaxMessageSize = webSocketMaxMessageSize;
+    }
+    
+    public boolean isWebSocketCompressionEnabled() {
+        return webSocketCompressionEnabled;
+    }
+    
+    /**
+     * Enable the permessage-deflate extension for clients that offer it.
+     * 
+     * @param webSocketCompressionEnabled whether to negotiate permessage-deflate
+     */
+    public void setWebSocketCompressionEnabled(boolean webSocketCompressionEnabled) {
+        this.webSocketCompressionEnabled = webSocketCompressionEnabled;
+    }
+    
+    public int getWebSocketOutboundQueueLimit() {
+        return webSocketOutboundQueueLimit;
+    }
+    
+    /**
+     * Set how many outbound messages may be queued per connection before send blocks the handler.
+     * 
+     * @param webSocketOutboundQueueLimit the maximum number of unwritten messages per connection
+     */
+    public void setWebSocketOutboundQueueLimit(int webSocketOutboundQueueLimit) {
+        this.webSocketOutboundQueueLimit = webSocketOutboundQueueLimit;
+    }
+    
+    /**
+     * Whether TLS is terminated by the server, which is the case once a certificate is configured.
+     * 
+     * @return true if a certificate and private key are configured
+     */
+    public boolean isTlsEnabled() {
+        return tlsCertificatePath != null && tlsPrivateKeyPath != null;
+    }
+    
+    public String getTlsCertificatePath() {
+        return tlsCertificatePath;
+    }
+    
+    /**
+     * Set the PEM certificate chain used to terminate TLS.
+     * 
+     * @param tlsCertificatePath path to the PEM encoded certificate chain
+     */
+    public void setTlsCertificatePath(String tlsCertificatePath) {
+        this.tlsCertificatePath = tlsCertificatePath;
+    }
+    
+    public String getTlsPrivateKeyPath() {
+        return tlsPrivateKeyPath;
+    }
+    
+    /**
+     * Set the PKCS#8 PEM private key matching the certificate.
+     * 
+     * @param tlsPrivateKeyPath path to the PEM encoded private key
+     */
+    public void setTlsPrivateKeyPath(String tlsPrivateKeyPath) {
+        this.tlsPrivateKeyPath = tlsPrivateKeyPath;
+    }
+    
+    public String getTlsPrivateKeyPassword() {
+        return tlsPrivateKeyPassword;
+    }
+    
+    public void setTlsPrivateKeyPassword(String tlsPrivateKeyPassword) {
+        this.tlsPrivateKeyPassword = tlsPrivateKeyPassword;
+    }
+    
+    public long getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+    
+    /**
+     * Set how many TLS sessions are kept for resumption.
+     * 
+     * @param tlsSessionCacheSize the maximum number of cached sessions
+     */
+    public void setTlsSessionCacheSize(long tlsSessionCacheSize) {
+        this.tlsSessionCacheSize = tlsSessionCacheSize;
+    }
+    
+    public long getTlsSessionTimeoutSeconds() {
+        return tlsSessionTimeoutSeconds;
+    }
+    
+    public void setTlsSessionTimeoutSeconds(long tlsSessionTimeoutSeconds) {
+        this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+    }
+    
+    public boolean isTlsSessionTicketsEnabled() {
+        return tlsSessionTicketsEnabled;
+    }
+    
+    /**
+     * Declare whether the server should issue session tickets for stateless resumption, in
+     * addition to the session cache. OpenSSL always issues them with rotating keys. The JDK
+     * provider reads the JVM-wide {@code jdk.tls.server.enableSessionTicketExtension} system
+     * property once, when TLS is first initialized, so it must be set on the command line; the
+     * server warns at startup if the property disagrees with this setting.
+     * 
+     * @param tlsSessionTicketsEnabled whether session tickets should be issued
+     */
+    public void setTlsSessionTicketsEnabled(boolean tlsSessionTicketsEnabled) {
+        this.tlsSessionTicketsEnabled = tlsSessionTicketsEnabled;
+    }
+    
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+    
+    /**
+     * Offer HTTP/2 through ALPN on TLS connections. Plain-text connections always use HTTP/1.1.
+     * 
+     * @param http2Enabled whether to negotiate h2
+     */
+    public void setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+    }
+    
+    public long getDefaultRequestTimeoutMillis() {
+        return defaultRequestTimeoutMillis;
+    }
+    
+    /**
+     * Set the deadline for routes without a {@code @Timeout}. Zero disables the default deadline.
+     * 
+     * @param defaultRequestTimeoutMillis the default time budget per request in milliseconds
+     */
+    public void setDefaultRequestTimeoutMillis(long defaultRequestTimeoutMillis) {
+        this.defaultRequestTimeoutMillis = defaultRequestTimeoutMillis;
+    }
+    
+    public long getCpuPriorityAgingMillis() {
+        return cpuPriorityAgingMillis;
+    }
+    
+    /**
+     * Set how much queue time one step of {@code @CpuBound} priority is worth. A task waiting longer than
+     * this per priority step runs ahead of newly queued higher-priority work, which bounds starvation.
+     * 
+     * @param cpuPriorityAgingMillis the aging quantum in milliseconds
+     */
+    public void setCpuPriorityAgingMillis(long cpuPriorityAgingMillis) {
+        this.cpuPriorityAgingMillis = cpuPriorityAgingMillis;
+    }
+    
+    public List<ExecutorDefinition> getExecutors() {
+        return executors;
+    }
+    
+    public void setExecutors(List<ExecutorDefinition> executors) {
+        this.executors = executors;
+    }
+    
+    /**
+     * Define a named executor that routes can select with {@code @ExecuteOn}.
+     * 
+     * @param executor the executor definition
+     */
+    public void addExecutor(ExecutorDefinition executor) {
+        this.executors.add(executor);
+    }
+    
+    public long getExecutorShutdownTimeoutMillis() {
+        return executorShutdownTimeoutMillis;
+    }
+    
+    /**
+     * Set how long shutdown waits for running tasks before interrupting them.
+     * 
+     * @param executorShutdownTimeoutMillis the shutdown grace period in milliseconds
+     */
+    public void setExecutorShutdownTimeoutMillis(long executorShutdownTimeoutMillis) {
+        this.executorShutdownTimeoutMillis = executorShutdownTimeoutMillis;
+    }
+    
+    public boolean isPinningMonitorEnabled() {
+        return pinningMonitorEnabled;
+    }
+    
+    /**
+     * Stream the JDK's virtual thread pinning events through JFR and publish them per route.
+     * 
+     * @param pinningMonitorEnabled whether to run the pinning monitor
+     */
+    public void setPinningMonitorEnabled(boolean pinningMonitorEnabled) {
+        this.pinningMonitorEnabled = pinningMonitorEnabled;
+    }
+    
+    public long getPinningThresholdMillis() {
+        return pinningThresholdMillis;
+    }
+    
+    /**
+     * Set the shortest pin that is recorded.
+     * 
+     * @param pinningThresholdMillis the recording threshold in milliseconds
+     */
+    public void setPinningThresholdMillis(long pinningThresholdMillis) {
+        this.pinningThresholdMillis = pinningThresholdMillis;
+    }
+    
+    public long getPinningWarnThresholdMillis() {
+        return pinningWarnThresholdMillis;
+    }
+    
+    /**
+     * Set the pin duration from which a warning naming the culprit frame is logged.
+     * 
+     * @param pinningWarnThresholdMillis the warning threshold in milliseconds
+     */
+    public void setPinningWarnThresholdMillis(long pinningWarnThresholdMillis) {
+        this.pinningWarnThresholdMillis = pinningWarnThresholdMillis;
+    }
+    
+    public boolean isAdaptiveLanesEnabled() {
+        return adaptiveLanesEnabled;
+    }
+    
+    /**
+     * Let routes without {@code @CpuBound} or {@code @ExecuteOn} move between the virtual thread and
+     * CPU-bound lanes according to the CPU time their handlers are measured to use.
+     * 
+     * @param adaptiveLanesEnabled whether to classify routes from measurements
+     */
+    public void setAdaptiveLanesEnabled(boolean adaptiveLanesEnabled) {
+        this.adaptiveLanesEnabled = adaptiveLanesEnabled;
+    }
+    
+    public int getAdaptiveLaneSampleInterval() {
+        return adaptiveLaneSampleInterval;
+    }
+    
+    /**
+     * Set how often a route's invocations are measured.
+     * 
+     * @param adaptiveLaneSampleInterval measure one invocation in this many
+     */
+    public void setAdaptiveLaneSampleInterval(int adaptiveLaneSampleInterval) {
+        this.adaptiveLaneSampleInterval = adaptiveLaneSampleInterval;
+    }
+    
+    public double getAdaptiveLanePromoteThreshold() {
+        return adaptiveLanePromoteThreshold;
+    }
+    
+    /**
+     * Set the CPU fraction above which a route moves to the CPU-bound lane.
+     * 
+     * @param adaptiveLanePromoteThreshold CPU time over wall time, between 0 and 1
+     */
+    public void setAdaptiveLanePromoteThreshold(double adaptiveLanePromoteThreshold) {
+        this.adaptiveLanePromoteThreshold = adaptiveLanePromoteThreshold;
+    }
+    
+    public double getAdaptiveLaneDemoteThreshold() {
+        return adaptiveLaneDemoteThreshold;
+    }
+    
+    /**
+     * Set the CPU fraction below which a route moves back to virtual threads. Keep it under the
+     * promotion threshold so routes near the boundary do not switch back and forth.
+     * 
+     * @param adaptiveLaneDemoteThreshold CPU time over wall time, between 0 and 1
+     */
+    public void setAdaptiveLaneDemoteThreshold(double adaptiveLaneDemoteThreshold) {
+        this.adaptiveLaneDemoteThreshold = adaptiveLaneDemoteThreshold;
+    }
+    
+    public Consumer<ObjectMapper> getObjectMapperCustomizer() {
+        return objectMapperCustomizer;
+    }
+    
+    /**
+     * Configure the Jackson mapper the runtime uses wherever it reads or writes with Jackson,
+     * for JSON, CBOR and Smile alike. While a customizer is set, JSON goes through the mapper
+     * for every type instead of through the generated codecs.
+     * 
+     * @param objectMapperCustomizer applied once to the shared mapper at startup
+     */
+    public void setObjectMapperCustomizer(Consumer<ObjectMapper> objectMapperCustomizer) {
+        this.objectMapperCustomizer = objectMapperCustomizer;
+    }
+    
+    public boolean isJacksonBlackbirdEnabled() {
+        return jacksonBlackbirdEnabled;
+    }
+    
+    /**
+     * Let Jackson read and write bean properties through generated lambdas instead of reflection.
+     * 
+     * @param jacksonBlackbirdEnabled whether to register the Blackbird module on the shared mapper
+     */
+    public void setJacksonBlackbirdEnabled(boolean jacksonBlackbirdEnabled) {
+        this.jacksonBlackbirdEnabled = jacksonBlackbirdEnabled;
+    }
+    
+    public int getStreamingFlushBytes() {
+        return streamingFlushBytes;
+    }
+    
+    /**
+     * Set how much of a streamed response is buffered before it is sent as a chunk.
+     * 
+     * @param streamingFlushBytes the chunk size in bytes
+     */
+    public void setStreamingFlushBytes(int streamingFlushBytes) {
+        this.streamingFlushBytes = streamingFlushBytes;
+    }
+    
+    public long getStreamingFlushIntervalMillis() {
+        return streamingFlushIntervalMillis;
+    }
+    
+    /**
+     * Set the longest a partly filled chunk of a streamed response waits while rows arrive slowly.
+     * 
+     * @param streamingFlushIntervalMillis the flush interval in milliseconds
+     */
+    public void setStreamingFlushIntervalMillis(long streamingFlushIntervalMillis) {
+        this.streamingFlushIntervalMillis = streamingFlushIntervalMillis;
+    }
+    
+    public int getStreamingCollectionThreshold() {
+        return streamingCollectionThreshold;
+    }
+    
+    /**
+     * Set the size from which a returned collection is streamed as a JSON array instead of being
+     * written in one piece. Streams, cursors and other iterables are always streamed.
+     * 
+     * @param streamingCollectionThreshold the element count, or zero to stream collections only
+     *        when the client asks for {@code application/x-ndjson}
+     */
+    public void setStreamingCollectionThreshold(int streamingCollectionThreshold) {
+        this.streamingCollectionThreshold = streamingCollectionThreshold;
+    }
+    
+    public String getFieldsParameter() {
+        return fieldsParameter;
+    }
+    
+    /**
+     * Set the query parameter clients use to select response properties, as in
+     * {@code ?fields=id,name,address.city}.
+     * 
+     * @param fieldsParameter the parameter name, or null to write every property regardless
+     */
+    public void setFieldsParameter(String fieldsParameter) {
+        this.fieldsParameter = fieldsParameter;
+    }
+    
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+    
+    /**
+     * Set the path Prometheus scrapes. Served when metrics are enabled.
+     * 
+     * @param metricsPath the scrape path
+     */
+    public void setMetricsPath(String metricsPath) {
+        this.metricsPath = metricsPath;
+    }
+    
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+    
+    /**
+     * Serve the scrape on a port of its own, which keeps it off the application port and out of
+     * reach of its clients.
+     * 
+     * @param metricsPort the scrape port, or 0 to serve it on the application port
+     */
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+    
+    public long[] getMetricsSloMillis() {
+        return metricsSloMillis;
+    }
+    
+    /**
+     * Set the bucket boundaries of the request latency histograms. Pick them around the latency
+     * targets, so the share of requests meeting a target can be read from a single bucket.
+     * 
+     * @param metricsSloMillis bucket boundaries in milliseconds, in ascending order
+     */
+    public void setMetricsSloMillis(long... metricsSloMillis) {
+        this.metricsSloMillis = metricsSloMillis;
+    }
+    
+    public long getMetricsRefreshMillis() {
+        return metricsRefreshMillis;
+    }
+    
+    /**
+     * Set how often the scrape response is rendered. Scrapes between two renderings get the same
+     * text, so keep it below the scrape interval.
+     * 
+     * @param metricsRefreshMillis the rendering interval in milliseconds
+     */
+    public void setMetricsRefreshMillis(long metricsRefreshMillis) {
+        this.metricsRefreshMillis = metricsRefreshMillis;
+    }
+    
+    public boolean isPhaseTimingEnabled() {
+        return phaseTimingEnabled;
+    }
+    
+    /**
+     * Time each phase of a request, from decoding to writing the response, into per-route
+     * histograms published as metrics and at {@link #setPhaseTimingPath the phase timing path}.
+     * 
+     * @param phaseTimingEnabled whether to timestamp request phases
+     */
+    public void setPhaseTimingEnabled(boolean phaseTimingEnabled) {
+        this.phaseTimingEnabled = phaseTimingEnabled;
+    }
+    
+    public String getPhaseTimingPath() {
+        return phaseTimingPath;
+    }
+    
+    /**
+     * Set the path serving the per-route phase breakdown as JSON. Served next to the metrics
+     * scrape, so on the metrics port if one is set.
+     * 
+     * @param phaseTimingPath the breakdown path
+     */
+    public void setPhaseTimingPath(String phaseTimingPath) {
+        this.phaseTimingPath = phaseTimingPath;
+    }
+    
+    public boolean isServerTimingEnabled() {
+        return serverTimingEnabled;
+    }
+    
+    /**
+     * Add a {@code Server-Timing} header with the phase breakdown to every response, where
+     * browser developer tools show it. Requires phase timing; the header exposes server
+     * internals, so it is best kept to development.
+     * 
+     * @param serverTimingEnabled whether to send the header
+     */
+    public void setServerTimingEnabled(boolean serverTimingEnabled) {
+        this.serverTimingEnabled = serverTimingEnabled;
+    }
+    
+    public boolean isTracingEnabled() {
+        return tracingEnabled;
+    }
+    
+    /**
+     * Record a server span per request, continuing the caller's trace from its
+     * {@code traceparent} header. Spans go to {@link #setTracingExporter the exporter} or
+     * {@link #setTracingOtlpFile the OTLP file}; one of them must be set.
+     * 
+     * @param tracingEnabled whether to trace requests
+     */
+    public void setTracingEnabled(boolean tracingEnabled) {
+        this.tracingEnabled = tracingEnabled;
+    }
+    
+    public double getTracingSampleRatio() {
+        return tracingSampleRatio;
+    }
+    
+    /**
+     * Set the fraction of new traces sampled up front. Requests with a {@code traceparent} keep
+     * the caller's decision instead, and failed or slow requests are kept either way.
+     * 
+     * @param tracingSampleRatio the ratio, between 0 and 1
+     */
+    public void setTracingSampleRatio(double tracingSampleRatio) {
+        this.tracingSampleRatio = tracingSampleRatio;
+    }
+    
+    public long getTracingSlowThresholdMillis() {
+        return tracingSlowThresholdMillis;
+    }
+    
+    /**
+     * Set the duration from which a request's span is kept even if it was not sampled.
+     * 
+     * @param tracingSlowThresholdMillis the threshold in milliseconds
+     */
+    public void setTracingSlowThresholdMillis(long tracingSlowThresholdMillis) {
+        this.tracingSlowThresholdMillis = tracingSlowThresholdMillis;
+    }
+    
+    public int getTracingBufferSize() {
+        return tracingBufferSize;
+    }
+    
+    /**
+     * Set how many spans wait for export before new ones are dropped. Rounded up to a power of two.
+     * 
+     * @param tracingBufferSize the number of spans
+     */
+    public void setTracingBufferSize(int tracingBufferSize) {
+        this.tracingBufferSize = tracingBufferSize;
+    }
+    
+    public int getTracingExportBatchSize() {
+        return tracingExportBatchSize;
+    }
+    
+    /**
+     * Set the most spans exported at once.
+     * 
+     * @param tracingExportBatchSize the batch size
+     */
+    public void setTracingExportBatchSize(int tracingExportBatchSize) {
+        this.tracingExportBatchSize = tracingExportBatchSize;
+    }
+    
+    public long getTracingExportIntervalMillis() {
+        return tracingExportIntervalMillis;
+    }
+    
+    /**
+     * Set how long the export thread waits between batches when fewer spans than a batch are waiting.
+     * 
+     * @param tracingExportIntervalMillis the interval in milliseconds
+     */
+    public void setTracingExportIntervalMillis(long tracingExportIntervalMillis) {
+        this.tracingExportIntervalMillis = tracingExportIntervalMillis;
+    }
+    
+    public String getTracingServiceName() {
+        return tracingServiceName;
+    }
+    
+    /**
+     * Set the {@code service.name} written with spans to the OTLP file.
+     * 
+     * @param tracingServiceName the service name
+     */
+    public void setTracingServiceName(String tracingServiceName) {
+        this.tracingServiceName = tracingServiceName;
+    }
+    
+    public String getTracingOtlpFile() {
+        return tracingOtlpFile;
+    }
+    
+    /**
+     * Append spans to a file in the OTLP/JSON encoding, for an OpenTelemetry Collector to pick up.
+     * Ignored when {@link #setTracingExporter an exporter} is set.
+     * 
+     * @param tracingOtlpFile the file path
+     */
+    public void setTracingOtlpFile(String tracingOtlpFile) {
+        this.tracingOtlpFile = tracingOtlpFile;
+    }
+    
+    public SpanExporter getTracingExporter() {
+        return tracingExporter;
+    }
+    
+    /**
+     * Export spans through a custom exporter. It is called on the tracer's export thread and
+     * closed when the server stops.
+     * 
+     * @param tracingExporter the exporter
+     */
+    public void setTracingExporter(SpanExporter tracingExporter) {
+        this.tracingExporter = tracingExporter;
+    }
+    
+    public boolean isAccessLogEnabled() {
+        return accessLogEnabled;
+    }
+    
+    /**
+     * Write an access log record for every request, and connection errors, to binary segment
+     * files in {@link #setAccessLogDirectory the access log directory}. Records are written by a
+     * background thread; render them with {@code AccessLogDecoder}.
+     * 
+     * @param accessLogEnabled whether to write the access log
+     */
+    public void setAccessLogEnabled(boolean accessLogEnabled) {
+        this.accessLogEnabled = accessLogEnabled;
+    }
+    
+    public String getAccessLogDirectory() {
+        return accessLogDirectory;
+    }
+    
+    /**
+     * Set the directory holding the access log's segment files and name table.
+     * 
+     * @param accessLogDirectory the directory path
+     */
+    public void setAccessLogDirectory(String accessLogDirectory) {
+        this.accessLogDirectory = accessLogDirectory;
+    }
+    
+    public int getAccessLogBufferSize() {
+        return accessLogBufferSize;
+    }
+    
+    /**
+     * Set how many records wait for the writer before new ones are dropped. Each takes 64 bytes
+     * of direct memory. Rounded up to a power of two.
+     * 
+     * @param accessLogBufferSize the number of records
+     */
+    public void setAccessLogBufferSize(int accessLogBufferSize) {
+        this.accessLogBufferSize = accessLogBufferSize;
+    }
+    
+    public long getAccessLogFileSize() {
+        return accessLogFileSize;
+    }
+    
+    /**
+     * Set the size of each segment file. A segment holds one 64-byte record per request.
+     * 
+     * @param accessLogFileSize the size in bytes, at most 2 GiB
+     */
+    public void setAccessLogFileSize(long accessLogFileSize) {
+        this.accessLogFileSize = accessLogFileSize;
+    }
+    
+    public int getAccessLogMaxFiles() {
+        return accessLogMaxFiles;
+    }
+    
+    /**
+     * Set how many segment files to keep; the oldest is deleted when a new one starts.
+     * 
+     * @param accessLogMaxFiles the number of files
+     */
+    public void setAccessLogMaxFiles(int accessLogMaxFiles) {
+        this.accessLogMaxFiles = accessLogMaxFiles;
+    }
+    
+    public long getAccessLogWriteIntervalMillis() {
+        return accessLogWriteIntervalMillis;
+    }
+    
+    /**
+     * Set how long the writer waits before looking for new records once it has written all of them.
+     * 
+     * @param accessLogWriteIntervalMillis the interval in milliseconds
+     */
+    public void setAccessLogWriteIntervalMillis(long accessLogWriteIntervalMillis) {
+        this.accessLogWriteIntervalMillis = accessLogWriteIntervalMillis;
+    }
+    
+    public boolean isSlowRequestSamplingEnabled() {
+        return slowRequestSamplingEnabled;
+    }
+    
+    /**
+     * Watch in-flight requests and sample the stacks of handlers that run past
+     * {@link #setSlowRequestThresholdMillis the threshold}. The slow requests are served as JSON at
+     * {@link #setSlowRequestPath the slow request path}.
+     * 
+     * @param slowRequestSamplingEnabled whether to sample slow requests
+     */
+    public void setSlowRequestSamplingEnabled(boolean slowRequestSamplingEnabled) {
+        this.slowRequestSamplingEnabled = slowRequestSamplingEnabled;
+    }
+    
+    public long getSlowRequestThresholdMillis() {
+        return slowRequestThresholdMillis;
+    }
+    
+    /**
+     * Set how long a request runs before its handler's stack is sampled and the request is kept.
+     * 
+     * @param slowRequestThresholdMillis the threshold in milliseconds
+     */
+    public void setSlowRequestThresholdMillis(long slowRequestThresholdMillis) {
+        this.slowRequestThresholdMillis = slowRequestThresholdMillis;
+    }
+    
+    public long getSlowRequestSampleIntervalMillis() {
+        return slowRequestSampleIntervalMillis;
+    }
+    
+    /**
+     * Set how often the stack of a slow request's handler is sampled.
+     * 
+     * @param slowRequestSampleIntervalMillis the interval in milliseconds
+     */
+    public void setSlowRequestSampleIntervalMillis(long slowRequestSampleIntervalMillis) {
+        this.slowRequestSampleIntervalMillis = slowRequestSampleIntervalMillis;
+    }
+    
+    public int getSlowRequestMaxSamples() {
+        return slowRequestMaxSamples;
+    }
+    
+    /**
+     * Set the most stack samples kept per request; later samples are skipped.
+     * 
+     * @param slowRequestMaxSamples the number of samples
+     */
+    public void setSlowRequestMaxSamples(int slowRequestMaxSamples) {
+        this.slowRequestMaxSamples = slowRequestMaxSamples;
+    }
+    
+    public int getSlowRequestCapacity() {
+        return slowRequestCapacity;
+    }
+    
+    /**
+     * Set how many slow requests are kept; the oldest is dropped to make room.
+     * 
+     * @param slowRequestCapacity the number of requests
+     */
+    public void setSlowRequestCapacity(int slowRequestCapacity) {
+        this.slowRequestCapacity = slowRequestCapacity;
+    }
+    
+    public List<String> getSlowRequestRedactedParameters() {
+        return slowRequestRedactedParameters;
+    }
+    
+    /**
+     * Set the path and query parameters whose values are hidden in slow requests. A parameter
+     * is hidden if its name contains one of these, ignoring case.
+     * 
+     * @param slowRequestRedactedParameters the name fragments
+     */
+    public void setSlowRequestRedactedParameters(List<String> slowRequestRedactedParameters) {
+        this.slowRequestRedactedParameters = slowRequestRedactedParameters;
+    }
+    
+    public String getSlowRequestPath() {
+        return slowRequestPath;
+    }
+    
+    /**
+     * Set the path serving the slow requests as JSON. Served next to the metrics scrape, so on
+     * the metrics port if one is set.
+     * 
+     * @param slowRequestPath the path
+     */
+    public void setSlowRequestPath(String slowRequestPath) {
+        this.slowRequestPath = slowRequestPath;
+    }
+    
+    public String getSlowRequestDumpFile() {
+        return slowRequestDumpFile;
+    }
+    
+    /**
+     * Write the slow requests to this file as JSON when the server stops.
+     * 
+     * @param slowRequestDumpFile the file path, or null to keep them in memory only
+     */
+    public void setSlowRequestDumpFile(String slowRequestDumpFile) {
+        this.slowRequestDumpFile = slowRequestDumpFile;
+    }
 }
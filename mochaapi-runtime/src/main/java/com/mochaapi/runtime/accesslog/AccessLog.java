@@ -0,0 +1,355 @@
+package com.mochaapi.runtime.accesslog;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.mochaapi.runtime.accesslog.AccessLogFormat.*;
+
+/**
+ * An access log that request threads write to without locking, blocking or allocating.
+ * 
+ * <p>Each request becomes a fixed-size binary record in a preallocated ring, claimed with a
+ * compare-and-set and filled in place. Routes and errors are recorded as IDs into a name table,
+ * so a record holds no strings. A writer thread of its own copies records from the ring into
+ * memory-mapped segment files, starting a new segment when one is full and deleting the oldest
+ * beyond the configured count. When the ring is full, records are dropped and counted rather
+ * than making the request wait. {@link AccessLogDecoder} renders the segments as text or JSON.
+ */
+public final class AccessLog implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AccessLog.class);
+    /** Names beyond this many are recorded as {@link AccessLogFormat#UNKNOWN_NAME}. */
+    static final int MAX_NAMES = 65536;
+    
+    private final Path directory;
+    private final long fileSize;
+    private final int maxFiles;
+    private final long writeIntervalNanos;
+    // Converts System.nanoTime() readings to wall-clock time without a clock call per record
+    private final long epochOffsetNanos;
+    
+    private final ByteBuffer ring;
+    private final int mask;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    // Written only by the writer thread
+    private volatile long drained;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    
+    private final ConcurrentHashMap<String, Integer> nameIds = new ConcurrentHashMap<>();
+    private final String[] names = new String[MAX_NAMES];
+    private int nameCount;
+    // Used by the writer thread only
+    private final BufferedWriter namesOut;
+    private int namesWritten;
+    private MappedByteBuffer segment;
+    
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    
+    /**
+     * Open the log in a directory and start its writer thread. Names already recorded in the
+     * directory keep their IDs, so segments from earlier runs still decode.
+     * 
+     * @param directory the directory to write segments to, created if needed
+     * @param bufferSize the number of records the ring holds, rounded up to a power of two
+     * @param fileSize the size of each segment file in bytes
+     * @param maxFiles the number of segments to keep
+     * @param writeIntervalMillis how long the writer waits when the ring runs dry
+     * @throws IOException if the directory or its name table cannot be opened
+     */
+    public AccessLog(Path directory, int bufferSize, long fileSize, int maxFiles, long writeIntervalMillis)
+            throws IOException {
+        if (fileSize < HEADER_SIZE + RECORD_SIZE || fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be between " + (HEADER_SIZE + RECORD_SIZE)
+                + " and " + Integer.MAX_VALUE + " bytes: " + fileSize);
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.fileSize = fileSize - (fileSize - HEADER_SIZE) % RECORD_SIZE;
+        this.maxFiles = Math.max(1, maxFiles);
+        this.writeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(writeIntervalMillis);
+        this.epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+        
+        int size = Integer.highestOneBit(Math.max(1, bufferSize - 1)) << 1;
+        this.ring = ByteBuffer.allocateDirect(size * RECORD_SIZE);
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        
+        Path namesFile = directory.resolve(NAMES_FILE);
+        if (Files.exists(namesFile)) {
+            AccessLogDecoder.readNames(namesFile).forEach((id, name) -> {
+                names[id] = name;
+                nameIds.put(name, id);
+                nameCount = Math.max(nameCount, id + 1);
+            });
+            namesWritten = nameCount;
+        }
+        this.namesOut = Files.newBufferedWriter(namesFile, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (nameCount == 0) {
+            nameId(UNKNOWN_NAME);
+        }
+        
+        this.writerThread = new Thread(this::writeLoop, "mochaapi-access-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+    
+    /**
+     * Publish how many records were written and dropped.
+     * 
+     * @param registry the registry to register the counters with
+     */
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("mochaapi_access_log_records_total", written, LongAdder::sum)
+            .description("Access log records written to segment files")
+            .register(registry);
+        FunctionCounter.builder("mochaapi_access_log_dropped_total", dropped, LongAdder::sum)
+            .description("Access log records dropped because the buffer was full or a segment could not be written")
+            .register(registry);
+    }
+    
+    /**
+     * Look up the ID of a route or error name, adding the name if it is new. Known names are a
+     * map lookup; new ones take a lock, which is fine for the bounded set of routes.
+     * 
+     * @param name the name, e.g. {@code GET /users/{id}}
+     * @return the ID, or the ID of {@link AccessLogFormat#UNKNOWN_NAME} once the table is full
+     */
+    public int nameId(String name) {
+        Integer id = nameIds.get(name);
+        return id != null ? id : register(name);
+    }
+    
+    /**
+     * Record a request.
+     * 
+     * @param startNanos the {@link System#nanoTime} at which the request arrived
+     * @param latencyNanos the time from arrival to the response
+     * @param nameId the route's {@link #nameId ID}
+     * @param status the response status
+     * @param requestBytes the size of the request body
+     * @param responseBytes the size of the response body
+     * @param address the client's IPv4 or IPv6 address, or null
+     * @param port the client's port
+     */
+    public void log(long startNanos, long latencyNanos, int nameId, int status, long requestBytes, long responseBytes,
+                    byte[] address, int port) {
+        write(TYPE_REQUEST, startNanos, latencyNanos, nameId, status, requestBytes, responseBytes, address, port);
+    }
+    
+    /**
+     * Record a connection-level failure, such as a reset connection or a malformed request.
+     * 
+     * @param nameId the {@link #nameId ID} of the error's description, which should come from a
+     *        small vocabulary such as exception class names, since the name table is never pruned
+     * @param address the client's IPv4 or IPv6 address, or null
+     * @param port the client's port
+     */
+    public void logError(int nameId, byte[] address, int port) {
+        write(TYPE_ERROR, System.nanoTime(), 0, nameId, 0, 0, 0, address, port);
+    }
+    
+    /**
+     * Stop the writer after it has written what is buffered, and flush the current segment.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    long getDropped() {
+        return dropped.sum();
+    }
+    
+    long getWritten() {
+        return written.sum();
+    }
+    
+    Thread getWriterThread() {
+        return writerThread;
+    }
+    
+    private synchronized int register(String name) {
+        Integer id = nameIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (nameCount == MAX_NAMES) {
+            return 0;
+        }
+        // Keeps one name per line in the name table
+        String clean = name.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        names[nameCount] = clean;
+        nameIds.put(name, nameCount);
+        return nameCount++;
+    }
+    
+    private void write(byte type, long startNanos, long latencyNanos, int nameId, int status, long requestBytes,
+                       long responseBytes, byte[] address, int port) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - drained > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        
+        int slot = (int) (sequence & mask);
+        int offset = slot * RECORD_SIZE;
+        ring.putLong(offset + TIMESTAMP, (startNanos + epochOffsetNanos) / 1000);
+        ring.putLong(offset + LATENCY, latencyNanos);
+        ring.putLong(offset + REQUEST_BYTES, requestBytes);
+        ring.putLong(offset + RESPONSE_BYTES, responseBytes);
+        ring.putInt(offset + NAME, nameId);
+        ring.putShort(offset + STATUS, (short) status);
+        ring.put(offset + TYPE, type);
+        int length = address != null ? address.length : 0;
+        ring.put(offset + ADDRESS_LENGTH, (byte) length);
+        for (int i = 0; i < 16; i++) {
+            ring.put(offset + ADDRESS + i, i < length ? address[i] : 0);
+        }
+        ring.putInt(offset + PORT, port);
+        // Hands the slot to the writer
+        published.set(slot, sequence);
+    }
+    
+    private void writeLoop() {
+        while (running) {
+            writeNames();
+            if (drain() == 0) {
+                LockSupport.parkNanos(this, writeIntervalNanos);
+            }
+        }
+        writeNames();
+        while (drain() > 0) {
+            // Write what was buffered before closing
+        }
+        if (segment != null) {
+            segment.force();
+        }
+        try {
+            namesOut.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close access log name table", e);
+        }
+    }
+    
+    private void writeNames() {
+        List<String> added;
+        int first;
+        synchronized (this) {
+            if (namesWritten == nameCount) {
+                return;
+            }
+            first = namesWritten;
+            added = new ArrayList<>(nameCount - first);
+            for (int id = first; id < nameCount; id++) {
+                added.add(names[id]);
+            }
+            namesWritten = nameCount;
+        }
+        try {
+            for (int i = 0; i < added.size(); i++) {
+                namesOut.write((first + i) + "\t" + added.get(i) + "\n");
+            }
+            namesOut.flush();
+        } catch (IOException e) {
+            logger.warn("Failed to write access log names", e);
+        }
+    }
+    
+    private int drain() {
+        long next = drained;
+        int count = 0;
+        while (count <= mask) {
+            int slot = (int) (next & mask);
+            if (published.get(slot) != next) {
+                break;
+            }
+            try {
+                if (segment == null || !segment.hasRemaining()) {
+                    rotate();
+                }
+                int position = segment.position();
+                segment.put(position, ring, slot * RECORD_SIZE, RECORD_SIZE);
+                segment.position(position + RECORD_SIZE);
+                written.increment();
+            } catch (IOException | RuntimeException e) {
+                segment = null;
+                dropped.increment();
+                logger.warn("Failed to write access log segment in {}", directory, e);
+            }
+            next++;
+            count++;
+        }
+        // Frees the slots for request threads
+        drained = next;
+        return count;
+    }
+    
+    private void rotate() throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        long created = System.currentTimeMillis();
+        Path file = segmentFile(created);
+        while (Files.exists(file)) {
+            file = segmentFile(++created);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        segment.putLong(0, MAGIC);
+        segment.putInt(HEADER_VERSION, VERSION);
+        segment.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+        segment.putLong(HEADER_CREATED, created);
+        segment.position(HEADER_SIZE);
+        deleteOldSegments();
+    }
+    
+    private Path segmentFile(long created) {
+        return directory.resolve(String.format(Locale.ROOT, "%s%013d%s", SEGMENT_PREFIX, created, SEGMENT_SUFFIX));
+    }
+    
+    private void deleteOldSegments() throws IOException {
+        List<Path> segments = AccessLogDecoder.segments(directory);
+        for (int i = 0; i < segments.size() - maxFiles; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+}
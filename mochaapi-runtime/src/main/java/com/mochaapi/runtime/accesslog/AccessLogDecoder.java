@@ -0,0 +1,221 @@
+package com.mochaapi.runtime.accesslog;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mochaapi.runtime.codec.ObjectMappers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.mochaapi.runtime.accesslog.AccessLogFormat.*;
+
+/**
+ * Reads the segments written by {@link AccessLog} and renders them as text or JSON lines.
+ * 
+ * <pre>
+ * java -cp mochaapi-runtime.jar com.mochaapi.runtime.accesslog.AccessLogDecoder [--json] &lt;directory or segment&gt;...
+ * </pre>
+ * 
+ * A directory is decoded segment by segment, oldest first. Names are read from the name table
+ * next to the segments.
+ */
+public final class AccessLogDecoder {
+    
+    private AccessLogDecoder() {
+    }
+    
+    /**
+     * One decoded record.
+     * 
+     * @param time when the request arrived, or when the error happened
+     * @param latencyNanos the time from arrival to the response, 0 for errors
+     * @param name the route, or the error's description for errors
+     * @param status the response status, 0 for errors
+     * @param requestBytes the size of the request body
+     * @param responseBytes the size of the response body
+     * @param client the client's address and port, or null if unknown
+     * @param error true for a connection-level failure rather than a request
+     */
+    public record Entry(Instant time, long latencyNanos, String name, int status, long requestBytes,
+                        long responseBytes, String client, boolean error) {
+    }
+    
+    /**
+     * Render segments to standard output.
+     * 
+     * @param args {@code --json} for JSON lines, then segment files or directories
+     * @throws IOException if a segment cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        boolean json = args.length > 0 && args[0].equals("--json");
+        List<Path> paths = new ArrayList<>();
+        for (int i = json ? 1 : 0; i < args.length; i++) {
+            paths.add(Path.of(args[i]));
+        }
+        if (paths.isEmpty()) {
+            System.err.println("Usage: AccessLogDecoder [--json] <directory or segment>...");
+            System.exit(2);
+        }
+        PrintStream out = new PrintStream(System.out, false, StandardCharsets.UTF_8);
+        for (Path path : paths) {
+            render(path, json, out);
+        }
+        out.flush();
+    }
+    
+    /**
+     * Render a segment, or every segment in a directory, one line per record.
+     * 
+     * @param path a segment file or a log directory
+     * @param json whether to render JSON lines rather than text
+     * @param out where to write the lines
+     * @throws IOException if a segment cannot be read
+     */
+    public static void render(Path path, boolean json, OutputStream out) throws IOException {
+        PrintStream printer = out instanceof PrintStream ? (PrintStream) out : new PrintStream(out, false, StandardCharsets.UTF_8);
+        IOException[] failure = new IOException[1];
+        decode(path, entry -> {
+            if (!json) {
+                printer.println(text(entry));
+                return;
+            }
+            try {
+                JsonGenerator generator = ObjectMappers.json().getFactory().createGenerator(printer);
+                generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+                writeJson(generator, entry);
+                generator.close();
+                printer.println();
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        printer.flush();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+    
+    /**
+     * Decode a segment, or every segment in a directory, oldest first.
+     * 
+     * @param path a segment file or a log directory
+     * @param consumer receives each record
+     * @throws IOException if a segment cannot be read or is not an access log segment
+     */
+    public static void decode(Path path, Consumer<Entry> consumer) throws IOException {
+        boolean directory = Files.isDirectory(path);
+        Path parent = directory ? path : path.toAbsolutePath().getParent();
+        Path namesFile = parent.resolve(NAMES_FILE);
+        Map<Integer, String> names = Files.exists(namesFile) ? readNames(namesFile) : Map.of();
+        for (Path segment : directory ? segments(path) : List.of(path)) {
+            decodeSegment(segment, names, consumer);
+        }
+    }
+    
+    static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            // Segment names hold their zero-padded creation time, so name order is age order
+            return files
+                .filter(file -> {
+                    String name = file.getFileName().toString();
+                    return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                })
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+    
+    static Map<Integer, String> readNames(Path file) throws IOException {
+        Map<Integer, String> names = new HashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+                names.put(Integer.parseInt(line.substring(0, tab)), line.substring(tab + 1));
+            }
+        }
+        return names;
+    }
+    
+    private static void decodeSegment(Path file, Map<Integer, String> names, Consumer<Entry> consumer) throws IOException {
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (segment.limit() < HEADER_SIZE || segment.getLong(0) != MAGIC) {
+            throw new IOException("Not an access log segment: " + file);
+        }
+        if (segment.getInt(HEADER_VERSION) != VERSION || segment.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE) {
+            throw new IOException("Unsupported access log segment version " + segment.getInt(HEADER_VERSION) + ": " + file);
+        }
+        for (int offset = HEADER_SIZE; offset + RECORD_SIZE <= segment.limit(); offset += RECORD_SIZE) {
+            byte type = segment.get(offset + TYPE);
+            if (type == TYPE_NONE) {
+                break;
+            }
+            long micros = segment.getLong(offset + TIMESTAMP);
+            Instant time = Instant.ofEpochSecond(micros / 1_000_000, (micros % 1_000_000) * 1000);
+            String name = names.getOrDefault(segment.getInt(offset + NAME), UNKNOWN_NAME);
+            consumer.accept(new Entry(time, segment.getLong(offset + LATENCY), name,
+                Short.toUnsignedInt(segment.getShort(offset + STATUS)), segment.getLong(offset + REQUEST_BYTES),
+                segment.getLong(offset + RESPONSE_BYTES), client(segment, offset), type == TYPE_ERROR));
+        }
+    }
+    
+    private static String client(MappedByteBuffer segment, int offset) {
+        int length = segment.get(offset + ADDRESS_LENGTH);
+        if (length != 4 && length != 16) {
+            return null;
+        }
+        byte[] address = new byte[length];
+        segment.get(offset + ADDRESS, address);
+        int port = segment.getInt(offset + PORT);
+        try {
+            String host = InetAddress.getByAddress(address).getHostAddress();
+            return length == 16 ? "[" + host + "]:" + port : host + ":" + port;
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+    
+    private static String text(Entry entry) {
+        String client = entry.client() != null ? entry.client() : "-";
+        if (entry.error()) {
+            return entry.time() + " " + client + " ERROR \"" + entry.name() + "\"";
+        }
+        return String.format(Locale.ROOT, "%s %s \"%s\" %d %d %d %.3fms", entry.time(), client, entry.name(), entry.status(),
+            entry.requestBytes(), entry.responseBytes(), entry.latencyNanos() / 1_000_000.0);
+    }
+    
+    private static void writeJson(JsonGenerator generator, Entry entry) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("time", entry.time().toString());
+        generator.writeStringField("client", entry.client());
+        if (entry.error()) {
+            generator.writeStringField("error", entry.name());
+        } else {
+            generator.writeStringField("route", entry.name());
+            generator.writeNumberField("status", entry.status());
+            generator.writeNumberField("requestBytes", entry.requestBytes());
+            generator.writeNumberField("responseBytes", entry.responseBytes());
+            generator.writeNumberField("latencyMicros", entry.latencyNanos() / 1000);
+        }
+        generator.writeEndObject();
+    }
+}
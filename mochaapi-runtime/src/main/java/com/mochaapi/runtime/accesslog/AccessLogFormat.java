@@ -0,0 +1,64 @@
+package com.mochaapi.runtime.accesslog;
+
+/**
+ * The layout of access log segment files. A segment starts with a header of one record's size,
+ * followed by fixed-size records in the order they were written; unused space at the end is
+ * zero, so the first record of type {@link #TYPE_NONE} ends the segment. Numbers are big-endian.
+ * 
+ * <pre>
+ * header   0  long  magic "MOCHALOG"
+ *          8  int   format version
+ *         12  int   record size
+ *         16  long  creation time, milliseconds since the epoch
+ * 
+ * record   0  long  request arrival, microseconds since the epoch
+ *          8  long  latency in nanoseconds
+ *         16  long  request body bytes
+ *         24  long  response body bytes
+ *         32  int   name ID: the route, or the error for error records
+ *         36  short status
+ *         38  byte  type
+ *         39  byte  client address length, 4 or 16
+ *         40  16 bytes client address
+ *         56  int   client port
+ *         60  int   reserved
+ * </pre>
+ * 
+ * Names are kept apart from the records in {@value #NAMES_FILE}, one {@code id<TAB>name} line per
+ * name, shared by all segments in the directory.
+ */
+final class AccessLogFormat {
+    
+    static final long MAGIC = 0x4d4f4348414c4f47L;
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 64;
+    static final int HEADER_SIZE = RECORD_SIZE;
+    
+    static final int HEADER_VERSION = 8;
+    static final int HEADER_RECORD_SIZE = 12;
+    static final int HEADER_CREATED = 16;
+    
+    static final int TIMESTAMP = 0;
+    static final int LATENCY = 8;
+    static final int REQUEST_BYTES = 16;
+    static final int RESPONSE_BYTES = 24;
+    static final int NAME = 32;
+    static final int STATUS = 36;
+    static final int TYPE = 38;
+    static final int ADDRESS_LENGTH = 39;
+    static final int ADDRESS = 40;
+    static final int PORT = 56;
+    
+    static final byte TYPE_NONE = 0;
+    static final byte TYPE_REQUEST = 1;
+    static final byte TYPE_ERROR = 2;
+    
+    static final String NAMES_FILE = "names.tsv";
+    static final String SEGMENT_PREFIX = "access-";
+    static final String SEGMENT_SUFFIX = ".bin";
+    /** The name recorded once the name table is full. */
+    static final String UNKNOWN_NAME = "-";
+    
+    private AccessLogFormat() {
+    }
+}
@@ -0,0 +1,148 @@
+package com.mochaapi.runtime.codec;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The properties a client selected with a {@code fields} query parameter, such as
+ * {@code id,name,address.city}. Each dotted path selects a property of a nested object; a
+ * property selected without a path below it is written in full. Arrays, collections and map
+ * values are transparent, so {@code items.sku} selects the {@code sku} of every element of
+ * {@code items}.
+ */
+public final class FieldSet {
+    
+    private static final int MAX_CACHED_FIELD_SETS = 256;
+    private static final ConcurrentHashMap<String, FieldSet> cache = new ConcurrentHashMap<>();
+    private static final Object ALL = new Object();
+    private static final FieldSet EVERYTHING = new FieldSet(Collections.emptyMap());
+    
+    // Empty for a property written in full
+    private final Map<String, FieldSet> children;
+    
+    private FieldSet(Map<String, FieldSet> children) {
+        this.children = children;
+    }
+    
+    /**
+     * Parse a {@code fields} parameter. Clients send a handful of distinct values, so each is
+     * parsed once and shared afterwards.
+     * 
+     * @param fields comma-separated property paths
+     * @return the selection, or null if the parameter is missing or names no property
+     */
+    public static FieldSet parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        FieldSet cached = cache.get(fields);
+        if (cached != null) {
+            return cached;
+        }
+        Map<String, Object> tree = new LinkedHashMap<>();
+        for (String path : fields.split(",")) {
+            add(tree, path.trim());
+        }
+        FieldSet parsed = tree.isEmpty() ? null : build(tree);
+        if (parsed != null && cache.size() < MAX_CACHED_FIELD_SETS) {
+            cache.putIfAbsent(fields, parsed);
+        }
+        return parsed;
+    }
+    
+    /**
+     * Whether a property of the object at this level is written.
+     * 
+     * @param name the property name
+     * @return true if it is selected, or if this whole object is
+     */
+    public boolean includes(String name) {
+        return children.isEmpty() || children.containsKey(name);
+    }
+    
+    /**
+     * The selection below a property.
+     * 
+     * @param name the property name
+     * @return the selection for the property's value; one that includes everything if the
+     *         property was selected without a path below it, or null if it is not selected
+     */
+    public FieldSet child(String name) {
+        return children.isEmpty() ? this : children.get(name);
+    }
+    
+    /**
+     * Whether every property at this level and below is written.
+     * 
+     * @return true for a property selected without a path below it
+     */
+    public boolean includesAll() {
+        return children.isEmpty();
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof FieldSet && children.equals(((FieldSet) other).children);
+    }
+    
+    @Override
+    public int hashCode() {
+        return children.hashCode();
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        appendTo(text, "");
+        return text.toString();
+    }
+    
+    private void appendTo(StringBuilder text, String prefix) {
+        for (Map.Entry<String, FieldSet> entry : children.entrySet()) {
+            if (entry.getValue().includesAll()) {
+                text.append(text.length() == 0 ? "" : ",").append(prefix).append(entry.getKey());
+            } else {
+                entry.getValue().appendTo(text, prefix + entry.getKey() + ".");
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static void add(Map<String, Object> tree, String path) {
+        String[] names = path.split("\\.", -1);
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim();
+            if (names[i].isEmpty()) {
+                // Ignore malformed paths such as "a..b" rather than selecting more than was asked for
+                return;
+            }
+        }
+        Map<String, Object> level = tree;
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            Object existing = level.get(name);
+            if (existing == ALL) {
+                // A shorter path already selected the whole property
+                return;
+            }
+            if (i == names.length - 1) {
+                level.put(name, ALL);
+                return;
+            }
+            if (existing == null) {
+                existing = new LinkedHashMap<String, Object>();
+                level.put(name, existing);
+            }
+            level = (Map<String, Object>) existing;
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static FieldSet build(Map<String, Object> tree) {
+        Map<String, FieldSet> children = new LinkedHashMap<>();
+        tree.forEach((name, subtree) -> children.put(name, subtree == ALL ? EVERYTHING : build((Map<String, Object>) subtree)));
+        return new FieldSet(Collections.unmodifiableMap(children));
+    }
+}
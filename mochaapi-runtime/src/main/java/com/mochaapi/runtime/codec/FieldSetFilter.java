@@ -0,0 +1,65 @@
+package com.mochaapi.runtime.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.introspect.NopAnnotationIntrospector;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+
+/**
+ * Applies a {@link FieldSet} while Jackson writes a bean: a property that is not selected is
+ * skipped before its getter is called, so nothing is read for it. While a selected property's
+ * value is written, the selection below it is kept as a per-call attribute of the serializer
+ * provider, so one filter serves every object in the graph and every data format.
+ */
+class FieldSetFilter extends SimpleBeanPropertyFilter {
+    
+    static final String FILTER_ID = "mochaapi.fields";
+    
+    private final FieldSet fields;
+    
+    FieldSetFilter(FieldSet fields) {
+        this.fields = fields;
+    }
+    
+    @Override
+    public void serializeAsField(Object pojo, JsonGenerator gen, SerializerProvider provider, PropertyWriter writer) throws Exception {
+        FieldSet level = (FieldSet) provider.getAttribute(FieldSetFilter.class);
+        if (level == null) {
+            level = fields;
+        }
+        String name = writer.getName();
+        if (!level.includes(name)) {
+            if (!gen.canOmitFields()) {
+                writer.serializeAsOmittedField(pojo, gen, provider);
+            }
+            return;
+        }
+        FieldSet child = level.child(name);
+        if (child == level) {
+            writer.serializeAsField(pojo, gen, provider);
+            return;
+        }
+        // Beans inside the property's value, including array elements, are filtered one level down
+        provider.setAttribute(FieldSetFilter.class, child);
+        try {
+            writer.serializeAsField(pojo, gen, provider);
+        } finally {
+            provider.setAttribute(FieldSetFilter.class, level);
+        }
+    }
+    
+    /**
+     * Gives every bean the filter id, so the filter runs for beans without {@code @JsonFilter}.
+     * Paired after the mapper's own introspector, it leaves beans that name a filter alone.
+     */
+    static class Introspector extends NopAnnotationIntrospector {
+        
+        @Override
+        public Object findFilterId(Annotated annotated) {
+            return annotated instanceof AnnotatedClass ? FILTER_ID : null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.mochaapi.runtime.codec;
+
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A mapper with an {@link ObjectReader} and {@link ObjectWriter} bound to each class it reads or
+ * writes. Bound readers and writers resolve their root deserializer and serializer once, where
+ * {@code ObjectMapper.readValue} and {@code writeValue} look them up on every call. Route body and
+ * return classes are bound when the routes are registered; any other class on first use. Writers
+ * for a client's {@link FieldSet} come from a copy of the mapper that runs every bean through a
+ * filter, one writer per distinct selection.
+ */
+final class JacksonBindings {
+    
+    private static final int MAX_FILTERED_WRITERS = 256;
+    
+    private final ObjectMapper mapper;
+    private final ClassValue<ObjectReader> readers = new ClassValue<>() {
+        @Override
+        protected ObjectReader computeValue(Class<?> type) {
+            return mapper.readerFor(type);
+        }
+    };
+    private final ClassValue<ObjectWriter> writers = new ClassValue<>() {
+        @Override
+        protected ObjectWriter computeValue(Class<?> type) {
+            return mapper.writerFor(type);
+        }
+    };
+    private final ConcurrentHashMap<FieldSet, ObjectWriter> filteredWriters = new ConcurrentHashMap<>();
+    private volatile ObjectMapper filteringMapper;
+    
+    JacksonBindings(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+    
+    ObjectMapper getMapper() {
+        return mapper;
+    }
+    
+    /**
+     * Bind a reader and writer for a route's body or return class ahead of its first request.
+     * 
+     * @param type the class
+     */
+    void prepare(Class<?> type) {
+        if (isBindable(type)) {
+            readers.get(type);
+            writers.get(type);
+        }
+    }
+    
+    ObjectReader readerFor(Class<?> type) {
+        return readers.get(type);
+    }
+    
+    /**
+     * The writer for a value. Values are looked up by their runtime class, so a writer never
+     * drops the properties of a subclass the way one bound to a declared supertype would.
+     * 
+     * @param value the value to write, or null
+     * @return the writer
+     */
+    ObjectWriter writerFor(Object value) {
+        return value != null ? writers.get(value.getClass()) : mapper.writer();
+    }
+    
+    /**
+     * The writer for a client's field selection, built once per distinct selection.
+     * 
+     * @param fields the selected properties
+     * @return a writer that skips every property outside the selection
+     */
+    ObjectWriter writerFor(FieldSet fields) {
+        ObjectWriter writer = filteredWriters.get(fields);
+        if (writer == null) {
+            SimpleFilterProvider filters = new SimpleFilterProvider()
+                .addFilter(FieldSetFilter.FILTER_ID, new FieldSetFilter(fields))
+                .setFailOnUnknownId(false);
+            writer = filteringMapper().writer(filters);
+            // Bounded like the selections themselves, in case a client sends endless variations
+            if (filteredWriters.size() < MAX_FILTERED_WRITERS) {
+                filteredWriters.putIfAbsent(fields, writer);
+            }
+        }
+        return writer;
+    }
+    
+    private ObjectMapper filteringMapper() {
+        ObjectMapper filtering = filteringMapper;
+        if (filtering == null) {
+            // A copy, since every bean it writes needs a filter and unfiltered writes must not pay for one
+            filtering = mapper.copy();
+            filtering.setAnnotationIntrospector(AnnotationIntrospector.pair(
+                filtering.getSerializationConfig().getAnnotationIntrospector(), new FieldSetFilter.Introspector()));
+            filteringMapper = filtering;
+        }
+        return filtering;
+    }
+    
+    private static boolean isBindable(Class<?> type) {
+        return !type.isPrimitive() && !type.isInterface() && !Modifier.isAbstract(type.getModifiers()) && type != Object.class;
+    }
+}
@@ -0,0 +1,50 @@
+package com.mochaapi.runtime.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A codec for one of Jackson's binary data formats. The same bean mapping applies as for JSON,
+ * so handlers serve every format unchanged.
+ */
+class JacksonMediaCodec implements MediaCodec {
+    
+    private final String mediaType;
+    private final JacksonBindings bindings;
+    
+    JacksonMediaCodec(String mediaType, JsonFactory factory) {
+        this.mediaType = mediaType;
+        this.bindings = new JacksonBindings(ObjectMappers.forFactory(factory));
+    }
+    
+    @Override
+    public String getMediaType() {
+        return mediaType;
+    }
+    
+    @Override
+    public void write(Object value, OutputStream out) throws IOException {
+        bindings.writerFor(value).writeValue(out, value);
+    }
+    
+    @Override
+    public void write(Object value, OutputStream out, FieldSet fields) throws IOException {
+        if (fields == null) {
+            write(value, out);
+        } else {
+            bindings.writerFor(fields).writeValue(out, value);
+        }
+    }
+    
+    @Override
+    public <T> T read(byte[] body, Class<T> type) throws IOException {
+        return bindings.readerFor(type).readValue(body);
+    }
+    
+    @Override
+    public void prepare(Class<?> type) {
+        bindings.prepare(type);
+    }
+}
@@ -0,0 +1,67 @@
+package com.mochaapi.runtime.codec;
+
+import com.mochaapi.runtime.json.JsonCodecs;
+import com.mochaapi.runtime.json.JsonDecoder;
+import com.mochaapi.runtime.json.JsonEncoder;
+import com.mochaapi.runtime.json.JsonReader;
+import com.mochaapi.runtime.json.JsonWriter;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * JSON through the codecs generated for the application's DTOs, and the shared Jackson mapper for
+ * other types. Once the application customizes the mapper every type goes through it, since the
+ * generated codecs only know Jackson's defaults.
+ */
+class JsonMediaCodec implements MediaCodec {
+    
+    @Override
+    public String getMediaType() {
+        return MediaCodecs.JSON;
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public void write(Object value, OutputStream out) throws IOException {
+        JsonEncoder<Object> encoder = value != null ? (JsonEncoder<Object>) JsonCodecs.encoderFor(value.getClass()) : null;
+        if (encoder == null || ObjectMappers.isCustomized()) {
+            ObjectMappers.jsonBindings().writerFor(value).writeValue(out, value);
+        } else if (out instanceof ByteBufOutputStream) {
+            // Generated encoders write straight into the response buffer
+            encoder.encode(value, new JsonWriter(((ByteBufOutputStream) out).buffer()));
+        } else {
+            out.write(JsonWriter.toBytes(value));
+        }
+    }
+    
+    @Override
+    public void write(Object value, OutputStream out, FieldSet fields) throws IOException {
+        if (fields == null) {
+            write(value, out);
+        } else {
+            // Generated encoders write every property, so a selection goes through the filtering writer
+            ObjectMappers.jsonBindings().writerFor(fields).writeValue(out, value);
+        }
+    }
+    
+    @Override
+    public <T> T read(byte[] body, Class<T> type) throws IOException {
+        JsonDecoder<T> decoder = JsonCodecs.decoderFor(type);
+        if (decoder == null || ObjectMappers.isCustomized()) {
+            return ObjectMappers.jsonBindings().readerFor(type).readValue(body);
+        }
+        try (JsonReader reader = JsonReader.of(body)) {
+            return decoder.decode(reader);
+        }
+    }
+    
+    @Override
+    public void prepare(Class<?> type) {
+        // Classes with both generated codecs never reach Jackson
+        if (JsonCodecs.encoderFor(type) == null || JsonCodecs.decoderFor(type) == null || ObjectMappers.isCustomized()) {
+            ObjectMappers.jsonBindings().prepare(type);
+        }
+    }
+}
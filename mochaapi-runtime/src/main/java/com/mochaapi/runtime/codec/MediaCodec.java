@@ -0,0 +1,60 @@
+package com.mochaapi.runtime.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Reads request bodies and writes response bodies in one media type. JSON, CBOR and Smile are
+ * built in; other formats are added by listing an implementation in
+ * {@code META-INF/services/com.mochaapi.runtime.codec.MediaCodec}.
+ */
+public interface MediaCodec {
+    
+    /**
+     * The media type this codec reads and writes, such as {@code application/cbor}.
+     * 
+     * @return the media type, without parameters
+     */
+    String getMediaType();
+    
+    /**
+     * Write a response body.
+     * 
+     * @param value the handler's result, never null
+     * @param out the stream to write to; the codec need not close it
+     * @throws IOException if the value cannot be written
+     */
+    void write(Object value, OutputStream out) throws IOException;
+    
+    /**
+     * Write only the properties a client selected. Codecs that cannot select properties write
+     * the whole value.
+     * 
+     * @param value the handler's result, never null
+     * @param out the stream to write to; the codec need not close it
+     * @param fields the selected properties, or null for all of them
+     * @throws IOException if the value cannot be written
+     */
+    default void write(Object value, OutputStream out, FieldSet fields) throws IOException {
+        write(value, out);
+    }
+    
+    /**
+     * Read a request body.
+     * 
+     * @param body the raw body
+     * @param type the type of the handler's {@code @RequestBody} parameter
+     * @return the value read
+     * @throws IOException if the body is malformed or does not match the type
+     */
+    <T> T read(byte[] body, Class<T> type) throws IOException;
+    
+    /**
+     * Called once for each route's body and return class when the route is registered, so the
+     * codec can resolve what it needs for the class before the first request arrives.
+     * 
+     * @param type a class the codec will be asked to read or write
+     */
+    default void prepare(Class<?> type) {
+    }
+}
@@ -0,0 +1,200 @@
+package com.mochaapi.runtime.codec;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The media codecs a server speaks, and the negotiation that picks one for a request. JSON comes
+ * first and is the default: requests without a {@code Content-Type} are read as JSON, and clients
+ * whose {@code Accept} header matches no codec get JSON rather than a 406.
+ */
+public final class MediaCodecs {
+    
+    public static final String JSON = "application/json";
+    public static final String CBOR = "application/cbor";
+    public static final String SMILE = "application/x-jackson-smile";
+    public static final String NDJSON = "application/x-ndjson";
+    
+    private static final Logger logger = LoggerFactory.getLogger(MediaCodecs.class);
+    private static final MediaCodec JSON_CODEC = new JsonMediaCodec();
+    private static final int MAX_CACHED_ACCEPT_HEADERS = 256;
+    
+    private final List<MediaCodec> codecs;
+    private final ConcurrentHashMap<String, MediaCodec> acceptCache = new ConcurrentHashMap<>();
+    
+    /**
+     * Create a registry.
+     * 
+     * @param codecs the codecs, the first of which is the default
+     */
+    public MediaCodecs(List<MediaCodec> codecs) {
+        if (codecs.isEmpty()) {
+            throw new IllegalArgumentException("At least one codec is required");
+        }
+        this.codecs = List.copyOf(codecs);
+    }
+    
+    /**
+     * The built-in JSON, CBOR, Smile and NDJSON codecs plus any registered through {@link ServiceLoader}.
+     * A service codec for a built-in media type replaces the built-in one.
+     * 
+     * @return the registry
+     */
+    public static MediaCodecs load() {
+        List<MediaCodec> codecs = new ArrayList<>(List.of(
+            JSON_CODEC,
+            new JacksonMediaCodec(CBOR, new CBORFactory()),
+            new JacksonMediaCodec(SMILE, new SmileFactory()),
+            new NdjsonMediaCodec(JSON_CODEC)
+        ));
+        for (MediaCodec codec : ServiceLoader.load(MediaCodec.class)) {
+            String mediaType = codec.getMediaType().toLowerCase(Locale.ROOT);
+            codecs.removeIf(existing -> existing.getMediaType().equals(mediaType));
+            codecs.add(codec);
+            logger.info("Registered media codec {} for {}", codec.getClass().getName(), mediaType);
+        }
+        return new MediaCodecs(codecs);
+    }
+    
+    /**
+     * The JSON codec used when nothing was negotiated.
+     * 
+     * @return the shared JSON codec
+     */
+    public static MediaCodec json() {
+        return JSON_CODEC;
+    }
+    
+    public MediaCodec getDefault() {
+        return codecs.get(0);
+    }
+    
+    public List<MediaCodec> getCodecs() {
+        return codecs;
+    }
+    
+    /**
+     * The codec for a request body.
+     * 
+     * @param contentType the request's {@code Content-Type} header, or null
+     * @return the matching codec, or the default if none matches
+     */
+    public MediaCodec forContentType(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return getDefault();
+        }
+        MediaCodec codec = find(mediaType(contentType));
+        return codec != null ? codec : getDefault();
+    }
+    
+    /**
+     * The codec for a response, chosen by quality from the request's {@code Accept} header.
+     * Exact media types win over {@code type/*}, which wins over {@code *}{@code /*}, when
+     * their qualities are equal.
+     * 
+     * @param accept the request's {@code Accept} header, or null
+     * @return the best acceptable codec, or the default if none is acceptable
+     */
+    public MediaCodec forAccept(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return getDefault();
+        }
+        MediaCodec cached = acceptCache.get(accept);
+        if (cached != null) {
+            return cached;
+        }
+        MediaCodec codec = negotiate(accept);
+        // Clients send a handful of distinct headers, so the cache stays small unless someone is probing
+        if (acceptCache.size() < MAX_CACHED_ACCEPT_HEADERS) {
+            acceptCache.put(accept, codec);
+        }
+        return codec;
+    }
+    
+    /**
+     * The codec for a media type. Structured syntax suffixes match too, so
+     * {@code application/vnd.api+json} finds the JSON codec.
+     * 
+     * @param mediaType the media type, without parameters
+     * @return the codec, or null if none handles the type
+     */
+    public MediaCodec find(String mediaType) {
+        for (MediaCodec codec : codecs) {
+            if (codec.getMediaType().equals(mediaType)) {
+                return codec;
+            }
+        }
+        int plus = mediaType.lastIndexOf('+');
+        int slash = mediaType.indexOf('/');
+        if (plus > slash && slash > 0) {
+            return find(mediaType.substring(0, slash + 1) + mediaType.substring(plus + 1));
+        }
+        return null;
+    }
+    
+    private MediaCodec negotiate(String accept) {
+        MediaCodec best = null;
+        double bestQuality = 0;
+        int bestSpecificity = -1;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String type = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = quality(parts);
+            MediaCodec codec;
+            int specificity;
+            if (type.equals("*/*")) {
+                codec = getDefault();
+                specificity = 0;
+            } else if (type.endsWith("/*")) {
+                codec = firstWithPrefix(type.substring(0, type.length() - 1));
+                specificity = 1;
+            } else {
+                codec = find(type);
+                specificity = 2;
+            }
+            if (codec != null && quality > 0
+                && (quality > bestQuality || (quality == bestQuality && specificity > bestSpecificity))) {
+                best = codec;
+                bestQuality = quality;
+                bestSpecificity = specificity;
+            }
+        }
+        return best != null ? best : getDefault();
+    }
+    
+    private MediaCodec firstWithPrefix(String prefix) {
+        for (MediaCodec codec : codecs) {
+            if (codec.getMediaType().startsWith(prefix)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+    
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+    
+    private static String mediaType(String header) {
+        int semicolon = header.indexOf(';');
+        return (semicolon >= 0 ? header.substring(0, semicolon) : header).trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,39 @@
+package com.mochaapi.runtime.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Newline-delimited JSON. Streamed results are written one element per line by the server; a
+ * single value is written as a one-line document, and a request body is read as one JSON value.
+ */
+class NdjsonMediaCodec implements MediaCodec {
+    
+    private final MediaCodec json;
+    
+    NdjsonMediaCodec(MediaCodec json) {
+        this.json = json;
+    }
+    
+    @Override
+    public String getMediaType() {
+        return MediaCodecs.NDJSON;
+    }
+    
+    @Override
+    public void write(Object value, OutputStream out) throws IOException {
+        json.write(value, out);
+        out.write('\n');
+    }
+    
+    @Override
+    public void write(Object value, OutputStream out, FieldSet fields) throws IOException {
+        json.write(value, out, fields);
+        out.write('\n');
+    }
+    
+    @Override
+    public <T> T read(byte[] body, Class<T> type) throws IOException {
+        return json.read(body, type);
+    }
+}
@@ -0,0 +1,90 @@
+package com.mochaapi.runtime.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.mochaapi.runtime.MochaAPIConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Consumer;
+
+/**
+ * The one Jackson configuration shared by every place the runtime falls back to Jackson: the JSON,
+ * CBOR and Smile codecs, values the generated JSON codecs cannot write themselves, and SSE event
+ * data. Applications customize it once through {@link MochaAPIConfig#setObjectMapperCustomizer}
+ * instead of each component keeping its own mapper.
+ */
+public final class ObjectMappers {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ObjectMappers.class);
+    
+    private static volatile JacksonBindings json = new JacksonBindings(new ObjectMapper());
+    private static volatile boolean customized;
+    
+    private ObjectMappers() {
+    }
+    
+    /**
+     * Rebuild the shared mapper from the application's configuration. Call before the server
+     * starts: codecs created earlier keep the mapper they were created with.
+     * 
+     * @param config the application configuration
+     */
+    public static void configure(MochaAPIConfig config) {
+        configure(config.getObjectMapperCustomizer(), config.isJacksonBlackbirdEnabled());
+    }
+    
+    /**
+     * Rebuild the shared mapper.
+     * 
+     * @param customizer applied to the new mapper, or null to keep Jackson's defaults
+     * @param blackbird whether to replace reflective property access with generated accessors
+     */
+    public static void configure(Consumer<ObjectMapper> customizer, boolean blackbird) {
+        ObjectMapper mapper = new ObjectMapper();
+        if (blackbird) {
+            mapper.registerModule(new BlackbirdModule());
+            logger.info("Jackson property access through Blackbird accessors enabled");
+        }
+        if (customizer != null) {
+            customizer.accept(mapper);
+        }
+        json = new JacksonBindings(mapper);
+        customized = customizer != null;
+    }
+    
+    /**
+     * The shared JSON mapper.
+     * 
+     * @return the mapper
+     */
+    public static ObjectMapper json() {
+        return json.getMapper();
+    }
+    
+    /**
+     * A mapper for another of Jackson's data formats with the same configuration and modules as
+     * the JSON mapper.
+     * 
+     * @param factory the data format's factory
+     * @return a new mapper
+     */
+    public static ObjectMapper forFactory(JsonFactory factory) {
+        return json().copyWith(factory);
+    }
+    
+    /**
+     * Whether an application customizer shaped the shared mapper. The generated JSON codecs write
+     * what a default mapper writes, so they stand aside while it is customized.
+     * 
+     * @return true if a customizer was applied
+     */
+    public static boolean isCustomized() {
+        return customized;
+    }
+    
+    static JacksonBindings jsonBindings() {
+        return json;
+    }
+}
@@ -0,0 +1,70 @@
+package com.mochaapi.runtime.context;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Access to the request being handled on the current thread, for code that is not handed the
+ * {@link RequestContext} as a parameter. The context is bound only while a handler, WebSocket
+ * endpoint or fan-out subtask runs, and is never inherited by threads the handler starts
+ * itself, so short-lived virtual threads carry no copy of it.
+ */
+public final class CurrentRequest {
+    
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+    
+    private CurrentRequest() {
+    }
+    
+    /**
+     * The request being handled on this thread.
+     * 
+     * @return the request context, or null outside request handling
+     */
+    public static RequestContext get() {
+        return CURRENT.get();
+    }
+    
+    /**
+     * The trace ID of the request being handled on this thread.
+     * 
+     * @return the trace ID, or null outside request handling
+     */
+    public static String traceId() {
+        RequestContext context = CURRENT.get();
+        return context != null ? context.getTraceId() : null;
+    }
+    
+    /**
+     * The time left before the deadline of the request being handled on this thread.
+     * 
+     * @return the remaining budget, or null outside request handling or if the request has no deadline
+     */
+    public static Duration remainingTime() {
+        RequestContext context = CURRENT.get();
+        return context != null ? context.getRemainingTime() : null;
+    }
+    
+    /**
+     * Run an action with the given request bound to the current thread, restoring the previous
+     * binding afterwards.
+     * 
+     * @param context the request to bind
+     * @param action the action to run
+     * @return the action's result
+     */
+    public static <T> T callWith(RequestContext context, Supplier<T> action) {
+        RequestContext previous = CURRENT.get();
+        CURRENT.set(context);
+        try {
+            return action.get();
+        } finally {
+            // Removing rather than setting null leaves pooled threads without a map entry
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.mochaapi.runtime.context;
+
+import com.mochaapi.runtime.executor.ExecutorManager;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A scope for running a handler's parallel calls on virtual threads. Subtasks forked in the scope
+ * share the request's deadline and are interrupted when the scope closes. Closing waits, for up to
+ * {@link #CLOSE_WAIT_MILLIS}, until their threads have returned, so a handler that closes its scope
+ * leaves no work behind unless a subtask ignores the interrupt for longer than that. Scopes the
+ * handler left open are interrupted when the request ends, without waiting.
+ * 
+ * <pre>{@code
+ * try (FanOut fanOut = context.fanOut(FanOut.Policy.SHUTDOWN_ON_FAILURE)) {
+ *     FanOut.Subtask<User> user = fanOut.fork(() -> userClient.get(id));
+ *     FanOut.Subtask<List<Order>> orders = fanOut.fork(() -> orderClient.forUser(id));
+ *     fanOut.join();
+ *     return new Profile(user.get(), orders.get());
+ * }
+ * }</pre>
+ */
+public class FanOut implements AutoCloseable {
+    
+    /**
+     * How long {@link #close()} waits for interrupted subtasks to return.
+     */
+    public static final long CLOSE_WAIT_MILLIS = 1000;
+    
+    private static final Logger logger = LoggerFactory.getLogger(FanOut.class);
+    
+    /**
+     * When a scope stops waiting for its subtasks.
+     */
+    public enum Policy {
+        /**
+         * Wait for every subtask, but cancel the rest and fail as soon as one fails.
+         */
+        SHUTDOWN_ON_FAILURE,
+        /**
+         * Finish with the first subtask to succeed and cancel the rest; fail only if all fail.
+         */
+        FIRST_SUCCESS
+    }
+    
+    private final Policy policy;
+    private final ExecutorManager executorManager;
+    private final RequestContext context;
+    private final List<Subtask<?>> subtasks = new ArrayList<>();
+    private final CompletableFuture<Object> outcome = new CompletableFuture<>();
+    private int pending;
+    private boolean joined;
+    private boolean closed;
+    private Throwable firstFailure;
+    
+    FanOut(Policy policy, ExecutorManager executorManager, RequestContext context) {
+        this.policy = policy;
+        this.executorManager = executorManager;
+        this.context = context;
+    }
+    
+    /**
+     * Start a subtask on a virtual thread.
+     * 
+     * @param task the work to run
+     * @return a handle to the subtask's result, usable once {@link #join()} returns
+     * @throws IllegalStateException if the scope has already been joined or closed
+     */
+    public <T> Subtask<T> fork(Callable<? extends T> task) {
+        Subtask<T> subtask;
+        synchronized (this) {
+            if (joined || closed) {
+                throw new IllegalStateException("Cannot fork after the scope has been joined or closed");
+            }
+            pending++;
+            subtask = new Subtask<>();
+            subtasks.add(subtask);
+        }
+        // Subtasks see the request through CurrentRequest just like the handler that forked them
+        subtask.future = executorManager.executeVirtual(() -> CurrentRequest.callWith(context, () -> {
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }), context.getRouteKey());
+        Duration remaining = context.getRemainingTime();
+        if (remaining != null) {
+            executorManager.failAfter(subtask.future, remaining.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        subtask.future.whenComplete((result, throwable) -> onComplete(subtask, result, throwable));
+        ExecutorManager.whenTerminated(subtask.future, () -> subtask.terminated.complete(null));
+        
+        // A scope closed or settled while this subtask was starting has already skipped it in shutdown()
+        boolean stopped;
+        synchronized (this) {
+            stopped = closed || outcome.isDone();
+        }
+        if (stopped) {
+            subtask.future.cancel(true);
+        }
+        return subtask;
+    }
+    
+    /**
+     * Wait until the policy is satisfied or the request's deadline passes.
+     * 
+     * @return this scope
+     * @throws ExecutionException with the first failure, if a subtask failed under
+     *         {@link Policy#SHUTDOWN_ON_FAILURE} or every subtask failed under {@link Policy#FIRST_SUCCESS}
+     * @throws TimeoutException if the request's deadline passes first; unfinished subtasks are cancelled
+     * @throws InterruptedException if the handler is interrupted while waiting
+     */
+    public FanOut join() throws InterruptedException, ExecutionException, TimeoutException {
+        synchronized (this) {
+            joined = true;
+            if (pending == 0) {
+                settle();
+            }
+        }
+        try {
+            Duration remaining = context.getRemainingTime();
+            if (remaining == null) {
+                outcome.get();
+            } else {
+                outcome.get(remaining.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            return this;
+        } catch (TimeoutException | InterruptedException e) {
+            shutdown();
+            throw e;
+        }
+    }
+    
+    /**
+     * The result of the first subtask to succeed under {@link Policy#FIRST_SUCCESS}.
+     * 
+     * @return the winning subtask's result
+     * @throws IllegalStateException if the scope has not joined successfully, or uses another policy
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T result() {
+        if (policy != Policy.FIRST_SUCCESS || !outcome.isDone() || outcome.isCompletedExceptionally()) {
+            throw new IllegalStateException("No successful result under policy " + policy);
+        }
+        return (T) outcome.join();
+    }
+    
+    /**
+     * Interrupt every subtask that has not finished.
+     */
+    public void shutdown() {
+        List<Subtask<?>> running;
+        synchronized (this) {
+            running = new ArrayList<>(subtasks);
+        }
+        for (Subtask<?> subtask : running) {
+            if (subtask.future != null) {
+                subtask.future.cancel(true);
+            }
+        }
+    }
+    
+    /**
+     * Close the scope, interrupting any subtasks still running and waiting up to
+     * {@link #CLOSE_WAIT_MILLIS} for their threads to return. The wait is not cut short by an
+     * interrupt of the calling thread, which is restored afterwards.
+     */
+    @Override
+    public void close() {
+        if (stop()) {
+            awaitSubtasks();
+        }
+    }
+    
+    /**
+     * Close the scope and interrupt its subtasks without waiting for them.
+     * 
+     * @return true if this call closed the scope
+     */
+    boolean stop() {
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+        }
+        shutdown();
+        return true;
+    }
+    
+    /**
+     * The number of subtasks forked in this scope.
+     * 
+     * @return the subtask count
+     */
+    public synchronized int getSubtaskCount() {
+        return subtasks.size();
+    }
+    
+    private void awaitSubtasks() {
+        List<CompletableFuture<Void>> terminations = new ArrayList<>();
+        synchronized (this) {
+            for (Subtask<?> subtask : subtasks) {
+                terminations.add(subtask.terminated);
+            }
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(terminations.toArray(new CompletableFuture<?>[0]));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_WAIT_MILLIS);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    all.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    return;
+                } catch (InterruptedException e) {
+                    // A handler closing its scope after a timeout has been interrupted itself
+                    interrupted = true;
+                } catch (TimeoutException e) {
+                    long running = terminations.stream().filter(termination -> !termination.isDone()).count();
+                    logger.warn("{} fan-out subtask(s) of {} ignored the interrupt and are still running",
+                        running, context.getRouteKey());
+                    return;
+                } catch (ExecutionException e) {
+                    return;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private void onComplete(Subtask<?> subtask, Object result, Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+            ? throwable.getCause()
+            : throwable;
+        recordDuration(subtask, cause);
+        synchronized (this) {
+            pending--;
+            if (cause != null && !(cause instanceof CancellationException)) {
+                if (firstFailure == null) {
+                    firstFailure = cause;
+                } else if (firstFailure != cause) {
+                    firstFailure.addSuppressed(cause);
+                }
+            }
+            if (policy == Policy.SHUTDOWN_ON_FAILURE && cause != null && !(cause instanceof CancellationException)) {
+                outcome.completeExceptionally(cause);
+            } else if (policy == Policy.FIRST_SUCCESS && cause == null) {
+                outcome.complete(result);
+            } else if (joined && pending == 0) {
+                settle();
+            }
+        }
+        if (outcome.isDone()) {
+            shutdown();
+        }
+    }
+    
+    private void settle() {
+        if (policy == Policy.SHUTDOWN_ON_FAILURE) {
+            outcome.complete(null);
+        } else {
+            outcome.completeExceptionally(firstFailure != null ? firstFailure : new IllegalStateException("No subtask completed successfully"));
+        }
+    }
+    
+    static void recordRequest(ExecutorManager executorManager, String routeKey, int subtasks) {
+        MeterRegistry registry = executorManager.getMeterRegistry();
+        if (registry == null) {
+            return;
+        }
+        DistributionSummary.builder("mochaapi_fanout_subtasks")
+            .description("Fan-out subtasks started per request")
+            .tag("route", routeKey != null ? routeKey : "unknown")
+            .register(registry)
+            .record(subtasks);
+    }
+    
+    private void recordDuration(Subtask<?> subtask, Throwable cause) {
+        MeterRegistry registry = executorManager.getMeterRegistry();
+        if (registry == null) {
+            return;
+        }
+        String result = cause == null ? "success" : cause instanceof CancellationException ? "cancelled" : "failure";
+        Timer.builder("mochaapi_fanout_subtask")
+            .description("Time fan-out subtasks took from fork to completion")
+            .tag("route", context.getRouteKey() != null ? context.getRouteKey() : "unknown")
+            .tag("outcome", result)
+            .register(registry)
+            .record(System.nanoTime() - subtask.startNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Handle to a forked subtask.
+     */
+    public static final class Subtask<T> {
+        
+        private final long startNanos = System.nanoTime();
+        // Completes once no thread is running the subtask, which may be after its future completed
+        private final CompletableFuture<Void> terminated = new CompletableFuture<>();
+        private volatile CompletableFuture<T> future;
+        
+        private Subtask() {
+        }
+        
+        /**
+         * The subtask's result.
+         * 
+         * @return the value the subtask returned
+         * @throws IllegalStateException if the subtask has not completed successfully
+         */
+        public T get() {
+            CompletableFuture<T> f = future;
+            if (f == null || !f.isDone() || f.isCompletedExceptionally()) {
+                throw new IllegalStateException("Subtask has not completed successfully");
+            }
+            return f.join();
+        }
+        
+        /**
+         * Whether the subtask finished with a result.
+         * 
+         * @return true once the subtask has completed successfully
+         */
+        public boolean isSuccessful() {
+            CompletableFuture<T> f = future;
+            return f != null && f.isDone() && !f.isCompletedExceptionally();
+        }
+    }
+}
@@ -1,23 +1,61 @@
 package com.mochaapi.runtime.context;
 
+import com.mochaapi.runtime.codec.MediaCodec;
+import com.mochaapi.runtime.executor.ExecutorManager;
+import com.mochaapi.runtime.jfr.ResponseWrittenEvent;
+import com.mochaapi.runtime.monitor.RequestPhases;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Context object that holds information about the current HTTP request.
+ * While a handler runs, the context is also available from {@link CurrentRequest#get()}.
  */
 public class RequestContext {
     
+    /**
+     * W3C Trace Context header carrying the caller's trace ID.
+     */
+    public static final String TRACEPARENT_HEADER = "traceparent";
+    
+    /**
+     * W3C Trace Context header carrying vendor-specific trace data, passed on unchanged.
+     */
+    public static final String TRACESTATE_HEADER = "tracestate";
+    
     private String method;
     private String path;
     private Map<String, String> headers;
     private Map<String, String> queryParams;
     private Map<String, String> pathParams;
     private String body;
+    private byte[] bodyBytes;
     private String contentType;
+    private long deadlineNanos;
+    private boolean hasDeadline;
+    private String routeKey;
+    private String traceId;
+    private String parentSpanId;
+    private String spanId;
+    private boolean traceSampled;
+    private ExecutorManager executorManager;
+    private MediaCodec requestCodec;
+    private MediaCodec responseCodec;
+    private RequestPhases phases;
+    private ResponseWrittenEvent responseEvent;
+    private volatile Thread handlerThread;
+    private final List<FanOut> fanOuts = new ArrayList<>();
+    private boolean ended;
     
     public RequestContext() {
-        this.headers = new HashMap<>();
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
         this.queryParams = new HashMap<>();
         this.pathParams = new HashMap<>();
     }
@@ -42,10 +80,18 @@ public class RequestContext {
         return headers;
     }
     
+    /**
+     * Replaces the request headers. Header names are matched case-insensitively,
+     * as HTTP requires, whatever the map passed in does.
+     */
     public void setHeaders(Map<String, String> headers) {
-        this.headers = headers;
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        this.headers.putAll(headers);
     }
     
+    /**
+     * Returns the value of the named header, ignoring the case of the name.
+     */
     public String getHeader(String name) {
         return headers.get(name);
     }
@@ -87,11 +133,58 @@ public class RequestContext {
     }
     
     public String getBody() {
+        if (body == null && bodyBytes != null) {
+            body = new String(bodyBytes, StandardCharsets.UTF_8);
+        }
         return body;
     }
     
     public void setBody(String body) {
         this.body = body;
+        this.bodyBytes = null;
+    }
+    
+    /**
+     * The raw request body, for formats that are not text.
+     * 
+     * @return the body, or null if the request has none
+     */
+    public byte[] getBodyBytes() {
+        if (bodyBytes == null && body != null) {
+            bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        }
+        return bodyBytes;
+    }
+    
+    public void setBodyBytes(byte[] bodyBytes) {
+        this.bodyBytes = bodyBytes;
+        this.body = null;
+    }
+    
+    /**
+     * The codec negotiated from the request's {@code Content-Type}, used to read its body.
+     * 
+     * @return the codec, or null if the request was not negotiated
+     */
+    public MediaCodec getRequestCodec() {
+        return requestCodec;
+    }
+    
+    public void setRequestCodec(MediaCodec requestCodec) {
+        this.requestCodec = requestCodec;
+    }
+    
+    /**
+     * The codec negotiated from the request's {@code Accept} header, used to write the response.
+     * 
+     * @return the codec, or null if the request was not negotiated
+     */
+    public MediaCodec getResponseCodec() {
+        return responseCodec;
+    }
+    
+    public void setResponseCodec(MediaCodec responseCodec) {
+        this.responseCodec = responseCodec;
     }
     
     public String getContentType() {
@@ -101,4 +194,259 @@ public class RequestContext {
     public void setContentType(String contentType) {
         this.contentType = contentType;
     }
+    
+    /**
+     * Set the deadline for this request.
+     * 
+     * @param deadlineNanos the deadline as a {@link System#nanoTime()} value
+     */
+    public void setDeadlineNanos(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+        this.hasDeadline = true;
+    }
+    
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+    
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+    
+    /**
+     * The time left before the request's deadline, to pass on to downstream calls.
+     * 
+     * @return the remaining budget, zero once the deadline has passed, or null if the request has no deadline
+     */
+    public Duration getRemainingTime() {
+        if (!hasDeadline) {
+            return null;
+        }
+        long remaining = deadlineNanos - System.nanoTime();
+        return remaining > 0 ? Duration.ofNanos(remaining) : Duration.ZERO;
+    }
+    
+    /**
+     * The ID of the trace this request belongs to: the caller's from a valid {@code traceparent}
+     * header, otherwise a new random one.
+     * 
+     * @return 32 lowercase hex characters
+     */
+    public synchronized String getTraceId() {
+        resolveTrace();
+        return traceId;
+    }
+    
+    /**
+     * The ID of the caller's span, which is the parent of this request's span.
+     * 
+     * @return 16 lowercase hex characters, or null if the request started a new trace
+     */
+    public synchronized String getParentSpanId() {
+        resolveTrace();
+        return parentSpanId;
+    }
+    
+    /**
+     * The ID of the span representing this request on the server.
+     * 
+     * @return 16 lowercase hex characters
+     */
+    public synchronized String getSpanId() {
+        if (spanId == null) {
+            spanId = String.format("%016x", ThreadLocalRandom.current().nextLong() | 1);
+        }
+        return spanId;
+    }
+    
+    /**
+     * Whether the trace is sampled: the caller's decision from its {@code traceparent} flags,
+     * or the server's own for a request that started a new trace.
+     * 
+     * @return true if spans of this trace are recorded
+     */
+    public synchronized boolean isTraceSampled() {
+        resolveTrace();
+        return traceSampled;
+    }
+    
+    public synchronized void setTraceSampled(boolean traceSampled) {
+        resolveTrace();
+        this.traceSampled = traceSampled;
+    }
+    
+    /**
+     * The {@code traceparent} header for calls this request makes to other services, naming this
+     * request's span as their parent.
+     * 
+     * @return the header value, e.g. {@code 00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01}
+     */
+    public synchronized String getTraceparent() {
+        resolveTrace();
+        return "00-" + traceId + '-' + getSpanId() + (traceSampled ? "-01" : "-00");
+    }
+    
+    /**
+     * The caller's {@code tracestate} header, to pass on unchanged with {@link #getTraceparent}.
+     * 
+     * @return the header value, or null if the caller sent none
+     */
+    public String getTracestate() {
+        return getHeader(TRACESTATE_HEADER);
+    }
+    
+    private void resolveTrace() {
+        if (traceId != null) {
+            return;
+        }
+        String traceparent = getHeader(TRACEPARENT_HEADER);
+        if (!parseTraceparent(traceparent)) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            traceId = String.format("%016x%016x", random.nextLong(), random.nextLong() | 1);
+        }
+    }
+    
+    private boolean parseTraceparent(String traceparent) {
+        // version-traceid-parentid-flags, e.g. 00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01
+        if (traceparent == null || traceparent.length() < 55 || traceparent.startsWith("ff")
+            || traceparent.charAt(2) != '-' || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-') {
+            return false;
+        }
+        String candidateTraceId = traceparent.substring(3, 35);
+        String candidateParentId = traceparent.substring(36, 52);
+        String flags = traceparent.substring(53, 55);
+        if (!isHexId(candidateTraceId) || !isHexId(candidateParentId) || !isHex(flags)) {
+            return false;
+        }
+        traceId = candidateTraceId;
+        parentSpanId = candidateParentId;
+        traceSampled = (Character.digit(flags.charAt(1), 16) & 1) != 0;
+        return true;
+    }
+    
+    private static boolean isHexId(String candidate) {
+        // An all-zero ID is invalid
+        return isHex(candidate) && candidate.chars().anyMatch(c -> c != '0');
+    }
+    
+    private static boolean isHex(String candidate) {
+        for (int i = 0; i < candidate.length(); i++) {
+            char c = candidate.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * The route that matched this request, as {@code METHOD /path/pattern}.
+     * 
+     * @return the route key, or null before routing
+     */
+    public String getRouteKey() {
+        return routeKey;
+    }
+    
+    public void setRouteKey(String routeKey) {
+        this.routeKey = routeKey;
+    }
+    
+    /**
+     * The timestamps of the request's phases, taken while phase timing is enabled.
+     * 
+     * @return the phases, or null if they are not being timed
+     */
+    public RequestPhases getPhases() {
+        return phases;
+    }
+    
+    public void setPhases(RequestPhases phases) {
+        this.phases = phases;
+    }
+    
+    /**
+     * The Flight Recorder event timing this request, begun when it arrived.
+     * 
+     * @return the event, or null if no recording wants it
+     */
+    public ResponseWrittenEvent getResponseEvent() {
+        return responseEvent;
+    }
+    
+    public void setResponseEvent(ResponseWrittenEvent responseEvent) {
+        this.responseEvent = responseEvent;
+    }
+    
+    /**
+     * The thread running the request's handler, for the slow request sampler to take its stack.
+     * 
+     * @return the thread, or null while the handler is queued, once it has returned, or if it
+     *         runs asynchronously
+     */
+    public Thread getHandlerThread() {
+        return handlerThread;
+    }
+    
+    public void setHandlerThread(Thread handlerThread) {
+        this.handlerThread = handlerThread;
+    }
+    
+    /**
+     * Set the executor manager that fan-out subtasks for this request run on.
+     * 
+     * @param executorManager the executor manager handling the request
+     */
+    public void setExecutorManager(ExecutorManager executorManager) {
+        this.executorManager = executorManager;
+    }
+    
+    /**
+     * Open a scope for running subtasks of this request in parallel on virtual threads. The scope
+     * inherits the request's deadline and is shut down when the request ends if the caller has not
+     * closed it.
+     * 
+     * @param policy when the scope stops waiting for its subtasks
+     * @return a new scope, to be closed by the caller
+     * @throws IllegalStateException if the request is not being handled by a router
+     */
+    public FanOut fanOut(FanOut.Policy policy) {
+        if (executorManager == null) {
+            throw new IllegalStateException("Fan-out is only available while the request is being handled");
+        }
+        FanOut fanOut = new FanOut(policy, executorManager, this);
+        boolean alreadyEnded;
+        synchronized (fanOuts) {
+            alreadyEnded = ended;
+            fanOuts.add(fanOut);
+        }
+        if (alreadyEnded) {
+            fanOut.stop();
+        }
+        return fanOut;
+    }
+    
+    /**
+     * Mark the request as finished, interrupting the subtasks of any fan-out scope the handler did
+     * not close and recording how many subtasks it ran. Unlike {@link FanOut#close()} this does not
+     * wait for the subtasks, since the request may end on an I/O or timer thread.
+     */
+    public void end() {
+        List<FanOut> opened;
+        synchronized (fanOuts) {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            opened = new ArrayList<>(fanOuts);
+        }
+        int subtasks = 0;
+        for (FanOut fanOut : opened) {
+            fanOut.stop();
+            subtasks += fanOut.getSubtaskCount();
+        }
+        if (subtasks > 0) {
+            FanOut.recordRequest(executorManager, routeKey, subtasks);
+        }
+    }
 }
@@ -0,0 +1,88 @@
+package com.mochaapi.runtime.executor;
+
+/**
+ * Definition of a named executor that routes can select with {@code @ExecuteOn}.
+ */
+public class ExecutorDefinition {
+    
+    /**
+     * The kind of threads an executor runs its tasks on.
+     */
+    public enum Type {
+        /** A fixed pool of platform threads with a bounded queue. */
+        PLATFORM,
+        /** A new virtual thread per task; size and queue settings do not apply. */
+        VIRTUAL
+    }
+    
+    /**
+     * What happens to a task submitted while a platform pool's queue is full.
+     */
+    public enum RejectionPolicy {
+        /** Fail the new task; the request is answered with a 503. */
+        REJECT,
+        /** Fail the longest waiting task to make room for the new one, favouring fresh requests. */
+        DISCARD_OLDEST
+    }
+    
+    private final String name;
+    private Type type = Type.PLATFORM;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 1024;
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.REJECT;
+    private String threadNamePrefix;
+    
+    public ExecutorDefinition(String name) {
+        this.name = name;
+        this.threadNamePrefix = "mochaapi-" + name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public void setType(Type type) {
+        this.type = type;
+    }
+    
+    public int getThreads() {
+        return threads;
+    }
+    
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+    
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+    
+    /**
+     * Set how many tasks may wait for a thread before the rejection policy applies.
+     * 
+     * @param queueCapacity the maximum number of queued tasks
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+    
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+    
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+        this.rejectionPolicy = rejectionPolicy;
+    }
+    
+    public String getThreadNamePrefix() {
+        return threadNamePrefix;
+    }
+    
+    public void setThreadNamePrefix(String threadNamePrefix) {
+        this.threadNamePrefix = threadNamePrefix;
+    }
+}
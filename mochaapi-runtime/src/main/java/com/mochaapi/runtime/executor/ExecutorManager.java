@@ -1,25 +1,99 @@
 package com.mochaapi.runtime.executor;
 
+import com.mochaapi.runtime.MochaAPIConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Manages different types of executors for MochaAPI.
- * Provides virtual thread executor for I/O operations and CPU-bound executor for compute tasks.
+ * Provides virtual thread executor for I/O operations and CPU-bound executor for compute tasks,
+ * plus the named executors defined in {@link MochaAPIConfig#getExecutors()}.
+ * Cancelling a future returned by the execute methods interrupts the task's thread. Once bound to
+ * a meter registry, every task's queue wait and run time is recorded per lane and route.
  */
 public class ExecutorManager {
     
-    private final Executor virtualThreadExecutor;
-    private final Executor cpuBoundExecutor;
+    /**
+     * Name of the built-in virtual thread executor.
+     */
+    public static final String VIRTUAL = "virtual";
+    
+    /**
+     * Name of the built-in CPU-bound executor.
+     */
+    public static final String CPU = "cpu";
+    
+    /**
+     * Lane of the platform threads that run measured invocations of routes off the CPU-bound lane.
+     */
+    public static final String SAMPLING = "sampling";
+    
+    // Measured invocations are a small fraction of traffic; more at once than this go unmeasured
+    private static final int SAMPLING_THREADS = 4;
+    
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorManager.class);
+    
+    private final ExecutorService virtualThreadExecutor;
+    private final PriorityCpuExecutor cpuBoundExecutor;
+    private final Map<String, ExecutorService> namedExecutors = new LinkedHashMap<>();
+    private final long shutdownTimeoutMillis;
+    private final Timer deadlineTimer;
+    private final ExecutorService samplingExecutor;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final ExecutorMetrics metrics = new ExecutorMetrics();
+    private volatile MeterRegistry meterRegistry;
     
     public ExecutorManager() {
+        this(new MochaAPIConfig());
+    }
+    
+    public ExecutorManager(MochaAPIConfig config) {
         // Virtual thread executor for I/O operations
         this.virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
         
-        // CPU-bound executor using work-stealing pool
-        this.cpuBoundExecutor = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        // CPU-bound executor ordering tasks by @CpuBound priority
+        this.cpuBoundExecutor = new PriorityCpuExecutor(config.getCpuBoundThreads(), config.getCpuPriorityAgingMillis());
+        
+        for (ExecutorDefinition definition : config.getExecutors()) {
+            String name = definition.getName();
+            if (VIRTUAL.equals(name) || CPU.equals(name) || SAMPLING.equals(name) || namedExecutors.containsKey(name)) {
+                throw new IllegalArgumentException("Executor name '" + name + "' is reserved or defined twice");
+            }
+            namedExecutors.put(name, createExecutor(definition));
+        }
+        this.shutdownTimeoutMillis = config.getExecutorShutdownTimeoutMillis();
+        
+        // Deadlines only need tick precision; the wheel keeps per-request timers cheap to add and cancel
+        this.deadlineTimer = new HashedWheelTimer(new DefaultThreadFactory("mochaapi-deadline", true), 10, TimeUnit.MILLISECONDS);
+        
+        // Virtual threads report no CPU time, so measured invocations off the CPU lane borrow a pooled platform thread
+        this.samplingExecutor = new ThreadPoolExecutor(0, SAMPLING_THREADS, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), new DefaultThreadFactory("mochaapi-sampling", true));
+        if (config.isAdaptiveLanesEnabled() && !isCpuTimeMeasurable()) {
+            logger.warn("Thread CPU time is not available on this JVM; routes will stay on their initial lane");
+        }
     }
     
     /**
@@ -29,7 +103,18 @@ public class ExecutorManager {
      * @return a CompletableFuture that completes with the result
      */
     public <T> CompletableFuture<T> executeVirtual(java.util.function.Supplier<T> task) {
-        return CompletableFuture.supplyAsync(task, virtualThreadExecutor);
+        return executeVirtual(task, null);
+    }
+    
+    /**
+     * Execute a task for a route on virtual threads.
+     * 
+     * @param task the task to execute
+     * @param route the route to attribute the task's timings to, or null
+     * @return a CompletableFuture that completes with the result
+     */
+    public <T> CompletableFuture<T> executeVirtual(java.util.function.Supplier<T> task, String route) {
+        return submit(task, virtualThreadExecutor, VIRTUAL, route);
     }
     
     /**
@@ -39,7 +124,127 @@ public class ExecutorManager {
      * @return a CompletableFuture that completes with the result
      */
     public <T> CompletableFuture<T> executeCpuBound(java.util.function.Supplier<T> task) {
-        return CompletableFuture.supplyAsync(task, cpuBoundExecutor);
+        return executeCpuBound(task, 0);
+    }
+    
+    /**
+     * Execute a task on CPU-bound threads ahead of queued tasks with lower priority.
+     * 
+     * @param task the task to execute
+     * @param priority the task's priority; higher values run first
+     * @return a CompletableFuture that completes with the result
+     */
+    public <T> CompletableFuture<T> executeCpuBound(java.util.function.Supplier<T> task, int priority) {
+        return executeCpuBound(task, priority, null);
+    }
+    
+    /**
+     * Execute a task for a route on CPU-bound threads ahead of queued tasks with lower priority.
+     * 
+     * @param task the task to execute
+     * @param priority the task's priority; higher values run first
+     * @param route the route to attribute the task's timings to, or null
+     * @return a CompletableFuture that completes with the result
+     */
+    public <T> CompletableFuture<T> executeCpuBound(java.util.function.Supplier<T> task, int priority, String route) {
+        InterruptibleTask<T> future = new InterruptibleTask<>(task, metrics, CPU, route);
+        cpuBoundExecutor.execute(future, priority);
+        return future;
+    }
+    
+    /**
+     * Execute a task while measuring the CPU and wall time it takes. Virtual threads do not report
+     * CPU time, so a task measured outside the CPU-bound lane runs on one of a few pooled platform
+     * threads, tagged with the {@link #SAMPLING} lane. When they are all busy the task runs on a
+     * virtual thread unmeasured.
+     * 
+     * @param task the task to execute
+     * @param cpuBound whether the task belongs on the CPU-bound lane
+     * @param priority the task's priority on the CPU-bound lane
+     * @param route the route to attribute the task's timings to, or null
+     * @param sample receives the measurement once the task has run; not called if CPU time is unavailable
+     * @return a CompletableFuture that completes with the result
+     */
+    public <T> CompletableFuture<T> executeMeasured(java.util.function.Supplier<T> task, boolean cpuBound, int priority,
+                                                    String route, CpuSample sample) {
+        java.util.function.Supplier<T> measured = () -> {
+            long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+            long wallStart = System.nanoTime();
+            try {
+                return task.get();
+            } finally {
+                long cpuEnd = threadMXBean.getCurrentThreadCpuTime();
+                if (cpuStart >= 0 && cpuEnd >= 0) {
+                    sample.record(cpuEnd - cpuStart, System.nanoTime() - wallStart);
+                }
+            }
+        };
+        if (cpuBound) {
+            return executeCpuBound(measured, priority, route);
+        }
+        InterruptibleTask<T> future = new InterruptibleTask<>(measured, metrics, SAMPLING, route);
+        try {
+            samplingExecutor.execute(future);
+        } catch (RejectedExecutionException e) {
+            return executeVirtual(task, route);
+        }
+        return future;
+    }
+    
+    /**
+     * Check whether {@link #executeMeasured} can report CPU time on this JVM.
+     * 
+     * @return true if thread CPU time measurement is supported and enabled
+     */
+    public boolean isCpuTimeMeasurable() {
+        return threadMXBean.isCurrentThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+    }
+    
+    /**
+     * Execute a task on a named executor.
+     * 
+     * @param executorName the name of a configured executor, {@link #VIRTUAL} or {@link #CPU}
+     * @param task the task to execute
+     * @return a CompletableFuture that completes with the result, or fails with a
+     *         {@link RejectedExecutionException} if the executor is saturated
+     * @throws IllegalArgumentException if no executor has the given name
+     */
+    public <T> CompletableFuture<T> execute(String executorName, java.util.function.Supplier<T> task) {
+        return execute(executorName, task, null);
+    }
+    
+    /**
+     * Execute a task for a route on a named executor.
+     * 
+     * @param executorName the name of a configured executor, {@link #VIRTUAL} or {@link #CPU}
+     * @param task the task to execute
+     * @param route the route to attribute the task's timings to, or null
+     * @return a CompletableFuture that completes with the result, or fails with a
+     *         {@link RejectedExecutionException} if the executor is saturated
+     * @throws IllegalArgumentException if no executor has the given name
+     */
+    public <T> CompletableFuture<T> execute(String executorName, java.util.function.Supplier<T> task, String route) {
+        if (VIRTUAL.equals(executorName)) {
+            return executeVirtual(task, route);
+        }
+        if (CPU.equals(executorName)) {
+            return executeCpuBound(task, 0, route);
+        }
+        Executor executor = namedExecutors.get(executorName);
+        if (executor == null) {
+            throw new IllegalArgumentException("Unknown executor: " + executorName);
+        }
+        return submit(task, executor, executorName, route);
+    }
+    
+    /**
+     * Check whether an executor with the given name exists.
+     * 
+     * @param executorName the executor name
+     * @return true for configured executors and the built-in ones
+     */
+    public boolean hasExecutor(String executorName) {
+        return VIRTUAL.equals(executorName) || CPU.equals(executorName) || namedExecutors.containsKey(executorName);
     }
     
     /**
@@ -49,7 +254,7 @@ public class ExecutorManager {
      * @return a CompletableFuture that completes when the task is done
      */
     public CompletableFuture<Void> executeVirtual(Runnable task) {
-        return CompletableFuture.runAsync(task, virtualThreadExecutor);
+        return executeVirtual(asSupplier(task), null);
     }
     
     /**
@@ -59,15 +264,177 @@ public class ExecutorManager {
      * @return a CompletableFuture that completes when the task is done
      */
     public CompletableFuture<Void> executeCpuBound(Runnable task) {
-        return CompletableFuture.runAsync(task, cpuBoundExecutor);
+        return executeCpuBound(asSupplier(task), 0, null);
+    }
+    
+    /**
+     * Publish executor metrics to the registry: queue wait and run time per lane and route, CPU
+     * queue wait per priority, live virtual threads, and the state of each platform thread pool.
+     * 
+     * @param registry the registry to register the meters with
+     */
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+        metrics.bindTo(registry);
+        cpuBoundExecutor.bindTo(registry);
+        ExecutorMetrics.bindPool(registry, CPU, cpuBoundExecutor.getPool());
+        namedExecutors.forEach((name, executor) -> {
+            if (executor instanceof ThreadPoolExecutor) {
+                ExecutorMetrics.bindPool(registry, name, (ThreadPoolExecutor) executor);
+            }
+        });
     }
     
     /**
-     * Shutdown all executors.
+     * The registry executor metrics are published to.
+     * 
+     * @return the bound registry, or null if {@link #bindTo} has not been called
+     */
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+    
+    /**
+     * Fail a task returned by this manager with a {@link TimeoutException} if it has not completed
+     * within the timeout, interrupting the thread that runs it.
+     * 
+     * @param future the future returned by one of the execute methods
+     * @param timeout the time budget
+     * @param unit the unit of the timeout
+     */
+    public void failAfter(CompletableFuture<?> future, long timeout, TimeUnit unit) {
+        if (future.isDone()) {
+            return;
+        }
+        Timeout deadline = deadlineTimer.newTimeout(t -> {
+            TimeoutException cause = new TimeoutException("Deadline of " + unit.toMillis(timeout) + "ms exceeded");
+            if (future instanceof InterruptibleTask) {
+                ((InterruptibleTask<?>) future).abort(cause);
+            } else {
+                future.completeExceptionally(cause);
+            }
+        }, timeout, unit);
+        future.whenComplete((result, throwable) -> deadline.cancel());
+    }
+    
+    /**
+     * Run an action once no thread is working on a task any more. A task that ignores the
+     * interrupt sent when it times out or is cancelled keeps its thread busy after its future has
+     * completed; the action waits for it to return. For futures not returned by this manager the
+     * action runs on completion.
+     * 
+     * @param future the future returned by one of the execute methods
+     * @param hook the action to run
+     */
+    public static void whenTerminated(CompletableFuture<?> future, Runnable hook) {
+        if (future instanceof InterruptibleTask) {
+            ((InterruptibleTask<?>) future).whenTerminated(hook);
+        } else {
+            future.whenComplete((result, throwable) -> hook.run());
+        }
+    }
+    
+    private <T> CompletableFuture<T> submit(java.util.function.Supplier<T> task, Executor executor, String lane, String route) {
+        InterruptibleTask<T> future = new InterruptibleTask<>(task, metrics, lane, route);
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.abort(e);
+        }
+        return future;
+    }
+    
+    private static ExecutorService createExecutor(ExecutorDefinition definition) {
+        if (definition.getType() == ExecutorDefinition.Type.VIRTUAL) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(definition.getThreadNamePrefix() + "-", 0).factory());
+        }
+        BlockingQueue<Runnable> queue = definition.getQueueCapacity() > 0
+            ? new ArrayBlockingQueue<>(definition.getQueueCapacity())
+            : new SynchronousQueue<>();
+        RejectedExecutionHandler rejectionHandler = definition.getRejectionPolicy() == ExecutorDefinition.RejectionPolicy.DISCARD_OLDEST
+            ? ExecutorManager::discardOldest
+            : (task, pool) -> {
+                throw new RejectedExecutionException("Executor '" + definition.getName() + "' is saturated");
+            };
+        return new ThreadPoolExecutor(definition.getThreads(), definition.getThreads(), 0L, TimeUnit.MILLISECONDS,
+            queue, new DefaultThreadFactory(definition.getThreadNamePrefix(), true), rejectionHandler);
+    }
+    
+    private static void discardOldest(Runnable task, ThreadPoolExecutor pool) {
+        Runnable oldest = pool.isShutdown() ? null : pool.getQueue().poll();
+        if (oldest == null) {
+            throw new RejectedExecutionException("Executor is saturated or shut down");
+        }
+        // The discarded request still gets an answer instead of hanging until its deadline
+        if (oldest instanceof InterruptibleTask) {
+            ((InterruptibleTask<?>) oldest).abort(new RejectedExecutionException("Discarded to make room for newer work"));
+        }
+        pool.execute(task);
+    }
+    
+    private static java.util.function.Supplier<Void> asSupplier(Runnable task) {
+        return () -> {
+            task.run();
+            return null;
+        };
+    }
+    
+    /**
+     * Shutdown all executors. Named executors stop accepting work first, then the CPU-bound and virtual
+     * thread executors; each gets until the configured shutdown timeout to finish running tasks
+     * before the remaining ones are interrupted.
      */
     public void shutdown() {
-        if (cpuBoundExecutor instanceof ForkJoinPool) {
-            ((ForkJoinPool) cpuBoundExecutor).shutdown();
+        namedExecutors.values().forEach(ExecutorService::shutdown);
+        cpuBoundExecutor.shutdown();
+        virtualThreadExecutor.shutdown();
+        samplingExecutor.shutdown();
+        
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+        try {
+            for (Map.Entry<String, ExecutorService> entry : namedExecutors.entrySet()) {
+                awaitTermination(entry.getKey(), entry.getValue(), deadline);
+            }
+            if (!cpuBoundExecutor.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                logger.warn("Executor '{}' did not finish in time, interrupting remaining tasks", CPU);
+                cpuBoundExecutor.shutdownNow();
+            }
+            awaitTermination(VIRTUAL, virtualThreadExecutor, deadline);
+            awaitTermination(SAMPLING, samplingExecutor, deadline);
+        } catch (InterruptedException e) {
+            namedExecutors.values().forEach(ExecutorService::shutdownNow);
+            cpuBoundExecutor.shutdownNow();
+            virtualThreadExecutor.shutdownNow();
+            samplingExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            deadlineTimer.stop();
+        }
+    }
+    
+    private static void awaitTermination(String name, ExecutorService executor, long deadline) throws InterruptedException {
+        if (!executor.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS)) {
+            logger.warn("Executor '{}' did not finish in time, interrupting remaining tasks", name);
+            executor.shutdownNow();
         }
     }
+    
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+    
+    /**
+     * Receives the measurements taken by {@link #executeMeasured}.
+     */
+    @FunctionalInterface
+    public interface CpuSample {
+        
+        /**
+         * Record one measured task.
+         * 
+         * @param cpuNanos CPU time the task's thread consumed
+         * @param wallNanos wall time the task took
+         */
+        void record(long cpuNanos, long wallNanos);
+    }
 }
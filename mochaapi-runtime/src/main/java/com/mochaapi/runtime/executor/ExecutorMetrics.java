@@ -0,0 +1,125 @@
+package com.mochaapi.runtime.executor;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Timings for tasks submitted through the executor manager, tagged by the lane that ran them and
+ * the route they belong to, plus the number of tasks currently running on virtual threads.
+ */
+class ExecutorMetrics {
+    
+    static final String NO_ROUTE = "none";
+    
+    private final ConcurrentHashMap<String, Timer[]> timers = new ConcurrentHashMap<>();
+    private final AtomicInteger liveVirtualThreads = new AtomicInteger();
+    private volatile MeterRegistry meterRegistry;
+    
+    void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+        Gauge.builder("mochaapi_virtual_threads_live", liveVirtualThreads, AtomicInteger::get)
+            .description("Tasks currently running on virtual threads started by the executor manager")
+            .register(registry);
+        // The default scheduler's pool is not reachable on this JDK, but its size is fixed at startup
+        int parallelism = Integer.getInteger("jdk.virtualThreadScheduler.parallelism", Runtime.getRuntime().availableProcessors());
+        Gauge.builder("mochaapi_virtual_scheduler_parallelism", () -> parallelism)
+            .description("Carrier threads available to the virtual thread scheduler")
+            .register(registry);
+    }
+    
+    /**
+     * Publish the size, activity and backlog of a platform thread pool.
+     * 
+     * @param registry the registry to register the gauges with
+     * @param executor the executor name used as the {@code executor} tag
+     * @param pool the pool to observe
+     */
+    static void bindPool(MeterRegistry registry, String executor, ThreadPoolExecutor pool) {
+        Gauge.builder("mochaapi_executor_pool_size", pool, ThreadPoolExecutor::getPoolSize)
+            .description("Threads in the executor's pool")
+            .tag("executor", executor)
+            .register(registry);
+        Gauge.builder("mochaapi_executor_active_threads", pool, ThreadPoolExecutor::getActiveCount)
+            .description("Threads in the executor's pool that are running a task")
+            .tag("executor", executor)
+            .register(registry);
+        Gauge.builder("mochaapi_executor_queued_tasks", pool, p -> p.getQueue().size())
+            .description("Tasks waiting for a thread in the executor's pool")
+            .tag("executor", executor)
+            .register(registry);
+        FunctionCounter.builder("mochaapi_executor_completed_tasks_total", pool, ThreadPoolExecutor::getCompletedTaskCount)
+            .description("Tasks the executor's pool has finished")
+            .tag("executor", executor)
+            .register(registry);
+    }
+    
+    /**
+     * Called by a task when a thread picks it up.
+     * 
+     * @param lane the executor running the task
+     * @param route the route the task belongs to, or null
+     * @param submittedNanos when the task was submitted
+     * @return the start time to pass to {@link #finished}
+     */
+    long started(String lane, String route, long submittedNanos) {
+        long now = System.nanoTime();
+        if (Thread.currentThread().isVirtual()) {
+            liveVirtualThreads.incrementAndGet();
+        }
+        Timer[] laneTimers = timersFor(lane, route);
+        if (laneTimers != null) {
+            laneTimers[0].record(now - submittedNanos, TimeUnit.NANOSECONDS);
+        }
+        return now;
+    }
+    
+    /**
+     * Called by a task when it has run.
+     * 
+     * @param lane the executor running the task
+     * @param route the route the task belongs to, or null
+     * @param startNanos the value returned by {@link #started}
+     */
+    void finished(String lane, String route, long startNanos) {
+        if (Thread.currentThread().isVirtual()) {
+            liveVirtualThreads.decrementAndGet();
+        }
+        Timer[] laneTimers = timersFor(lane, route);
+        if (laneTimers != null) {
+            laneTimers[1].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    int getLiveVirtualThreads() {
+        return liveVirtualThreads.get();
+    }
+    
+    private Timer[] timersFor(String lane, String route) {
+        MeterRegistry registry = meterRegistry;
+        if (registry == null) {
+            return null;
+        }
+        String tagRoute = route != null ? route : NO_ROUTE;
+        return timers.computeIfAbsent(lane + ' ' + tagRoute, key -> new Timer[] {
+            Timer.builder("mochaapi_executor_queue_wait")
+                .description("Time tasks wait between submission and a thread picking them up")
+                .tag("lane", lane)
+                .tag("route", tagRoute)
+                .publishPercentileHistogram()
+                .register(registry),
+            Timer.builder("mochaapi_executor_run")
+                .description("Time tasks spend running once picked up")
+                .tag("lane", lane)
+                .tag("route", tagRoute)
+                .publishPercentileHistogram()
+                .register(registry)
+        });
+    }
+}
@@ -0,0 +1,161 @@
+package com.mochaapi.runtime.executor;
+
+import com.mochaapi.runtime.jfr.HandlerInvokedEvent;
+import com.mochaapi.runtime.jfr.RequestEvents;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * A future that runs its task and, unlike {@link CompletableFuture#supplyAsync}, interrupts the
+ * running thread when it is cancelled or aborted before the task finishes. Tasks created with
+ * metrics report how long they waited and ran.
+ * 
+ * <p>Since a task may ignore the interrupt, the future can complete while its thread is still
+ * busy. A termination hook runs only once no thread is running the task any more: when it
+ * returns, or when it is stopped before it started.
+ */
+class InterruptibleTask<T> extends CompletableFuture<T> implements Runnable {
+    
+    private final Supplier<T> task;
+    private final ExecutorMetrics metrics;
+    private final String lane;
+    private final String route;
+    private final long submittedNanos;
+    private Thread runner;
+    private boolean terminated;
+    private Runnable terminationHook;
+    
+    InterruptibleTask(Supplier<T> task) {
+        this(task, null, null, null);
+    }
+    
+    InterruptibleTask(Supplier<T> task, ExecutorMetrics metrics, String lane, String route) {
+        this.task = task;
+        this.metrics = metrics;
+        this.lane = lane;
+        this.route = route;
+        this.submittedNanos = metrics != null ? System.nanoTime() : 0;
+    }
+    
+    @Override
+    public void run() {
+        synchronized (this) {
+            // Checked under the lock so that a task stopped before it started never runs
+            if (isDone() || terminated) {
+                terminate();
+                return;
+            }
+            runner = Thread.currentThread();
+        }
+        long startNanos = metrics != null ? metrics.started(lane, route, submittedNanos) : 0;
+        HandlerInvokedEvent event = null;
+        if (RequestEvents.isEnabled()) {
+            event = new HandlerInvokedEvent();
+            event.begin();
+        }
+        T result = null;
+        Throwable failure = null;
+        try {
+            result = task.get();
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            if (event != null) {
+                event.end();
+                if (route != null && event.shouldCommit()) {
+                    event.route = RequestEvents.template(route);
+                    event.lane = lane;
+                    event.queueWait = metrics != null ? startNanos - submittedNanos : 0;
+                    event.commit();
+                }
+            }
+            if (metrics != null) {
+                metrics.finished(lane, route, startNanos);
+            }
+            synchronized (this) {
+                runner = null;
+            }
+            // Pooled threads must not carry an interrupt meant for this task into the next one
+            Thread.interrupted();
+            terminate();
+        }
+        // Completed only once the task's bookkeeping is done, so callers see its timings
+        if (failure != null) {
+            completeExceptionally(failure);
+        } else {
+            complete(result);
+        }
+    }
+    
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            stop(mayInterruptIfRunning);
+        }
+        return cancelled;
+    }
+    
+    /**
+     * Complete the future with the given failure and interrupt the task if it is still running.
+     * 
+     * @param cause the failure to complete with
+     * @return true if this call completed the future
+     */
+    boolean abort(Throwable cause) {
+        boolean aborted = completeExceptionally(cause);
+        if (aborted) {
+            stop(true);
+        }
+        return aborted;
+    }
+    
+    /**
+     * Run an action once no thread is running the task any more. Runs it right away if that is
+     * already the case.
+     * 
+     * @param hook the action to run
+     */
+    void whenTerminated(Runnable hook) {
+        synchronized (this) {
+            if (!terminated) {
+                Runnable previous = terminationHook;
+                terminationHook = previous == null ? hook : () -> {
+                    previous.run();
+                    hook.run();
+                };
+                return;
+            }
+        }
+        hook.run();
+    }
+    
+    private void stop(boolean interrupt) {
+        synchronized (this) {
+            if (runner != null) {
+                if (interrupt) {
+                    runner.interrupt();
+                }
+                return;
+            }
+        }
+        // Not started, so it never will be
+        terminate();
+    }
+    
+    private void terminate() {
+        Runnable hook;
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            hook = terminationHook;
+            terminationHook = null;
+        }
+        if (hook != null) {
+            hook.run();
+        }
+    }
+}
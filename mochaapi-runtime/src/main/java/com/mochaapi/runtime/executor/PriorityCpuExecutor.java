@@ -0,0 +1,127 @@
+package com.mochaapi.runtime.executor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed pool of platform threads that runs CPU-bound tasks by priority rather than arrival order.
+ * A task of priority {@code p} is ordered as if it had been queued {@code p} aging quanta earlier,
+ * so higher priorities overtake lower ones, while a low-priority task that has waited long enough
+ * still runs before newly arriving high-priority work.
+ */
+class PriorityCpuExecutor implements Executor {
+    
+    private final ThreadPoolExecutor pool;
+    private final long agingNanos;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentHashMap<Integer, Timer> queueWaitTimers = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+    
+    PriorityCpuExecutor(int threads, long agingMillis) {
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+        this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(), new DefaultThreadFactory("mochaapi-cpu", true));
+        this.pool.prestartAllCoreThreads();
+    }
+    
+    @Override
+    public void execute(Runnable task) {
+        execute(task, 0);
+    }
+    
+    /**
+     * Queue a task with the given priority. Higher values run first.
+     * 
+     * @param task the task to run
+     * @param priority the task's priority
+     */
+    void execute(Runnable task, int priority) {
+        pool.execute(new PrioritizedTask(task, priority, System.nanoTime(), sequence.getAndIncrement()));
+    }
+    
+    /**
+     * Record queue wait times per priority in the registry.
+     * 
+     * @param registry the registry to register the timers with
+     */
+    void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+    }
+    
+    ThreadPoolExecutor getPool() {
+        return pool;
+    }
+    
+    int getQueueSize() {
+        return pool.getQueue().size();
+    }
+    
+    int getActiveCount() {
+        return pool.getActiveCount();
+    }
+    
+    void shutdown() {
+        pool.shutdown();
+    }
+    
+    void shutdownNow() {
+        pool.shutdownNow();
+    }
+    
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+    
+    private void recordQueueWait(int priority, long waitNanos) {
+        MeterRegistry registry = meterRegistry;
+        if (registry == null) {
+            return;
+        }
+        queueWaitTimers.computeIfAbsent(priority, p -> Timer.builder("mochaapi_cpu_queue_wait")
+            .description("Time CPU-bound tasks spend queued before a thread picks them up")
+            .tag("priority", Integer.toString(p))
+            .register(registry))
+            .record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    private final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        
+        private final Runnable task;
+        private final int priority;
+        private final long enqueuedNanos;
+        private final long rank;
+        private final long sequence;
+        
+        PrioritizedTask(Runnable task, int priority, long enqueuedNanos, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.enqueuedNanos = enqueuedNanos;
+            this.rank = enqueuedNanos - priority * agingNanos;
+            this.sequence = sequence;
+        }
+        
+        @Override
+        public void run() {
+            recordQueueWait(priority, System.nanoTime() - enqueuedNanos);
+            task.run();
+        }
+        
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            // Ranks derive from nanoTime, so compare the difference rather than the raw values
+            long difference = rank - other.rank;
+            if (difference != 0) {
+                return difference < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.mochaapi.runtime.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * A route's handler running on an executor lane, lasting from a thread picking it up to the
+ * handler returning. Recorded on the handler's thread, so thread-level events such as monitor
+ * waits and socket reads line up under it.
+ */
+@Name("com.mochaapi.HandlerInvoked")
+@Label("Handler Invoked")
+@Category({"MochaAPI", "Executor"})
+@Description("A route handler running on an executor lane")
+@StackTrace(false)
+@Threshold("20 ms")
+public final class HandlerInvokedEvent extends jdk.jfr.Event {
+    
+    @Label("Route")
+    public String route;
+    
+    @Label("Lane")
+    @Description("The executor that ran the handler: virtual, cpu or a named executor")
+    public String lane;
+    
+    @Label("Queue Wait")
+    @Description("Time between the handler's submission and a thread picking it up")
+    @Timespan
+    public long queueWait;
+}
@@ -0,0 +1,90 @@
+package com.mochaapi.runtime.jfr;
+
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tells the request path whether a recording wants its events.
+ * 
+ * <p>The request path creates an event only while one of these flags is set, so no event is
+ * allocated for a request while nothing records them, and none is touched at all on a runtime
+ * without Flight Recorder, where the event classes cannot be loaded. The flags stay clear until
+ * {@link #install} has run, and are updated whenever a recording starts or stops.
+ */
+public final class RequestEvents {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RequestEvents.class);
+    
+    private static volatile boolean responseEventEnabled;
+    private static volatile boolean requestEventsEnabled;
+    private static boolean installed;
+    
+    private RequestEvents() {
+    }
+    
+    /**
+     * Start following recordings. Does nothing on runtimes without Flight Recorder.
+     */
+    public static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        installed = true;
+        try {
+            FlightRecorder.addListener(new FlightRecorderListener() {
+                @Override
+                public void recordingStateChanged(Recording recording) {
+                    update();
+                }
+            });
+            // A recording started on the command line is already running
+            if (FlightRecorder.isInitialized()) {
+                update();
+            }
+        } catch (RuntimeException | LinkageError e) {
+            // JFR is missing from some runtimes, e.g. native images built without it
+            logger.warn("Flight Recorder events unavailable", e);
+        }
+    }
+    
+    /**
+     * @return true if a running recording enables {@link RequestReceivedEvent}, {@link RouteMatchedEvent},
+     *         {@link HandlerInvokedEvent} or {@link SerializationEvent}
+     */
+    public static boolean isEnabled() {
+        return requestEventsEnabled;
+    }
+    
+    /**
+     * @return true if a running recording enables {@link ResponseWrittenEvent}
+     */
+    public static boolean isResponseEventEnabled() {
+        return responseEventEnabled;
+    }
+    
+    /**
+     * Strip the method from a route key, e.g. {@code GET /users/{id}} to {@code /users/{id}}.
+     * 
+     * @param routeKey the route key, or null
+     * @return the path template, or null
+     */
+    public static String template(String routeKey) {
+        return routeKey != null ? routeKey.substring(routeKey.indexOf(' ') + 1) : null;
+    }
+    
+    private static void update() {
+        responseEventEnabled = isEnabled(ResponseWrittenEvent.class);
+        requestEventsEnabled = isEnabled(RequestReceivedEvent.class) | isEnabled(RouteMatchedEvent.class)
+            | isEnabled(HandlerInvokedEvent.class) | isEnabled(SerializationEvent.class);
+    }
+    
+    private static boolean isEnabled(Class<? extends Event> eventClass) {
+        FlightRecorder.register(eventClass);
+        return EventType.getEventType(eventClass).isEnabled();
+    }
+}
@@ -0,0 +1,32 @@
+package com.mochaapi.runtime.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A request read off the connection, lasting from the aggregated request reaching the server's
+ * handler to its request context being ready for routing.
+ */
+@Name("com.mochaapi.RequestReceived")
+@Label("Request Received")
+@Category({"MochaAPI", "HTTP"})
+@Description("A request read into a request context")
+@StackTrace(false)
+@Threshold("20 ms")
+public final class RequestReceivedEvent extends jdk.jfr.Event {
+    
+    @Label("Method")
+    public String method;
+    
+    @Label("Path")
+    public String path;
+    
+    @Label("Request Size")
+    @DataAmount
+    public long requestBytes;
+}
@@ -0,0 +1,47 @@
+package com.mochaapi.runtime.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A request from its arrival at the server's handler to its response being written, so the
+ * event's duration is the request's latency as the server sees it. Its threshold therefore picks
+ * out slow requests.
+ */
+@Name("com.mochaapi.ResponseWritten")
+@Label("Response Written")
+@Category({"MochaAPI", "HTTP"})
+@Description("A request, from its arrival to its response being written")
+@StackTrace(false)
+@Threshold("20 ms")
+public final class ResponseWrittenEvent extends jdk.jfr.Event {
+    
+    @Label("Method")
+    public String method;
+    
+    @Label("Route")
+    @Description("The matched route's path template, or null if no route matched")
+    public String route;
+    
+    @Label("Path")
+    public String path;
+    
+    @Label("Status")
+    public int status;
+    
+    @Label("Request Size")
+    @DataAmount
+    public long requestBytes;
+    
+    @Label("Response Size")
+    @DataAmount
+    public long responseBytes;
+    
+    @Label("Trace ID")
+    public String traceId;
+}
@@ -0,0 +1,30 @@
+package com.mochaapi.runtime.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The lookup of the route matching a request's method and path.
+ */
+@Name("com.mochaapi.RouteMatched")
+@Label("Route Matched")
+@Category({"MochaAPI", "HTTP"})
+@Description("The lookup of the route for a request")
+@StackTrace(false)
+@Threshold("20 ms")
+public final class RouteMatchedEvent extends jdk.jfr.Event {
+    
+    @Label("Method")
+    public String method;
+    
+    @Label("Path")
+    public String path;
+    
+    @Label("Route")
+    @Description("The matched route's path template, or null if no route matched")
+    public String route;
+}
@@ -0,0 +1,31 @@
+package com.mochaapi.runtime.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The encoding of a handler's result into a response body.
+ */
+@Name("com.mochaapi.Serialization")
+@Label("Serialization")
+@Category({"MochaAPI", "HTTP"})
+@Description("A handler result encoded into a response body")
+@StackTrace(false)
+@Threshold("20 ms")
+public final class SerializationEvent extends jdk.jfr.Event {
+    
+    @Label("Route")
+    public String route;
+    
+    @Label("Media Type")
+    public String mediaType;
+    
+    @Label("Body Size")
+    @DataAmount
+    public long bytes;
+}
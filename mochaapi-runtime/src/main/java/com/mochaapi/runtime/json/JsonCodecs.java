@@ -0,0 +1,67 @@
+package com.mochaapi.runtime.json;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the JSON encoders and decoders generated for an application's DTOs. Lookups match
+ * the exact class, so a subclass of a registered DTO, which may add properties, falls back to
+ * Jackson like any other unregistered type.
+ */
+public final class JsonCodecs {
+    
+    private static final ConcurrentHashMap<Class<?>, JsonEncoder<?>> ENCODERS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, JsonDecoder<?>> DECODERS = new ConcurrentHashMap<>();
+    
+    private JsonCodecs() {
+    }
+    
+    /**
+     * Register the encoder for a type, replacing any previous one.
+     * 
+     * @param type the type written by the encoder
+     * @param encoder the encoder
+     */
+    public static <T> void registerEncoder(Class<T> type, JsonEncoder<? super T> encoder) {
+        ENCODERS.put(type, encoder);
+    }
+    
+    /**
+     * Register the decoder for a type, replacing any previous one.
+     * 
+     * @param type the type read by the decoder
+     * @param decoder the decoder
+     */
+    public static <T> void registerDecoder(Class<T> type, JsonDecoder<? extends T> decoder) {
+        DECODERS.put(type, decoder);
+    }
+    
+    /**
+     * The encoder registered for a class.
+     * 
+     * @param type the value's runtime class
+     * @return the encoder, or null if the class has none
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JsonEncoder<T> encoderFor(Class<T> type) {
+        return (JsonEncoder<T>) ENCODERS.get(type);
+    }
+    
+    /**
+     * The decoder registered for a class.
+     * 
+     * @param type the type to read
+     * @return the decoder, or null if the class has none
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JsonDecoder<T> decoderFor(Class<T> type) {
+        return (JsonDecoder<T>) DECODERS.get(type);
+    }
+    
+    /**
+     * Remove every registered encoder and decoder.
+     */
+    public static void clear() {
+        ENCODERS.clear();
+        DECODERS.clear();
+    }
+}
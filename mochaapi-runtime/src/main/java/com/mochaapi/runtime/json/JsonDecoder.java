@@ -0,0 +1,22 @@
+package com.mochaapi.runtime.json;
+
+import java.io.IOException;
+
+/**
+ * Reads values of one type from JSON. Implementations are generated at compile time for the DTOs
+ * that routes accept as request bodies.
+ * 
+ * @param <T> the type this decoder reads
+ */
+@FunctionalInterface
+public interface JsonDecoder<T> {
+    
+    /**
+     * Read the next value.
+     * 
+     * @param in the reader positioned before the value
+     * @return the value read, or null if the JSON value is null
+     * @throws IOException if the input is not valid JSON or does not match the type
+     */
+    T decode(JsonReader in) throws IOException;
+}
@@ -0,0 +1,19 @@
+package com.mochaapi.runtime.json;
+
+/**
+ * Writes values of one type as JSON. Implementations are generated at compile time for the DTOs
+ * that routes accept and return.
+ * 
+ * @param <T> the type this encoder writes
+ */
+@FunctionalInterface
+public interface JsonEncoder<T> {
+    
+    /**
+     * Write a value.
+     * 
+     * @param value the value to write, never null
+     * @param out the writer to append to
+     */
+    void encode(T value, JsonWriter out);
+}
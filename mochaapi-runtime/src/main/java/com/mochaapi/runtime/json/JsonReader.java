@@ -0,0 +1,289 @@
+package com.mochaapi.runtime.json;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.mochaapi.runtime.codec.ObjectMappers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Reads JSON for generated decoders, one token at a time on top of Jackson's streaming parser.
+ * Every read method consumes the next value; values of types without a generated decoder are
+ * bound by Jackson. Scalars are coerced the way a default {@code ObjectMapper} coerces them, so
+ * {@code "42"} reads as an int and {@code null} as zero for primitives.
+ */
+public final class JsonReader implements Closeable {
+    
+    private final JsonParser parser;
+    private boolean pushedBack;
+    
+    private JsonReader(JsonParser parser) {
+        this.parser = parser;
+    }
+    
+    /**
+     * Create a reader over a JSON document.
+     * 
+     * @param json the document
+     * @return a reader positioned before the document's root value
+     * @throws IOException if the parser cannot be created
+     */
+    public static JsonReader of(String json) throws IOException {
+        return new JsonReader(ObjectMappers.json().getFactory().createParser(json));
+    }
+    
+    /**
+     * Create a reader over a UTF-8 encoded JSON document.
+     * 
+     * @param json the document
+     * @return a reader positioned before the document's root value
+     * @throws IOException if the parser cannot be created
+     */
+    public static JsonReader of(byte[] json) throws IOException {
+        return new JsonReader(ObjectMappers.json().getFactory().createParser(json));
+    }
+    
+    /**
+     * Read an object's opening brace.
+     * 
+     * @return true if an object follows, false if the value is null
+     * @throws IOException if the value is neither an object nor null
+     */
+    public boolean beginObject() throws IOException {
+        JsonToken token = next();
+        if (token == JsonToken.VALUE_NULL) {
+            return false;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw mismatch("an object");
+        }
+        return true;
+    }
+    
+    /**
+     * Read the name of the next property in the current object.
+     * 
+     * @return the property name, or null once the object's closing brace has been read
+     * @throws IOException if the input is not valid JSON
+     */
+    public String nextField() throws IOException {
+        String name = parser.nextFieldName();
+        if (name == null && parser.currentToken() != JsonToken.END_OBJECT) {
+            throw mismatch("a property name");
+        }
+        return name;
+    }
+    
+    /**
+     * Skip the next value, including any nested objects and arrays.
+     * 
+     * @throws IOException if the input is not valid JSON
+     */
+    public void skipValue() throws IOException {
+        next();
+        parser.skipChildren();
+    }
+    
+    /**
+     * Build the error for a property the decoded type does not have.
+     * 
+     * @param name the property name
+     * @param type the type being decoded
+     * @return the exception to throw
+     */
+    public IOException unknownField(String name, Class<?> type) {
+        return new JsonParseException(parser, "Unrecognized field \"" + name + "\" for " + type.getName());
+    }
+    
+    public String readString() throws IOException {
+        JsonToken token = next();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw mismatch("a string");
+        }
+        return parser.getText();
+    }
+    
+    public int readInt() throws IOException {
+        return next() == JsonToken.VALUE_NULL ? 0 : intValue();
+    }
+    
+    public long readLong() throws IOException {
+        return next() == JsonToken.VALUE_NULL ? 0L : longValue();
+    }
+    
+    public double readDouble() throws IOException {
+        return next() == JsonToken.VALUE_NULL ? 0.0 : doubleValue();
+    }
+    
+    public boolean readBoolean() throws IOException {
+        return next() != JsonToken.VALUE_NULL && booleanValue();
+    }
+    
+    public char readChar() throws IOException {
+        String value = readString();
+        if (value == null || value.isEmpty()) {
+            return '\0';
+        }
+        if (value.length() != 1) {
+            throw mismatch("a single character");
+        }
+        return value.charAt(0);
+    }
+    
+    /**
+     * Read a value of any type: boxed scalars and strings directly, DTOs with their generated
+     * decoder, and everything else through Jackson.
+     * 
+     * @param type the type to read
+     * @return the value, or null if the JSON value is null
+     * @throws IOException if the input does not match the type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T readValue(Class<T> type) throws IOException {
+        JsonDecoder<T> decoder = JsonCodecs.decoderFor(type);
+        if (decoder != null) {
+            return decoder.decode(this);
+        }
+        if (type == String.class) {
+            return (T) readString();
+        }
+        if (next() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        Object value;
+        if (type == Integer.class) {
+            value = intValue();
+        } else if (type == Long.class) {
+            value = longValue();
+        } else if (type == Double.class) {
+            value = doubleValue();
+        } else if (type == Float.class) {
+            value = (float) doubleValue();
+        } else if (type == Boolean.class) {
+            value = booleanValue();
+        } else if (type == Short.class) {
+            value = (short) intValue();
+        } else if (type == Byte.class) {
+            value = (byte) intValue();
+        } else {
+            return ObjectMappers.json().readValue(parser, type);
+        }
+        return (T) value;
+    }
+    
+    /**
+     * Read an array whose elements are all of one type.
+     * 
+     * @param elementType the type of the elements, read as by {@link #readValue}
+     * @return the elements, or null if the JSON value is null
+     * @throws IOException if the value is not an array or an element does not match the type
+     */
+    public <T> List<T> readList(Class<T> elementType) throws IOException {
+        JsonToken token = next();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.START_ARRAY) {
+            throw mismatch("an array");
+        }
+        List<T> elements = new ArrayList<>();
+        // Each element is read by readValue, which consumes its own first token
+        while (hasNextElement()) {
+            elements.add(readValue(elementType));
+        }
+        return elements;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+    
+    private boolean hasNextElement() throws IOException {
+        // The parser cannot look ahead, so an element's first token is pushed back by hand
+        JsonToken token = next();
+        if (token == JsonToken.END_ARRAY) {
+            return false;
+        }
+        pushedBack = true;
+        return true;
+    }
+    
+    private JsonToken next() throws IOException {
+        if (pushedBack) {
+            pushedBack = false;
+            return parser.currentToken();
+        }
+        return parser.nextToken();
+    }
+    
+    private int intValue() throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return parser.getValueAsInt();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            String text = parser.getText().trim();
+            return text.isEmpty() ? 0 : parseNumber(() -> Integer.parseInt(text));
+        }
+        throw mismatch("a number");
+    }
+    
+    private long longValue() throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return parser.getValueAsLong();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            String text = parser.getText().trim();
+            return text.isEmpty() ? 0L : parseNumber(() -> Long.parseLong(text));
+        }
+        throw mismatch("a number");
+    }
+    
+    private double doubleValue() throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return parser.getDoubleValue();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            String text = parser.getText().trim();
+            return text.isEmpty() ? 0.0 : parseNumber(() -> Double.parseDouble(text));
+        }
+        throw mismatch("a number");
+    }
+    
+    private boolean booleanValue() throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE) {
+            return token == JsonToken.VALUE_TRUE;
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            String text = parser.getText().trim();
+            if (text.equals("true") || text.equals("false")) {
+                return text.equals("true");
+            }
+        }
+        throw mismatch("a boolean");
+    }
+    
+    private <N> N parseNumber(Supplier<N> parse) throws IOException {
+        try {
+            return parse.get();
+        } catch (NumberFormatException e) {
+            throw mismatch("a number");
+        }
+    }
+    
+    private IOException mismatch(String expected) {
+        return new JsonParseException(parser, "Expected " + expected + " but found " + parser.currentToken());
+    }
+}
@@ -0,0 +1,259 @@
+package com.mochaapi.runtime.json;
+
+import com.mochaapi.runtime.codec.ObjectMappers;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Writes JSON as UTF-8 straight into a buffer. Generated encoders append pre-encoded field names
+ * with {@link #writeRaw} and the values through the typed methods; anything without a generated
+ * encoder goes through {@link #writeValue}, which falls back to the shared
+ * {@link ObjectMappers#json() mapper}. The output matches what
+ * a default {@code ObjectMapper} writes for the same value.
+ */
+public final class JsonWriter {
+    
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    
+    // 0 for characters written as-is, 'u' for a \\u escape, otherwise the character after the backslash
+    private static final byte[] ESCAPES = new byte[128];
+    
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = 'u';
+        }
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\r'] = 'r';
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+    }
+    
+    private final ByteBuf out;
+    
+    /**
+     * Create a writer appending to a buffer.
+     * 
+     * @param out the buffer to write into; it grows as needed
+     */
+    public JsonWriter(ByteBuf out) {
+        this.out = out;
+    }
+    
+    /**
+     * Pre-encode the bytes that open a property: <code>{"name":</code> for the first property of
+     * an object and <code>,"name":</code> for the others.
+     * 
+     * @param name the property name
+     * @param first whether the property is the first one written
+     * @return the encoded bytes
+     */
+    public static byte[] fieldName(String name, boolean first) {
+        StringBuilder prefix = new StringBuilder(name.length() + 4).append(first ? '{' : ',').append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < ESCAPES.length && ESCAPES[c] != 0) {
+                prefix.append(ESCAPES[c] == 'u' ? String.format("\\u%04X", (int) c) : "\\" + (char) ESCAPES[c]);
+            } else {
+                prefix.append(c);
+            }
+        }
+        return prefix.append("\":").toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Encode a value into a byte array, for callers that do not work with Netty buffers.
+     * 
+     * @param value the value, or null
+     * @return the UTF-8 encoded JSON
+     */
+    public static byte[] toBytes(Object value) {
+        ByteBuf buffer = Unpooled.buffer();
+        try {
+            new JsonWriter(buffer).writeValue(value);
+            return ByteBufUtil.getBytes(buffer);
+        } finally {
+            buffer.release();
+        }
+    }
+    
+    /**
+     * The buffer being written.
+     * 
+     * @return the buffer
+     */
+    public ByteBuf buffer() {
+        return out;
+    }
+    
+    /**
+     * Append bytes that are already valid JSON, such as a pre-encoded field name.
+     * 
+     * @param bytes the bytes to append
+     */
+    public void writeRaw(byte[] bytes) {
+        out.writeBytes(bytes);
+    }
+    
+    /**
+     * Close the current object.
+     */
+    public void writeObjectEnd() {
+        out.writeByte('}');
+    }
+    
+    public void writeNull() {
+        out.writeBytes(NULL);
+    }
+    
+    public void writeBoolean(boolean value) {
+        out.writeBytes(value ? TRUE : FALSE);
+    }
+    
+    public void writeInt(int value) {
+        writeLong(value);
+    }
+    
+    public void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            ByteBufUtil.writeAscii(out, Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            out.writeByte('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        out.ensureWritable(digits);
+        int end = out.writerIndex() + digits;
+        for (int index = end - 1; index >= out.writerIndex(); index--) {
+            out.setByte(index, (int) ('0' + value % 10));
+            value /= 10;
+        }
+        out.writerIndex(end);
+    }
+    
+    public void writeDouble(double value) {
+        if (Double.isFinite(value)) {
+            ByteBufUtil.writeAscii(out, Double.toString(value));
+        } else {
+            // Jackson quotes NaN and the infinities by default
+            out.writeByte('"');
+            ByteBufUtil.writeAscii(out, Double.toString(value));
+            out.writeByte('"');
+        }
+    }
+    
+    public void writeFloat(float value) {
+        if (Float.isFinite(value)) {
+            ByteBufUtil.writeAscii(out, Float.toString(value));
+        } else {
+            out.writeByte('"');
+            ByteBufUtil.writeAscii(out, Float.toString(value));
+            out.writeByte('"');
+        }
+    }
+    
+    /**
+     * Write a string, escaping it as needed.
+     * 
+     * @param value the string, or null
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeByte('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= ESCAPES.length || ESCAPES[c] == 0) {
+                continue;
+            }
+            if (i > start) {
+                ByteBufUtil.writeUtf8(out, value, start, i);
+            }
+            out.writeByte('\\');
+            byte escape = ESCAPES[c];
+            if (escape == 'u') {
+                out.writeByte('u').writeByte('0').writeByte('0').writeByte(HEX[c >> 4]).writeByte(HEX[c & 0xF]);
+            } else {
+                out.writeByte(escape);
+            }
+            start = i + 1;
+        }
+        if (start < length) {
+            ByteBufUtil.writeUtf8(out, value, start, length);
+        }
+        out.writeByte('"');
+    }
+    
+    /**
+     * Write any value: with its generated encoder if it has one, element by element for
+     * collections, and through Jackson otherwise.
+     * 
+     * @param value the value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public void writeValue(Object value) {
+        if (value == null) {
+            writeNull();
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            writeLong((Long) value);
+        } else if (value instanceof Double) {
+            writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            writeBoolean((Boolean) value);
+        } else {
+            JsonEncoder<Object> encoder = (JsonEncoder<Object>) JsonCodecs.encoderFor(value.getClass());
+            if (encoder != null) {
+                encoder.encode(value, this);
+            } else if (value instanceof Collection) {
+                out.writeByte('[');
+                boolean first = true;
+                for (Object element : (Collection<?>) value) {
+                    if (!first) {
+                        out.writeByte(',');
+                    }
+                    first = false;
+                    writeValue(element);
+                }
+                out.writeByte(']');
+            } else {
+                writeFallback(value);
+            }
+        }
+    }
+    
+    private void writeFallback(Object value) {
+        try {
+            ObjectMappers.json().writeValue((OutputStream) new ByteBufOutputStream(out), value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.mochaapi.runtime.monitor;
+
+import com.mochaapi.runtime.monitor.RequestPhases.Phase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-route histograms of the time requests spend in each {@link Phase}, published as
+ * {@code mochaapi_http_server_phase{route,method,phase}}. Recording is a lookup in a concurrent
+ * map and an update of the timer's atomic bucket counters, so request threads never contend on
+ * a lock to record.
+ */
+public final class PhaseTimings {
+    
+    private static final Phase[] PHASES = Phase.values();
+    // Phases run from microseconds to seconds, well below the request-level SLO buckets
+    private static final Duration[] BUCKETS = {
+        Duration.ofNanos(50_000), Duration.ofNanos(100_000), Duration.ofNanos(250_000), Duration.ofNanos(500_000),
+        Duration.ofMillis(1), Duration.ofMillis(2), Duration.ofMillis(5), Duration.ofMillis(10), Duration.ofMillis(25),
+        Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(1000)
+    };
+    
+    private final MeterRegistry registry;
+    private final ConcurrentHashMap<String, Timer[]> timers = new ConcurrentHashMap<>();
+    
+    /**
+     * @param registry the registry to register the phase timers with
+     */
+    public PhaseTimings(MeterRegistry registry) {
+        this.registry = registry;
+    }
+    
+    /**
+     * Record the phases of a finished request.
+     * 
+     * @param routeKey the route that handled it, e.g. {@code GET /users/{id}}
+     * @param phases the request's timestamps
+     */
+    public void record(String routeKey, RequestPhases phases) {
+        Timer[] routeTimers = timers.get(routeKey);
+        if (routeTimers == null) {
+            routeTimers = timers.computeIfAbsent(routeKey, this::register);
+        }
+        for (Phase phase : PHASES) {
+            long nanos = phases.durationNanos(phase);
+            if (nanos >= 0) {
+                routeTimers[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+    
+    /**
+     * Summarize every route's phases: how many requests went through each phase, their mean and
+     * maximum time in it, and the phase's share of the time spent in all phases together.
+     * 
+     * @return route keys in order, mapped to phase names in order, mapped to the summary
+     */
+    public Map<String, Map<String, Map<String, Object>>> snapshot() {
+        Map<String, Map<String, Map<String, Object>>> routes = new TreeMap<>();
+        timers.forEach((routeKey, routeTimers) -> {
+            double total = 0;
+            for (Timer timer : routeTimers) {
+                total += timer.totalTime(TimeUnit.MILLISECONDS);
+            }
+            Map<String, Map<String, Object>> phases = new LinkedHashMap<>();
+            for (Phase phase : PHASES) {
+                Timer timer = routeTimers[phase.ordinal()];
+                if (timer.count() == 0) {
+                    continue;
+                }
+                Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("count", timer.count());
+                summary.put("meanMillis", timer.mean(TimeUnit.MILLISECONDS));
+                summary.put("maxMillis", timer.max(TimeUnit.MILLISECONDS));
+                summary.put("share", total > 0 ? timer.totalTime(TimeUnit.MILLISECONDS) / total : 0.0);
+                phases.put(phase.label(), summary);
+            }
+            routes.put(routeKey, phases);
+        });
+        return routes;
+    }
+    
+    private Timer[] register(String routeKey) {
+        int space = routeKey.indexOf(' ');
+        String method = space > 0 ? routeKey.substring(0, space) : routeKey;
+        String path = space > 0 ? routeKey.substring(space + 1) : routeKey;
+        Timer[] routeTimers = new Timer[PHASES.length];
+        for (Phase phase : PHASES) {
+            routeTimers[phase.ordinal()] = Timer.builder("mochaapi_http_server_phase")
+                .description("Time requests spend in each phase of handling")
+                .tag("route", path)
+                .tag("method", method)
+                .tag("phase", phase.label())
+                .serviceLevelObjectives(BUCKETS)
+                .register(registry);
+        }
+        return routeTimers;
+    }
+}
@@ -0,0 +1,142 @@
+package com.mochaapi.runtime.monitor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the JDK's virtual thread pinning and submit failure events in-process and attributes
+ * them to the route the virtual thread was serving. Pinned durations are published per route and
+ * long pins are logged with the frame that caused them, at most once a minute per route.
+ */
+public class PinningMonitor {
+    
+    static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    static final String SUBMIT_FAILED_EVENT = "jdk.VirtualThreadSubmitFailed";
+    
+    private static final Logger logger = LoggerFactory.getLogger(PinningMonitor.class);
+    private static final String UNKNOWN_ROUTE = "unknown";
+    private static final long WARNING_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    
+    private final MeterRegistry meterRegistry;
+    private final Duration recordThreshold;
+    private final Duration warnThreshold;
+    private final Counter submitFailures;
+    private final ConcurrentHashMap<String, Timer> pinnedTimers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> lastWarnings = new ConcurrentHashMap<>();
+    private RecordingStream stream;
+    
+    /**
+     * Create a monitor.
+     * 
+     * @param meterRegistry the registry to publish pinning metrics to
+     * @param recordThreshold pins shorter than this are not recorded
+     * @param warnThreshold pins at least this long are logged as warnings
+     */
+    public PinningMonitor(MeterRegistry meterRegistry, Duration recordThreshold, Duration warnThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.recordThreshold = recordThreshold;
+        this.warnThreshold = warnThreshold;
+        this.submitFailures = Counter.builder("mochaapi_vthread_submit_failed_total")
+            .description("Virtual threads that could not be scheduled on a carrier")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Start streaming events. Route attribution is switched on for as long as the monitor runs.
+     */
+    public synchronized void start() {
+        if (stream != null) {
+            return;
+        }
+        RecordingStream recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(recordThreshold).withStackTrace();
+        recording.enable(SUBMIT_FAILED_EVENT);
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+        recording.onEvent(SUBMIT_FAILED_EVENT, this::onSubmitFailed);
+        RouteAttribution.setEnabled(true);
+        recording.startAsync();
+        stream = recording;
+        logger.info("Virtual thread pinning monitor started (recording pins over {}ms)", recordThreshold.toMillis());
+    }
+    
+    /**
+     * Stop streaming events.
+     */
+    public synchronized void stop() {
+        if (stream == null) {
+            return;
+        }
+        stream.close();
+        stream = null;
+        RouteAttribution.setEnabled(false);
+    }
+    
+    private void onPinned(RecordedEvent event) {
+        String route = routeOf(event.getThread());
+        Duration duration = event.getDuration();
+        pinnedTimers.computeIfAbsent(route, r -> Timer.builder("mochaapi_vthread_pinned")
+            .description("Time virtual threads kept their carrier pinned")
+            .tag("route", r)
+            .publishPercentileHistogram()
+            .register(meterRegistry))
+            .record(duration);
+        
+        if (duration.compareTo(warnThreshold) >= 0 && shouldWarn(route)) {
+            logger.warn("Virtual thread pinned its carrier for {}ms in route {} at {}",
+                duration.toMillis(), route, culprit(event.getStackTrace()));
+        }
+    }
+    
+    private void onSubmitFailed(RecordedEvent event) {
+        submitFailures.increment();
+        // The event is emitted by the submitting thread and names the virtual thread in a field
+        String route = RouteAttribution.routeOf(event.getLong("javaThreadId"));
+        logger.warn("Virtual thread could not be scheduled in route {}: {}",
+            route != null ? route : UNKNOWN_ROUTE, event.getString("exceptionMessage"));
+    }
+    
+    private boolean shouldWarn(String route) {
+        long now = System.nanoTime();
+        Long last = lastWarnings.get(route);
+        if (last != null && now - last < WARNING_INTERVAL_NANOS) {
+            return false;
+        }
+        // Only the thread that swaps in its timestamp logs, so concurrent pins warn once
+        return last == null ? lastWarnings.putIfAbsent(route, now) == null : lastWarnings.replace(route, last, now);
+    }
+    
+    private static String routeOf(RecordedThread thread) {
+        String route = thread != null ? RouteAttribution.routeOf(thread.getJavaThreadId()) : null;
+        return route != null ? route : UNKNOWN_ROUTE;
+    }
+    
+    private static String culprit(RecordedStackTrace stackTrace) {
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return "unknown frame";
+        }
+        // The first frame outside the JDK is usually the code holding the monitor or making the native call
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                return describe(frame);
+            }
+        }
+        return describe(stackTrace.getFrames().get(0));
+    }
+    
+    private static String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+}
@@ -0,0 +1,136 @@
+package com.mochaapi.runtime.monitor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monotonic timestamps taken as one request passes from one phase of handling to the next. Each
+ * phase ends where it is marked and starts where the previous marked phase ended, so a phase
+ * that does not apply to a request, such as the executor queue for an asynchronous handler,
+ * simply folds into the next one.
+ * 
+ * <p>Requests only carry phases while phase timing or tracing is enabled; the runtime checks for them
+ * before taking a timestamp, so disabled timing costs a null check per boundary.
+ * 
+ * <p>Phases are marked from the event loop and from the handler's thread, and read by the slow
+ * request sampler while the request runs, so the marks are kept in an atomic array.
+ */
+public final class RequestPhases {
+    
+    /**
+     * The phases of a request, in the order they happen.
+     */
+    public enum Phase {
+        /** Aggregating the request's body once its head is decoded, then reading it into a request context. */
+        DECODE("decode"),
+        /** Finding the route that matches the method and path. */
+        ROUTE("route"),
+        /** Binding path, query and body values to the handler's parameters. */
+        BIND("bind"),
+        /** Waiting for a bulkhead slot and an executor thread. */
+        QUEUE("queue"),
+        /** Running the handler, up to the completion of its result if it is asynchronous. */
+        EXECUTE("execute"),
+        /** Encoding the result into the response body. */
+        SERIALIZE("serialize"),
+        /** Handing the response to the socket. */
+        WRITE("write");
+        
+        private final String label;
+        
+        Phase(String label) {
+            this.label = label;
+        }
+        
+        /**
+         * The name used in metric tags and the {@code Server-Timing} header.
+         * 
+         * @return the lower-case phase name
+         */
+        public String label() {
+            return label;
+        }
+    }
+    
+    private static final Phase[] PHASES = Phase.values();
+    
+    private final long startNanos;
+    private final AtomicLongArray endNanos = new AtomicLongArray(PHASES.length);
+    
+    /**
+     * @param startNanos the {@link System#nanoTime} at which the request's head arrived
+     */
+    public RequestPhases(long startNanos) {
+        this.startNanos = startNanos;
+    }
+    
+    /**
+     * When the request's head arrived.
+     * 
+     * @return the {@link System#nanoTime} the phases are measured from
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+    
+    /**
+     * Mark the end of a phase now. A phase ends once; later marks for it are ignored, so a
+     * phase can be marked where it ends on every path without knowing whether another path
+     * already did.
+     * 
+     * @param phase the phase that just ended
+     */
+    public void mark(Phase phase) {
+        if (endNanos.get(phase.ordinal()) == 0) {
+            endNanos.compareAndSet(phase.ordinal(), 0, System.nanoTime());
+        }
+    }
+    
+    /**
+     * The time spent in a phase.
+     * 
+     * @param phase the phase
+     * @return the duration in nanoseconds, or -1 if the phase was not marked
+     */
+    public long durationNanos(Phase phase) {
+        long end = endNanos.get(phase.ordinal());
+        if (end == 0) {
+            return -1;
+        }
+        long start = startNanos;
+        for (int i = phase.ordinal() - 1; i >= 0; i--) {
+            long previous = endNanos.get(i);
+            if (previous != 0) {
+                start = previous;
+                break;
+            }
+        }
+        return Math.max(0, end - start);
+    }
+    
+    /**
+     * The value of a {@code Server-Timing} header listing the phases marked so far, with
+     * durations in milliseconds.
+     * 
+     * @return the header value, e.g. {@code decode;dur=0.041, route;dur=0.003}
+     */
+    public String serverTiming() {
+        StringBuilder header = new StringBuilder(128);
+        for (Phase phase : PHASES) {
+            long nanos = durationNanos(phase);
+            if (nanos < 0) {
+                continue;
+            }
+            if (header.length() > 0) {
+                header.append(", ");
+            }
+            long micros = nanos / 1000;
+            header.append(phase.label()).append(";dur=").append(micros / 1000).append('.');
+            long fraction = micros % 1000;
+            if (fraction < 100) {
+                header.append(fraction < 10 ? "00" : "0");
+            }
+            header.append(fraction);
+        }
+        return header.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package com.mochaapi.runtime.monitor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Remembers which route each recent handler thread served, so that events observed after the
+ * fact, such as JFR events delivered by a recording stream, can be attributed to a route.
+ * Entries are kept in a fixed-size table indexed by thread id and are never removed; since virtual
+ * thread ids are not reused, the table holds the most recent threads and needs no cleanup.
+ */
+public final class RouteAttribution {
+    
+    private static final int CAPACITY = 1 << 16;
+    private static final int MASK = CAPACITY - 1;
+    
+    private static final AtomicLongArray threadIds = new AtomicLongArray(CAPACITY);
+    private static final AtomicReferenceArray<String> routes = new AtomicReferenceArray<>(CAPACITY);
+    private static volatile boolean enabled;
+    
+    private RouteAttribution() {
+    }
+    
+    /**
+     * Start or stop recording which route each thread serves.
+     * 
+     * @param enabled whether attribution is recorded
+     */
+    public static void setEnabled(boolean enabled) {
+        RouteAttribution.enabled = enabled;
+    }
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Record that the current thread is running the given route.
+     * 
+     * @param route the route key, e.g. {@code GET /users/{id}}
+     */
+    public static void enter(String route) {
+        if (!enabled) {
+            return;
+        }
+        long threadId = Thread.currentThread().threadId();
+        int index = (int) (threadId & MASK);
+        // Invalidate the slot while it changes so readers never pair the new id with the old route
+        threadIds.set(index, -1);
+        routes.set(index, route);
+        threadIds.set(index, threadId);
+    }
+    
+    /**
+     * Look up the route a thread most recently served.
+     * 
+     * @param threadId the thread id
+     * @return the route, or null if the thread is unknown or has been evicted
+     */
+    public static String routeOf(long threadId) {
+        int index = (int) (threadId & MASK);
+        if (threadIds.get(index) != threadId) {
+            return null;
+        }
+        String route = routes.get(index);
+        return threadIds.get(index) == threadId ? route : null;
+    }
+}
@@ -0,0 +1,327 @@
+package com.mochaapi.runtime.monitor;
+
+import com.mochaapi.runtime.codec.MediaCodecs;
+import com.mochaapi.runtime.context.RequestContext;
+import com.mochaapi.runtime.monitor.RequestPhases.Phase;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Watches in-flight requests and takes stack samples of the ones that run long. A watchdog
+ * thread wakes every sample interval and, for each request older than the threshold whose
+ * handler is running on a thread, records that thread's stack. Requests that finish under the
+ * threshold are only added to and removed from the in-flight table; nothing is sampled or kept
+ * for them.
+ * 
+ * <p>A request that finishes over the threshold is kept, with its route, redacted parameters,
+ * phase timings and samples, in a bounded store that drops the oldest entry when full.
+ */
+public final class SlowRequestSampler implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SlowRequestSampler.class);
+    private static final String REDACTED = "[redacted]";
+    private static final String UNMATCHED = "UNMATCHED";
+    private static final int MAX_FRAMES = 64;
+    private static final int MAX_VALUE_LENGTH = 64;
+    private static final Phase[] PHASES = Phase.values();
+    
+    private final long thresholdNanos;
+    private final long intervalNanos;
+    private final int maxSamples;
+    private final int capacity;
+    private final List<String> redactedParameters;
+    private final long epochOffsetNanos;
+    private final ConcurrentHashMap<RequestContext, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final ArrayDeque<Map<String, Object>> store;
+    private final LongAdder captured = new LongAdder();
+    private final LongAdder samplesTaken = new LongAdder();
+    private final Thread watchdog;
+    private volatile boolean running = true;
+    
+    /**
+     * Create a sampler and start its watchdog.
+     * 
+     * @param thresholdMillis how long a request runs before its handler is sampled and the request kept
+     * @param intervalMillis how often slow requests are sampled
+     * @param maxSamples the most stack samples kept per request
+     * @param capacity the most slow requests kept
+     * @param redactedParameters parameter names whose values are hidden; a name containing any of
+     *        them, ignoring case, is redacted
+     */
+    public SlowRequestSampler(long thresholdMillis, long intervalMillis, int maxSamples, int capacity,
+                              Collection<String> redactedParameters) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+        this.maxSamples = maxSamples;
+        this.capacity = Math.max(1, capacity);
+        this.store = new ArrayDeque<>(this.capacity);
+        List<String> redacted = new ArrayList<>(redactedParameters.size());
+        for (String name : redactedParameters) {
+            redacted.add(name.toLowerCase(Locale.ROOT));
+        }
+        this.redactedParameters = redacted;
+        this.epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+        
+        this.watchdog = new Thread(this::watch, "mochaapi-slow-request-sampler");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+    
+    /**
+     * Publish how many slow requests were kept and how many stacks were sampled.
+     * 
+     * @param registry the registry to register the counters with
+     */
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("mochaapi_slow_requests_total", captured, LongAdder::sum)
+            .description("Requests that ran longer than the slow request threshold")
+            .register(registry);
+        FunctionCounter.builder("mochaapi_slow_request_stack_samples_total", samplesTaken, LongAdder::sum)
+            .description("Stack samples taken of slow requests' handler threads")
+            .register(registry);
+    }
+    
+    /**
+     * Start watching a request.
+     * 
+     * @param context the request
+     * @param startNanos the {@link System#nanoTime} at which it arrived
+     */
+    public void begin(RequestContext context, long startNanos) {
+        inFlight.put(context, new InFlight(startNanos));
+    }
+    
+    /**
+     * Stop watching a request, and keep it if it ran longer than the threshold. Only the first
+     * call counts.
+     * 
+     * @param context the request
+     * @param status the response status
+     */
+    public void end(RequestContext context, int status) {
+        InFlight request = inFlight.remove(context);
+        if (request == null) {
+            return;
+        }
+        long durationNanos = System.nanoTime() - request.startNanos;
+        if (durationNanos < thresholdNanos) {
+            return;
+        }
+        Map<String, Object> entry = describe(context, request, status, durationNanos);
+        synchronized (store) {
+            if (store.size() == capacity) {
+                store.removeFirst();
+            }
+            store.addLast(entry);
+        }
+        captured.increment();
+    }
+    
+    /**
+     * The slow requests kept, newest first.
+     * 
+     * @return one map per request, ready to be rendered as JSON
+     */
+    public List<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> entries;
+        synchronized (store) {
+            entries = new ArrayList<>(store.size());
+            store.descendingIterator().forEachRemaining(entries::add);
+        }
+        return entries;
+    }
+    
+    /**
+     * Write the slow requests kept to a file as a JSON array, newest first.
+     * 
+     * @param file the file to write, replacing it if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void dump(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            MediaCodecs.json().write(snapshot(), out);
+        }
+    }
+    
+    /**
+     * Stop the watchdog. Requests still in flight are no longer sampled.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(watchdog);
+        try {
+            watchdog.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    int getInFlight() {
+        return inFlight.size();
+    }
+    
+    private void watch() {
+        while (running) {
+            LockSupport.parkNanos(this, intervalNanos);
+            long now = System.nanoTime();
+            inFlight.forEach((context, request) -> {
+                if (now - request.startNanos >= thresholdNanos) {
+                    sample(context, request, now);
+                }
+            });
+        }
+    }
+    
+    private void sample(RequestContext context, InFlight request, long now) {
+        // Null while the request waits for a thread, or once its handler has returned
+        Thread thread = context.getHandlerThread();
+        if (thread == null) {
+            return;
+        }
+        synchronized (request) {
+            if (request.samples.size() >= maxSamples) {
+                return;
+            }
+        }
+        StackTraceElement[] stack;
+        try {
+            stack = thread.getStackTrace();
+        } catch (RuntimeException e) {
+            logger.debug("Failed to sample thread {}", thread, e);
+            return;
+        }
+        // The handler may have returned while the stack was taken, leaving the thread on other work
+        if (context.getHandlerThread() != thread) {
+            return;
+        }
+        List<String> frames = new ArrayList<>(Math.min(stack.length, MAX_FRAMES));
+        for (int i = 0; i < stack.length && i < MAX_FRAMES; i++) {
+            frames.add(stack[i].toString());
+        }
+        Map<String, Object> sample = new LinkedHashMap<>();
+        sample.put("offsetMillis", TimeUnit.NANOSECONDS.toMillis(now - request.startNanos));
+        sample.put("thread", thread.isVirtual() ? "virtual#" + thread.threadId() : thread.getName());
+        sample.put("state", thread.getState().name());
+        sample.put("frames", frames);
+        synchronized (request) {
+            request.samples.add(sample);
+        }
+        samplesTaken.increment();
+    }
+    
+    private Map<String, Object> describe(RequestContext context, InFlight request, int status, long durationNanos) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("time", Instant.ofEpochSecond(0, request.startNanos + epochOffsetNanos).toString());
+        entry.put("route", context.getRouteKey() != null ? context.getRouteKey() : context.getMethod() + " " + UNMATCHED);
+        entry.put("path", redactPath(context));
+        entry.put("status", status);
+        entry.put("durationMillis", durationNanos / 1_000_000.0);
+        entry.put("pathParams", redact(context.getPathParams()));
+        entry.put("queryParams", redact(context.getQueryParams()));
+        RequestPhases phases = context.getPhases();
+        if (phases != null) {
+            Map<String, Double> phaseMillis = new LinkedHashMap<>();
+            for (Phase phase : PHASES) {
+                long nanos = phases.durationNanos(phase);
+                if (nanos >= 0) {
+                    phaseMillis.put(phase.label(), nanos / 1_000_000.0);
+                }
+            }
+            entry.put("phases", phaseMillis);
+        }
+        synchronized (request) {
+            entry.put("samples", new ArrayList<>(request.samples));
+        }
+        return entry;
+    }
+    
+    /**
+     * The request path with the segments of redacted path parameters replaced, located through
+     * the matched route's template.
+     */
+    private String redactPath(RequestContext context) {
+        String path = context.getPath();
+        String routeKey = context.getRouteKey();
+        if (path == null || routeKey == null) {
+            return path;
+        }
+        String routePath = routeKey.substring(routeKey.indexOf(' ') + 1);
+        String[] template = routePath.split("/", -1);
+        String[] segments = path.split("/", -1);
+        if (template.length != segments.length) {
+            // Cannot line the path up with its template, so only the template is safe to show
+            return routePath;
+        }
+        for (int i = 0; i < template.length; i++) {
+            String part = template[i];
+            if (part.startsWith("{") && part.endsWith("}") && isRedacted(part.substring(1, part.length() - 1))) {
+                segments[i] = REDACTED;
+            }
+        }
+        return String.join("/", segments);
+    }
+    
+    private Map<String, String> redact(Map<String, String> parameters) {
+        Map<String, String> redacted = new LinkedHashMap<>();
+        if (parameters == null) {
+            return redacted;
+        }
+        parameters.forEach((name, value) -> {
+            if (isRedacted(name)) {
+                redacted.put(name, REDACTED);
+            } else if (value != null && value.length() > MAX_VALUE_LENGTH) {
+                redacted.put(name, value.substring(0, MAX_VALUE_LENGTH) + "...");
+            } else {
+                redacted.put(name, value);
+            }
+        });
+        return redacted;
+    }
+    
+    private boolean isRedacted(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (String fragment : redactedParameters) {
+            if (lower.contains(fragment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * A request being watched, and the samples taken of it so far.
+     */
+    private static final class InFlight {
+        
+        final long startNanos;
+        final List<Map<String, Object>> samples = new ArrayList<>(0);
+        
+        InFlight(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+}
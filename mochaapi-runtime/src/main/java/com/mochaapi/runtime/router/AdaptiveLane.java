@@ -0,0 +1,85 @@
+package com.mochaapi.runtime.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lane choice for a route without {@code @CpuBound} or {@code @ExecuteOn}, learned from how much of
+ * its wall time sampled invocations spend on the CPU. A route moves to the CPU-bound lane once the
+ * smoothed CPU fraction rises above the promotion threshold, and back to virtual threads only once
+ * it falls below the lower demotion threshold, so routes near a single cut-off do not flap.
+ */
+class AdaptiveLane {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveLane.class);
+    
+    static final int MIN_SAMPLES = 10;
+    private static final double SMOOTHING = 0.2;
+    
+    private final String routeKey;
+    private final int sampleInterval;
+    private final double promoteAbove;
+    private final double demoteBelow;
+    private final AtomicLong invocations = new AtomicLong();
+    private final AtomicLong switches = new AtomicLong();
+    private volatile boolean cpuBound;
+    private double cpuFraction;
+    private int samples;
+    
+    AdaptiveLane(String routeKey, int sampleInterval, double promoteAbove, double demoteBelow) {
+        this.routeKey = routeKey;
+        this.sampleInterval = sampleInterval;
+        this.promoteAbove = promoteAbove;
+        this.demoteBelow = demoteBelow;
+    }
+    
+    boolean isCpuBound() {
+        return cpuBound;
+    }
+    
+    /**
+     * Decide whether the next invocation is measured.
+     * 
+     * @return true for one invocation in every sample interval
+     */
+    boolean shouldSample() {
+        return invocations.getAndIncrement() % sampleInterval == 0;
+    }
+    
+    /**
+     * Fold a measured invocation into the route's CPU fraction and switch lanes if a threshold is crossed.
+     * 
+     * @param cpuNanos CPU time the invocation consumed
+     * @param wallNanos wall time the invocation took
+     */
+    synchronized void record(long cpuNanos, long wallNanos) {
+        if (wallNanos <= 0) {
+            return;
+        }
+        double fraction = Math.min(1.0, (double) cpuNanos / wallNanos);
+        cpuFraction = samples == 0 ? fraction : cpuFraction + SMOOTHING * (fraction - cpuFraction);
+        samples++;
+        if (samples < MIN_SAMPLES) {
+            return;
+        }
+        if (!cpuBound && cpuFraction > promoteAbove) {
+            cpuBound = true;
+            switches.incrementAndGet();
+            logger.info("Route {} moved to the CPU-bound lane (CPU fraction {})", routeKey, String.format("%.2f", cpuFraction));
+        } else if (cpuBound && cpuFraction < demoteBelow) {
+            cpuBound = false;
+            switches.incrementAndGet();
+            logger.info("Route {} moved to the virtual thread lane (CPU fraction {})", routeKey, String.format("%.2f", cpuFraction));
+        }
+    }
+    
+    synchronized double getCpuFraction() {
+        return cpuFraction;
+    }
+    
+    long getSwitches() {
+        return switches.get();
+    }
+}
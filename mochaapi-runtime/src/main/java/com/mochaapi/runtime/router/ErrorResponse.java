@@ -0,0 +1,22 @@
+package com.mochaapi.runtime.router;
+
+/**
+ * Response body for requests the router answers itself, sent with the given HTTP status.
+ */
+public class ErrorResponse {
+    private final int status;
+    private final String message;
+    
+    public ErrorResponse(int status, String message) {
+        this.status = status;
+        this.message = message;
+    }
+    
+    public int getStatus() {
+        return status;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,141 @@
+package com.mochaapi.runtime.router;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects the keys of concurrent requests to a {@code @Batched} route and loads them together.
+ * A batch is sent once it holds the maximum number of distinct keys or once its first request has
+ * waited the maximum delay, whichever comes first; requests for the same key share one entry.
+ */
+class RouteBatcher {
+    
+    private final int maxSize;
+    private final long maxDelayMicros;
+    private Map<Object, List<CompletableFuture<Object>>> pending = new LinkedHashMap<>();
+    private Function<Set<Object>, CompletableFuture<Object>> pendingLoader;
+    private long batchStartNanos;
+    private long generation;
+    private volatile DistributionSummary batchSizes;
+    private volatile Timer batchDelays;
+    
+    RouteBatcher(int maxSize, long maxDelayMicros) {
+        this.maxSize = maxSize;
+        this.maxDelayMicros = maxDelayMicros;
+    }
+    
+    /**
+     * Add a request to the current batch.
+     * 
+     * @param key the request's key
+     * @param loader loads a batch of keys, completing with a {@code Map} from key to response
+     * @return a future that completes with the response for the key
+     */
+    CompletableFuture<Object> submit(Object key, Function<Set<Object>, CompletableFuture<Object>> loader) {
+        CompletableFuture<Object> response = new CompletableFuture<>();
+        Batch full = null;
+        long scheduled = -1;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                batchStartNanos = System.nanoTime();
+                pendingLoader = loader;
+                scheduled = ++generation;
+            }
+            pending.computeIfAbsent(key, k -> new ArrayList<>(1)).add(response);
+            if (pending.size() >= maxSize) {
+                full = take();
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        } else if (scheduled >= 0) {
+            long batch = scheduled;
+            CompletableFuture.delayedExecutor(maxDelayMicros, TimeUnit.MICROSECONDS, Runnable::run).execute(() -> flush(batch));
+        }
+        return response;
+    }
+    
+    void bindTo(MeterRegistry registry, String routeKey) {
+        this.batchSizes = DistributionSummary.builder("mochaapi_batch_size")
+            .description("Distinct keys loaded per batch")
+            .tag("route", routeKey)
+            .publishPercentileHistogram()
+            .register(registry);
+        this.batchDelays = Timer.builder("mochaapi_batch_delay")
+            .description("Time the first request of a batch waited before the batch was loaded")
+            .tag("route", routeKey)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+    
+    private void flush(long batch) {
+        Batch due;
+        synchronized (this) {
+            // A batch that filled up has already been sent, and a newer one has its own timer
+            if (generation != batch || pending.isEmpty()) {
+                return;
+            }
+            due = take();
+        }
+        dispatch(due);
+    }
+    
+    private Batch take() {
+        Batch batch = new Batch(pending, pendingLoader, System.nanoTime() - batchStartNanos);
+        pending = new LinkedHashMap<>();
+        pendingLoader = null;
+        return batch;
+    }
+    
+    private void dispatch(Batch batch) {
+        if (batchSizes != null) {
+            batchSizes.record(batch.requests.size());
+            batchDelays.record(batch.delayNanos, TimeUnit.NANOSECONDS);
+        }
+        CompletableFuture<Object> loaded;
+        try {
+            loaded = batch.loader.apply(Collections.unmodifiableSet(batch.requests.keySet()));
+        } catch (RuntimeException e) {
+            loaded = CompletableFuture.failedFuture(e);
+        }
+        loaded.whenComplete((result, throwable) -> batch.requests.forEach((key, responses) -> {
+            Object response = null;
+            if (throwable == null) {
+                Object value = result instanceof Map ? ((Map<?, ?>) result).get(key) : null;
+                response = value != null ? value : new ErrorResponse(404, "Not Found");
+            }
+            for (CompletableFuture<Object> future : responses) {
+                if (throwable != null) {
+                    future.completeExceptionally(throwable);
+                } else {
+                    future.complete(response);
+                }
+            }
+        }));
+    }
+    
+    private static final class Batch {
+        
+        private final Map<Object, List<CompletableFuture<Object>>> requests;
+        private final Function<Set<Object>, CompletableFuture<Object>> loader;
+        private final long delayNanos;
+        
+        Batch(Map<Object, List<CompletableFuture<Object>>> requests, Function<Set<Object>, CompletableFuture<Object>> loader,
+              long delayNanos) {
+            this.requests = requests;
+            this.loader = loader;
+            this.delayNanos = delayNanos;
+        }
+    }
+}
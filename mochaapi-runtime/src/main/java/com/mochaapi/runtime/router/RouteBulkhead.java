@@ -0,0 +1,98 @@
+package com.mochaapi.runtime.router;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrency limit for a single route. Waiting requests hold a pending future rather than a
+ * blocked thread, and are admitted in arrival order as running invocations finish.
+ */
+class RouteBulkhead {
+    
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long queueTimeoutMillis;
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private final AtomicLong rejected = new AtomicLong();
+    private int inFlight;
+    
+    RouteBulkhead(int maxConcurrent, int maxQueue, long queueTimeoutMillis) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+    
+    /**
+     * Ask for a slot.
+     * 
+     * @return a future that completes once the caller holds a slot, or null if the queue is full
+     */
+    CompletableFuture<Void> acquire() {
+        CompletableFuture<Void> waiter;
+        synchronized (this) {
+            if (inFlight < maxConcurrent) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            if (waiters.size() >= maxQueue) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+        }
+        // Waiters that time out or are cancelled give up their place in the queue
+        waiter.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+            }
+        });
+        return waiter;
+    }
+    
+    /**
+     * Give a slot back, handing it to the longest waiting request if there is one.
+     */
+    void release() {
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            // Completed outside the lock since admission dispatches the waiter's handler
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Record a request that gave up waiting for a slot.
+     */
+    void recordRejection() {
+        rejected.incrementAndGet();
+    }
+    
+    long getQueueTimeoutMillis() {
+        return queueTimeoutMillis;
+    }
+    
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+    
+    synchronized int getQueued() {
+        return waiters.size();
+    }
+    
+    long getRejected() {
+        return rejected.get();
+    }
+}
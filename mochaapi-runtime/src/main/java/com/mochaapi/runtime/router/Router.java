@@ -1,25 +1,71 @@
 package com.mochaapi.runtime.router;
 
+import com.mochaapi.annotations.Batched;
+import com.mochaapi.annotations.Bulkhead;
+import com.mochaapi.annotations.ExecuteOn;
+import com.mochaapi.annotations.Timeout;
+import com.mochaapi.runtime.codec.MediaCodec;
+import com.mochaapi.runtime.codec.MediaCodecs;
+import com.mochaapi.runtime.context.CurrentRequest;
 import com.mochaapi.runtime.context.RequestContext;
 import com.mochaapi.runtime.executor.ExecutorManager;
+import com.mochaapi.runtime.jfr.RequestEvents;
+import com.mochaapi.runtime.jfr.RouteMatchedEvent;
+import com.mochaapi.runtime.monitor.RequestPhases;
+import com.mochaapi.runtime.monitor.RouteAttribution;
+import com.mochaapi.runtime.websocket.WebSocketSession;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * Router for handling HTTP requests and mapping them to controller methods.
+ * Bound to a meter registry, it publishes the state of each route's bulkhead, the size of the
+ * batches sent by {@code @Batched} routes and, with adaptive lanes enabled, the lane each route
+ * was classified into.
  */
 public class Router {
     
     private static final Logger logger = LoggerFactory.getLogger(Router.class);
-    private static final com.fasterxml.jackson.databind.ObjectMapper OBJECT_MAPPER = new com.fasterxml.jackson.databind.ObjectMapper();
+    
+    /**
+     * Request header carrying the caller's remaining time budget in milliseconds.
+     */
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout";
     
     private final ConcurrentHashMap<String, RouteHandler> routes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RouteHandler> webSocketRoutes = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<Class<?>, Object> controllerInstances = new ConcurrentHashMap<>();
+    private volatile long defaultTimeoutNanos;
+    private volatile MeterRegistry meterRegistry;
+    private volatile MediaCodecs mediaCodecs;
+    private int adaptiveSampleInterval;
+    private double adaptivePromoteThreshold;
+    private double adaptiveDemoteThreshold;
     
     /**
      * Add a route to the router.
@@ -31,9 +77,277 @@ public class Router {
      * @param isCpuBound whether this route should run on CPU-bound executor
      */
     public void addRoute(String method, String path, Class<?> controllerClass, String methodName, boolean isCpuBound) {
+        addRoute(method, path, controllerClass, methodName, isCpuBound, 0);
+    }
+    
+    /**
+     * Add a route to the router.
+     * 
+     * @param method HTTP method (GET, POST, etc.)
+     * @param path the path pattern
+     * @param controllerClass the controller class
+     * @param methodName the method name
+     * @param isCpuBound whether this route should run on CPU-bound executor
+     * @param cpuPriority the {@code @CpuBound} priority; higher values are scheduled first
+     */
+    public void addRoute(String method, String path, Class<?> controllerClass, String methodName, boolean isCpuBound,
+                         int cpuPriority) {
         String routeKey = method + " " + path;
         RouteHandler handler = new RouteHandler(controllerClass, methodName, isCpuBound);
+        handler.setRouteKey(routeKey);
+        handler.setCpuPriority(cpuPriority);
+        Method handlerMethod = findMethod(controllerClass, methodName);
+        Timeout timeout = handlerMethod != null ? handlerMethod.getAnnotation(Timeout.class) : null;
+        if (timeout != null) {
+            handler.setTimeoutNanos(timeout.unit().toNanos(timeout.value()));
+        }
+        // Handlers returning a CompletionStage do their waiting in the stage, not on a thread
+        handler.setAsync(handlerMethod != null && CompletionStage.class.isAssignableFrom(handlerMethod.getReturnType()));
+        ExecuteOn executeOn = handlerMethod != null ? handlerMethod.getAnnotation(ExecuteOn.class) : null;
+        if (executeOn != null) {
+            handler.setExecutorName(executeOn.value());
+        }
+        Bulkhead bulkhead = handlerMethod != null ? handlerMethod.getAnnotation(Bulkhead.class) : null;
+        if (bulkhead != null) {
+            handler.setBulkhead(new RouteBulkhead(bulkhead.maxConcurrent(), bulkhead.maxQueue(), bulkhead.queueTimeout()));
+        }
+        Batched batched = handlerMethod != null ? handlerMethod.getAnnotation(Batched.class) : null;
+        if (batched != null) {
+            Method loader = findMethod(controllerClass, batched.loader());
+            if (loader == null || loader.getParameterCount() != 1) {
+                throw new IllegalArgumentException("Route " + routeKey + " is @Batched but has no batch method '" + batched.loader() + "'");
+            }
+            handler.setBatchLoader(loader);
+            handler.setBatcher(new RouteBatcher(batched.maxSize(), batched.maxDelayMicros()));
+        }
+        // @CpuBound and @ExecuteOn pin a route to its lane; only the rest are classified by measurement
+        if (adaptiveSampleInterval > 0 && !isCpuBound && handler.getExecutorName() == null && !handler.isAsync()) {
+            handler.setAdaptiveLane(new AdaptiveLane(routeKey, adaptiveSampleInterval, adaptivePromoteThreshold, adaptiveDemoteThreshold));
+        }
+        if (handlerMethod != null) {
+            handler.setPayloadTypes(payloadTypes(handlerMethod));
+        }
         routes.put(routeKey, handler);
+        
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            bindRoute(registry, routeKey, handler);
+        }
+        MediaCodecs codecs = mediaCodecs;
+        if (codecs != null) {
+            prepareCodecs(codecs, handler);
+        }
+    }
+    
+    /**
+     * Classify routes added from now on by measuring their handlers: a route whose invocations
+     * mostly use CPU moves to the CPU-bound executor, and moves back to virtual threads once they
+     * mostly wait. Routes with {@code @CpuBound} or {@code @ExecuteOn} keep their lane.
+     * 
+     * @param sampleInterval measure one invocation in this many
+     * @param promoteThreshold the CPU fraction above which a route moves to the CPU-bound lane
+     * @param demoteThreshold the CPU fraction below which a route moves back to virtual threads
+     * @throws IllegalArgumentException if the thresholds do not leave a band between them
+     */
+    public void enableAdaptiveLanes(int sampleInterval, double promoteThreshold, double demoteThreshold) {
+        if (sampleInterval < 1 || demoteThreshold < 0 || promoteThreshold > 1 || demoteThreshold >= promoteThreshold) {
+            throw new IllegalArgumentException("Adaptive lanes need a sample interval of at least 1 and 0 <= demote < promote <= 1");
+        }
+        this.adaptiveSampleInterval = sampleInterval;
+        this.adaptivePromoteThreshold = promoteThreshold;
+        this.adaptiveDemoteThreshold = demoteThreshold;
+    }
+    
+    /**
+     * Check that every route selecting an executor with {@code @ExecuteOn} names one that exists.
+     * 
+     * @param executorManager the executor manager requests will run on
+     * @throws IllegalStateException if a route names an unknown executor
+     */
+    public void verifyExecutors(ExecutorManager executorManager) {
+        routes.forEach((routeKey, handler) -> {
+            if (handler.getExecutorName() != null && !executorManager.hasExecutor(handler.getExecutorName())) {
+                throw new IllegalStateException("Route " + routeKey + " runs on unknown executor '" + handler.getExecutorName() + "'");
+            }
+        });
+    }
+    
+    /**
+     * Publish bulkhead and lane metrics for current and future routes to the registry.
+     * 
+     * @param registry the registry to register the meters with
+     */
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+        routes.forEach((routeKey, handler) -> bindRoute(registry, routeKey, handler));
+    }
+    
+    private void bindRoute(MeterRegistry registry, String routeKey, RouteHandler handler) {
+        if (handler.getBulkhead() != null) {
+            bindBulkhead(registry, routeKey, handler.getBulkhead());
+        }
+        if (handler.getAdaptiveLane() != null) {
+            bindAdaptiveLane(registry, routeKey, handler.getAdaptiveLane());
+        }
+        if (handler.getBatcher() != null) {
+            handler.getBatcher().bindTo(registry, routeKey);
+        }
+    }
+    
+    private void bindAdaptiveLane(MeterRegistry registry, String routeKey, AdaptiveLane lane) {
+        Gauge.builder("mochaapi_route_cpu_fraction", lane, AdaptiveLane::getCpuFraction)
+            .description("Smoothed share of wall time the route's measured invocations spent on the CPU")
+            .tag("route", routeKey)
+            .register(registry);
+        Gauge.builder("mochaapi_route_cpu_lane", lane, l -> l.isCpuBound() ? 1 : 0)
+            .description("1 while the route runs on the CPU-bound executor, 0 while it runs on virtual threads")
+            .tag("route", routeKey)
+            .register(registry);
+        FunctionCounter.builder("mochaapi_route_lane_switches_total", lane, AdaptiveLane::getSwitches)
+            .description("Times the route was moved between the virtual thread and CPU-bound lanes")
+            .tag("route", routeKey)
+            .register(registry);
+    }
+    
+    private void bindBulkhead(MeterRegistry registry, String routeKey, RouteBulkhead bulkhead) {
+        Gauge.builder("mochaapi_bulkhead_in_flight", bulkhead, RouteBulkhead::getInFlight)
+            .description("Requests currently running inside the route's bulkhead")
+            .tag("route", routeKey)
+            .register(registry);
+        Gauge.builder("mochaapi_bulkhead_queued", bulkhead, RouteBulkhead::getQueued)
+            .description("Requests waiting for a slot in the route's bulkhead")
+            .tag("route", routeKey)
+            .register(registry);
+        FunctionCounter.builder("mochaapi_bulkhead_rejected_total", bulkhead, RouteBulkhead::getRejected)
+            .description("Requests turned away by the route's bulkhead")
+            .tag("route", routeKey)
+            .register(registry);
+    }
+    
+    /**
+     * Let the codecs prepare for the body and return classes of current and future routes, so the
+     * Jackson-backed ones bind a reader and writer per class before the first request.
+     * 
+     * @param codecs the codecs requests will be read and written with
+     */
+    public void bindCodecs(MediaCodecs codecs) {
+        this.mediaCodecs = codecs;
+        routes.values().forEach(handler -> prepareCodecs(codecs, handler));
+    }
+    
+    private static void prepareCodecs(MediaCodecs codecs, RouteHandler handler) {
+        for (Class<?> type : handler.getPayloadTypes()) {
+            for (MediaCodec codec : codecs.getCodecs()) {
+                codec.prepare(type);
+            }
+        }
+    }
+    
+    /**
+     * The classes a handler reads from its {@code @RequestBody} and writes as its response, with
+     * an asynchronous result unwrapped to the class it completes with and a streamed result to
+     * the class of its elements.
+     */
+    private static List<Class<?>> payloadTypes(Method method) {
+        List<Class<?>> types = new ArrayList<>(2);
+        for (java.lang.reflect.Parameter param : method.getParameters()) {
+            if (param.isAnnotationPresent(com.mochaapi.annotations.RequestBody.class)) {
+                types.add(param.getType());
+            }
+        }
+        Type returnType = method.getGenericReturnType();
+        if ((CompletionStage.class.isAssignableFrom(method.getReturnType()) || Future.class.isAssignableFrom(method.getReturnType()))
+            && returnType instanceof ParameterizedType) {
+            returnType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+        }
+        if (returnType instanceof ParameterizedType && isStreamed(((ParameterizedType) returnType).getRawType())) {
+            returnType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+        }
+        if (returnType instanceof ParameterizedType) {
+            returnType = ((ParameterizedType) returnType).getRawType();
+        }
+        if (returnType instanceof Class && returnType != void.class && returnType != Void.class) {
+            types.add((Class<?>) returnType);
+        }
+        return types;
+    }
+    
+    private static boolean isStreamed(Type rawType) {
+        return rawType instanceof Class
+            && (Iterable.class.isAssignableFrom((Class<?>) rawType) || Iterator.class.isAssignableFrom((Class<?>) rawType)
+                || Stream.class.isAssignableFrom((Class<?>) rawType));
+    }
+    
+    /**
+     * Set the deadline applied to routes without a {@code @Timeout}.
+     * 
+     * @param timeoutMillis the default time budget in milliseconds, or zero for no deadline
+     */
+    public void setDefaultTimeoutMillis(long timeoutMillis) {
+        this.defaultTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+    
+    /**
+     * Add a WebSocket endpoint to the router.
+     * 
+     * @param path the path pattern
+     * @param controllerClass the controller class
+     * @param methodName the method name
+     */
+    public void addWebSocketRoute(String path, Class<?> controllerClass, String methodName) {
+        RouteHandler handler = new RouteHandler(controllerClass, methodName, false);
+        handler.setRouteKey("WEBSOCKET " + path);
+        webSocketRoutes.put(path, handler);
+    }
+    
+    /**
+     * Find the WebSocket endpoint for an upgrade request.
+     * 
+     * @param path the request path
+     * @return the endpoint to run for the connection, or null if no WebSocket route matches
+     */
+    public Consumer<WebSocketSession> findWebSocketEndpoint(String path) {
+        RouteHandler handler = webSocketRoutes.get(path);
+        if (handler == null) {
+            for (Map.Entry<String, RouteHandler> entry : webSocketRoutes.entrySet()) {
+                String routePath = entry.getKey();
+                if (routePath.contains("{") && matchesPathWithParams(routePath, path)) {
+                    handler = entry.getValue();
+                    break;
+                }
+            }
+        }
+        if (handler == null) {
+            return null;
+        }
+        
+        Object controller = getControllerInstance(handler.getControllerClass());
+        Method method = findMethod(handler.getControllerClass(), handler.getMethodName());
+        if (method == null) {
+            return null;
+        }
+        
+        String routeKey = handler.getRouteKey();
+        return session -> {
+            RouteAttribution.enter(routeKey);
+            java.lang.reflect.Parameter[] parameters = method.getParameters();
+            Object[] args = new Object[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                Class<?> paramType = parameters[i].getType();
+                if (paramType == WebSocketSession.class) {
+                    args[i] = session;
+                } else if (paramType == RequestContext.class) {
+                    args[i] = session.getRequestContext();
+                }
+            }
+            CurrentRequest.callWith(session.getRequestContext(), () -> {
+                try {
+                    return method.invoke(controller, args);
+                } catch (Exception e) {
+                    throw new RuntimeException("Error executing WebSocket handler", e);
+                }
+            });
+        };
     }
     
     /**
@@ -41,18 +355,38 @@ public class Router {
      * 
      * @param context the request context
      * @param executorManager the executor manager
-     * @return a CompletableFuture that completes with the response
+     * @return a CompletableFuture that completes with the response, or fails with a
+     *         {@link java.util.concurrent.TimeoutException} once the request's deadline expires;
+     *         cancelling it interrupts the handler
      */
     public CompletableFuture<Object> handleRequest(RequestContext context, ExecutorManager executorManager) {
         String routeKey = context.getMethod() + " " + context.getPath();
         logger.debug("Looking for route: {}", routeKey);
         
+        RouteMatchedEvent matched = null;
+        if (RequestEvents.isEnabled()) {
+            matched = new RouteMatchedEvent();
+            matched.begin();
+        }
         RouteHandler handler = routes.get(routeKey);
         
         // Try to find a route with path parameters
         if (handler == null) {
             handler = findRoute(context.getMethod(), context.getPath());
         }
+        if (matched != null) {
+            matched.end();
+            if (matched.shouldCommit()) {
+                matched.method = context.getMethod();
+                matched.path = context.getPath();
+                matched.route = handler != null ? RequestEvents.template(handler.getRouteKey()) : null;
+                matched.commit();
+            }
+        }
+        RequestPhases phases = context.getPhases();
+        if (phases != null) {
+            phases.mark(RequestPhases.Phase.ROUTE);
+        }
         
         if (handler == null) {
             return CompletableFuture.completedFuture(createNotFoundResponse());
@@ -67,32 +401,248 @@ public class Router {
             }
             
             // Prepare method arguments
+            bindPathParams(handler.getRouteKey(), context);
             Object[] args = prepareMethodArguments(method, context);
+            if (phases != null) {
+                phases.mark(RequestPhases.Phase.BIND);
+            }
+            
+            context.setRouteKey(handler.getRouteKey());
+            context.setExecutorManager(executorManager);
+            long timeoutNanos = resolveTimeoutNanos(handler, context);
+            if (timeoutNanos > 0) {
+                context.setDeadlineNanos(System.nanoTime() + timeoutNanos);
+            }
             
             // Execute method
-            if (handler.isCpuBound()) {
-                return executorManager.executeCpuBound(() -> {
-                    try {
-                        return method.invoke(controller, args);
-                    } catch (Exception e) {
-                        throw new RuntimeException("Error executing controller method", e);
-                    }
-                });
+            RouteHandler route = handler;
+            Supplier<CompletableFuture<Object>> invocation;
+            if (handler.getBatcher() != null) {
+                invocation = () -> route.getBatcher().submit(batchKey(method, args), keys -> invokeBatch(route, controller, keys, executorManager));
+            } else if (handler.isAsync()) {
+                invocation = () -> invokeAsync(route, method, controller, args, context, executorManager);
             } else {
-                return executorManager.executeVirtual(() -> {
-                    try {
-                        return method.invoke(controller, args);
-                    } catch (Exception e) {
-                        throw new RuntimeException("Error executing controller method", e);
-                    }
-                });
+                invocation = () -> invoke(route, method, controller, args, context, executorManager);
             }
+            CompletableFuture<Object> result = handler.getBulkhead() == null
+                ? invocation.get()
+                : invokeInBulkhead(handler.getBulkhead(), invocation, executorManager);
+            if (timeoutNanos > 0) {
+                executorManager.failAfter(result, timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            // Subtasks the handler forked must not outlive the request, however it ended
+            result.whenComplete((response, throwable) -> context.end());
+            return result;
             
         } catch (Exception e) {
             return CompletableFuture.completedFuture(createErrorResponse(e));
         }
     }
     
+    private CompletableFuture<Object> invoke(RouteHandler handler, Method method, Object controller, Object[] args,
+                                             RequestContext context, ExecutorManager executorManager) {
+        String routeKey = handler.getRouteKey();
+        Supplier<Object> call = () -> CurrentRequest.callWith(context, () -> {
+            RouteAttribution.enter(routeKey);
+            RequestPhases phases = context.getPhases();
+            if (phases != null) {
+                phases.mark(RequestPhases.Phase.QUEUE);
+            }
+            Object result;
+            // Lets the slow request sampler find the thread while the handler runs
+            context.setHandlerThread(Thread.currentThread());
+            try {
+                try {
+                    result = method.invoke(controller, args);
+                } catch (Exception e) {
+                    throw new RuntimeException("Error executing controller method", e);
+                }
+                // A plain Future offers no completion callback, so the handler's thread waits for it
+                if (result instanceof Future && !(result instanceof CompletionStage)) {
+                    result = await((Future<?>) result);
+                }
+            } finally {
+                context.setHandlerThread(null);
+            }
+            if (phases != null) {
+                phases.mark(RequestPhases.Phase.EXECUTE);
+            }
+            return result;
+        });
+        return dispatch(handler, call, executorManager);
+    }
+    
+    private CompletableFuture<Object> invokeAsync(RouteHandler handler, Method method, Object controller, Object[] args,
+                                                  RequestContext context, ExecutorManager executorManager) {
+        // The handler is only called on a virtual thread, which ends once it returns the stage,
+        // so a handler that does some blocking work before going async cannot stall the event loop
+        CompletableFuture<Object> call = executorManager.executeVirtual(() -> CurrentRequest.callWith(context, () -> {
+            try {
+                return method.invoke(controller, args);
+            } catch (InvocationTargetException e) {
+                throw new CompletionException(e.getCause());
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }), handler.getRouteKey());
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        call.whenComplete((stage, failure) -> {
+            if (failure != null) {
+                result.completeExceptionally(unwrap(failure));
+                return;
+            }
+            if (stage == null) {
+                result.complete(null);
+                return;
+            }
+            ((CompletionStage<?>) stage).whenComplete((value, throwable) -> {
+                if (throwable != null) {
+                    result.completeExceptionally(unwrap(throwable));
+                } else {
+                    result.complete(value);
+                }
+            });
+            // A request that times out or whose client goes away stops the work behind the stage
+            if (stage instanceof Future) {
+                result.whenComplete((value, throwable) -> {
+                    if (throwable != null) {
+                        ((Future<?>) stage).cancel(true);
+                    }
+                });
+            }
+        });
+        // Interrupts a handler that is still on its way to returning the stage
+        result.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                call.cancel(true);
+            }
+        });
+        return result;
+    }
+    
+    private static Object await(Future<?> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the handler's result");
+        }
+    }
+    
+    private static Throwable unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+    
+    private CompletableFuture<Object> invokeBatch(RouteHandler handler, Object controller, Set<Object> keys,
+                                                  ExecutorManager executorManager) {
+        String routeKey = handler.getRouteKey();
+        Supplier<Object> call = () -> {
+            RouteAttribution.enter(routeKey);
+            try {
+                return handler.getBatchLoader().invoke(controller, keys);
+            } catch (Exception e) {
+                throw new RuntimeException("Error executing batch method", e);
+            }
+        };
+        return dispatch(handler, call, executorManager);
+    }
+    
+    private static Object batchKey(Method method, Object[] args) {
+        // The processor ensures the handler binds exactly one parameter besides the request context
+        java.lang.reflect.Parameter[] parameters = method.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i].getType() != RequestContext.class) {
+                return args[i];
+            }
+        }
+        return null;
+    }
+    
+    private CompletableFuture<Object> dispatch(RouteHandler handler, Supplier<Object> call, ExecutorManager executorManager) {
+        String routeKey = handler.getRouteKey();
+        if (handler.getExecutorName() != null) {
+            return executorManager.execute(handler.getExecutorName(), call, routeKey);
+        }
+        AdaptiveLane lane = handler.getAdaptiveLane();
+        boolean cpuBound = lane != null ? lane.isCpuBound() : handler.isCpuBound();
+        if (lane != null && lane.shouldSample()) {
+            return executorManager.executeMeasured(call, cpuBound, handler.getCpuPriority(), routeKey, lane::record);
+        }
+        return cpuBound
+            ? executorManager.executeCpuBound(call, handler.getCpuPriority(), routeKey)
+            : executorManager.executeVirtual(call, routeKey);
+    }
+    
+    private CompletableFuture<Object> invokeInBulkhead(RouteBulkhead bulkhead, Supplier<CompletableFuture<Object>> invocation,
+                                                       ExecutorManager executorManager) {
+        CompletableFuture<Void> slot = bulkhead.acquire();
+        if (slot == null) {
+            return CompletableFuture.completedFuture(createRejectedResponse());
+        }
+        if (slot.isDone()) {
+            CompletableFuture<Object> task = invocation.get();
+            // A handler that ignores its timeout keeps the slot until its thread returns
+            ExecutorManager.whenTerminated(task, bulkhead::release);
+            return task;
+        }
+        
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        if (bulkhead.getQueueTimeoutMillis() > 0) {
+            executorManager.failAfter(slot, bulkhead.getQueueTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+        // A request that times out or is abandoned while queued leaves the queue
+        result.whenComplete((response, throwable) -> slot.cancel(false));
+        slot.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                if (throwable instanceof TimeoutException && result.complete(createRejectedResponse())) {
+                    bulkhead.recordRejection();
+                }
+                return;
+            }
+            if (result.isDone()) {
+                bulkhead.release();
+                return;
+            }
+            CompletableFuture<Object> task = invocation.get();
+            // The slot stays taken until the handler's thread is done, not just until the response is sent
+            ExecutorManager.whenTerminated(task, bulkhead::release);
+            task.whenComplete((response, failure) -> {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(response);
+                }
+            });
+            result.whenComplete((response, failure) -> task.cancel(true));
+        });
+        return result;
+    }
+    
+    private long resolveTimeoutNanos(RouteHandler handler, RequestContext context) {
+        long timeoutNanos = handler.getTimeoutNanos() > 0 ? handler.getTimeoutNanos() : defaultTimeoutNanos;
+        
+        // A caller that gives up sooner than the route's own budget lowers the deadline
+        String requested = context.getHeader(TIMEOUT_HEADER);
+        if (requested != null) {
+            try {
+                long requestedNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(requested.trim()));
+                if (requestedNanos > 0 && (timeoutNanos <= 0 || requestedNanos < timeoutNanos)) {
+                    timeoutNanos = requestedNanos;
+                }
+            } catch (NumberFormatException e) {
+                logger.debug("Ignoring malformed {} header: {}", TIMEOUT_HEADER, requested);
+            }
+        }
+        return timeoutNanos;
+    }
+    
     private Object getControllerInstance(Class<?> controllerClass) {
         return controllerInstances.computeIfAbsent(controllerClass, clazz -> {
             try {
@@ -139,6 +689,25 @@ public class Router {
         return requestPath.matches(pattern);
     }
     
+    /**
+     * Record the values of a route's path parameters on the context, so they are known by name
+     * to the handler's arguments and to monitoring.
+     */
+    private void bindPathParams(String routeKey, RequestContext context) {
+        String routePath = routeKey.substring(routeKey.indexOf(' ') + 1);
+        if (!routePath.contains("{")) {
+            return;
+        }
+        String[] template = routePath.split("/");
+        String[] segments = context.getPath().split("/");
+        for (int i = 0; i < template.length && i < segments.length; i++) {
+            String part = template[i];
+            if (part.startsWith("{") && part.endsWith("}")) {
+                context.setPathParam(part.substring(1, part.length() - 1), segments[i]);
+            }
+        }
+    }
+    
     private Object[] prepareMethodArguments(Method method, RequestContext context) {
         // Simple parameter binding for development
         java.lang.reflect.Parameter[] parameters = method.getParameters();
@@ -149,12 +718,18 @@ public class Router {
             String paramName = param.getName();
             Class<?> paramType = param.getType();
             
+            if (paramType == RequestContext.class) {
+                args[i] = context;
+            }
             // Handle @PathVariable
-            if (param.isAnnotationPresent(com.mochaapi.annotations.PathVariable.class)) {
+            else if (param.isAnnotationPresent(com.mochaapi.annotations.PathVariable.class)) {
                 com.mochaapi.annotations.PathVariable pathVariable = param.getAnnotation(com.mochaapi.annotations.PathVariable.class);
                 String paramKey = pathVariable.value().isEmpty() ? paramName : pathVariable.value();
                 // Extract path parameter from URL
-                String pathValue = extractPathParameter(context.getPath(), paramKey);
+                String pathValue = context.getPathParam(paramKey);
+                if (pathValue == null) {
+                    pathValue = extractPathParameter(context.getPath(), paramKey);
+                }
                 args[i] = convertToType(pathValue, paramType);
             }
             // Handle @RequestParam
@@ -174,9 +749,10 @@ public class Router {
             // Handle @RequestBody
             else if (param.isAnnotationPresent(com.mochaapi.annotations.RequestBody.class)) {
                 try {
-                    String body = context.getBody();
-                    if (body != null && !body.isEmpty()) {
-                        args[i] = OBJECT_MAPPER.readValue(body, paramType);
+                    byte[] body = context.getBodyBytes();
+                    if (body != null && body.length > 0) {
+                        MediaCodec codec = context.getRequestCodec() != null ? context.getRequestCodec() : MediaCodecs.json();
+                        args[i] = codec.read(body, paramType);
                     } else {
                         args[i] = null;
                     }
@@ -229,6 +805,10 @@ public class Router {
         return new ErrorResponse(404, "Not Found");
     }
     
+    private Object createRejectedResponse() {
+        return new ErrorResponse(503, "Service Unavailable: too many concurrent requests");
+    }
+    
     private Object createErrorResponse(Exception e) {
         return new ErrorResponse(500, "Internal Server Error: " + e.getMessage());
     }
@@ -237,6 +817,16 @@ public class Router {
         private final Class<?> controllerClass;
         private final String methodName;
         private final boolean isCpuBound;
+        private String routeKey;
+        private int cpuPriority;
+        private String executorName;
+        private long timeoutNanos;
+        private RouteBulkhead bulkhead;
+        private AdaptiveLane adaptiveLane;
+        private RouteBatcher batcher;
+        private boolean async;
+        private Method batchLoader;
+        private List<Class<?>> payloadTypes = List.of();
         
         public RouteHandler(Class<?> controllerClass, String methodName, boolean isCpuBound) {
             this.controllerClass = controllerClass;
@@ -255,23 +845,85 @@ public class Router {
         public boolean isCpuBound() {
             return isCpuBound;
         }
-    }
-    
-    private static class ErrorResponse {
-        private final int status;
-        private final String message;
         
-        public ErrorResponse(int status, String message) {
-            this.status = status;
-            this.message = message;
+        public String getRouteKey() {
+            return routeKey;
+        }
+        
+        public void setRouteKey(String routeKey) {
+            this.routeKey = routeKey;
+        }
+        
+        public int getCpuPriority() {
+            return cpuPriority;
+        }
+        
+        public void setCpuPriority(int cpuPriority) {
+            this.cpuPriority = cpuPriority;
+        }
+        
+        public String getExecutorName() {
+            return executorName;
+        }
+        
+        public void setExecutorName(String executorName) {
+            this.executorName = executorName;
+        }
+        
+        public long getTimeoutNanos() {
+            return timeoutNanos;
+        }
+        
+        public void setTimeoutNanos(long timeoutNanos) {
+            this.timeoutNanos = timeoutNanos;
+        }
+        
+        public RouteBulkhead getBulkhead() {
+            return bulkhead;
+        }
+        
+        public void setBulkhead(RouteBulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+        }
+        
+        public AdaptiveLane getAdaptiveLane() {
+            return adaptiveLane;
+        }
+        
+        public void setAdaptiveLane(AdaptiveLane adaptiveLane) {
+            this.adaptiveLane = adaptiveLane;
+        }
+        
+        public boolean isAsync() {
+            return async;
+        }
+        
+        public void setAsync(boolean async) {
+            this.async = async;
+        }
+        
+        public RouteBatcher getBatcher() {
+            return batcher;
+        }
+        
+        public void setBatcher(RouteBatcher batcher) {
+            this.batcher = batcher;
+        }
+        
+        public Method getBatchLoader() {
+            return batchLoader;
+        }
+        
+        public void setBatchLoader(Method batchLoader) {
+            this.batchLoader = batchLoader;
         }
         
-        public int getStatus() {
-            return status;
+        public List<Class<?>> getPayloadTypes() {
+            return payloadTypes;
         }
         
-        public String getMessage() {
-            return message;
+        public void setPayloadTypes(List<Class<?>> payloadTypes) {
+            this.payloadTypes = payloadTypes;
         }
     }
 }
@@ -0,0 +1,207 @@
+package com.mochaapi.runtime.server;
+
+import com.mochaapi.runtime.accesslog.AccessLog;
+import com.mochaapi.runtime.context.RequestContext;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Request counts, latencies, in-flight requests and body sizes per route. Meters are tagged with
+ * the route's path template rather than the request path, so {@code /users/1} and
+ * {@code /users/2} share the series of {@code /users/{id}}, and requests that match no route share
+ * one series per method.
+ */
+class HttpMetrics {
+    
+    static final String UNMATCHED = "UNMATCHED";
+    /** Status recorded for requests whose client disconnected before the response was written. */
+    static final int CLIENT_CLOSED_REQUEST = 499;
+    
+    private static final Set<String> KNOWN_METHODS = Set.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS", "TRACE");
+    private static final Map<String, String> UNMATCHED_KEYS = new HashMap<>();
+    private static final String OTHER_UNMATCHED = "OTHER " + UNMATCHED;
+    
+    static {
+        for (String method : KNOWN_METHODS) {
+            UNMATCHED_KEYS.put(method, method + ' ' + UNMATCHED);
+        }
+    }
+    private static final double[] SIZE_BUCKETS = {256, 1024, 4096, 16384, 65536, 262144, 1048576, 4194304};
+    
+    private final MeterRegistry registry;
+    private final Duration[] latencyBuckets;
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+    
+    /**
+     * @param registry the registry to register the meters with
+     * @param sloMillis the latency histogram's bucket boundaries in milliseconds
+     */
+    HttpMetrics(MeterRegistry registry, long[] sloMillis) {
+        this.registry = registry;
+        this.latencyBuckets = new Duration[sloMillis.length];
+        for (int i = 0; i < sloMillis.length; i++) {
+            latencyBuckets[i] = Duration.ofMillis(sloMillis[i]);
+        }
+    }
+    
+    /**
+     * Count a request as in flight. Called once the router has chosen its route.
+     * 
+     * @param context the routed request
+     * @param startNanos when the server received the request
+     * @param requestBytes the size of the request body
+     * @return the exchange to finish once the response is written
+     */
+    Exchange start(RequestContext context, long startNanos, long requestBytes) {
+        Route route = routes.computeIfAbsent(routeKey(context), Route::new);
+        route.inFlight.incrementAndGet();
+        route.requestBytes.record(requestBytes);
+        return new Exchange(route, startNanos, requestBytes);
+    }
+    
+    /**
+     * The key a request is recorded under: its route's key, or {@code METHOD UNMATCHED} for
+     * requests that matched no route, with unusual methods folded into {@code OTHER}.
+     * 
+     * @param context the routed request
+     * @return the route key
+     */
+    static String routeKey(RequestContext context) {
+        String routeKey = context.getRouteKey();
+        if (routeKey != null) {
+            return routeKey;
+        }
+        return UNMATCHED_KEYS.getOrDefault(context.getMethod(), OTHER_UNMATCHED);
+    }
+    
+    /**
+     * One request between routing and its response.
+     */
+    static class Exchange {
+        
+        /** Records nothing, for servers without HTTP metrics or an access log. */
+        static final Exchange NONE = new Exchange(null, 0, 0);
+        
+        private final Route route;
+        private final long startNanos;
+        private final long requestBytes;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private AccessLog accessLog;
+        private int routeId;
+        private byte[] clientAddress;
+        private int clientPort;
+        
+        private Exchange(Route route, long startNanos, long requestBytes) {
+            this.route = route;
+            this.startNanos = startNanos;
+            this.requestBytes = requestBytes;
+        }
+        
+        /**
+         * An exchange that records to the access log only, for servers without HTTP metrics.
+         * 
+         * @param startNanos when the server received the request
+         * @param requestBytes the size of the request body
+         * @return the exchange
+         */
+        static Exchange untracked(long startNanos, long requestBytes) {
+            return new Exchange(null, startNanos, requestBytes);
+        }
+        
+        /**
+         * Also write the response to an access log. Called before the exchange is handed on.
+         * 
+         * @param accessLog the access log
+         * @param routeId the route's name ID in the log
+         * @param clientAddress the client's address, or null
+         * @param clientPort the client's port
+         */
+        void logTo(AccessLog accessLog, int routeId, byte[] clientAddress, int clientPort) {
+            this.accessLog = accessLog;
+            this.routeId = routeId;
+            this.clientAddress = clientAddress;
+            this.clientPort = clientPort;
+        }
+        
+        /**
+         * Record the response. Only the first call counts, so every path that ends a request can
+         * call it without checking whether another already did.
+         * 
+         * @param status the response status
+         * @param responseBytes the size of the response body
+         */
+        void finish(int status, long responseBytes) {
+            if ((route == null && accessLog == null) || !finished.compareAndSet(false, true)) {
+                return;
+            }
+            long latencyNanos = System.nanoTime() - startNanos;
+            if (route != null) {
+                route.inFlight.decrementAndGet();
+                route.latency(status).record(latencyNanos, TimeUnit.NANOSECONDS);
+                route.responseBytes.record(responseBytes);
+            }
+            if (accessLog != null) {
+                accessLog.log(startNanos, latencyNanos, routeId, status, requestBytes, responseBytes,
+                    clientAddress, clientPort);
+            }
+        }
+    }
+    
+    private class Route {
+        
+        private final String method;
+        private final String path;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final DistributionSummary requestBytes;
+        private final DistributionSummary responseBytes;
+        private final ConcurrentHashMap<Integer, Timer> latencies = new ConcurrentHashMap<>();
+        
+        Route(String routeKey) {
+            int space = routeKey.indexOf(' ');
+            this.method = routeKey.substring(0, space);
+            this.path = routeKey.substring(space + 1);
+            Gauge.builder("mochaapi_http_server_requests_in_flight", inFlight, AtomicInteger::get)
+                .description("Requests being handled")
+                .tag("route", path)
+                .tag("method", method)
+                .register(registry);
+            this.requestBytes = size("mochaapi_http_server_request_size", "Size of request bodies");
+            this.responseBytes = size("mochaapi_http_server_response_size", "Size of response bodies");
+        }
+        
+        private DistributionSummary size(String name, String description) {
+            return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit("bytes")
+                .tag("route", path)
+                .tag("method", method)
+                .serviceLevelObjectives(SIZE_BUCKETS)
+                .register(registry);
+        }
+        
+        Timer latency(int status) {
+            Timer timer = latencies.get(status);
+            if (timer == null) {
+                timer = latencies.computeIfAbsent(status, code -> Timer.builder("mochaapi_http_server_requests")
+                    .description("Time from receiving a request to writing its response")
+                    .tag("route", path)
+                    .tag("method", method)
+                    .tag("status", String.valueOf(code))
+                    .serviceLevelObjectives(latencyBuckets)
+                    .register(registry));
+            }
+            return timer;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.mochaapi.runtime.server;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the Prometheus text exposition of a registry. The text is rendered on a timer by a
+ * thread of its own, and a scrape only writes out the last rendering from the event loop, so a
+ * scrape never waits for the registry and never takes a thread from the executors that run
+ * handlers.
+ */
+class MetricsEndpoint {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MetricsEndpoint.class);
+    
+    private final PrometheusMeterRegistry registry;
+    private final long refreshMillis;
+    private volatile ByteBuf rendered = Unpooled.EMPTY_BUFFER;
+    private ScheduledExecutorService renderer;
+    
+    /**
+     * @param registry the registry to expose
+     * @param refreshMillis how often the text is rendered again
+     */
+    MetricsEndpoint(PrometheusMeterRegistry registry, long refreshMillis) {
+        this.registry = registry;
+        this.refreshMillis = refreshMillis;
+    }
+    
+    /**
+     * Render the text once and keep it fresh until {@link #stop} is called.
+     */
+    void start() {
+        render();
+        renderer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "mochaapi-metrics-renderer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        renderer.scheduleWithFixedDelay(this::render, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    void stop() {
+        if (renderer != null) {
+            renderer.shutdownNow();
+        }
+    }
+    
+    /**
+     * Whether a request is a GET of a path.
+     * 
+     * @param request the request
+     * @param path the path, or null for none
+     * @return true for a GET of the path, with or without a query string
+     */
+    static boolean isGet(FullHttpRequest request, String path) {
+        String uri = request.uri();
+        return path != null && HttpMethod.GET.equals(request.method()) && uri.startsWith(path)
+            && (uri.length() == path.length() || uri.charAt(path.length()) == '?');
+    }
+    
+    /**
+     * Answer a scrape with the last rendering.
+     * 
+     * @param ctx the channel to write to
+     */
+    void respond(ChannelHandlerContext ctx) {
+        // The rendering is shared by every scrape until the next one replaces it
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, rendered.duplicate());
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, TextFormat.CONTENT_TYPE_004);
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        ctx.writeAndFlush(response);
+    }
+    
+    void render() {
+        try {
+            ByteArrayOutputStream text = new ByteArrayOutputStream(Math.max(rendered.capacity(), 4096));
+            try (Writer writer = new OutputStreamWriter(text, StandardCharsets.UTF_8)) {
+                registry.scrape(writer);
+            }
+            // Netty releases what it writes; a shared heap buffer must survive that
+            rendered = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(text.toByteArray()));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to render metrics", e);
+        }
+    }
+}
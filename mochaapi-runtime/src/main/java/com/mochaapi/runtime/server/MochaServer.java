@@ -1,23 +1,74 @@
 package com.mochaapi.runtime.server;
 
 import com.mochaapi.runtime.MochaAPIConfig;
+import com.mochaapi.runtime.accesslog.AccessLog;
+import com.mochaapi.runtime.router.ErrorResponse;
 import com.mochaapi.runtime.router.Router;
 import com.mochaapi.runtime.executor.ExecutorManager;
+import com.mochaapi.runtime.jfr.RequestEvents;
+import com.mochaapi.runtime.jfr.RequestReceivedEvent;
+import com.mochaapi.runtime.jfr.ResponseWrittenEvent;
+import com.mochaapi.runtime.jfr.SerializationEvent;
+import com.mochaapi.runtime.context.CurrentRequest;
 import com.mochaapi.runtime.context.RequestContext;
+import com.mochaapi.runtime.codec.FieldSet;
+import com.mochaapi.runtime.codec.MediaCodec;
+import com.mochaapi.runtime.codec.MediaCodecs;
+import com.mochaapi.runtime.monitor.PhaseTimings;
+import com.mochaapi.runtime.monitor.PinningMonitor;
+import com.mochaapi.runtime.monitor.RequestPhases;
+import com.mochaapi.runtime.monitor.SlowRequestSampler;
+import com.mochaapi.runtime.sse.SseEmitter;
+import com.mochaapi.runtime.sse.SseTopic;
+import com.mochaapi.runtime.stream.JsonStreamWriter;
+import com.mochaapi.runtime.trace.OtlpJsonFileExporter;
+import com.mochaapi.runtime.trace.SpanExporter;
+import com.mochaapi.runtime.trace.Tracer;
+import com.mochaapi.runtime.websocket.WebSocketHandshake;
+import com.mochaapi.runtime.websocket.WebSocketSession;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketServerCompressionHandler;
+import io.netty.util.AttributeKey;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Netty-based HTTP server for MochaAPI.
@@ -25,27 +76,108 @@ import java.util.concurrent.atomic.AtomicLong;
 public class MochaServer {
     
     private static final Logger logger = LoggerFactory.getLogger(MochaServer.class);
-    private static final com.fasterxml.jackson.databind.ObjectMapper OBJECT_MAPPER = new com.fasterxml.jackson.databind.ObjectMapper();
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+    private static final String SERVER_TIMING = "Server-Timing";
+    /** The remote address of a connection, kept in its raw form for the access log. */
+    private static final AttributeKey<byte[]> CLIENT_ADDRESS = AttributeKey.valueOf("mochaapi.clientAddress");
     
     private final MochaAPIConfig config;
     private final Router router;
     private final ExecutorManager executorManager;
     private final MeterRegistry meterRegistry;
     private final Counter requestCounter;
+    private final HttpMetrics httpMetrics;
+    private final MetricsEndpoint metricsEndpoint;
+    private final PhaseTimings phaseTimings;
+    private final Tracer tracer;
+    private final AccessLog accessLog;
+    private final SlowRequestSampler slowRequests;
+    private final DiagnosticsHandler diagnosticsHandler = new DiagnosticsHandler();
     private final AtomicLong activeConnections = new AtomicLong(0);
+    private final MediaCodecs mediaCodecs = MediaCodecs.load();
     
+    private SslContext sslContext;
+    private TlsHandshakeMetrics tlsMetrics;
+    private PinningMonitor pinningMonitor;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
     private Channel serverChannel;
+    private Channel metricsChannel;
     
     public MochaServer(MochaAPIConfig config, Router router, ExecutorManager executorManager) {
         this.config = config;
         this.router = router;
         this.executorManager = executorManager;
-        this.meterRegistry = new SimpleMeterRegistry();
+        if (config.isEnableMetrics()) {
+            PrometheusMeterRegistry prometheusRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+            this.meterRegistry = prometheusRegistry;
+            this.httpMetrics = new HttpMetrics(prometheusRegistry, config.getMetricsSloMillis());
+            this.metricsEndpoint = new MetricsEndpoint(prometheusRegistry, config.getMetricsRefreshMillis());
+        } else {
+            // Components still record into a registry, which the application can read programmatically
+            this.meterRegistry = new SimpleMeterRegistry();
+            this.httpMetrics = null;
+            this.metricsEndpoint = null;
+        }
+        this.phaseTimings = config.isPhaseTimingEnabled() ? new PhaseTimings(meterRegistry) : null;
+        this.tracer = config.isTracingEnabled() ? createTracer(config) : null;
+        if (tracer != null) {
+            tracer.bindTo(meterRegistry);
+        }
+        this.accessLog = config.isAccessLogEnabled() ? createAccessLog(config) : null;
+        if (accessLog != null) {
+            accessLog.bindTo(meterRegistry);
+        }
+        this.slowRequests = config.isSlowRequestSamplingEnabled()
+            ? new SlowRequestSampler(config.getSlowRequestThresholdMillis(), config.getSlowRequestSampleIntervalMillis(),
+                config.getSlowRequestMaxSamples(), config.getSlowRequestCapacity(), config.getSlowRequestRedactedParameters())
+            : null;
+        if (slowRequests != null) {
+            slowRequests.bindTo(meterRegistry);
+        }
         this.requestCounter = Counter.builder("mochaapi_requests_total")
             .description("Total number of requests")
             .register(meterRegistry);
+        Gauge.builder("mochaapi_active_connections", activeConnections, AtomicLong::get)
+            .description("Requests being handled and open WebSocket connections")
+            .register(meterRegistry);
+        router.bindTo(meterRegistry);
+        router.bindCodecs(mediaCodecs);
+        executorManager.bindTo(meterRegistry);
+    }
+    
+    private static Tracer createTracer(MochaAPIConfig config) {
+        SpanExporter exporter = config.getTracingExporter();
+        if (exporter == null && config.getTracingOtlpFile() != null) {
+            try {
+                exporter = new OtlpJsonFileExporter(Path.of(config.getTracingOtlpFile()), config.getTracingServiceName());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open trace file " + config.getTracingOtlpFile(), e);
+            }
+        }
+        if (exporter == null) {
+            logger.warn("Tracing is enabled but neither a span exporter nor an OTLP file is set; tracing disabled");
+            return null;
+        }
+        return new Tracer(config.getTracingSampleRatio(), config.getTracingSlowThresholdMillis(),
+            config.getTracingBufferSize(), exporter, config.getTracingExportBatchSize(),
+            config.getTracingExportIntervalMillis());
+    }
+    
+    private static AccessLog createAccessLog(MochaAPIConfig config) {
+        try {
+            return new AccessLog(Path.of(config.getAccessLogDirectory()), config.getAccessLogBufferSize(),
+                config.getAccessLogFileSize(), config.getAccessLogMaxFiles(), config.getAccessLogWriteIntervalMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open access log in " + config.getAccessLogDirectory(), e);
+        }
+    }
+    
+    /**
+     * Whether requests carry phase timestamps, which both phase timing and tracing read.
+     */
+    private boolean tracksPhases() {
+        return phaseTimings != null || tracer != null;
     }
     
     /**
@@ -57,19 +189,44 @@ public class MochaServer {
         CompletableFuture<Void> startFuture = new CompletableFuture<>();
         
         try {
+            if (config.isTlsEnabled()) {
+                sslContext = TlsContextFactory.create(config);
+                tlsMetrics = new TlsHandshakeMetrics(meterRegistry);
+            }
+            
+            if (config.isPinningMonitorEnabled()) {
+                startPinningMonitor();
+            }
+            RequestEvents.install();
+            
             bossGroup = new NioEventLoopGroup(1);
             workerGroup = new NioEventLoopGroup();
             
+            if (metricsEndpoint != null) {
+                metricsEndpoint.start();
+                if (config.getMetricsPort() > 0) {
+                    startMetricsPort();
+                }
+            }
+            
             ServerBootstrap bootstrap = new ServerBootstrap();
             bootstrap.group(bossGroup, workerGroup)
                 .channel(NioServerSocketChannel.class)
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel ch) {
-                        ChannelPipeline pipeline = ch.pipeline();
-                        pipeline.addLast(new HttpServerCodec());
-                        pipeline.addLast(new HttpObjectAggregator(1048576));
-                        pipeline.addLast(new MochaRequestHandler());
+                        if (sslContext == null) {
+                            configureHttp1(ch.pipeline());
+                            return;
+                        }
+                        SslHandler sslHandler = sslContext.newHandler(ch.alloc());
+                        tlsMetrics.track(sslHandler);
+                        ch.pipeline().addLast(sslHandler);
+                        if (config.isHttp2Enabled()) {
+                            ch.pipeline().addLast(new ProtocolNegotiationHandler());
+                        } else {
+                            configureHttp1(ch.pipeline());
+                        }
                     }
                 })
                 .option(ChannelOption.SO_BACKLOG, 128)
@@ -94,6 +251,172 @@ public class MochaServer {
         return startFuture;
     }
     
+    private void startMetricsPort() throws InterruptedException {
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(bossGroup, workerGroup)
+            .channel(NioServerSocketChannel.class)
+            .childHandler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) {
+                    ch.pipeline().addLast(new HttpServerCodec());
+                    ch.pipeline().addLast(new HttpObjectAggregator(8192));
+                    ch.pipeline().addLast(diagnosticsHandler);
+                }
+            });
+        metricsChannel = bootstrap.bind(config.getHost(), config.getMetricsPort()).sync().channel();
+        logger.info("Metrics served on {}:{}{}", config.getHost(), config.getMetricsPort(), config.getMetricsPath());
+    }
+    
+    /**
+     * Whether the scrape and the phase breakdown are served on a port of their own rather than
+     * next to the application's routes.
+     */
+    private boolean hasMetricsPort() {
+        return metricsEndpoint != null && config.getMetricsPort() > 0;
+    }
+    
+    /**
+     * Answer a request for the scrape, the phase breakdown or the slow requests, if it is one.
+     * They are answered on the event loop without reaching the router or the executors.
+     * 
+     * @return true if the request was answered
+     */
+    private boolean serveDiagnostics(ChannelHandlerContext ctx, FullHttpRequest request) {
+        if (metricsEndpoint != null && MetricsEndpoint.isGet(request, config.getMetricsPath())) {
+            metricsEndpoint.respond(ctx);
+            return true;
+        }
+        if (phaseTimings != null && MetricsEndpoint.isGet(request, config.getPhaseTimingPath())) {
+            respondJson(ctx, phaseTimings.snapshot());
+            return true;
+        }
+        if (slowRequests != null && MetricsEndpoint.isGet(request, config.getSlowRequestPath())) {
+            respondJson(ctx, slowRequests.snapshot());
+            return true;
+        }
+        return false;
+    }
+    
+    private static void respondJson(ChannelHandlerContext ctx, Object body) {
+        ByteBuf content = ctx.alloc().buffer();
+        try {
+            MediaCodecs.json().write(body, new ByteBufOutputStream(content));
+        } catch (IOException e) {
+            content.release();
+            throw new UncheckedIOException(e);
+        }
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, MediaCodecs.JSON);
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        ctx.writeAndFlush(response);
+    }
+    
+    /**
+     * Serves the metrics port, which answers nothing but the diagnostics.
+     */
+    @ChannelHandler.Sharable
+    private class DiagnosticsHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+        
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            if (serveDiagnostics(ctx, request)) {
+                return;
+            }
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND);
+            response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+            ctx.writeAndFlush(response);
+        }
+        
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.debug("Metrics connection failed", cause);
+            ctx.close();
+        }
+    }
+    
+    /**
+     * The registry holding the server's request and connection metrics: a Prometheus registry
+     * when metrics are enabled.
+     * 
+     * @return the meter registry
+     */
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+    
+    /**
+     * The sampler keeping slow requests, for reading or {@link SlowRequestSampler#dump dumping} them.
+     * 
+     * @return the sampler, or null if slow request sampling is disabled
+     */
+    public SlowRequestSampler getSlowRequestSampler() {
+        return slowRequests;
+    }
+    
+    private void startPinningMonitor() {
+        try {
+            pinningMonitor = new PinningMonitor(meterRegistry,
+                Duration.ofMillis(config.getPinningThresholdMillis()),
+                Duration.ofMillis(config.getPinningWarnThresholdMillis()));
+            pinningMonitor.start();
+        } catch (RuntimeException | LinkageError e) {
+            // JFR is missing from some runtimes, e.g. native images built without it or a JRE
+            // without the jdk.jfr module, which fails with NoClassDefFoundError
+            logger.warn("Virtual thread pinning monitor unavailable", e);
+            pinningMonitor = null;
+        }
+    }
+    
+    private void configureHttp1(ChannelPipeline pipeline) {
+        pipeline.addLast(new HttpServerCodec());
+        if (tracksPhases()) {
+            pipeline.addLast(RequestArrivalHandler.INSTANCE);
+        }
+        pipeline.addLast(new HttpObjectAggregator(1048576));
+        if (config.isWebSocketCompressionEnabled()) {
+            pipeline.addLast(new WebSocketServerCompressionHandler());
+        }
+        pipeline.addLast(new MochaRequestHandler());
+    }
+    
+    private void configureHttp2(ChannelPipeline pipeline) {
+        pipeline.addLast(Http2FrameCodecBuilder.forServer().build());
+        // Each stream gets its own child channel that sees plain HTTP/1.1 objects
+        pipeline.addLast(new Http2MultiplexHandler(new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel stream) {
+                stream.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(true));
+                if (tracksPhases()) {
+                    stream.pipeline().addLast(RequestArrivalHandler.INSTANCE);
+                }
+                stream.pipeline().addLast(new HttpObjectAggregator(1048576));
+                stream.pipeline().addLast(new MochaRequestHandler());
+            }
+        }));
+    }
+    
+    /**
+     * Completes the pipeline once ALPN has settled on h2 or HTTP/1.1.
+     */
+    private class ProtocolNegotiationHandler extends ApplicationProtocolNegotiationHandler {
+        
+        ProtocolNegotiationHandler() {
+            super(ApplicationProtocolNames.HTTP_1_1);
+        }
+        
+        @Override
+        protected void configurePipeline(ChannelHandlerContext ctx, String protocol) {
+            if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                configureHttp2(ctx.pipeline());
+            } else if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+                configureHttp1(ctx.pipeline());
+            } else {
+                throw new IllegalStateException("Unsupported application protocol: " + protocol);
+            }
+        }
+    }
+    
     /**
      * Stop the server.
      */
@@ -102,6 +425,28 @@ public class MochaServer {
         if (serverChannel != null) {
             serverChannel.close();
         }
+        if (metricsChannel != null) {
+            metricsChannel.close();
+        }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
+        if (tracer != null) {
+            tracer.close();
+        }
+        if (accessLog != null) {
+            accessLog.close();
+        }
+        if (slowRequests != null) {
+            slowRequests.close();
+            if (config.getSlowRequestDumpFile() != null) {
+                try {
+                    slowRequests.dump(Path.of(config.getSlowRequestDumpFile()));
+                } catch (IOException e) {
+                    logger.warn("Failed to write slow requests to {}", config.getSlowRequestDumpFile(), e);
+                }
+            }
+        }
         if (workerGroup != null) {
             workerGroup.shutdownGracefully();
         }
@@ -109,6 +454,9 @@ public class MochaServer {
             bossGroup.shutdownGracefully();
         }
         executorManager.shutdown();
+        if (pinningMonitor != null) {
+            pinningMonitor.stop();
+        }
         logger.info("MochaAPI server stopped");
     }
     
@@ -118,39 +466,153 @@ public class MochaServer {
         
         @Override
         protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            long startNanos = System.nanoTime();
+            if (WebSocketHandshake.isUpgradeRequest(request) && upgradeToWebSocket(ctx, request)) {
+                return;
+            }
+            if (!hasMetricsPort() && serveDiagnostics(ctx, request)) {
+                return;
+            }
+            
             activeConnections.incrementAndGet();
             requestCounter.increment();
             
             logger.debug("Processing {} request to {}", request.method(), request.uri());
             
+            RequestReceivedEvent received = null;
+            if (RequestEvents.isEnabled()) {
+                received = new RequestReceivedEvent();
+                received.begin();
+            }
+            ResponseWrittenEvent responseEvent = null;
+            if (RequestEvents.isResponseEventEnabled()) {
+                responseEvent = new ResponseWrittenEvent();
+                responseEvent.begin();
+            }
+            
+            // What was set up before a failure, so that it is finished like any answered request
+            RequestContext begun = null;
+            HttpMetrics.Exchange begunExchange = HttpMetrics.Exchange.NONE;
             try {
                 // Create request context
                 RequestContext context = createRequestContext(request);
+                begun = context;
+                context.setResponseEvent(responseEvent);
+                if (received != null) {
+                    received.end();
+                    if (received.shouldCommit()) {
+                        received.method = context.getMethod();
+                        received.path = context.getPath();
+                        received.requestBytes = request.content().readableBytes();
+                        received.commit();
+                    }
+                }
+                if (tracer != null) {
+                    tracer.start(context);
+                }
+                if (tracksPhases()) {
+                    RequestPhases phases = new RequestPhases(RequestArrivalHandler.headNanos(ctx, startNanos));
+                    phases.mark(RequestPhases.Phase.DECODE);
+                    context.setPhases(phases);
+                }
+                if (slowRequests != null) {
+                    slowRequests.begin(context, startNanos);
+                }
                 
                 // Handle request asynchronously
-                router.handleRequest(context, executorManager)
+                CompletableFuture<Object> handling = router.handleRequest(context, executorManager);
+                // Routing has run by now, so the request is counted under its route's template
+                HttpMetrics.Exchange exchange = startExchange(ctx, context, startNanos, request.content().readableBytes());
+                begunExchange = exchange;
+                
+                // Stop the handler if the client goes away before it has answered
+                ChannelFutureListener onClose = future -> handling.cancel(true);
+                ctx.channel().closeFuture().addListener(onClose);
+                
+                handling
                     .thenAccept(response -> {
+                        markExecuted(context);
                         try {
-                            writeResponse(ctx, request, response);
+                            writeResponse(ctx, request, context, exchange, response);
                         } catch (Exception e) {
-                            writeErrorResponse(ctx, request, e);
+                            writeErrorResponse(ctx, request, context, exchange, e);
                         }
                     })
                     .exceptionally(throwable -> {
-                        writeErrorResponse(ctx, request, throwable);
+                        markExecuted(context);
+                        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause() : throwable;
+                        // Nobody is left to read the response of a cancelled request
+                        if (!(cause instanceof CancellationException) && ctx.channel().isActive()) {
+                            writeErrorResponse(ctx, request, context, exchange, cause);
+                        } else {
+                            exchange.finish(HttpMetrics.CLIENT_CLOSED_REQUEST, 0);
+                            if (observesWrite(context)) {
+                                requestWritten(context, HttpMetrics.CLIENT_CLOSED_REQUEST, 0, null);
+                            }
+                        }
                         return null;
                     })
                     .whenComplete((result, throwable) -> {
+                        ctx.channel().closeFuture().removeListener(onClose);
                         activeConnections.decrementAndGet();
                     });
-                    
+                
             } catch (Exception e) {
                 logger.error("Error processing request to {}", request.uri(), e);
-                writeErrorResponse(ctx, request, e);
+                writeErrorResponse(ctx, request, begun, begunExchange, e);
                 activeConnections.decrementAndGet();
             }
         }
         
+        private HttpMetrics.Exchange startExchange(ChannelHandlerContext ctx, RequestContext context, long startNanos,
+                                                   long requestBytes) {
+            if (accessLog == null) {
+                return httpMetrics != null ? httpMetrics.start(context, startNanos, requestBytes) : HttpMetrics.Exchange.NONE;
+            }
+            HttpMetrics.Exchange exchange = httpMetrics != null
+                ? httpMetrics.start(context, startNanos, requestBytes)
+                : HttpMetrics.Exchange.untracked(startNanos, requestBytes);
+            exchange.logTo(accessLog, accessLog.nameId(HttpMetrics.routeKey(context)), clientAddress(ctx), clientPort(ctx));
+            return exchange;
+        }
+        
+        /**
+         * The client's address, taken from the connection once rather than copied for every request.
+         */
+        private byte[] clientAddress(ChannelHandlerContext ctx) {
+            // HTTP/2 streams share their connection's address
+            Channel connection = ctx.channel() instanceof Http2StreamChannel ? ctx.channel().parent() : ctx.channel();
+            byte[] address = connection.attr(CLIENT_ADDRESS).get();
+            if (address == null && connection.remoteAddress() instanceof InetSocketAddress) {
+                InetAddress remote = ((InetSocketAddress) connection.remoteAddress()).getAddress();
+                if (remote != null) {
+                    address = remote.getAddress();
+                    connection.attr(CLIENT_ADDRESS).set(address);
+                }
+            }
+            return address;
+        }
+        
+        private int clientPort(ChannelHandlerContext ctx) {
+            SocketAddress remote = ctx.channel().remoteAddress();
+            return remote instanceof InetSocketAddress ? ((InetSocketAddress) remote).getPort() : 0;
+        }
+        
+        private boolean upgradeToWebSocket(ChannelHandlerContext ctx, FullHttpRequest request) {
+            RequestContext context = createRequestContext(request);
+            Consumer<WebSocketSession> endpoint = router.findWebSocketEndpoint(context.getPath());
+            if (endpoint == null) {
+                return false;
+            }
+            requestCounter.increment();
+            // An upgraded connection counts as active until it closes
+            activeConnections.incrementAndGet();
+            ctx.channel().closeFuture().addListener(future -> activeConnections.decrementAndGet());
+            WebSocketHandshake.upgrade(ctx, request, context, endpoint, config, executorManager);
+            return true;
+        }
+        
         private RequestContext createRequestContext(FullHttpRequest request) {
             RequestContext context = new RequestContext();
             context.setMethod(request.method().name());
@@ -187,38 +649,96 @@ public class MochaServer {
             
             // Set body
             if (request.content() != null && request.content().readableBytes() > 0) {
-                context.setBody(request.content().toString(io.netty.util.CharsetUtil.UTF_8));
+                context.setBodyBytes(ByteBufUtil.getBytes(request.content()));
             }
             
+            // Negotiate the body formats once, so nothing downstream inspects the headers again
+            context.setRequestCodec(mediaCodecs.forContentType(context.getContentType()));
+            context.setResponseCodec(mediaCodecs.forAccept(request.headers().get(HttpHeaderNames.ACCEPT)));
+            
             return context;
         }
         
-        private void writeResponse(ChannelHandlerContext ctx, FullHttpRequest request, Object response) {
+        private void writeResponse(ChannelHandlerContext ctx, FullHttpRequest request, RequestContext context,
+                                   HttpMetrics.Exchange exchange, Object response) {
+            // Event streams take over the connection instead of producing a single response
+            if (response instanceof SseTopic) {
+                exchange.finish(HttpResponseStatus.OK.code(), 0);
+                endSlowRequest(context, HttpResponseStatus.OK.code());
+                ((SseTopic) response).subscribe(ctx.channel(), request.headers().get(LAST_EVENT_ID));
+                return;
+            }
+            if (response instanceof SseEmitter) {
+                exchange.finish(HttpResponseStatus.OK.code(), 0);
+                endSlowRequest(context, HttpResponseStatus.OK.code());
+                ((SseEmitter) response).attach(ctx.channel());
+                return;
+            }
+            
+            // Streams, cursors and large collections are written element by element as they are read
+            MediaCodec codec = context.getResponseCodec() != null ? context.getResponseCodec() : mediaCodecs.getDefault();
+            boolean lines = MediaCodecs.NDJSON.equals(codec.getMediaType());
+            FieldSet fields = selectedFields(context);
+            if (JsonStreamWriter.isStreamable(response, lines, config.getStreamingCollectionThreshold())) {
+                if (lines || MediaCodecs.JSON.equals(codec.getMediaType())) {
+                    streamResponse(ctx, request, context, exchange, response, codec, fields);
+                    return;
+                }
+                // Other formats are written in one piece
+                if (!(response instanceof Collection)) {
+                    response = JsonStreamWriter.collect(response);
+                }
+            }
+            
             FullHttpResponse httpResponse;
+            HttpResponseStatus status = response instanceof ErrorResponse
+                ? HttpResponseStatus.valueOf(((ErrorResponse) response).getStatus())
+                : HttpResponseStatus.OK;
             
-            if (response instanceof String) {
+            if (response == null) {
+                // Void handlers and stages that complete with nothing answer a JSON null
+                httpResponse = new DefaultFullHttpResponse(
+                    HttpVersion.HTTP_1_1,
+                    status,
+                    io.netty.buffer.Unpooled.copiedBuffer("null", io.netty.util.CharsetUtil.UTF_8)
+                );
+                httpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json");
+            } else if (response instanceof String) {
                 httpResponse = new DefaultFullHttpResponse(
                     HttpVersion.HTTP_1_1,
-                    HttpResponseStatus.OK,
+                    status,
                     io.netty.buffer.Unpooled.copiedBuffer((String) response, io.netty.util.CharsetUtil.UTF_8)
                 );
                 httpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
             } else {
-                // Serialize object to JSON using Jackson
+                // Serialize with the codec negotiated from the Accept header
+                ByteBuf content = ctx.alloc().buffer();
                 try {
-                    String jsonResponse = OBJECT_MAPPER.writeValueAsString(response);
-                    httpResponse = new DefaultFullHttpResponse(
-                        HttpVersion.HTTP_1_1,
-                        HttpResponseStatus.OK,
-                        io.netty.buffer.Unpooled.copiedBuffer(jsonResponse, io.netty.util.CharsetUtil.UTF_8)
-                    );
-                    httpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json");
+                    SerializationEvent serialization = null;
+                    if (RequestEvents.isEnabled()) {
+                        serialization = new SerializationEvent();
+                        serialization.begin();
+                    }
+                    codec.write(response, new ByteBufOutputStream(content), fields);
+                    if (serialization != null) {
+                        serialization.end();
+                        if (serialization.shouldCommit()) {
+                            serialization.route = RequestEvents.template(context.getRouteKey());
+                            serialization.mediaType = codec.getMediaType();
+                            serialization.bytes = content.readableBytes();
+                            serialization.commit();
+                        }
+                    }
+                    httpResponse = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content);
+                    httpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, codec.getMediaType());
+                    httpResponse.headers().set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT);
                 } catch (Exception e) {
-                    // Fallback to toString if JSON serialization fails
+                    content.release();
+                    // Fallback to toString if serialization fails
                     String jsonResponse = "{\"data\":\"" + response.toString() + "\"}";
                     httpResponse = new DefaultFullHttpResponse(
                         HttpVersion.HTTP_1_1,
-                        HttpResponseStatus.OK,
+                        status,
                         io.netty.buffer.Unpooled.copiedBuffer(jsonResponse, io.netty.util.CharsetUtil.UTF_8)
                     );
                     httpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json");
@@ -228,26 +748,181 @@ public class MochaServer {
             httpResponse.headers().set(HttpHeaderNames.CONTENT_LENGTH, httpResponse.content().readableBytes());
             httpResponse.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
             
-            ctx.writeAndFlush(httpResponse);
+            sendResponse(ctx, context, exchange, httpResponse, null);
+        }
+        
+        /**
+         * Write a complete response, recording it and, once the socket has taken it, its phases.
+         */
+        private void sendResponse(ChannelHandlerContext ctx, RequestContext context, HttpMetrics.Exchange exchange,
+                                  FullHttpResponse httpResponse, Throwable error) {
+            RequestPhases phases = context != null ? context.getPhases() : null;
+            if (phases != null) {
+                phases.mark(RequestPhases.Phase.SERIALIZE);
+                if (config.isServerTimingEnabled()) {
+                    httpResponse.headers().set(SERVER_TIMING, phases.serverTiming());
+                }
+            }
+            int status = httpResponse.status().code();
+            int responseBytes = httpResponse.content().readableBytes();
+            exchange.finish(status, responseBytes);
+            ChannelFuture written = ctx.writeAndFlush(httpResponse);
+            if (context != null && observesWrite(context)) {
+                written.addListener(future -> requestWritten(context, status, responseBytes, error));
+            }
+        }
+        
+        /**
+         * End the execute phase of handlers that did not end it on their own thread: asynchronous
+         * and batched handlers, and handlers that failed.
+         */
+        private void markExecuted(RequestContext context) {
+            if (context.getPhases() != null) {
+                context.getPhases().mark(RequestPhases.Phase.EXECUTE);
+            }
+        }
+        
+        /**
+         * Whether anything waits for the request's response to be written: its phases, its
+         * Flight Recorder event or the slow request sampler.
+         */
+        private boolean observesWrite(RequestContext context) {
+            return context.getPhases() != null || context.getResponseEvent() != null || slowRequests != null;
         }
         
-        private void writeErrorResponse(ChannelHandlerContext ctx, FullHttpRequest request, Throwable error) {
+        /**
+         * Stop watching a request for slowness, keeping it if it was slow.
+         */
+        private void endSlowRequest(RequestContext context, int status) {
+            if (slowRequests != null) {
+                slowRequests.end(context, status);
+            }
+        }
+        
+        /**
+         * Close the phases of a request whose response the socket has taken, and hand them to
+         * phase timing and the tracer. Commit the request's Flight Recorder event, and stop
+         * watching it for slowness.
+         */
+        private void requestWritten(RequestContext context, int status, long responseBytes, Throwable error) {
+            RequestPhases phases = context.getPhases();
+            if (phases != null) {
+                phases.mark(RequestPhases.Phase.WRITE);
+                if (phaseTimings != null && context.getRouteKey() != null) {
+                    phaseTimings.record(context.getRouteKey(), phases);
+                }
+                if (tracer != null) {
+                    tracer.finish(context, status, error);
+                }
+            }
+            ResponseWrittenEvent event = context.getResponseEvent();
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.method = context.getMethod();
+                    event.route = RequestEvents.template(context.getRouteKey());
+                    event.path = context.getPath();
+                    event.status = status;
+                    event.requestBytes = context.getBodyBytes() != null ? context.getBodyBytes().length : 0;
+                    event.responseBytes = responseBytes;
+                    event.traceId = context.getTraceId();
+                    event.commit();
+                }
+            }
+            endSlowRequest(context, status);
+        }
+        
+        /**
+         * The properties the client selected with the fields query parameter, if it sent one.
+         */
+        private FieldSet selectedFields(RequestContext context) {
+            String parameter = config.getFieldsParameter();
+            if (parameter == null || parameter.isEmpty()) {
+                return null;
+            }
+            String fields = context.getQueryParam(parameter);
+            return fields != null ? FieldSet.parse(QueryStringDecoder.decodeComponent(fields)) : null;
+        }
+        
+        private void streamResponse(ChannelHandlerContext ctx, FullHttpRequest request, RequestContext context,
+                                    HttpMetrics.Exchange exchange, Object response, MediaCodec codec, FieldSet fields) {
+            JsonStreamWriter writer = new JsonStreamWriter(ctx.channel(), response, mediaCodecs.find(MediaCodecs.JSON), fields,
+                codec.getMediaType(), config.getStreamingFlushBytes(), config.getStreamingFlushIntervalMillis());
+            // Rows may come from a blocking cursor, so they are read on a virtual thread rather than the event loop
+            CompletableFuture<Object> streaming = executorManager.executeVirtual(() -> CurrentRequest.callWith(context, () -> {
+                try {
+                    writer.write();
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }), context.getRouteKey());
+            
+            // A client that goes away interrupts the reader, which then closes the cursor
+            ChannelFutureListener onClose = future -> streaming.cancel(true);
+            ctx.channel().closeFuture().addListener(onClose);
+            streaming.whenComplete((result, throwable) -> {
+                ctx.channel().closeFuture().removeListener(onClose);
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause() : throwable;
+                if (cause instanceof UncheckedIOException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                int status;
+                if (cause instanceof CancellationException) {
+                    writer.discard();
+                    status = HttpMetrics.CLIENT_CLOSED_REQUEST;
+                } else if (cause != null && !writer.isStarted() && ctx.channel().isActive()) {
+                    writeErrorResponse(ctx, request, context, exchange, cause);
+                    return;
+                } else {
+                    // A stream that fails part-way has already sent its status
+                    status = writer.isStarted() ? HttpResponseStatus.OK.code() : HttpMetrics.CLIENT_CLOSED_REQUEST;
+                }
+                exchange.finish(status, writer.getBytesWritten());
+                // Elements are encoded as they are written, so both count as writing
+                if (observesWrite(context)) {
+                    requestWritten(context, status, writer.getBytesWritten(),
+                        cause instanceof CancellationException ? null : cause);
+                }
+            });
+        }
+        
+        private void writeErrorResponse(ChannelHandlerContext ctx, FullHttpRequest request, RequestContext context,
+                                        HttpMetrics.Exchange exchange, Throwable error) {
             String errorMessage = "{\"error\":\"" + error.getMessage() + "\"}";
+            HttpResponseStatus status = errorStatus(error);
             FullHttpResponse httpResponse = new DefaultFullHttpResponse(
                 HttpVersion.HTTP_1_1,
-                HttpResponseStatus.INTERNAL_SERVER_ERROR,
+                status,
                 io.netty.buffer.Unpooled.copiedBuffer(errorMessage, io.netty.util.CharsetUtil.UTF_8)
             );
             
             httpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json");
             httpResponse.headers().set(HttpHeaderNames.CONTENT_LENGTH, httpResponse.content().readableBytes());
             
-            ctx.writeAndFlush(httpResponse);
+            sendResponse(ctx, context, exchange, httpResponse, error);
+        }
+        
+        private HttpResponseStatus errorStatus(Throwable error) {
+            if (error instanceof TimeoutException) {
+                return HttpResponseStatus.GATEWAY_TIMEOUT;
+            }
+            if (error instanceof RejectedExecutionException) {
+                return HttpResponseStatus.SERVICE_UNAVAILABLE;
+            }
+            return HttpResponseStatus.INTERNAL_SERVER_ERROR;
         }
         
         @Override
         public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-            cause.printStackTrace();
+            if (accessLog != null) {
+                // Only the class is interned: messages carry addresses and offsets that would fill the name table
+                accessLog.logError(accessLog.nameId(cause.getClass().getName()), clientAddress(ctx), clientPort(ctx));
+                logger.debug("Closing connection from {} after an error", ctx.channel().remoteAddress(), cause);
+            } else {
+                logger.warn("Closing connection from {} after an error", ctx.channel().remoteAddress(), cause);
+            }
             ctx.close();
         }
     }
@@ -0,0 +1,40 @@
+package com.mochaapi.runtime.server;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.util.AttributeKey;
+
+/**
+ * Notes when each request's head has been decoded, before the aggregator waits for its body,
+ * so phase timing can start there. The codec hands requests on one at a time and the aggregated
+ * request reaches the request handler before the next head is decoded, so one attribute per
+ * channel is enough.
+ */
+@ChannelHandler.Sharable
+class RequestArrivalHandler extends ChannelInboundHandlerAdapter {
+    
+    static final AttributeKey<Long> HEAD_NANOS = AttributeKey.valueOf("mochaapi.headNanos");
+    static final RequestArrivalHandler INSTANCE = new RequestArrivalHandler();
+    
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof HttpRequest) {
+            ctx.channel().attr(HEAD_NANOS).set(System.nanoTime());
+        }
+        ctx.fireChannelRead(msg);
+    }
+    
+    /**
+     * When the head of the request being handled on a channel arrived.
+     * 
+     * @param ctx the request handler's context
+     * @param fallbackNanos the time to use if the head was not stamped
+     * @return the arrival time
+     */
+    static long headNanos(ChannelHandlerContext ctx, long fallbackNanos) {
+        Long stamped = ctx.channel().attr(HEAD_NANOS).get();
+        return stamped != null ? stamped : fallbackNanos;
+    }
+}
@@ -0,0 +1,87 @@
+package com.mochaapi.runtime.server;
+
+import com.mochaapi.runtime.MochaAPIConfig;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLException;
+import java.io.File;
+
+/**
+ * Builds the server {@link SslContext} from the PEM certificate and key configured in {@link MochaAPIConfig}.
+ * The OpenSSL provider is used when netty-tcnative is on the classpath, the JDK provider otherwise.
+ */
+public final class TlsContextFactory {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TlsContextFactory.class);
+    private static final String JDK_SESSION_TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+    
+    private TlsContextFactory() {
+    }
+    
+    /**
+     * Create the server TLS context.
+     * 
+     * @param config the server configuration
+     * @return the TLS context
+     * @throws SSLException if the certificate or key cannot be loaded
+     */
+    public static SslContext create(MochaAPIConfig config) throws SSLException {
+        SslProvider provider = selectProvider();
+        if (provider == SslProvider.JDK) {
+            checkSessionTickets(config);
+        }
+        
+        SslContextBuilder builder = SslContextBuilder.forServer(
+                new File(config.getTlsCertificatePath()),
+                new File(config.getTlsPrivateKeyPath()),
+                config.getTlsPrivateKeyPassword())
+            .sslProvider(provider)
+            .sessionCacheSize(config.getTlsSessionCacheSize())
+            .sessionTimeout(config.getTlsSessionTimeoutSeconds());
+        
+        if (config.isHttp2Enabled()) {
+            builder.ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+                .applicationProtocolConfig(new ApplicationProtocolConfig(
+                    ApplicationProtocolConfig.Protocol.ALPN,
+                    ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                    ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                    ApplicationProtocolNames.HTTP_2,
+                    ApplicationProtocolNames.HTTP_1_1));
+        }
+        
+        SslContext sslContext = builder.build();
+        logger.info("TLS enabled using the {} provider (ALPN: {})", provider, config.isHttp2Enabled() ? "h2, http/1.1" : "off");
+        return sslContext;
+    }
+    
+    /**
+     * The JDK reads its ticket setting from a system property once, JVM-wide, so it cannot be
+     * applied per context. Point out a mismatch instead of changing global state.
+     */
+    private static void checkSessionTickets(MochaAPIConfig config) {
+        String property = System.getProperty(JDK_SESSION_TICKETS_PROPERTY);
+        // Tickets are on by default since JDK 13
+        boolean ticketsEnabled = property == null || Boolean.parseBoolean(property);
+        if (ticketsEnabled != config.isTlsSessionTicketsEnabled()) {
+            logger.warn("TLS session tickets are {} in this JVM but tlsSessionTicketsEnabled is {}; start the JVM with -D{}={}",
+                ticketsEnabled ? "enabled" : "disabled", config.isTlsSessionTicketsEnabled(),
+                JDK_SESSION_TICKETS_PROPERTY, config.isTlsSessionTicketsEnabled());
+        }
+    }
+    
+    private static SslProvider selectProvider() {
+        if (OpenSsl.isAvailable() && SslProvider.isAlpnSupported(SslProvider.OPENSSL)) {
+            return SslProvider.OPENSSL;
+        }
+        return SslProvider.JDK;
+    }
+}
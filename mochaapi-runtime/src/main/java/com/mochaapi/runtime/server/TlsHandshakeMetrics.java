@@ -0,0 +1,101 @@
+package com.mochaapi.runtime.server;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.handler.ssl.SslHandler;
+
+import javax.net.ssl.SSLSession;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records TLS handshake counts, durations and how many handshakes resumed an earlier session.
+ */
+class TlsHandshakeMetrics {
+    
+    // Enough to recognize the sessions a busy server's cache is likely to resume
+    private static final int REMEMBERED_SESSIONS = 4096;
+    
+    private final Counter fullHandshakes;
+    private final Counter resumedHandshakes;
+    private final Counter failedHandshakes;
+    private final Timer handshakeTimer;
+    private final Map<ByteBuffer, Boolean> sessionIds = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> eldest) {
+            return size() > REMEMBERED_SESSIONS;
+        }
+    };
+    
+    TlsHandshakeMetrics(MeterRegistry meterRegistry) {
+        this.fullHandshakes = Counter.builder("mochaapi_tls_handshakes_total")
+            .description("Completed TLS handshakes")
+            .tag("resumed", "false")
+            .register(meterRegistry);
+        this.resumedHandshakes = Counter.builder("mochaapi_tls_handshakes_total")
+            .description("Completed TLS handshakes")
+            .tag("resumed", "true")
+            .register(meterRegistry);
+        this.failedHandshakes = Counter.builder("mochaapi_tls_handshake_failures_total")
+            .description("Failed TLS handshakes")
+            .register(meterRegistry);
+        this.handshakeTimer = Timer.builder("mochaapi_tls_handshake")
+            .description("TLS handshake duration")
+            .register(meterRegistry);
+        Gauge.builder("mochaapi_tls_resumption_ratio", this, TlsHandshakeMetrics::resumptionRatio)
+            .description("Fraction of completed TLS handshakes that resumed an earlier session")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Record the outcome once the handler's handshake completes.
+     */
+    void track(SslHandler sslHandler) {
+        long startNanos = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        sslHandler.handshakeFuture().addListener(future -> {
+            if (!future.isSuccess()) {
+                failedHandshakes.increment();
+                return;
+            }
+            handshakeTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            if (isResumed(sslHandler.engine().getSession(), startMillis)) {
+                resumedHandshakes.increment();
+            } else {
+                fullHandshakes.increment();
+            }
+        });
+    }
+    
+    /**
+     * Whether a completed handshake resumed an earlier session. A session ID this server has seen
+     * before is certain: TLS 1.2 and session cache resumption keep the ID. The JDK gives a session
+     * resumed from a TLS 1.3 ticket a fresh ID but the creation time of the session it resumes,
+     * so for those the creation time is compared with the start of this handshake, which misses
+     * a resumption of a session created within the same clock tick.
+     * 
+     * @param session the negotiated session
+     * @param startMillis the wall-clock time at which the handshake started
+     */
+    boolean isResumed(SSLSession session, long startMillis) {
+        byte[] id = session.getId();
+        if (id != null && id.length > 0) {
+            synchronized (sessionIds) {
+                if (sessionIds.put(ByteBuffer.wrap(id.clone()), Boolean.TRUE) != null) {
+                    return true;
+                }
+            }
+        }
+        return session.getCreationTime() < startMillis;
+    }
+    
+    double resumptionRatio() {
+        double resumed = resumedHandshakes.count();
+        double total = resumed + fullHandshakes.count();
+        return total == 0 ? 0 : resumed / total;
+    }
+}
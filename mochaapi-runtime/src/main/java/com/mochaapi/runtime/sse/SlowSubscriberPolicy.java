@@ -0,0 +1,18 @@
+package com.mochaapi.runtime.sse;
+
+/**
+ * What to do with a subscriber whose channel is not writable when an event is published.
+ */
+public enum SlowSubscriberPolicy {
+    
+    /**
+     * Skip the event for this subscriber and keep the connection open.
+     * The client can recover the gap by reconnecting with Last-Event-ID.
+     */
+    DROP,
+    
+    /**
+     * Close the subscriber's connection.
+     */
+    CLOSE
+}
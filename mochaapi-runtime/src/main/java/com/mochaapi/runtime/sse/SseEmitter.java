@@ -0,0 +1,169 @@
+package com.mochaapi.runtime.sse;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A per-connection event stream. Return it from a handler and keep sending events
+ * from any thread until {@link #complete()} is called or the client disconnects.
+ */
+public class SseEmitter {
+    
+    private final SlowSubscriberPolicy slowSubscriberPolicy;
+    private final Duration heartbeatInterval;
+    private final Object lock = new Object();
+    private final List<SseEvent> pending = new ArrayList<>();
+    private final List<Runnable> closeCallbacks = new ArrayList<>();
+    
+    private Channel channel;
+    private ScheduledFuture<?> heartbeatTask;
+    private boolean completed;
+    
+    public SseEmitter() {
+        this(SlowSubscriberPolicy.DROP, SseTopics.DEFAULT_HEARTBEAT_INTERVAL);
+    }
+    
+    public SseEmitter(SlowSubscriberPolicy slowSubscriberPolicy, Duration heartbeatInterval) {
+        this.slowSubscriberPolicy = slowSubscriberPolicy;
+        this.heartbeatInterval = heartbeatInterval;
+    }
+    
+    /**
+     * Send an unnamed event.
+     *
+     * @param data the event payload
+     * @return false if the event was dropped or the stream is closed
+     */
+    public boolean send(Object data) {
+        return send(SseEvent.of(data));
+    }
+    
+    /**
+     * Send an event. Events sent before the connection is attached are queued.
+     *
+     * @param event the event to send
+     * @return false if the event was dropped or the stream is closed
+     */
+    public boolean send(SseEvent event) {
+        synchronized (lock) {
+            if (completed) {
+                return false;
+            }
+            if (channel == null) {
+                pending.add(event);
+                return true;
+            }
+            return write(event);
+        }
+    }
+    
+    /**
+     * Finish the response. Further events are ignored.
+     */
+    public void complete() {
+        synchronized (lock) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            if (channel != null) {
+                cancelHeartbeat();
+                channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+            }
+        }
+    }
+    
+    /**
+     * Register a callback invoked when the client disconnects, so producers can stop early.
+     *
+     * @param callback the callback
+     */
+    public void onClose(Runnable callback) {
+        synchronized (lock) {
+            closeCallbacks.add(callback);
+        }
+    }
+    
+    /**
+     * Check whether events can still be sent.
+     *
+     * @return true until the stream is completed or the client disconnects
+     */
+    public boolean isOpen() {
+        synchronized (lock) {
+            return !completed && (channel == null || channel.isActive());
+        }
+    }
+    
+    /**
+     * Bind the stream to a client connection and flush queued events.
+     * Called by the server when a handler returns this emitter.
+     *
+     * @param channel the client connection
+     */
+    public void attach(Channel channel) {
+        synchronized (lock) {
+            if (this.channel != null) {
+                throw new IllegalStateException("Event stream is already attached to a connection");
+            }
+            this.channel = channel;
+            SseEncoder.writeHeaders(channel);
+            for (SseEvent event : pending) {
+                write(event);
+            }
+            pending.clear();
+            if (completed) {
+                channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+                return;
+            }
+            if (!heartbeatInterval.isZero() && !heartbeatInterval.isNegative()) {
+                long millis = heartbeatInterval.toMillis();
+                heartbeatTask = channel.eventLoop().scheduleAtFixedRate(() -> {
+                    if (channel.isWritable()) {
+                        SseEncoder.writeShared(channel, SseEncoder.HEARTBEAT);
+                    }
+                }, millis, millis, TimeUnit.MILLISECONDS);
+            }
+        }
+        channel.closeFuture().addListener(future -> onChannelClosed());
+    }
+    
+    private boolean write(SseEvent event) {
+        if (!channel.isWritable()) {
+            if (slowSubscriberPolicy == SlowSubscriberPolicy.CLOSE) {
+                channel.close();
+            }
+            return false;
+        }
+        ByteBuf encoded = SseEncoder.encode(event.getId(), event);
+        channel.writeAndFlush(new DefaultHttpContent(encoded));
+        return true;
+    }
+    
+    private void onChannelClosed() {
+        List<Runnable> callbacks;
+        synchronized (lock) {
+            completed = true;
+            cancelHeartbeat();
+            callbacks = new ArrayList<>(closeCallbacks);
+        }
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+    
+    private void cancelHeartbeat() {
+        if (heartbeatTask != null) {
+            heartbeatTask.cancel(false);
+            heartbeatTask = null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.mochaapi.runtime.sse;
+
+import com.mochaapi.runtime.codec.ObjectMappers;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Encodes events into the text/event-stream wire format.
+ */
+final class SseEncoder {
+    
+    /**
+     * Shared comment frame used as heartbeat; duplicated per channel, never released.
+     */
+    static final ByteBuf HEARTBEAT = Unpooled.unreleasableBuffer(
+        Unpooled.directBuffer(3).writeBytes(":\n\n".getBytes(CharsetUtil.US_ASCII)).asReadOnly());
+    
+    private SseEncoder() {
+    }
+    
+    /**
+     * Encode an event into a new reference-counted buffer owned by the caller.
+     */
+    static ByteBuf encode(String id, SseEvent event) {
+        String data = serialize(event.getData());
+        StringBuilder frame = new StringBuilder(data.length() + 32);
+        if (id != null) {
+            frame.append("id: ").append(id).append('\n');
+        }
+        if (event.getEvent() != null) {
+            frame.append("event: ").append(event.getEvent()).append('\n');
+        }
+        // CR, LF and CRLF all end a line on the wire, so each starts a data line of its own
+        int start = 0;
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == '\n' || c == '\r') {
+                frame.append("data: ").append(data, start, i).append('\n');
+                if (c == '\r' && i + 1 < data.length() && data.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        frame.append("data: ").append(data, start, data.length()).append("\n\n");
+        
+        ByteBuf buffer = ByteBufAllocator.DEFAULT.directBuffer(frame.length());
+        buffer.writeCharSequence(frame, CharsetUtil.UTF_8);
+        return buffer;
+    }
+    
+    /**
+     * Write the response head that switches the connection into event-stream mode.
+     */
+    static ChannelFuture writeHeaders(Channel channel) {
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/event-stream");
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, HttpHeaderValues.NO_CACHE);
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        HttpUtil.setTransferEncodingChunked(response, true);
+        return channel.writeAndFlush(response);
+    }
+    
+    /**
+     * Write a shared buffer to a channel without transferring ownership of the original.
+     */
+    static ChannelFuture writeShared(Channel channel, ByteBuf encoded) {
+        return channel.writeAndFlush(new DefaultHttpContent(encoded.retainedDuplicate()));
+    }
+    
+    private static String serialize(Object data) {
+        if (data == null) {
+            return "";
+        }
+        if (data instanceof String) {
+            return (String) data;
+        }
+        try {
+            return ObjectMappers.json().writeValueAsString(data);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to serialize event data", e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.mochaapi.runtime.sse;
+
+/**
+ * A single Server-Sent Event.
+ * The data is written as-is when it is a String and serialized to JSON otherwise.
+ */
+public class SseEvent {
+    
+    private final String id;
+    private final String event;
+    private final Object data;
+    
+    /**
+     * Create an event.
+     * 
+     * @param id the event ID, or null for the topic's next sequence number
+     * @param event the event name, or null for an unnamed event
+     * @param data the event payload
+     * @throws IllegalArgumentException if the ID or name contains a line break, which would start
+     *         fields or events of its own on the wire
+     */
+    public SseEvent(String id, String event, Object data) {
+        this.id = requireSingleLine(id, "id");
+        this.event = requireSingleLine(event, "event name");
+        this.data = data;
+    }
+    
+    /**
+     * Create an unnamed event without an explicit ID.
+     *
+     * @param data the event payload
+     * @return the event
+     */
+    public static SseEvent of(Object data) {
+        return new SseEvent(null, null, data);
+    }
+    
+    /**
+     * Create a named event without an explicit ID.
+     *
+     * @param event the event name
+     * @param data the event payload
+     * @return the event
+     */
+    public static SseEvent of(String event, Object data) {
+        return new SseEvent(null, event, data);
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getEvent() {
+        return event;
+    }
+    
+    public Object getData() {
+        return data;
+    }
+    
+    private static String requireSingleLine(String value, String field) {
+        // Browsers ignore an ID containing NUL, so it is refused along with line breaks
+        if (value != null && (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0 || value.indexOf('\0') >= 0)) {
+            throw new IllegalArgumentException("SSE " + field + " must not contain CR, LF or NUL");
+        }
+        return value;
+    }
+}
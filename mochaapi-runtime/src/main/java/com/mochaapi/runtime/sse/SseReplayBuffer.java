@@ -0,0 +1,75 @@
+package com.mochaapi.runtime.sse;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.function.Consumer;
+
+/**
+ * Bounded ring of recently published, already encoded events used for Last-Event-ID resume.
+ * Not thread-safe; guarded by the owning topic.
+ */
+final class SseReplayBuffer {
+    
+    private final String[] ids;
+    private final ByteBuf[] events;
+    private int head;
+    private int size;
+    
+    SseReplayBuffer(int capacity) {
+        this.ids = new String[capacity];
+        this.events = new ByteBuf[capacity];
+    }
+    
+    /**
+     * Append an event, taking ownership of the buffer. The oldest event is released when full.
+     */
+    void add(String id, ByteBuf encoded) {
+        if (events.length == 0) {
+            encoded.release();
+            return;
+        }
+        int slot = (head + size) % events.length;
+        if (size == events.length) {
+            events[head].release();
+            head = (head + 1) % events.length;
+        } else {
+            size++;
+        }
+        ids[slot] = id;
+        events[slot] = encoded;
+    }
+    
+    /**
+     * Visit every retained event published after the given ID.
+     * If the ID is unknown (or already evicted) every retained event is visited.
+     */
+    void forEachAfter(String lastEventId, Consumer<ByteBuf> action) {
+        int start = 0;
+        if (lastEventId != null) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (lastEventId.equals(ids[(head + i) % events.length])) {
+                    start = i + 1;
+                    break;
+                }
+            }
+        }
+        for (int i = start; i < size; i++) {
+            action.accept(events[(head + i) % events.length]);
+        }
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % events.length;
+            events[slot].release();
+            events[slot] = null;
+            ids[slot] = null;
+        }
+        head = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,127 @@
+package com.mochaapi.runtime.sse;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named broadcast channel for Server-Sent Events.
+ * A route subscribes the current connection by returning the topic from its handler;
+ * every published event is serialized once and fanned out to all subscribers.
+ */
+public class SseTopic {
+    
+    private final String name;
+    private final SlowSubscriberPolicy slowSubscriberPolicy;
+    private final Set<Channel> subscribers = ConcurrentHashMap.newKeySet();
+    private final SseReplayBuffer replayBuffer;
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final Object lock = new Object();
+    private long sequence;
+    
+    SseTopic(String name, int replayCapacity, SlowSubscriberPolicy slowSubscriberPolicy) {
+        this.name = name;
+        this.slowSubscriberPolicy = slowSubscriberPolicy;
+        this.replayBuffer = new SseReplayBuffer(replayCapacity);
+    }
+    
+    /**
+     * Publish an unnamed event to every subscriber.
+     *
+     * @param data the event payload
+     */
+    public void publish(Object data) {
+        publish(SseEvent.of(data));
+    }
+    
+    /**
+     * Publish an event to every subscriber.
+     * Events without an ID are assigned the next sequence number so clients can resume with Last-Event-ID.
+     *
+     * @param event the event to publish
+     */
+    public void publish(SseEvent event) {
+        synchronized (lock) {
+            String id = event.getId() != null ? event.getId() : Long.toString(++sequence);
+            ByteBuf encoded = SseEncoder.encode(id, event);
+            try {
+                for (Channel channel : subscribers) {
+                    deliver(channel, encoded);
+                }
+            } finally {
+                // The replay buffer takes over the reference held by this method
+                replayBuffer.add(id, encoded);
+            }
+        }
+    }
+    
+    /**
+     * Subscribe a connection to this topic, replaying retained events published after the given ID.
+     * Called by the server when a handler returns this topic.
+     *
+     * @param channel the client connection
+     * @param lastEventId the value of the Last-Event-ID request header, or null
+     */
+    public void subscribe(Channel channel, String lastEventId) {
+        synchronized (lock) {
+            SseEncoder.writeHeaders(channel);
+            replayBuffer.forEachAfter(lastEventId, encoded -> SseEncoder.writeShared(channel, encoded));
+            subscribers.add(channel);
+        }
+        channel.closeFuture().addListener(future -> subscribers.remove(channel));
+    }
+    
+    void heartbeat() {
+        for (Channel channel : subscribers) {
+            if (channel.isWritable()) {
+                SseEncoder.writeShared(channel, SseEncoder.HEARTBEAT);
+            }
+        }
+    }
+    
+    void close() {
+        synchronized (lock) {
+            for (Channel channel : subscribers) {
+                channel.close();
+            }
+            subscribers.clear();
+            replayBuffer.clear();
+        }
+    }
+    
+    private void deliver(Channel channel, ByteBuf encoded) {
+        if (channel.isWritable()) {
+            SseEncoder.writeShared(channel, encoded);
+            return;
+        }
+        droppedEvents.incrementAndGet();
+        if (slowSubscriberPolicy == SlowSubscriberPolicy.CLOSE) {
+            subscribers.remove(channel);
+            channel.close();
+        }
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public SlowSubscriberPolicy getSlowSubscriberPolicy() {
+        return slowSubscriberPolicy;
+    }
+    
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+    
+    /**
+     * Get the number of events not delivered because a subscriber was not writable.
+     *
+     * @return the dropped event count
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+}
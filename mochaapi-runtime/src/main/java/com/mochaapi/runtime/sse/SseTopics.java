@@ -0,0 +1,91 @@
+package com.mochaapi.runtime.sse;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of named broadcast topics.
+ * Topics are created on first use and shared by publishers and subscribing routes.
+ */
+public final class SseTopics {
+    
+    public static final int DEFAULT_REPLAY_CAPACITY = 256;
+    public static final Duration DEFAULT_HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+    
+    private static final ConcurrentHashMap<String, SseTopic> TOPICS = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService HEARTBEAT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mochaapi-sse-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private static ScheduledFuture<?> heartbeatTask;
+    
+    static {
+        setHeartbeatInterval(DEFAULT_HEARTBEAT_INTERVAL);
+    }
+    
+    private SseTopics() {
+    }
+    
+    /**
+     * Get or create a topic with the default replay capacity and the DROP slow subscriber policy.
+     *
+     * @param name the topic name
+     * @return the topic
+     */
+    public static SseTopic topic(String name) {
+        return topic(name, DEFAULT_REPLAY_CAPACITY, SlowSubscriberPolicy.DROP);
+    }
+    
+    /**
+     * Get or create a topic. The settings only apply when the topic does not exist yet.
+     *
+     * @param name the topic name
+     * @param replayCapacity how many recent events to keep for Last-Event-ID resume
+     * @param policy what to do with subscribers that cannot keep up
+     * @return the topic
+     */
+    public static SseTopic topic(String name, int replayCapacity, SlowSubscriberPolicy policy) {
+        return TOPICS.computeIfAbsent(name, topicName -> new SseTopic(topicName, replayCapacity, policy));
+    }
+    
+    /**
+     * Remove a topic, closing its subscribers and releasing its replay buffer.
+     *
+     * @param name the topic name
+     */
+    public static void remove(String name) {
+        SseTopic topic = TOPICS.remove(name);
+        if (topic != null) {
+            topic.close();
+        }
+    }
+    
+    /**
+     * Change how often idle subscribers receive a comment frame to keep intermediaries from timing out.
+     *
+     * @param interval the heartbeat interval, or zero to disable heartbeats
+     */
+    public static synchronized void setHeartbeatInterval(Duration interval) {
+        if (heartbeatTask != null) {
+            heartbeatTask.cancel(false);
+            heartbeatTask = null;
+        }
+        if (!interval.isZero() && !interval.isNegative()) {
+            long millis = interval.toMillis();
+            heartbeatTask = HEARTBEAT_SCHEDULER.scheduleAtFixedRate(
+                SseTopics::heartbeat, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private static void heartbeat() {
+        for (SseTopic topic : TOPICS.values()) {
+            topic.heartbeat();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.mochaapi.runtime.stream;
+
+import java.util.Iterator;
+
+/**
+ * Rows fetched lazily from a resource that must be released, such as a database cursor. A handler
+ * returning a cursor has it streamed to the client as it is read and closed once the response is
+ * finished, fails, or the client disconnects.
+ * 
+ * <pre>{@code
+ * @GetMapping("/orders/export")
+ * public Cursor<Order> export() {
+ *     ResultSet rows = statement.executeQuery("SELECT * FROM orders");
+ *     return Cursor.of(new OrderIterator(rows), () -> closeQuietly(rows));
+ * }
+ * }</pre>
+ */
+public interface Cursor<T> extends Iterator<T>, AutoCloseable {
+    
+    /**
+     * Release the underlying resource. The server calls it once, when the response is finished or abandoned.
+     */
+    @Override
+    void close();
+    
+    /**
+     * Wrap an iterator together with the action that releases what it reads from.
+     * 
+     * @param rows the rows
+     * @param onClose releases the resource
+     * @return a cursor over the rows
+     */
+    static <T> Cursor<T> of(Iterator<T> rows, Runnable onClose) {
+        return new Cursor<>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+            
+            @Override
+            public T next() {
+                return rows.next();
+            }
+            
+            @Override
+            public void close() {
+                onClose.run();
+            }
+        };
+    }
+}
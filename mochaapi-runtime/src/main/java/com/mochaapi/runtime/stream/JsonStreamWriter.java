@@ -0,0 +1,357 @@
+package com.mochaapi.runtime.stream;
+
+import com.mochaapi.runtime.codec.FieldSet;
+import com.mochaapi.runtime.codec.MediaCodec;
+import com.mochaapi.runtime.codec.MediaCodecs;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Writes a handler's {@code Stream}, {@code Iterator}, {@link Cursor} or large {@code Collection} result element by element,
+ * either as one JSON array or as newline-delimited JSON. Elements are encoded into a pooled chunk
+ * that is sent once it reaches the flush size, or once the flush interval passes while rows arrive
+ * slowly, so memory stays bounded by a few chunks however many rows there are. The first element
+ * is sent as soon as it is encoded, and a chunk is only written after the previous one has left
+ * when the connection is not writable, so a slow client holds back the reader instead of filling
+ * the heap.
+ * <p>
+ * The response head goes out with the first chunk: a result that fails before producing anything
+ * is reported as an ordinary error, while one that fails part-way closes the connection, leaving
+ * the client a truncated body rather than a response that looks complete.
+ */
+public final class JsonStreamWriter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(JsonStreamWriter.class);
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    
+    private final Channel channel;
+    private final Object value;
+    private final MediaCodec elementCodec;
+    private final FieldSet fields;
+    private final String mediaType;
+    private final boolean lines;
+    private final int flushBytes;
+    private final long flushIntervalNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private ByteBuf chunk;
+    private long lastFlushNanos;
+    private ChannelFuture lastWrite;
+    private long bytesWritten;
+    private boolean headersSent;
+    private boolean first = true;
+    
+    /**
+     * Create a writer for one response.
+     * 
+     * @param channel the connection to write to
+     * @param value a result for which {@link #isStreamable} holds
+     * @param elementCodec the JSON codec that encodes each element
+     * @param fields the properties of each element the client selected, or null for all of them
+     * @param mediaType the response content type; {@code application/x-ndjson} writes one element
+     *        per line, anything else one JSON array
+     * @param flushBytes the chunk size at which buffered elements are sent
+     * @param flushIntervalMillis the longest buffered elements wait while rows arrive slowly
+     */
+    public JsonStreamWriter(Channel channel, Object value, MediaCodec elementCodec, FieldSet fields, String mediaType,
+                            int flushBytes, long flushIntervalMillis) {
+        this.channel = channel;
+        this.value = value;
+        this.elementCodec = elementCodec;
+        this.fields = fields;
+        this.mediaType = mediaType;
+        this.lines = MediaCodecs.NDJSON.equals(mediaType);
+        this.flushBytes = flushBytes;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    }
+    
+    /**
+     * Whether a handler result is written as a stream.
+     * 
+     * @param value the handler's result
+     * @param lines whether the client asked for newline-delimited JSON
+     * @param collectionThreshold collections with at least this many elements are streamed too;
+     *        zero streams collections only as newline-delimited JSON
+     * @return true for streams, cursors and iterators, and for collections that are large or
+     *         requested as lines; other iterables such as a Jackson tree or a {@code Path} are
+     *         values in their own right and are serialized whole
+     */
+    public static boolean isStreamable(Object value, boolean lines, int collectionThreshold) {
+        if (value instanceof Collection) {
+            return lines || (collectionThreshold > 0 && ((Collection<?>) value).size() >= collectionThreshold);
+        }
+        return value instanceof Stream || value instanceof Iterator;
+    }
+    
+    /**
+     * Read a streamable result into a list, for formats that cannot be written element by
+     * element. The result's resource is closed once it has been read.
+     * 
+     * @param value a result for which {@link #isStreamable} holds
+     * @return the elements
+     */
+    public static List<Object> collect(Object value) {
+        List<Object> elements = new ArrayList<>();
+        Iterator<?> iterator = iterator(value);
+        try {
+            iterator.forEachRemaining(elements::add);
+        } finally {
+            close(value);
+        }
+        return elements;
+    }
+    
+    /**
+     * Write every element of the result and finish the response. Blocks while the connection is
+     * not writable, so call it on a thread that may block. If the connection closes or the
+     * thread is interrupted the remaining elements are skipped; either way the result's stream,
+     * cursor or other closeable resource is closed before this returns. Does nothing if the
+     * result was already {@link #discard discarded}.
+     * 
+     * @throws CancellationException if the client disconnected or the thread was interrupted
+     * @throws IOException if an element cannot be encoded or the result fails before the
+     *         response head was sent; a failure after that closes the connection instead
+     */
+    public void write() throws IOException {
+        if (!claimed.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledFuture<?> timer = channel.eventLoop().scheduleAtFixedRate(this::flushIfIdle,
+            flushIntervalNanos, flushIntervalNanos, TimeUnit.NANOSECONDS);
+        try {
+            Iterator<?> elements = iterator(value);
+            if (!lines) {
+                append('[');
+            }
+            while (elements.hasNext()) {
+                if (!channel.isActive() || Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Client disconnected");
+                }
+                writeElement(elements.next());
+            }
+            if (!lines) {
+                append(']');
+            }
+            finish();
+        } catch (RuntimeException | IOException e) {
+            abort(e);
+            throw e;
+        } finally {
+            timer.cancel(false);
+            close(value);
+        }
+    }
+    
+    /**
+     * Close the result without writing it, for a response abandoned before {@link #write} ran.
+     * Does nothing once writing has started, since the writing thread closes the result itself.
+     */
+    public void discard() {
+        if (claimed.compareAndSet(false, true)) {
+            close(value);
+        }
+    }
+    
+    private void writeElement(Object element) throws IOException {
+        lock.lock();
+        try {
+            ByteBuf buffer = chunk();
+            if (!first && !lines) {
+                buffer.writeByte(',');
+            }
+            if (element == null) {
+                buffer.writeBytes(NULL);
+            } else {
+                elementCodec.write(element, new ByteBufOutputStream(buffer), fields);
+            }
+            if (lines) {
+                buffer.writeByte('\n');
+            }
+            // The client sees the first element immediately; later ones wait for a full chunk
+            if (first || buffer.readableBytes() >= flushBytes) {
+                first = false;
+                send();
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitWritable();
+    }
+    
+    private void append(char c) {
+        lock.lock();
+        try {
+            chunk().writeByte(c);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private ByteBuf chunk() {
+        if (chunk == null) {
+            chunk = channel.alloc().buffer(flushBytes);
+        }
+        return chunk;
+    }
+    
+    /**
+     * Send the buffered elements, with the response head first if it has not gone out yet.
+     */
+    private void send() {
+        if (!headersSent) {
+            HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, mediaType);
+            response.headers().set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT);
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            HttpUtil.setTransferEncodingChunked(response, true);
+            channel.write(response);
+            headersSent = true;
+        }
+        if (chunk != null && chunk.isReadable()) {
+            bytesWritten += chunk.readableBytes();
+            lastWrite = channel.writeAndFlush(new DefaultHttpContent(chunk));
+        } else {
+            channel.flush();
+            if (chunk != null) {
+                chunk.release();
+            }
+        }
+        chunk = null;
+        lastFlushNanos = System.nanoTime();
+    }
+    
+    private void flushIfIdle() {
+        // Runs on the event loop, which must not wait for an element being encoded
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (chunk != null && chunk.isReadable() && System.nanoTime() - lastFlushNanos >= flushIntervalNanos) {
+                send();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void awaitWritable() {
+        ChannelFuture pending;
+        lock.lock();
+        try {
+            pending = lastWrite;
+        } finally {
+            lock.unlock();
+        }
+        if (pending != null && !channel.isWritable()) {
+            try {
+                pending.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the client");
+            }
+        }
+    }
+    
+    private void finish() {
+        lock.lock();
+        try {
+            send();
+            channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void abort(Exception e) {
+        boolean truncated;
+        lock.lock();
+        try {
+            if (chunk != null) {
+                chunk.release();
+                chunk = null;
+            }
+            truncated = headersSent;
+        } finally {
+            lock.unlock();
+        }
+        if (truncated && channel.isActive()) {
+            logger.warn("Streamed response failed part-way, closing the connection", e);
+            channel.close();
+        }
+    }
+    
+    /**
+     * Whether the response head has been sent, after which a failure can no longer be reported
+     * with a status code.
+     * 
+     * @return true once the first chunk was written
+     */
+    public boolean isStarted() {
+        lock.lock();
+        try {
+            return headersSent;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * The number of body bytes handed to the channel so far.
+     * 
+     * @return the bytes of the elements sent, including separators
+     */
+    public long getBytesWritten() {
+        lock.lock();
+        try {
+            return bytesWritten;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private static Iterator<?> iterator(Object value) {
+        if (value instanceof Stream) {
+            return ((Stream<?>) value).iterator();
+        }
+        if (value instanceof Iterator) {
+            return (Iterator<?>) value;
+        }
+        return ((Collection<?>) value).iterator();
+    }
+    
+    private static void close(Object value) {
+        if (!(value instanceof AutoCloseable)) {
+            return;
+        }
+        try {
+            ((AutoCloseable) value).close();
+        } catch (Exception e) {
+            logger.warn("Failed to close streamed result", e);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.mochaapi.runtime.trace;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mochaapi.runtime.codec.ObjectMappers;
+import com.mochaapi.runtime.monitor.RequestPhases.Phase;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends spans to a file in the OTLP/JSON encoding, one {@code ExportTraceServiceRequest} per
+ * line and batch. The OpenTelemetry Collector's file receiver reads the file as is, so spans can
+ * reach any tracing backend without a tracing SDK in the server.
+ */
+public final class OtlpJsonFileExporter implements SpanExporter {
+    
+    // Span kind SERVER, status code ERROR
+    private static final int KIND_SERVER = 2;
+    private static final int STATUS_ERROR = 2;
+    private static final Phase[] PHASES = Phase.values();
+    
+    private final String serviceName;
+    private final OutputStream out;
+    
+    /**
+     * Open the file for appending, creating it and its directories if needed.
+     * 
+     * @param file the file to append to
+     * @param serviceName the {@code service.name} resource attribute
+     * @throws IOException if the file cannot be opened
+     */
+    public OtlpJsonFileExporter(Path file, String serviceName) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.serviceName = serviceName;
+        this.out = new BufferedOutputStream(Files.newOutputStream(file,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+    
+    @Override
+    public void export(List<SpanData> spans) throws IOException {
+        try (JsonGenerator generator = ObjectMappers.json().getFactory().createGenerator(out)) {
+            generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("resourceSpans");
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("resource");
+            generator.writeArrayFieldStart("attributes");
+            writeAttribute(generator, "service.name", serviceName);
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("scopeSpans");
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("scope");
+            generator.writeStringField("name", "mochaapi");
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("spans");
+            for (SpanData span : spans) {
+                writeSpan(generator, span);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        out.write('\n');
+        out.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+    
+    private static void writeSpan(JsonGenerator generator, SpanData span) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("traceId", span.traceId());
+        generator.writeStringField("spanId", span.spanId());
+        if (span.parentSpanId() != null) {
+            generator.writeStringField("parentSpanId", span.parentSpanId());
+        }
+        if (span.traceState() != null) {
+            generator.writeStringField("traceState", span.traceState());
+        }
+        generator.writeStringField("name", span.name());
+        generator.writeNumberField("kind", KIND_SERVER);
+        // OTLP/JSON encodes 64-bit integers as strings
+        generator.writeStringField("startTimeUnixNano", Long.toString(span.startEpochNanos()));
+        generator.writeStringField("endTimeUnixNano", Long.toString(span.endEpochNanos()));
+        generator.writeArrayFieldStart("attributes");
+        writeAttribute(generator, "http.request.method", span.method());
+        if (span.route() != null) {
+            writeAttribute(generator, "http.route", span.route());
+        }
+        writeAttribute(generator, "url.path", span.path());
+        writeAttribute(generator, "http.response.status_code", span.status());
+        for (Phase phase : PHASES) {
+            long nanos = span.phaseNanos(phase);
+            if (nanos >= 0) {
+                writeAttribute(generator, "mochaapi.phase." + phase.label() + "_ns", nanos);
+            }
+        }
+        generator.writeEndArray();
+        if (span.status() >= 500 || span.error() != null) {
+            generator.writeObjectFieldStart("status");
+            generator.writeNumberField("code", STATUS_ERROR);
+            if (span.error() != null) {
+                generator.writeStringField("message", span.error());
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+    
+    private static void writeAttribute(JsonGenerator generator, String key, String value) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("key", key);
+        generator.writeObjectFieldStart("value");
+        generator.writeStringField("stringValue", value);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+    
+    private static void writeAttribute(JsonGenerator generator, String key, long value) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("key", key);
+        generator.writeObjectFieldStart("value");
+        generator.writeStringField("intValue", Long.toString(value));
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+}
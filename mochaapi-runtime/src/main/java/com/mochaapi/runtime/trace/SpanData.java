@@ -0,0 +1,44 @@
+package com.mochaapi.runtime.trace;
+
+import com.mochaapi.runtime.monitor.RequestPhases.Phase;
+
+/**
+ * A finished server span, as handed to a {@link SpanExporter}.
+ * 
+ * @param traceId the trace ID, 32 hex characters
+ * @param spanId the span ID, 16 hex characters
+ * @param parentSpanId the caller's span ID, or null for a trace started by this request
+ * @param traceState the caller's {@code tracestate}, or null
+ * @param method the request method
+ * @param route the route's path template, or null if no route matched
+ * @param path the request path
+ * @param status the response status
+ * @param startEpochNanos when the request arrived, in nanoseconds since the epoch
+ * @param endEpochNanos when the response was written, in nanoseconds since the epoch
+ * @param error the failure's message, or null if the request did not fail
+ * @param headSampled true if the span was sampled up front, false if it was only kept for being slow or failed
+ * @param phaseNanos the time spent in each {@link Phase}, indexed by ordinal, -1 for a phase the request skipped
+ */
+public record SpanData(String traceId, String spanId, String parentSpanId, String traceState, String method,
+                       String route, String path, int status, long startEpochNanos, long endEpochNanos,
+                       String error, boolean headSampled, long[] phaseNanos) {
+    
+    /**
+     * The span's name, following the HTTP semantic conventions.
+     * 
+     * @return the method and route template, or the method alone if no route matched
+     */
+    public String name() {
+        return route != null ? method + ' ' + route : method;
+    }
+    
+    /**
+     * The time spent in one phase of the request.
+     * 
+     * @param phase the phase
+     * @return the duration in nanoseconds, or -1 if the request skipped the phase
+     */
+    public long phaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+}
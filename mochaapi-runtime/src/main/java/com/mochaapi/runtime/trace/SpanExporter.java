@@ -0,0 +1,28 @@
+package com.mochaapi.runtime.trace;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Sends finished spans somewhere: a file, a collector, a test's list. Called by the tracer's
+ * export thread only, never by a request thread, so an exporter may block.
+ */
+public interface SpanExporter extends AutoCloseable {
+    
+    /**
+     * Export a batch of spans.
+     * 
+     * @param spans the spans, in the order their requests finished; the list is reused after this returns
+     * @throws IOException if the spans could not be exported; they are counted as failed and not retried
+     */
+    void export(List<SpanData> spans) throws IOException;
+    
+    /**
+     * Release the exporter's resources once the tracer has exported its last batch.
+     * 
+     * @throws IOException if buffered spans cannot be flushed
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
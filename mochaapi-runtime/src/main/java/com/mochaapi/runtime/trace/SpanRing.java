@@ -0,0 +1,133 @@
+package com.mochaapi.runtime.trace;
+
+import com.mochaapi.runtime.monitor.RequestPhases;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed ring of preallocated span slots, filled by request threads and drained by a single
+ * export thread. Producers claim a sequence number with a compare-and-set and fill the slot in
+ * place; a full ring drops the span rather than waiting for the exporter.
+ */
+final class SpanRing {
+    
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    // Written only by the draining thread
+    private volatile long drained;
+    
+    /**
+     * @param capacity the number of slots, rounded up to a power of two
+     */
+    SpanRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+    }
+    
+    /**
+     * Claim the next slot.
+     * 
+     * @return the slot to fill and then {@link Slot#publish}, or null if the ring is full
+     */
+    Slot claim() {
+        while (true) {
+            long sequence = claimed.get();
+            if (sequence - drained >= slots.length) {
+                dropped.increment();
+                return null;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                Slot slot = slots[(int) (sequence & mask)];
+                slot.sequence = sequence;
+                return slot;
+            }
+        }
+    }
+    
+    /**
+     * Move published spans out of the ring, in order, stopping at the first slot still being
+     * filled. Only one thread may drain.
+     * 
+     * @param into the list to add the spans to
+     * @param max the most spans to take
+     * @return the number of spans taken
+     */
+    int drain(List<SpanData> into, int max) {
+        long next = drained;
+        int taken = 0;
+        while (taken < max) {
+            Slot slot = slots[(int) (next & mask)];
+            if (slot.published != next) {
+                break;
+            }
+            into.add(slot.toSpanData());
+            slot.clear();
+            next++;
+            taken++;
+        }
+        // Frees the slots for producers
+        drained = next;
+        return taken;
+    }
+    
+    long getDropped() {
+        return dropped.sum();
+    }
+    
+    int capacity() {
+        return slots.length;
+    }
+    
+    /**
+     * One span's fields, written by the request thread that claimed the slot.
+     */
+    static final class Slot {
+        
+        String traceId;
+        String spanId;
+        String parentSpanId;
+        String traceState;
+        String method;
+        String route;
+        String path;
+        int status;
+        long startEpochNanos;
+        long endEpochNanos;
+        String error;
+        boolean headSampled;
+        final long[] phaseNanos = new long[RequestPhases.Phase.values().length];
+        private long sequence;
+        private volatile long published = -1;
+        
+        Slot() {
+            Arrays.fill(phaseNanos, -1);
+        }
+        
+        /**
+         * Hand the filled slot to the exporter.
+         */
+        void publish() {
+            published = sequence;
+        }
+        
+        private SpanData toSpanData() {
+            return new SpanData(traceId, spanId, parentSpanId, traceState, method, route, path, status,
+                startEpochNanos, endEpochNanos, error, headSampled, phaseNanos.clone());
+        }
+        
+        private void clear() {
+            // Let the request's strings be collected while the slot waits for its next span
+            traceId = spanId = parentSpanId = traceState = method = route = path = error = null;
+            Arrays.fill(phaseNanos, -1);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.mochaapi.runtime.trace;
+
+import com.mochaapi.runtime.context.RequestContext;
+import com.mochaapi.runtime.monitor.RequestPhases;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records one server span per request and exports the kept ones in the background.
+ * 
+ * <p>Sampling happens in two steps. Up front, a request that carries a {@code traceparent} keeps
+ * its caller's decision, and a request starting a new trace is sampled with a fixed probability
+ * derived from its trace ID, so every service makes the same choice for the same trace. When the
+ * request finishes, the span is also kept if the request failed or was slow, whatever the first
+ * decision was.
+ * 
+ * <p>Kept spans are copied into a preallocated ring and leave it on an export thread of their
+ * own. A request thread never waits: when the ring is full the span is dropped and counted.
+ */
+public final class Tracer implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(Tracer.class);
+    private static final RequestPhases.Phase[] PHASES = RequestPhases.Phase.values();
+    
+    private final long sampleThreshold;
+    private final long slowThresholdNanos;
+    private final SpanRing ring;
+    private final SpanExporter exporter;
+    private final int batchSize;
+    private final long exportIntervalNanos;
+    // Converts System.nanoTime() readings to wall-clock time without a clock call per span
+    private final long epochOffsetNanos;
+    private final LongAdder exported = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Thread exportThread;
+    private volatile boolean running = true;
+    
+    /**
+     * Create a tracer and start its export thread.
+     * 
+     * @param sampleRatio the fraction of new traces to sample up front, between 0 and 1
+     * @param slowThresholdMillis the duration from which a request's span is always kept
+     * @param bufferSize the number of spans the ring holds while they wait for export
+     * @param exporter where spans are exported to
+     * @param batchSize the most spans handed to the exporter at once
+     * @param exportIntervalMillis how long the export thread waits when the ring runs dry
+     */
+    public Tracer(double sampleRatio, long slowThresholdMillis, int bufferSize, SpanExporter exporter,
+                  int batchSize, long exportIntervalMillis) {
+        // Sampling compares the trace ID's low 56 bits with this threshold
+        this.sampleThreshold = (long) (Math.max(0, Math.min(1, sampleRatio)) * (1L << 56));
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.ring = new SpanRing(bufferSize);
+        this.exporter = exporter;
+        this.batchSize = batchSize;
+        this.exportIntervalNanos = TimeUnit.MILLISECONDS.toNanos(exportIntervalMillis);
+        this.epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+        this.exportThread = new Thread(this::exportLoop, "mochaapi-trace-exporter");
+        exportThread.setDaemon(true);
+        exportThread.start();
+    }
+    
+    /**
+     * Publish how many spans were exported, failed to export, or were dropped on a full ring.
+     * 
+     * @param registry the registry to register the counters with
+     */
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("mochaapi_trace_spans_exported_total", exported, LongAdder::sum)
+            .description("Spans handed to the exporter")
+            .register(registry);
+        FunctionCounter.builder("mochaapi_trace_spans_failed_total", failed, LongAdder::sum)
+            .description("Spans the exporter failed to export")
+            .register(registry);
+        FunctionCounter.builder("mochaapi_trace_spans_dropped_total", ring, SpanRing::getDropped)
+            .description("Spans dropped because the export buffer was full")
+            .register(registry);
+    }
+    
+    /**
+     * Make the up-front sampling decision for a request that starts a new trace. Requests that
+     * continue a caller's trace keep the caller's decision.
+     * 
+     * @param context the request
+     */
+    public void start(RequestContext context) {
+        if (context.getParentSpanId() == null) {
+            String traceId = context.getTraceId();
+            long bits = Long.parseUnsignedLong(traceId.substring(18), 16);
+            context.setTraceSampled(bits < sampleThreshold);
+        }
+    }
+    
+    /**
+     * Finish a request's span once its response is written, keeping it if the request was
+     * sampled up front, failed or was slow.
+     * 
+     * @param context the request, carrying its phases
+     * @param status the response status
+     * @param error the failure, or null if the request did not fail
+     * @return true if the span was kept and buffered for export
+     */
+    public boolean finish(RequestContext context, int status, Throwable error) {
+        RequestPhases phases = context.getPhases();
+        if (phases == null) {
+            return false;
+        }
+        long endNanos = System.nanoTime();
+        long durationNanos = endNanos - phases.getStartNanos();
+        boolean headSampled = context.isTraceSampled();
+        if (!headSampled && status < 500 && error == null && durationNanos < slowThresholdNanos) {
+            return false;
+        }
+        SpanRing.Slot slot = ring.claim();
+        if (slot == null) {
+            return false;
+        }
+        slot.traceId = context.getTraceId();
+        slot.spanId = context.getSpanId();
+        slot.parentSpanId = context.getParentSpanId();
+        slot.traceState = context.getTracestate();
+        slot.method = context.getMethod();
+        String routeKey = context.getRouteKey();
+        slot.route = routeKey != null ? routeKey.substring(routeKey.indexOf(' ') + 1) : null;
+        slot.path = context.getPath();
+        slot.status = status;
+        slot.startEpochNanos = phases.getStartNanos() + epochOffsetNanos;
+        slot.endEpochNanos = endNanos + epochOffsetNanos;
+        slot.error = error != null ? String.valueOf(error.getMessage()) : null;
+        slot.headSampled = headSampled;
+        for (RequestPhases.Phase phase : PHASES) {
+            slot.phaseNanos[phase.ordinal()] = phases.durationNanos(phase);
+        }
+        slot.publish();
+        return true;
+    }
+    
+    /**
+     * Stop the export thread after it has exported what is buffered, then close the exporter.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(exportThread);
+        try {
+            exportThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            exporter.close();
+        } catch (Exception e) {
+            logger.warn("Failed to close span exporter", e);
+        }
+    }
+    
+    long getExported() {
+        return exported.sum();
+    }
+    
+    long getDropped() {
+        return ring.getDropped();
+    }
+    
+    private void exportLoop() {
+        List<SpanData> batch = new ArrayList<>(batchSize);
+        while (running) {
+            int taken = ring.drain(batch, batchSize);
+            if (taken > 0) {
+                export(batch);
+            }
+            // A full batch suggests more is waiting
+            if (taken < batchSize) {
+                LockSupport.parkNanos(this, exportIntervalNanos);
+            }
+        }
+        while (ring.drain(batch, batchSize) > 0) {
+            export(batch);
+        }
+    }
+    
+    private void export(List<SpanData> batch) {
+        try {
+            exporter.export(batch);
+            exported.add(batch.size());
+        } catch (Exception e) {
+            failed.add(batch.size());
+            logger.warn("Failed to export {} spans", batch.size(), e);
+        } finally {
+            batch.clear();
+        }
+    }
+}
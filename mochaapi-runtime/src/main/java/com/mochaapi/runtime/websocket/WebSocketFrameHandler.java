@@ -0,0 +1,60 @@
+package com.mochaapi.runtime.websocket;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands reassembled frames over to the session's handler thread and answers control frames
+ * on the event loop.
+ */
+class WebSocketFrameHandler extends ChannelInboundHandlerAdapter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketFrameHandler.class);
+    
+    private final WebSocketSession session;
+    private final WebSocketServerHandshaker handshaker;
+    
+    WebSocketFrameHandler(WebSocketSession session, WebSocketServerHandshaker handshaker) {
+        this.session = session;
+        this.handshaker = handshaker;
+    }
+    
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof TextWebSocketFrame) {
+            // Ownership of the frame content moves to the message
+            session.onMessage(new WebSocketMessage(true, ((TextWebSocketFrame) msg).content()));
+        } else if (msg instanceof BinaryWebSocketFrame) {
+            session.onMessage(new WebSocketMessage(false, ((BinaryWebSocketFrame) msg).content()));
+        } else if (msg instanceof PingWebSocketFrame) {
+            ctx.writeAndFlush(new PongWebSocketFrame(((PingWebSocketFrame) msg).content()));
+        } else if (msg instanceof CloseWebSocketFrame) {
+            session.onClosed();
+            handshaker.close(ctx.channel(), (CloseWebSocketFrame) msg);
+        } else {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+    
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        session.onClosed();
+        ctx.fireChannelInactive();
+    }
+    
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.warn("WebSocket connection error on {}", session.getRequestContext().getPath(), cause);
+        session.onClosed();
+        ctx.close();
+    }
+}
@@ -0,0 +1,104 @@
+package com.mochaapi.runtime.websocket;
+
+import com.mochaapi.runtime.MochaAPIConfig;
+import com.mochaapi.runtime.context.RequestContext;
+import com.mochaapi.runtime.executor.ExecutorManager;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.websocketx.WebSocketDecoderConfig;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
+import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
+import io.netty.handler.ssl.SslHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.Consumer;
+
+/**
+ * Switches an HTTP connection to the WebSocket protocol and starts the endpoint's handler thread.
+ */
+public final class WebSocketHandshake {
+    
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketHandshake.class);
+    
+    private WebSocketHandshake() {
+    }
+    
+    /**
+     * Check whether a request asks for a WebSocket upgrade.
+     *
+     * @param request the HTTP request
+     * @return true for WebSocket upgrade requests
+     */
+    public static boolean isUpgradeRequest(HttpRequest request) {
+        return request.headers().containsValue(HttpHeaderNames.CONNECTION, HttpHeaderValues.UPGRADE, true)
+            && request.headers().containsValue(HttpHeaderNames.UPGRADE, HttpHeaderValues.WEBSOCKET, true);
+    }
+    
+    /**
+     * Complete the opening handshake and hand the connection to the endpoint.
+     * The calling handler is replaced in the pipeline, so it must not touch the channel afterwards.
+     *
+     * @param ctx the context of the HTTP request handler
+     * @param request the upgrade request
+     * @param context the request context built from the upgrade request
+     * @param endpoint the endpoint to run for this connection
+     * @param config the server configuration
+     * @param executorManager the executor manager providing the handler's virtual thread
+     */
+    public static void upgrade(ChannelHandlerContext ctx, FullHttpRequest request, RequestContext context,
+                               Consumer<WebSocketSession> endpoint, MochaAPIConfig config, ExecutorManager executorManager) {
+        WebSocketDecoderConfig decoderConfig = WebSocketDecoderConfig.newBuilder()
+            .maxFramePayloadLength(config.getWebSocketMaxFrameSize())
+            .allowExtensions(config.isWebSocketCompressionEnabled())
+            .build();
+        String url = location(ctx.channel(), request, context.getPath());
+        WebSocketServerHandshaker handshaker = new WebSocketServerHandshakerFactory(url, null, decoderConfig)
+            .newHandshaker(request);
+        if (handshaker == null) {
+            WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(ctx.channel());
+            return;
+        }
+        
+        WebSocketSession session = new WebSocketSession(ctx.channel(), handshaker, context, config.getWebSocketOutboundQueueLimit());
+        ChannelPipeline pipeline = ctx.pipeline();
+        pipeline.addBefore(ctx.name(), "ws-aggregator", new WebSocketFrameAggregator(config.getWebSocketMaxMessageSize()));
+        pipeline.replace(ctx.name(), "ws-session", new WebSocketFrameHandler(session, handshaker));
+        
+        handshaker.handshake(ctx.channel(), request).addListener(future -> {
+            if (future.isSuccess()) {
+                executorManager.executeVirtual(() -> run(endpoint, session));
+            } else {
+                logger.debug("WebSocket handshake failed for {}", context.getPath(), future.cause());
+                ctx.channel().close();
+            }
+        });
+    }
+    
+    /**
+     * The URL the handshake answers for, with the {@code wss} scheme on TLS connections.
+     */
+    static String location(Channel channel, HttpRequest request, String path) {
+        // HTTP/2 streams carry the TLS handler on their parent connection
+        boolean secure = channel.pipeline().get(SslHandler.class) != null
+            || (channel.parent() != null && channel.parent().pipeline().get(SslHandler.class) != null);
+        return (secure ? "wss://" : "ws://") + request.headers().get(HttpHeaderNames.HOST) + path;
+    }
+    
+    private static void run(Consumer<WebSocketSession> endpoint, WebSocketSession session) {
+        try {
+            endpoint.accept(session);
+        } catch (Exception e) {
+            logger.error("WebSocket handler for {} failed", session.getRequestContext().getPath(), e);
+            session.close(1011, "Internal error");
+        } finally {
+            session.dispose();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.mochaapi.runtime.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A complete (reassembled) WebSocket message received from the client.
+ * Binary payloads are exposed as read-only views of the network buffer without copying,
+ * so a message is only valid until the next {@link WebSocketSession#receive()} call.
+ */
+public class WebSocketMessage {
+    
+    private final boolean text;
+    private final ByteBuf content;
+    private boolean released;
+    
+    WebSocketMessage(boolean text, ByteBuf content) {
+        this.text = text;
+        this.content = content;
+    }
+    
+    public boolean isText() {
+        return text;
+    }
+    
+    public boolean isBinary() {
+        return !text;
+    }
+    
+    /**
+     * Decode the payload as UTF-8 text.
+     *
+     * @return the message text
+     */
+    public String getText() {
+        ensureReadable();
+        return content.toString(CharsetUtil.UTF_8);
+    }
+    
+    /**
+     * Get the payload as a read-only view of the underlying network buffer.
+     *
+     * @return the message payload
+     */
+    public ByteBuffer getBinary() {
+        ensureReadable();
+        return content.nioBuffer().asReadOnlyBuffer();
+    }
+    
+    public int size() {
+        return content.readableBytes();
+    }
+    
+    void release() {
+        if (!released) {
+            released = true;
+            content.release();
+        }
+    }
+    
+    private void ensureReadable() {
+        if (released) {
+            throw new IllegalStateException("WebSocket message is no longer valid after the next receive()");
+        }
+    }
+}
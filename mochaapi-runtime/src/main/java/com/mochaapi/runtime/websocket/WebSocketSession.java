@@ -0,0 +1,196 @@
+package com.mochaapi.runtime.websocket;
+
+import com.mochaapi.runtime.context.RequestContext;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A WebSocket connection as seen by its handler.
+ * The handler owns a virtual thread for the lifetime of the connection, so receive and send
+ * simply block; reading from the socket is paused while too many messages are waiting.
+ */
+public class WebSocketSession {
+    
+    /**
+     * Number of received messages waiting for the handler before reading from the socket is paused.
+     */
+    static final int INBOUND_HIGH_WATER_MARK = 16;
+    
+    private static final WebSocketMessage CLOSED = new WebSocketMessage(true, Unpooled.EMPTY_BUFFER);
+    
+    private final Channel channel;
+    private final WebSocketServerHandshaker handshaker;
+    private final RequestContext requestContext;
+    private final BlockingQueue<WebSocketMessage> inbound = new LinkedBlockingQueue<>();
+    private final Semaphore outboundPermits;
+    
+    private volatile boolean open = true;
+    private volatile boolean disposed;
+    private WebSocketMessage current;
+    
+    WebSocketSession(Channel channel, WebSocketServerHandshaker handshaker, RequestContext requestContext, int outboundQueueLimit) {
+        this.channel = channel;
+        this.handshaker = handshaker;
+        this.requestContext = requestContext;
+        this.outboundPermits = new Semaphore(outboundQueueLimit);
+    }
+    
+    /**
+     * Wait for the next message. The previously received message is released.
+     *
+     * @return the next message, or null once the connection is closed
+     * @throws InterruptedException if the handler thread is interrupted
+     */
+    public WebSocketMessage receive() throws InterruptedException {
+        releaseCurrent();
+        return accept(inbound.take());
+    }
+    
+    /**
+     * Wait up to the given time for the next message. The previously received message is released.
+     *
+     * @param timeout the maximum time to wait
+     * @return the next message, or null on timeout or once the connection is closed
+     * @throws InterruptedException if the handler thread is interrupted
+     */
+    public WebSocketMessage receive(Duration timeout) throws InterruptedException {
+        releaseCurrent();
+        WebSocketMessage message = inbound.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        return message != null ? accept(message) : null;
+    }
+    
+    /**
+     * Send a text message, blocking while the outbound queue for this connection is full.
+     *
+     * @param text the message text
+     * @throws InterruptedException if the handler thread is interrupted
+     */
+    public void sendText(String text) throws InterruptedException {
+        send(new TextWebSocketFrame(text));
+    }
+    
+    /**
+     * Send a binary message, blocking while the outbound queue for this connection is full.
+     * The data is copied, so the caller may reuse the buffer once this method returns.
+     *
+     * @param data the message payload
+     * @throws InterruptedException if the handler thread is interrupted
+     */
+    public void sendBinary(ByteBuffer data) throws InterruptedException {
+        ByteBuf payload = channel.alloc().directBuffer(data.remaining());
+        payload.writeBytes(data.duplicate());
+        send(new BinaryWebSocketFrame(payload));
+    }
+    
+    /**
+     * Close the connection normally.
+     */
+    public void close() {
+        close(1000, null);
+    }
+    
+    /**
+     * Close the connection with the given status code.
+     *
+     * @param statusCode the WebSocket close status code
+     * @param reason the close reason, or null
+     */
+    public void close(int statusCode, String reason) {
+        if (open) {
+            open = false;
+            if (channel.isActive()) {
+                handshaker.close(channel, new CloseWebSocketFrame(statusCode, reason));
+            }
+        }
+    }
+    
+    public boolean isOpen() {
+        return open && channel.isActive();
+    }
+    
+    /**
+     * Get the upgrade request, including its path, query parameters and headers.
+     *
+     * @return the request context of the upgrade request
+     */
+    public RequestContext getRequestContext() {
+        return requestContext;
+    }
+    
+    void onMessage(WebSocketMessage message) {
+        inbound.offer(message);
+        if (disposed) {
+            drain();
+        } else if (inbound.size() >= INBOUND_HIGH_WATER_MARK) {
+            channel.config().setAutoRead(false);
+        }
+    }
+    
+    void onClosed() {
+        open = false;
+        inbound.offer(CLOSED);
+    }
+    
+    void dispose() {
+        disposed = true;
+        releaseCurrent();
+        drain();
+        close();
+    }
+    
+    private WebSocketMessage accept(WebSocketMessage message) {
+        if (message == CLOSED) {
+            // Keep the marker so later receive() calls also return immediately
+            inbound.offer(CLOSED);
+            return null;
+        }
+        current = message;
+        if (!channel.config().isAutoRead() && inbound.size() <= INBOUND_HIGH_WATER_MARK / 2) {
+            channel.config().setAutoRead(true);
+        }
+        return message;
+    }
+    
+    private void send(WebSocketFrame frame) throws InterruptedException {
+        if (!isOpen()) {
+            frame.release();
+            throw new IllegalStateException("WebSocket session is closed");
+        }
+        try {
+            outboundPermits.acquire();
+        } catch (InterruptedException e) {
+            frame.release();
+            throw e;
+        }
+        channel.writeAndFlush(frame).addListener(future -> outboundPermits.release());
+    }
+    
+    private void releaseCurrent() {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+    }
+    
+    private void drain() {
+        WebSocketMessage message;
+        while ((message = inbound.poll()) != null) {
+            if (message != CLOSED) {
+                message.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.mochaapi.runtime.accesslog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the binary access log and its decoder.
+ */
+public class AccessLogTest {
+    
+    private static final byte[] LOCALHOST = {127, 0, 0, 1};
+    
+    @Test
+    public void testRecordsDecodeWithNamesAndClients(@TempDir Path dir) throws Exception {
+        try (AccessLog log = new AccessLog(dir, 64, 1 << 20, 10, 10)) {
+            int route = log.nameId("GET /users/{id}");
+            assertEquals(route, log.nameId("GET /users/{id}"));
+            log.log(System.nanoTime(), 2_500_000, route, 200, 0, 42, LOCALHOST, 50000);
+            log.logError(log.nameId("java.io.IOException"), LOCALHOST, 50001);
+            log.log(System.nanoTime(), 1_000, log.nameId("GET"), 404, 3, 0, null, 0);
+        }
+        
+        List<AccessLogDecoder.Entry> entries = new ArrayList<>();
+        AccessLogDecoder.decode(dir, entries::add);
+        assertEquals(3, entries.size());
+        AccessLogDecoder.Entry request = entries.get(0);
+        assertEquals("GET /users/{id}", request.name());
+        assertEquals(200, request.status());
+        assertEquals(42, request.responseBytes());
+        assertEquals(2_500_000, request.latencyNanos());
+        assertEquals("127.0.0.1:50000", request.client());
+        assertFalse(request.error());
+        assertTrue(Math.abs(request.time().toEpochMilli() - System.currentTimeMillis()) < 60_000);
+        assertTrue(entries.get(1).error());
+        assertEquals("java.io.IOException", entries.get(1).name());
+        assertNull(entries.get(2).client());
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AccessLogDecoder.render(dir, true, out);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].contains("\"route\":\"GET /users/{id}\""));
+        assertTrue(lines[0].contains("\"latencyMicros\":2500"));
+        assertTrue(lines[1].contains("\"error\":\"java.io.IOException\""));
+    }
+    
+    @Test
+    public void testSegmentsRotateAndOldOnesAreDeleted(@TempDir Path dir) throws Exception {
+        // Room for three records per segment
+        long fileSize = AccessLogFormat.HEADER_SIZE + 3L * AccessLogFormat.RECORD_SIZE;
+        try (AccessLog log = new AccessLog(dir, 64, fileSize, 2, 10)) {
+            int route = log.nameId("GET /");
+            for (int i = 0; i < 10; i++) {
+                log.log(System.nanoTime(), i, route, 200, 0, 0, LOCALHOST, i);
+            }
+        }
+        
+        assertEquals(2, AccessLogDecoder.segments(dir).size());
+        List<Long> latencies = new ArrayList<>();
+        AccessLogDecoder.decode(dir, entry -> latencies.add(entry.latencyNanos()));
+        // The newest segment holds the tenth record alone
+        assertEquals(List.of(6L, 7L, 8L, 9L), latencies);
+    }
+    
+    @Test
+    public void testFullRingDropsRecords(@TempDir Path dir) throws Exception {
+        AccessLog log = new AccessLog(dir, 4, 1 << 20, 10, 60_000);
+        int route = log.nameId("GET /");
+        // The writer parks on the log once it finds the ring empty, and takes the log's lock
+        // before it drains again, so holding the lock while it is parked keeps the ring full
+        Thread writer = log.getWriterThread();
+        while (true) {
+            while (LockSupport.getBlocker(writer) != log) {
+                Thread.onSpinWait();
+            }
+            synchronized (log) {
+                if (LockSupport.getBlocker(writer) != log) {
+                    continue;
+                }
+                for (int i = 0; i < 10; i++) {
+                    log.log(System.nanoTime(), 0, route, 200, 0, 0, LOCALHOST, 0);
+                }
+            }
+            break;
+        }
+        assertEquals(6, log.getDropped());
+        log.close();
+        assertEquals(4, log.getWritten());
+    }
+}
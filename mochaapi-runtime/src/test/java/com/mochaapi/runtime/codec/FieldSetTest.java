@@ -0,0 +1,102 @@
+package com.mochaapi.runtime.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for parsing field selections and applying them while writing.
+ */
+public class FieldSetTest {
+    
+    private final MediaCodecs codecs = MediaCodecs.load();
+    
+    @Test
+    public void testParseMergesPathsAndIsCached() {
+        FieldSet fields = FieldSet.parse("id, address.city,address.zip,address,items.sku,..bad");
+        
+        assertTrue(fields.includes("id"));
+        assertFalse(fields.includes("name"));
+        assertTrue(fields.child("address").includesAll());
+        assertTrue(fields.child("items").includes("sku"));
+        assertFalse(fields.child("items").includes("price"));
+        assertEquals("id,address,items.sku", fields.toString());
+        assertSame(fields, FieldSet.parse("id, address.city,address.zip,address,items.sku,..bad"));
+        assertNull(FieldSet.parse(" , "));
+        assertNull(FieldSet.parse(null));
+    }
+    
+    @Test
+    public void testUnselectedPropertiesAreNeverRead() throws Exception {
+        Order order = new Order();
+        
+        String json = write(codecs.find(MediaCodecs.JSON), order, "id,customer.name,items.sku");
+        
+        // Getter-only beans have no fixed property order
+        assertEquals(ObjectMappers.json().readTree("{\"id\":7,\"customer\":{\"name\":\"Ada\"},\"items\":[{\"sku\":\"A-1\"},{\"sku\":\"B-2\"}]}"),
+            ObjectMappers.json().readTree(json));
+        assertEquals(0, order.notesReads.get());
+    }
+    
+    @Test
+    public void testSelectionAppliesToEveryFormat() throws Exception {
+        MediaCodec cbor = codecs.find(MediaCodecs.CBOR);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cbor.write(new Order(), out, FieldSet.parse("customer"));
+        
+        assertEquals(Map.of("customer", Map.of("name", "Ada", "email", "ada@example.com")), cbor.read(out.toByteArray(), Map.class));
+    }
+    
+    @Test
+    public void testSelectionAppliesToListElements() throws Exception {
+        String json = write(codecs.find(MediaCodecs.JSON), List.of(new LineItem("A-1", 2)), "quantity");
+        
+        assertEquals("[{\"quantity\":2}]", json);
+    }
+    
+    private static String write(MediaCodec codec, Object value, String fields) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(value, out, FieldSet.parse(fields));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+    
+    public static class Order {
+        final AtomicInteger notesReads = new AtomicInteger();
+        
+        public long getId() {
+            return 7;
+        }
+        
+        public Customer getCustomer() {
+            return new Customer();
+        }
+        
+        public List<LineItem> getItems() {
+            return List.of(new LineItem("A-1", 2), new LineItem("B-2", 1));
+        }
+        
+        public String getNotes() {
+            notesReads.incrementAndGet();
+            return "expensive to load";
+        }
+    }
+    
+    public static class Customer {
+        public String getName() {
+            return "Ada";
+        }
+        
+        public String getEmail() {
+            return "ada@example.com";
+        }
+    }
+    
+    public record LineItem(String sku, int quantity) {
+    }
+}
@@ -0,0 +1,92 @@
+package com.mochaapi.runtime.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for media codec negotiation and the built-in binary formats.
+ */
+public class MediaCodecsTest {
+    
+    private final MediaCodecs codecs = MediaCodecs.load();
+    
+    @Test
+    public void testAcceptPicksHighestQuality() {
+        assertEquals(MediaCodecs.JSON, codecs.forAccept(null).getMediaType());
+        assertEquals(MediaCodecs.CBOR, codecs.forAccept("application/cbor").getMediaType());
+        assertEquals(MediaCodecs.SMILE, codecs.forAccept("application/json;q=0.5, application/x-jackson-smile").getMediaType());
+        assertEquals(MediaCodecs.CBOR, codecs.forAccept("*/*;q=0.8, application/cbor;q=0.8").getMediaType());
+        assertEquals(MediaCodecs.JSON, codecs.forAccept("text/html, */*;q=0.1").getMediaType());
+    }
+    
+    @Test
+    public void testUnknownTypesFallBackToJson() {
+        assertEquals(MediaCodecs.JSON, codecs.forAccept("application/xml").getMediaType());
+        assertEquals(MediaCodecs.JSON, codecs.forAccept("application/cbor;q=0").getMediaType());
+        assertEquals(MediaCodecs.JSON, codecs.forContentType("application/x-www-form-urlencoded").getMediaType());
+        assertEquals(MediaCodecs.CBOR, codecs.forContentType("Application/CBOR; charset=binary").getMediaType());
+        assertEquals(MediaCodecs.JSON, codecs.forContentType("application/vnd.api+json").getMediaType());
+    }
+    
+    @Test
+    public void testBinaryFormatsRoundTrip() throws Exception {
+        Map<String, Object> value = Map.of("name", "ada", "scores", List.of(1, 2, 3));
+        byte[] json = write(codecs.find(MediaCodecs.JSON), value);
+        for (String mediaType : List.of(MediaCodecs.CBOR, MediaCodecs.SMILE)) {
+            MediaCodec codec = codecs.find(mediaType);
+            byte[] encoded = write(codec, value);
+            
+            assertEquals(value, codec.read(encoded, Map.class));
+            assertTrue(encoded.length < json.length, mediaType + " should be smaller than JSON");
+        }
+    }
+    
+    @Test
+    public void testNullIsWrittenByEveryFormat() throws Exception {
+        assertEquals("null", new String(write(codecs.find(MediaCodecs.JSON), null), StandardCharsets.UTF_8));
+        for (String mediaType : List.of(MediaCodecs.CBOR, MediaCodecs.SMILE)) {
+            MediaCodec codec = codecs.find(mediaType);
+            
+            assertNull(codec.read(write(codec, null), Object.class), mediaType);
+        }
+    }
+    
+    @Test
+    public void testCustomCodecList() {
+        MediaCodec plain = new MediaCodec() {
+            @Override
+            public String getMediaType() {
+                return "text/plain";
+            }
+            
+            @Override
+            public void write(Object value, OutputStream out) throws IOException {
+                out.write(value.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            
+            @Override
+            public <T> T read(byte[] body, Class<T> type) {
+                return type.cast(new String(body, StandardCharsets.UTF_8));
+            }
+        };
+        MediaCodecs custom = new MediaCodecs(List.of(MediaCodecs.json(), plain));
+        
+        assertSame(plain, custom.forAccept("text/*"));
+        assertSame(MediaCodecs.json(), custom.getDefault());
+        assertNull(custom.find(MediaCodecs.CBOR));
+    }
+    
+    private static byte[] write(MediaCodec codec, Object value) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(value, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,83 @@
+package com.mochaapi.runtime.codec;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.mochaapi.runtime.json.JsonCodecs;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the shared Jackson configuration and the readers and writers bound from it.
+ */
+public class ObjectMappersTest {
+    
+    @AfterEach
+    public void tearDown() {
+        ObjectMappers.configure(null, false);
+        JsonCodecs.clear();
+    }
+    
+    @Test
+    public void testCustomizerAppliesToEveryFormat() throws Exception {
+        ObjectMappers.configure(mapper -> mapper.setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE), false);
+        MediaCodecs codecs = MediaCodecs.load();
+        
+        assertEquals("{\"first_name\":\"Ada\"}", new String(write(codecs.find(MediaCodecs.JSON), new Person("Ada")), StandardCharsets.UTF_8));
+        MediaCodec cbor = codecs.find(MediaCodecs.CBOR);
+        Map<?, ?> decoded = cbor.read(write(cbor, new Person("Ada")), Map.class);
+        assertEquals(Map.of("first_name", "Ada"), decoded);
+    }
+    
+    @Test
+    public void testGeneratedCodecsStandAsideWhenCustomized() throws Exception {
+        JsonCodecs.registerEncoder(Person.class, (person, out) -> out.writeRaw("\"generated\"".getBytes(StandardCharsets.UTF_8)));
+        MediaCodec json = MediaCodecs.json();
+        assertEquals("\"generated\"", new String(write(json, new Person("Ada")), StandardCharsets.UTF_8));
+        
+        ObjectMappers.configure(mapper -> { }, false);
+        assertTrue(ObjectMappers.isCustomized());
+        assertEquals("{\"firstName\":\"Ada\"}", new String(write(json, new Person("Ada")), StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void testBlackbirdReadsAndWritesBeans() throws Exception {
+        ObjectMappers.configure(null, true);
+        MediaCodec json = MediaCodecs.json();
+        json.prepare(Person.class);
+        
+        byte[] body = write(json, new Person("Grace"));
+        assertEquals("{\"firstName\":\"Grace\"}", new String(body, StandardCharsets.UTF_8));
+        assertEquals("Grace", json.read(body, Person.class).getFirstName());
+        assertFalse(ObjectMappers.isCustomized());
+    }
+    
+    private static byte[] write(MediaCodec codec, Object value) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(value, out);
+        return out.toByteArray();
+    }
+    
+    public static class Person {
+        private String firstName;
+        
+        public Person() {
+        }
+        
+        public Person(String firstName) {
+            this.firstName = firstName;
+        }
+        
+        public String getFirstName() {
+            return firstName;
+        }
+        
+        public void setFirstName(String firstName) {
+            this.firstName = firstName;
+        }
+    }
+}
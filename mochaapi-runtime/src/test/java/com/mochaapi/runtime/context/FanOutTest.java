@@ -0,0 +1,163 @@
+package com.mochaapi.runtime.context;
+
+import com.mochaapi.runtime.executor.ExecutorManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for fan-out scopes opened from a request.
+ */
+public class FanOutTest {
+    
+    private ExecutorManager executorManager;
+    private MeterRegistry registry;
+    private RequestContext context;
+    
+    @BeforeEach
+    public void setUp() {
+        executorManager = new ExecutorManager();
+        registry = new SimpleMeterRegistry();
+        executorManager.bindTo(registry);
+        context = new RequestContext();
+        context.setRouteKey("GET /aggregate");
+        context.setExecutorManager(executorManager);
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        executorManager.shutdown();
+    }
+    
+    @Test
+    public void testFailureCancelsSiblings() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try (FanOut fanOut = context.fanOut(FanOut.Policy.SHUTDOWN_ON_FAILURE)) {
+            forkSleeper(fanOut, interrupted);
+            fanOut.fork(() -> {
+                throw new IllegalStateException("backend down");
+            });
+            
+            ExecutionException failure = assertThrows(ExecutionException.class, fanOut::join);
+            assertEquals("backend down", failure.getCause().getMessage());
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testFirstSuccessWins() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try (FanOut fanOut = context.fanOut(FanOut.Policy.FIRST_SUCCESS)) {
+            forkSleeper(fanOut, interrupted);
+            fanOut.fork(() -> {
+                throw new IllegalStateException("replica down");
+            });
+            fanOut.fork(() -> "fast");
+            
+            assertEquals("fast", fanOut.join().result());
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testSubtasksSeeCurrentRequest() throws Exception {
+        try (FanOut fanOut = context.fanOut(FanOut.Policy.SHUTDOWN_ON_FAILURE)) {
+            FanOut.Subtask<RequestContext> seen = fanOut.fork(CurrentRequest::get);
+            fanOut.join();
+            assertSame(context, seen.get());
+        }
+    }
+    
+    @Test
+    public void testJoinHonoursRequestDeadline() {
+        context.setDeadlineNanos(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50));
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try (FanOut fanOut = context.fanOut(FanOut.Policy.SHUTDOWN_ON_FAILURE)) {
+            fanOut.fork(() -> sleepUntilInterrupted(interrupted));
+            
+            assertThrows(TimeoutException.class, fanOut::join);
+        }
+    }
+    
+    @Test
+    public void testRequestEndCancelsOpenScopes() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        FanOut fanOut = context.fanOut(FanOut.Policy.SHUTDOWN_ON_FAILURE);
+        forkSleeper(fanOut, interrupted);
+        fanOut.fork(() -> "done");
+        
+        context.end();
+        
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(2.0, registry.get("mochaapi_fanout_subtasks").tag("route", "GET /aggregate").summary().totalAmount());
+        assertThrows(IllegalStateException.class, () -> fanOut.fork(() -> "late"));
+    }
+    
+    @Test
+    public void testCloseWaitsForSubtaskIgnoringInterrupt() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean returned = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(1);
+        // Lets the subtask go only once it has been interrupted, while close() is waiting
+        Thread releaser = Thread.ofVirtual().start(() -> {
+            try {
+                interrupted.await();
+                release.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        
+        FanOut fanOut = context.fanOut(FanOut.Policy.SHUTDOWN_ON_FAILURE);
+        fanOut.fork(() -> {
+            started.countDown();
+            while (true) {
+                try {
+                    release.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+            returned.set(true);
+            return "stubborn";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        
+        fanOut.close();
+        
+        assertTrue(returned.get(), "close() returned while the subtask was still running");
+        releaser.join();
+    }
+    
+    private static void forkSleeper(FanOut fanOut, CountDownLatch interrupted) throws InterruptedException {
+        // Wait until the subtask runs, since one cancelled before it starts is never interrupted
+        CountDownLatch started = new CountDownLatch(1);
+        fanOut.fork(() -> {
+            started.countDown();
+            return sleepUntilInterrupted(interrupted);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+    
+    private static String sleepUntilInterrupted(CountDownLatch interrupted) {
+        try {
+            Thread.sleep(10000);
+            return "slow";
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+            return "interrupted";
+        }
+    }
+}
@@ -37,6 +37,14 @@ public class RequestContextTest {
         assertNull(context.getHeader("Non-Existent"));
     }
     
+    @Test
+    public void testHeaderNamesIgnoreCase() {
+        context.setHeader("X-Request-Timeout", "250");
+        
+        assertEquals("250", context.getHeader("x-request-timeout"));
+        assertEquals("250", context.getHeader("X-REQUEST-TIMEOUT"));
+    }
+    
     @Test
     public void testQueryParams() {
         context.setQueryParam("page", "1");
@@ -64,4 +72,51 @@ public class RequestContextTest {
         
         assertEquals(jsonBody, context.getBody());
     }
+    
+    @Test
+    public void testTraceIdFromTraceparent() {
+        context.setHeader("traceparent", "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+        
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", context.getTraceId());
+    }
+    
+    @Test
+    public void testTraceHeaderNamesIgnoreCase() {
+        context.setHeader("TRACEPARENT", "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01");
+        context.setHeader("TraceState", "vendor=opaque");
+        
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", context.getTraceId());
+        assertEquals("vendor=opaque", context.getTracestate());
+    }
+    
+    @Test
+    public void testInvalidTraceparentGetsNewTraceId() {
+        context.setHeader("traceparent", "00-00000000000000000000000000000000-00f067aa0ba902b7-01");
+        
+        String traceId = context.getTraceId();
+        assertTrue(traceId.matches("[0-9a-f]{32}"), traceId);
+        assertNotEquals("00000000000000000000000000000000", traceId);
+        assertEquals(traceId, context.getTraceId());
+    }
+    
+    @Test
+    public void testTraceparentContinuesCallersTrace() {
+        context.setHeader("traceparent", "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-00");
+        
+        assertEquals("00f067aa0ba902b7", context.getParentSpanId());
+        assertFalse(context.isTraceSampled());
+        String traceparent = context.getTraceparent();
+        assertTrue(traceparent.matches("00-4bf92f3577b34da6a3ce929d0e0e4736-[0-9a-f]{16}-00"), traceparent);
+        assertNotEquals("00f067aa0ba902b7", context.getSpanId());
+    }
+    
+    @Test
+    public void testCurrentRequestIsBoundOnlyDuringCall() {
+        assertNull(CurrentRequest.get());
+        
+        RequestContext seen = CurrentRequest.callWith(context, CurrentRequest::get);
+        
+        assertSame(context, seen);
+        assertNull(CurrentRequest.get());
+    }
 }
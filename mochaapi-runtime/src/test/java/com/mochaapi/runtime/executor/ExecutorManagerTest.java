@@ -0,0 +1,148 @@
+package com.mochaapi.runtime.executor;
+
+import com.mochaapi.runtime.MochaAPIConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for named executors, measured tasks and timings in the executor manager.
+ */
+public class ExecutorManagerTest {
+    
+    private ExecutorManager executorManager;
+    private final CountDownLatch release = new CountDownLatch(1);
+    
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        executorManager.shutdown();
+    }
+    
+    @Test
+    public void testNamedExecutorRunsOnItsOwnThreads() throws Exception {
+        executorManager = new ExecutorManager(config(new ExecutorDefinition("images")));
+        
+        String threadName = executorManager.execute("images", () -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+        
+        assertTrue(threadName.startsWith("mochaapi-images"), threadName);
+        assertTrue(executorManager.hasExecutor("cpu"));
+        assertThrows(IllegalArgumentException.class, () -> executorManager.execute("missing", () -> null));
+    }
+    
+    @Test
+    public void testFullQueueRejectsNewTask() throws Exception {
+        ExecutorDefinition definition = new ExecutorDefinition("exports");
+        definition.setThreads(1);
+        definition.setQueueCapacity(1);
+        executorManager = new ExecutorManager(config(definition));
+        
+        CompletableFuture<Object> running = executorManager.execute("exports", this::awaitRelease);
+        CompletableFuture<Object> queued = executorManager.execute("exports", this::awaitRelease);
+        CompletableFuture<Object> rejected = executorManager.execute("exports", this::awaitRelease);
+        
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+        release.countDown();
+        assertEquals("done", running.get(5, TimeUnit.SECONDS));
+        assertEquals("done", queued.get(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testDiscardOldestFailsLongestWaitingTask() throws Exception {
+        ExecutorDefinition definition = new ExecutorDefinition("exports");
+        definition.setThreads(1);
+        definition.setQueueCapacity(1);
+        definition.setRejectionPolicy(ExecutorDefinition.RejectionPolicy.DISCARD_OLDEST);
+        executorManager = new ExecutorManager(config(definition));
+        
+        CompletableFuture<Object> running = executorManager.execute("exports", this::awaitRelease);
+        CompletableFuture<Object> oldest = executorManager.execute("exports", this::awaitRelease);
+        CompletableFuture<Object> newest = executorManager.execute("exports", this::awaitRelease);
+        
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> oldest.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+        release.countDown();
+        assertEquals("done", running.get(5, TimeUnit.SECONDS));
+        assertEquals("done", newest.get(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testRecordsTimingsPerLaneAndRoute() throws Exception {
+        executorManager = new ExecutorManager(config(new ExecutorDefinition("images")));
+        MeterRegistry registry = new SimpleMeterRegistry();
+        executorManager.bindTo(registry);
+        
+        executorManager.executeVirtual(() -> "io", "GET /users").get(5, TimeUnit.SECONDS);
+        executorManager.executeCpuBound(() -> "cpu", 0, "GET /calc").get(5, TimeUnit.SECONDS);
+        executorManager.execute("images", () -> "image", "POST /thumbnails").get(5, TimeUnit.SECONDS);
+        executorManager.executeVirtual(() -> "untagged").get(5, TimeUnit.SECONDS);
+        
+        assertEquals(1, registry.get("mochaapi_executor_queue_wait").tags("lane", "virtual", "route", "GET /users").timer().count());
+        assertEquals(1, registry.get("mochaapi_executor_run").tags("lane", "cpu", "route", "GET /calc").timer().count());
+        assertEquals(1, registry.get("mochaapi_executor_run").tags("lane", "images", "route", "POST /thumbnails").timer().count());
+        assertEquals(1, registry.get("mochaapi_executor_run").tags("lane", "virtual", "route", "none").timer().count());
+        assertEquals(0.0, registry.get("mochaapi_virtual_threads_live").gauge().value());
+        assertNotNull(registry.get("mochaapi_executor_queued_tasks").tag("executor", "images").gauge());
+        assertTrue(registry.get("mochaapi_executor_pool_size").tag("executor", "cpu").gauge().value() > 0);
+    }
+    
+    @Test
+    public void testMeasuredTasksShareFewSamplingThreads() throws Exception {
+        executorManager = new ExecutorManager();
+        MeterRegistry registry = new SimpleMeterRegistry();
+        executorManager.bindTo(registry);
+        AtomicInteger samples = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(4);
+        List<CompletableFuture<String>> measured = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            measured.add(executorManager.executeMeasured(() -> {
+                started.countDown();
+                awaitRelease();
+                return Thread.currentThread().getName();
+            }, false, 0, "GET /report", (cpu, wall) -> samples.incrementAndGet()));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        
+        // Every sampling thread is busy, so this one runs unmeasured on a virtual thread
+        boolean virtual = executorManager.executeMeasured(() -> Thread.currentThread().isVirtual(), false, 0, "GET /report",
+            (cpu, wall) -> samples.incrementAndGet()).get(5, TimeUnit.SECONDS);
+        assertTrue(virtual);
+        
+        release.countDown();
+        for (CompletableFuture<String> future : measured) {
+            String threadName = future.get(5, TimeUnit.SECONDS);
+            assertTrue(threadName.startsWith("mochaapi-sampling"), threadName);
+        }
+        assertEquals(executorManager.isCpuTimeMeasurable() ? 4 : 0, samples.get());
+        assertEquals(4, registry.get("mochaapi_executor_run").tags("lane", "sampling", "route", "GET /report").timer().count());
+    }
+    
+    private Object awaitRelease() {
+        try {
+            release.await();
+            return "done";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        }
+    }
+    
+    private static MochaAPIConfig config(ExecutorDefinition definition) {
+        MochaAPIConfig config = new MochaAPIConfig();
+        config.addExecutor(definition);
+        return config;
+    }
+}
@@ -0,0 +1,78 @@
+package com.mochaapi.runtime.executor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for priority ordering and aging in the CPU-bound executor.
+ */
+public class PriorityCpuExecutorTest {
+    
+    private PriorityCpuExecutor executor;
+    
+    @AfterEach
+    public void tearDown() {
+        executor.shutdown();
+    }
+    
+    @Test
+    public void testHigherPriorityOvertakesQueuedWork() throws InterruptedException {
+        executor = new PriorityCpuExecutor(1, 60000);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        CountDownLatch release = blockWorker();
+        
+        executor.execute(record(order, "batch-1", done), 0);
+        executor.execute(record(order, "batch-2", done), 0);
+        executor.execute(record(order, "pricing", done), 10);
+        release.countDown();
+        
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("pricing", "batch-1", "batch-2"), order);
+    }
+    
+    @Test
+    public void testAgedTaskRunsBeforeNewerHigherPriority() throws InterruptedException {
+        executor = new PriorityCpuExecutor(1, 1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        CountDownLatch release = blockWorker();
+        
+        executor.execute(record(order, "batch", done), 0);
+        Thread.sleep(50);
+        executor.execute(record(order, "pricing", done), 5);
+        release.countDown();
+        
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("batch", "pricing"), order);
+    }
+    
+    private CountDownLatch blockWorker() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 0);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+    
+    private static Runnable record(List<String> order, String name, CountDownLatch done) {
+        return () -> {
+            order.add(name);
+            done.countDown();
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package com.mochaapi.runtime.jfr;
+
+import com.mochaapi.runtime.context.RequestContext;
+import com.mochaapi.runtime.executor.ExecutorManager;
+import com.mochaapi.runtime.router.Router;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the request lifecycle's Flight Recorder events.
+ */
+public class RequestEventsTest {
+    
+    private ExecutorManager executorManager;
+    
+    @BeforeEach
+    public void setUp() {
+        executorManager = new ExecutorManager();
+        RequestEvents.install();
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        executorManager.shutdown();
+    }
+    
+    @Test
+    public void testResponseEventFollowsRecordings() {
+        try (Recording recording = new Recording()) {
+            recording.enable(ResponseWrittenEvent.class);
+            recording.start();
+            assertTrue(RequestEvents.isResponseEventEnabled());
+            recording.stop();
+        }
+        assertFalse(RequestEvents.isResponseEventEnabled());
+    }
+    
+    @Test
+    public void testRequestEventsAreOnlyCreatedWhileRecorded() {
+        assertFalse(RequestEvents.isEnabled());
+        try (Recording recording = new Recording()) {
+            recording.enable(SerializationEvent.class);
+            recording.start();
+            assertTrue(RequestEvents.isEnabled());
+            recording.stop();
+        }
+        assertFalse(RequestEvents.isEnabled());
+    }
+    
+    @Test
+    public void testRoutingAndHandlerEventsCarryTheRoute(@TempDir Path dir) throws Exception {
+        Router router = new Router();
+        router.addRoute("GET", "/pause", PauseController.class, "pause", false);
+        Path file = dir.resolve("events.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(RouteMatchedEvent.class).withThreshold(Duration.ZERO);
+            // Only the slow handler passes the threshold
+            recording.enable(HandlerInvokedEvent.class).withThreshold(Duration.ofMillis(20));
+            recording.start();
+            assertEquals("paused", router.handleRequest(request("/pause"), executorManager).join());
+            router.handleRequest(request("/missing"), executorManager).join();
+            recording.stop();
+            recording.dump(file);
+        }
+        
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        List<String> routes = events.stream()
+            .filter(event -> event.getEventType().getName().equals("com.mochaapi.RouteMatched"))
+            .map(event -> event.getString("path") + " -> " + event.getString("route"))
+            .collect(Collectors.toList());
+        assertEquals(List.of("/pause -> /pause", "/missing -> null"), routes);
+        RecordedEvent handler = events.stream()
+            .filter(event -> event.getEventType().getName().equals("com.mochaapi.HandlerInvoked"))
+            .findFirst().orElseThrow();
+        assertEquals("/pause", handler.getString("route"));
+        assertEquals("virtual", handler.getString("lane"));
+        assertTrue(handler.getDuration().toMillis() >= 20);
+        assertTrue(handler.getDuration("queueWait").toNanos() >= 0);
+    }
+    
+    private static RequestContext request(String path) {
+        RequestContext context = new RequestContext();
+        context.setMethod("GET");
+        context.setPath(path);
+        return context;
+    }
+    
+    public static class PauseController {
+        
+        public String pause() throws InterruptedException {
+            Thread.sleep(30);
+            return "paused";
+        }
+    }
+}
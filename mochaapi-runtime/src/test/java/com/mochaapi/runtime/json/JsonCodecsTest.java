@@ -0,0 +1,139 @@
+package com.mochaapi.runtime.json;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the JSON writer and reader used by generated codecs.
+ */
+public class JsonCodecsTest {
+    
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    
+    private static final byte[] NAME = JsonWriter.fieldName("name", true);
+    private static final byte[] SCORE = JsonWriter.fieldName("score", false);
+    
+    @AfterEach
+    public void tearDown() {
+        JsonCodecs.clear();
+    }
+    
+    @Test
+    public void testWriterMatchesJackson() throws Exception {
+        List<Object> values = List.of(
+            "plain", "quote \" backslash \\ slash /", "tab\tnewline\ncontrol\u0001", "café 😀",
+            0, -42, Long.MIN_VALUE, Long.MAX_VALUE, 1.5, 1.0E10, 0.1f, Double.NaN, true,
+            List.of(1, "two", false), Map.of("key", "value"));
+        for (Object value : values) {
+            assertEquals(MAPPER.writeValueAsString(value), json(value), "value " + value);
+        }
+    }
+    
+    @Test
+    public void testWriterUsesRegisteredEncoder() {
+        JsonCodecs.registerEncoder(Player.class, JsonCodecsTest::encode);
+        
+        assertEquals("[{\"name\":\"ada\",\"score\":7},null]", json(Arrays.asList(new Player("ada", 7), null)));
+    }
+    
+    @Test
+    public void testReaderUsesRegisteredDecoder() throws Exception {
+        JsonCodecs.registerDecoder(Player.class, JsonCodecsTest::decode);
+        
+        try (JsonReader reader = JsonReader.of("{\"score\":\"12\",\"name\":\"grace\"}")) {
+            Player player = reader.readValue(Player.class);
+            assertEquals("grace", player.name);
+            assertEquals(12, player.score);
+        }
+        try (JsonReader reader = JsonReader.of("[{\"name\":\"ada\"},null,{\"score\":3}]")) {
+            List<Player> players = reader.readList(Player.class);
+            assertEquals(3, players.size());
+            assertEquals("ada", players.get(0).name);
+            assertNull(players.get(1));
+            assertEquals(3, players.get(2).score);
+        }
+        try (JsonReader reader = JsonReader.of("null")) {
+            assertNull(reader.readValue(Player.class));
+        }
+        try (JsonReader reader = JsonReader.of("{\"nickname\":\"x\"}")) {
+            assertThrows(JsonParseException.class, () -> reader.readValue(Player.class));
+        }
+    }
+    
+    @Test
+    public void testReaderCoercesScalarsLikeJackson() throws Exception {
+        try (JsonReader reader = JsonReader.of("{\"a\":null,\"b\":\"5\",\"c\":2.5,\"d\":\"true\",\"e\":[1,{\"f\":2}],\"g\":3}".getBytes(StandardCharsets.UTF_8))) {
+            assertTrue(reader.beginObject());
+            assertEquals("a", reader.nextField());
+            assertEquals(0, reader.readInt());
+            assertEquals("b", reader.nextField());
+            assertEquals(5L, reader.readLong());
+            assertEquals("c", reader.nextField());
+            assertEquals(2.5, reader.readDouble());
+            assertEquals("d", reader.nextField());
+            assertTrue(reader.readBoolean());
+            assertEquals("e", reader.nextField());
+            reader.skipValue();
+            assertEquals("g", reader.nextField());
+            assertEquals(Integer.valueOf(3), reader.readValue(Integer.class));
+            assertNull(reader.nextField());
+        }
+        try (JsonReader reader = JsonReader.of("\"abc\"")) {
+            assertThrows(JsonParseException.class, reader::readInt);
+        }
+    }
+    
+    private static String json(Object value) {
+        return new String(JsonWriter.toBytes(value), StandardCharsets.UTF_8);
+    }
+    
+    private static void encode(Player player, JsonWriter out) {
+        out.writeRaw(NAME);
+        out.writeString(player.name);
+        out.writeRaw(SCORE);
+        out.writeInt(player.score);
+        out.writeObjectEnd();
+    }
+    
+    private static Player decode(JsonReader in) throws IOException {
+        if (!in.beginObject()) {
+            return null;
+        }
+        Player player = new Player(null, 0);
+        String field;
+        while ((field = in.nextField()) != null) {
+            switch (field) {
+                case "name":
+                    player.name = in.readString();
+                    break;
+                case "score":
+                    player.score = in.readInt();
+                    break;
+                default:
+                    throw in.unknownField(field, Player.class);
+            }
+        }
+        return player;
+    }
+    
+    private static final class Player {
+        
+        private String name;
+        private int score;
+        
+        Player(String name, int score) {
+            this.name = name;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.mochaapi.runtime.monitor;
+
+import com.mochaapi.runtime.monitor.RequestPhases.Phase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for request phase timestamps and the per-route breakdown built from them.
+ */
+public class RequestPhasesTest {
+    
+    @Test
+    public void testSkippedPhaseFoldsIntoTheNext() throws Exception {
+        RequestPhases phases = new RequestPhases(System.nanoTime());
+        phases.mark(Phase.DECODE);
+        phases.mark(Phase.ROUTE);
+        phases.mark(Phase.BIND);
+        Thread.sleep(5);
+        // An asynchronous handler never waits in an executor queue
+        phases.mark(Phase.EXECUTE);
+        phases.mark(Phase.EXECUTE);
+        
+        assertEquals(-1, phases.durationNanos(Phase.QUEUE));
+        long execute = phases.durationNanos(Phase.EXECUTE);
+        assertTrue(execute >= TimeUnit.MILLISECONDS.toNanos(5), "execute should start where bind ended");
+        assertTrue(phases.durationNanos(Phase.BIND) < execute);
+    }
+    
+    @Test
+    public void testServerTimingListsMarkedPhasesInMilliseconds() {
+        RequestPhases phases = new RequestPhases(System.nanoTime());
+        phases.mark(Phase.DECODE);
+        phases.mark(Phase.SERIALIZE);
+        
+        String header = phases.serverTiming();
+        assertTrue(header.matches("decode;dur=\\d+\\.\\d{3}, serialize;dur=\\d+\\.\\d{3}"), header);
+    }
+    
+    @Test
+    public void testSnapshotSummarizesPhasesPerRoute() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PhaseTimings timings = new PhaseTimings(registry);
+        for (int i = 0; i < 3; i++) {
+            RequestPhases phases = new RequestPhases(System.nanoTime());
+            phases.mark(Phase.DECODE);
+            phases.mark(Phase.EXECUTE);
+            phases.mark(Phase.WRITE);
+            timings.record("GET /users/{id}", phases);
+        }
+        
+        Map<String, Map<String, Object>> phases = timings.snapshot().get("GET /users/{id}");
+        assertEquals(3L, phases.get("execute").get("count"));
+        assertFalse(phases.containsKey("queue"));
+        double shares = phases.values().stream().mapToDouble(summary -> (Double) summary.get("share")).sum();
+        assertEquals(1.0, shares, 0.001);
+        assertEquals(3, registry.get("mochaapi_http_server_phase")
+            .tag("route", "/users/{id}").tag("method", "GET").tag("phase", "write").timer().count());
+    }
+}
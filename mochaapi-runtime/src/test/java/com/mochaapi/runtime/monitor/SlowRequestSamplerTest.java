@@ -0,0 +1,197 @@
+package com.mochaapi.runtime.monitor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mochaapi.annotations.PathVariable;
+import com.mochaapi.runtime.MochaAPIConfig;
+import com.mochaapi.runtime.context.RequestContext;
+import com.mochaapi.runtime.executor.ExecutorManager;
+import com.mochaapi.runtime.router.Router;
+import com.mochaapi.runtime.server.MochaServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the watchdog that samples the stacks of slow requests.
+ */
+public class SlowRequestSamplerTest {
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSlowHandlerIsSampledWithRedactedParameters() throws Exception {
+        RequestContext context = request("/users/7");
+        context.setQueryParam("apiKey", "hunter2");
+        CountDownLatch release = new CountDownLatch(1);
+        Thread handler = Thread.ofVirtual().start(() -> slowHandler(release));
+        context.setHandlerThread(handler);
+        
+        try (SlowRequestSampler sampler = new SlowRequestSampler(20, 5, 3, 10, List.of("key"))) {
+            sampler.begin(context, System.nanoTime());
+            Thread.sleep(100);
+            release.countDown();
+            handler.join();
+            sampler.end(context, 200);
+            
+            List<Map<String, Object>> entries = sampler.snapshot();
+            assertEquals(1, entries.size());
+            Map<String, Object> entry = entries.get(0);
+            assertEquals("GET /users/{id}", entry.get("route"));
+            assertEquals(200, entry.get("status"));
+            assertTrue((Double) entry.get("durationMillis") >= 100);
+            assertEquals("/users/7", entry.get("path"));
+            assertEquals(Map.of("apiKey", "[redacted]"), entry.get("queryParams"));
+            
+            List<Map<String, Object>> samples = (List<Map<String, Object>>) entry.get("samples");
+            assertEquals(3, samples.size(), "samples stop at the per-request limit");
+            Map<String, Object> sample = samples.get(0);
+            assertTrue((Long) sample.get("offsetMillis") >= 20, "nothing is sampled before the threshold");
+            assertTrue(((List<String>) sample.get("frames")).stream().anyMatch(frame -> frame.contains("slowHandler")));
+            assertEquals(0, sampler.getInFlight());
+        }
+    }
+    
+    @Test
+    public void testFastRequestsAreNotKept() {
+        try (SlowRequestSampler sampler = new SlowRequestSampler(1000, 5, 3, 10, List.of())) {
+            RequestContext context = request("/fast");
+            sampler.begin(context, System.nanoTime());
+            sampler.end(context, 200);
+            assertTrue(sampler.snapshot().isEmpty());
+        }
+    }
+    
+    @Test
+    public void testStoreKeepsTheNewestAndDumpsThem(@TempDir Path dir) throws Exception {
+        try (SlowRequestSampler sampler = new SlowRequestSampler(0, 5, 3, 2, List.of())) {
+            for (String path : List.of("/a", "/b", "/c")) {
+                RequestContext context = request(path);
+                sampler.begin(context, System.nanoTime());
+                sampler.end(context, 404);
+            }
+            Path file = dir.resolve("slow/requests.json");
+            sampler.dump(file);
+            
+            JsonNode dumped = new ObjectMapper().readTree(file.toFile());
+            assertEquals(2, dumped.size());
+            assertEquals("/c", dumped.get(0).get("path").asText());
+            assertEquals("/b", dumped.get(1).get("path").asText());
+            assertEquals("GET UNMATCHED", dumped.get(0).get("route").asText());
+        }
+    }
+    
+    @Test
+    public void testRequestFailingBeforeDispatchIsStillEnded() throws Exception {
+        MochaAPIConfig config = new MochaAPIConfig();
+        config.setHost("127.0.0.1");
+        try (ServerSocket socket = new ServerSocket(0)) {
+            config.setPort(socket.getLocalPort());
+        }
+        config.setSlowRequestSamplingEnabled(true);
+        config.setSlowRequestThresholdMillis(0);
+        Router router = new Router() {
+            @Override
+            public CompletableFuture<Object> handleRequest(RequestContext context, ExecutorManager executorManager) {
+                throw new IllegalStateException("router broken");
+            }
+        };
+        MochaServer server = new MochaServer(config, router, new ExecutorManager());
+        server.start().get(10, TimeUnit.SECONDS);
+        try {
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + config.getPort() + "/broken")).build(),
+                HttpResponse.BodyHandlers.ofString());
+            assertEquals(500, response.statusCode());
+            
+            // Ended once the response is written, which may be just after the client has read it
+            SlowRequestSampler sampler = server.getSlowRequestSampler();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sampler.getInFlight() > 0 && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            assertEquals(0, sampler.getInFlight());
+            assertEquals(500, sampler.snapshot().get(0).get("status"));
+        } finally {
+            server.stop();
+        }
+    }
+    
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRoutedPathSecretsAreRedacted() throws Exception {
+        MochaAPIConfig config = new MochaAPIConfig();
+        config.setHost("127.0.0.1");
+        try (ServerSocket socket = new ServerSocket(0)) {
+            config.setPort(socket.getLocalPort());
+        }
+        config.setSlowRequestSamplingEnabled(true);
+        config.setSlowRequestThresholdMillis(0);
+        Router router = new Router();
+        router.addRoute("GET", "/users/{id}/tokens/{token}", TokenController.class, "token", false);
+        MochaServer server = new MochaServer(config, router, new ExecutorManager());
+        server.start().get(10, TimeUnit.SECONDS);
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            String base = "http://127.0.0.1:" + config.getPort();
+            HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create(base + "/users/7/tokens/s3cret")).build(),
+                HttpResponse.BodyHandlers.ofString());
+            assertEquals("s3cret", response.body(), "the handler still sees the real value");
+            
+            SlowRequestSampler sampler = server.getSlowRequestSampler();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sampler.snapshot().isEmpty() && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            Map<String, Object> entry = sampler.snapshot().get(0);
+            assertEquals("GET /users/{id}/tokens/{token}", entry.get("route"));
+            assertEquals("/users/7/tokens/[redacted]", entry.get("path"));
+            assertEquals(Map.of("id", "7", "token", "[redacted]"), entry.get("pathParams"));
+            
+            String served = client.send(
+                HttpRequest.newBuilder(URI.create(base + config.getSlowRequestPath())).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+            assertFalse(served.contains("s3cret"), served);
+        } finally {
+            server.stop();
+        }
+    }
+    
+    private static void slowHandler(CountDownLatch release) {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static RequestContext request(String path) {
+        RequestContext context = new RequestContext();
+        context.setMethod("GET");
+        context.setPath(path);
+        if (path.startsWith("/users/")) {
+            context.setRouteKey("GET /users/{id}");
+        }
+        return context;
+    }
+    
+    public static class TokenController {
+        
+        public String token(@PathVariable("token") String token) {
+            return token;
+        }
+    }
+}
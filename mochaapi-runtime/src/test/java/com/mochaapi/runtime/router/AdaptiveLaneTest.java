@@ -0,0 +1,57 @@
+package com.mochaapi.runtime.router;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for lane classification and its hysteresis.
+ */
+public class AdaptiveLaneTest {
+    
+    @Test
+    public void testWaitsForEnoughSamples() {
+        AdaptiveLane lane = new AdaptiveLane("GET /test", 1, 0.8, 0.4);
+        for (int i = 0; i < AdaptiveLane.MIN_SAMPLES - 1; i++) {
+            lane.record(100, 100);
+        }
+        assertFalse(lane.isCpuBound());
+        
+        lane.record(100, 100);
+        assertTrue(lane.isCpuBound());
+    }
+    
+    @Test
+    public void testStaysInLaneBetweenThresholds() {
+        AdaptiveLane lane = new AdaptiveLane("GET /test", 1, 0.8, 0.4);
+        for (int i = 0; i < AdaptiveLane.MIN_SAMPLES; i++) {
+            lane.record(100, 100);
+        }
+        assertTrue(lane.isCpuBound());
+        
+        // Settling at 0.6 is below the promotion threshold but not below the demotion threshold
+        for (int i = 0; i < 50; i++) {
+            lane.record(60, 100);
+        }
+        assertTrue(lane.isCpuBound());
+        assertEquals(0.6, lane.getCpuFraction(), 0.01);
+        
+        for (int i = 0; i < 50; i++) {
+            lane.record(10, 100);
+        }
+        assertFalse(lane.isCpuBound());
+        assertEquals(2, lane.getSwitches());
+    }
+    
+    @Test
+    public void testSamplesOneInInterval() {
+        AdaptiveLane lane = new AdaptiveLane("GET /test", 4, 0.8, 0.4);
+        int sampled = 0;
+        for (int i = 0; i < 20; i++) {
+            if (lane.shouldSample()) {
+                sampled++;
+            }
+        }
+        assertEquals(5, sampled);
+    }
+}
@@ -1,9 +1,38 @@
 package com.mochaapi.runtime.router;
 
+import com.mochaapi.annotations.Batched;
+import com.mochaapi.annotations.Bulkhead;
+import com.mochaapi.annotations.PathVariable;
+import com.mochaapi.annotations.RequestBody;
+import com.mochaapi.annotations.Timeout;
+import com.mochaapi.runtime.codec.MediaCodec;
+import com.mochaapi.runtime.codec.MediaCodecs;
+import com.mochaapi.runtime.context.CurrentRequest;
 import com.mochaapi.runtime.context.RequestContext;
 import com.mochaapi.runtime.executor.ExecutorManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -20,6 +49,11 @@ public class RouterTest {
         executorManager = new ExecutorManager();
     }
     
+    @AfterEach
+    public void tearDown() {
+        executorManager.shutdown();
+    }
+    
     @Test
     public void testAddRoute() {
         // Test adding a simple route
@@ -45,4 +79,333 @@ public class RouterTest {
         var result = router.handleRequest(context, executorManager).join();
         assertNotNull(result);
     }
+    
+    @Test
+    public void testTimeoutFailsRequestAndInterruptsHandler() throws Exception {
+        router.addRoute("GET", "/slow", SlowController.class, "slow", false);
+        
+        CompletableFuture<Object> result = router.handleRequest(request("/slow"), executorManager);
+        
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, failure.getCause());
+        assertTrue(SlowController.interrupted.await(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testTimeoutHeaderShortensDeadline() {
+        router.setDefaultTimeoutMillis(60000);
+        router.addRoute("GET", "/budget", SlowController.class, "budget", false);
+        RequestContext context = request("/budget");
+        context.setHeader(Router.TIMEOUT_HEADER, "2000");
+        
+        Duration remaining = (Duration) router.handleRequest(context, executorManager).join();
+        
+        assertTrue(remaining.compareTo(Duration.ofMillis(2000)) <= 0);
+        assertTrue(remaining.compareTo(Duration.ZERO) > 0);
+    }
+    
+    @Test
+    public void testTimeoutHeaderNameIgnoresCase() {
+        router.setDefaultTimeoutMillis(60000);
+        router.addRoute("GET", "/budget", SlowController.class, "budget", false);
+        RequestContext context = request("/budget");
+        context.setHeader("X-REQUEST-TIMEOUT", "2000");
+        
+        Duration remaining = (Duration) router.handleRequest(context, executorManager).join();
+        
+        assertTrue(remaining.compareTo(Duration.ofMillis(2000)) <= 0);
+    }
+    
+    @Test
+    public void testNoDeadlineWithoutTimeout() {
+        router.addRoute("GET", "/budget", SlowController.class, "budget", false);
+        
+        assertNull(router.handleRequest(request("/budget"), executorManager).join());
+    }
+    
+    @Test
+    public void testBulkheadQueuesThenRejects() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        router.bindTo(registry);
+        router.addRoute("GET", "/guarded", GuardedController.class, "guarded", false);
+        
+        CompletableFuture<Object> running = router.handleRequest(request("/guarded"), executorManager);
+        assertTrue(GuardedController.entered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Object> queued = router.handleRequest(request("/guarded"), executorManager);
+        Object rejected = router.handleRequest(request("/guarded"), executorManager).join();
+        
+        assertEquals(503, ((ErrorResponse) rejected).getStatus());
+        assertEquals(1.0, registry.get("mochaapi_bulkhead_in_flight").tag("route", "GET /guarded").gauge().value());
+        assertEquals(1.0, registry.get("mochaapi_bulkhead_queued").gauge().value());
+        assertEquals(1.0, registry.get("mochaapi_bulkhead_rejected_total").functionCounter().count());
+        
+        GuardedController.release.countDown();
+        assertEquals("ok", running.get(5, TimeUnit.SECONDS));
+        assertEquals("ok", queued.get(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testTimedOutHandlerKeepsBulkheadSlotUntilItReturns() throws Exception {
+        router.addRoute("GET", "/stubborn", StubbornController.class, "stubborn", false);
+        
+        CompletableFuture<Object> timedOut = router.handleRequest(request("/stubborn"), executorManager);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> timedOut.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, failure.getCause());
+        
+        // The handler ignored the interrupt and still holds the only slot
+        Object rejected = router.handleRequest(request("/stubborn"), executorManager).join();
+        assertEquals(503, ((ErrorResponse) rejected).getStatus());
+        
+        StubbornController.release.countDown();
+        assertTrue(StubbornController.returned.await(5, TimeUnit.SECONDS));
+        StubbornController.release = new CountDownLatch(0);
+        Object admitted = router.handleRequest(request("/stubborn"), executorManager).get(5, TimeUnit.SECONDS);
+        assertEquals("done", admitted);
+    }
+    
+    @Test
+    public void testAdaptiveLaneMovesCpuHeavyRouteOnly() {
+        executorManager.shutdown();
+        // Reports fixed measurements so the outcome does not depend on how busy the machine is
+        executorManager = new ExecutorManager() {
+            @Override
+            public <T> CompletableFuture<T> executeMeasured(java.util.function.Supplier<T> task, boolean cpuBound, int priority,
+                                                            String route, CpuSample sample) {
+                sample.record(route.equals("GET /spin") ? 900 : 50, 1000);
+                return cpuBound ? executeCpuBound(task, priority, route) : executeVirtual(task, route);
+            }
+        };
+        MeterRegistry registry = new SimpleMeterRegistry();
+        router.bindTo(registry);
+        router.enableAdaptiveLanes(1, 0.5, 0.2);
+        router.addRoute("GET", "/spin", LaneController.class, "spin", false);
+        router.addRoute("GET", "/wait", LaneController.class, "fetch", false);
+        
+        for (int i = 0; i < AdaptiveLane.MIN_SAMPLES; i++) {
+            assertTrue((Boolean) router.handleRequest(request("/spin"), executorManager).join());
+            assertTrue((Boolean) router.handleRequest(request("/wait"), executorManager).join());
+        }
+        
+        assertEquals(1.0, registry.get("mochaapi_route_cpu_lane").tag("route", "GET /spin").gauge().value());
+        assertEquals(0.0, registry.get("mochaapi_route_cpu_lane").tag("route", "GET /wait").gauge().value());
+        assertEquals(1.0, registry.get("mochaapi_route_lane_switches_total").tag("route", "GET /spin").functionCounter().count());
+        assertFalse((Boolean) router.handleRequest(request("/spin"), executorManager).join(), "now runs on the CPU-bound pool");
+        assertTrue((Boolean) router.handleRequest(request("/wait"), executorManager).join());
+    }
+    
+    @Test
+    public void testBatchedRequestsShareOneLoad() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        router.bindTo(registry);
+        router.addRoute("GET", "/items/{id}", BatchController.class, "item", false);
+        
+        CompletableFuture<Object> first = router.handleRequest(request("/items/1"), executorManager);
+        CompletableFuture<Object> duplicate = router.handleRequest(request("/items/1"), executorManager);
+        CompletableFuture<Object> second = router.handleRequest(request("/items/2"), executorManager);
+        CompletableFuture<Object> missing = router.handleRequest(request("/items/missing"), executorManager);
+        
+        assertEquals("item-1", first.get(5, TimeUnit.SECONDS));
+        assertEquals("item-1", duplicate.get(5, TimeUnit.SECONDS));
+        assertEquals("item-2", second.get(5, TimeUnit.SECONDS));
+        assertEquals(404, ((ErrorResponse) missing.get(5, TimeUnit.SECONDS)).getStatus());
+        assertEquals(1, BatchController.loads.get());
+        assertEquals(3.0, registry.get("mochaapi_batch_size").tag("route", "GET /items/{id}").summary().totalAmount());
+    }
+    
+    @Test
+    public void testCompletionStageHandlerRunsOffCallerThread() throws Exception {
+        router.addRoute("GET", "/async", AsyncController.class, "async", false);
+        
+        CompletableFuture<Object> result = router.handleRequest(request("/async"), executorManager);
+        
+        assertTrue(AsyncController.invoked.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), AsyncController.invokedOn);
+        assertTrue(AsyncController.invokedOn.isVirtual());
+        assertFalse(result.isDone());
+        AsyncController.pending.complete("later");
+        assertEquals("later", result.get(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testFailedStagePropagatesCause() {
+        router.addRoute("GET", "/async/failing", AsyncController.class, "failing", false);
+        
+        CompletableFuture<Object> result = router.handleRequest(request("/async/failing"), executorManager);
+        
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, failure.getCause());
+    }
+    
+    @Test
+    public void testHandlerSeesCurrentRequest() {
+        router.addRoute("GET", "/current", SlowController.class, "current", false);
+        RequestContext context = request("/current");
+        
+        assertEquals(context.getTraceId(), router.handleRequest(context, executorManager).join());
+    }
+    
+    @Test
+    public void testBodyIsReadWithNegotiatedCodec() throws Exception {
+        router.addRoute("POST", "/echo", BodyController.class, "name", false);
+        MediaCodec cbor = MediaCodecs.load().find(MediaCodecs.CBOR);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        cbor.write(Map.of("name", "ada"), body);
+        RequestContext context = request("/echo");
+        context.setMethod("POST");
+        context.setBodyBytes(body.toByteArray());
+        context.setRequestCodec(cbor);
+        
+        assertEquals("ada", router.handleRequest(context, executorManager).join());
+    }
+    
+    @Test
+    public void testCodecsPrepareRoutePayloadTypes() {
+        List<Class<?>> prepared = new CopyOnWriteArrayList<>();
+        MediaCodec recording = new MediaCodec() {
+            @Override
+            public String getMediaType() {
+                return "application/x-recording";
+            }
+            
+            @Override
+            public void write(Object value, OutputStream out) {
+            }
+            
+            @Override
+            public <T> T read(byte[] body, Class<T> type) {
+                return null;
+            }
+            
+            @Override
+            public void prepare(Class<?> type) {
+                prepared.add(type);
+            }
+        };
+        router.addRoute("POST", "/echo", BodyController.class, "name", false);
+        router.bindCodecs(new MediaCodecs(List.of(recording)));
+        router.addRoute("GET", "/async", AsyncController.class, "async", false);
+        
+        assertEquals(List.of(Map.class, String.class, String.class), prepared);
+    }
+    
+    private static RequestContext request(String path) {
+        RequestContext context = new RequestContext();
+        context.setMethod("GET");
+        context.setPath(path);
+        return context;
+    }
+    
+    public static class SlowController {
+        
+        static final CountDownLatch interrupted = new CountDownLatch(1);
+        
+        @Timeout(50)
+        public String slow() {
+            try {
+                Thread.sleep(10000);
+                return "done";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                return "interrupted";
+            }
+        }
+        
+        public Duration budget(RequestContext context) {
+            return context.getRemainingTime();
+        }
+        
+        public String current() {
+            return CurrentRequest.traceId();
+        }
+    }
+    
+    public static class GuardedController {
+        
+        static final CountDownLatch entered = new CountDownLatch(1);
+        static final CountDownLatch release = new CountDownLatch(1);
+        
+        @Bulkhead(maxConcurrent = 1, maxQueue = 1)
+        public String guarded() throws InterruptedException {
+            entered.countDown();
+            release.await();
+            return "ok";
+        }
+    }
+    
+    public static class StubbornController {
+        
+        static volatile CountDownLatch release = new CountDownLatch(1);
+        static final CountDownLatch returned = new CountDownLatch(1);
+        
+        @Bulkhead(maxConcurrent = 1)
+        @Timeout(50)
+        public String stubborn() {
+            CountDownLatch latch = release;
+            // Swallows the interrupt sent on timeout and keeps waiting
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException ignored) {
+                }
+            }
+            returned.countDown();
+            return "done";
+        }
+    }
+    
+    public static class LaneController {
+        
+        public boolean spin() {
+            return Thread.currentThread().isVirtual();
+        }
+        
+        public boolean fetch() {
+            return Thread.currentThread().isVirtual();
+        }
+    }
+    
+    public static class BatchController {
+        
+        static final AtomicInteger loads = new AtomicInteger();
+        
+        // A full batch of three distinct keys is sent long before the delay runs out
+        @Batched(maxSize = 3, maxDelayMicros = 10_000_000)
+        public String item(@PathVariable("id") String id) {
+            return loadAll(Set.of(id)).get(id);
+        }
+        
+        public Map<String, String> loadAll(Set<String> ids) {
+            loads.incrementAndGet();
+            return ids.stream()
+                .filter(id -> !id.equals("missing"))
+                .collect(Collectors.toMap(id -> id, id -> "item-" + id));
+        }
+    }
+    
+    public static class BodyController {
+        
+        public String name(@RequestBody Map<String, String> body) {
+            return body.get("name");
+        }
+    }
+    
+    public static class AsyncController {
+        
+        static final CompletableFuture<String> pending = new CompletableFuture<>();
+        static final CountDownLatch invoked = new CountDownLatch(1);
+        static volatile Thread invokedOn;
+        
+        public CompletableFuture<String> async() {
+            invokedOn = Thread.currentThread();
+            invoked.countDown();
+            return pending;
+        }
+        
+        public CompletionStage<String> failing() {
+            return CompletableFuture.supplyAsync(() -> {
+                throw new CompletionException(new TimeoutException("backend did not answer"));
+            });
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package com.mochaapi.runtime.server;
+
+import com.mochaapi.runtime.MochaAPIConfig;
+import com.mochaapi.runtime.context.RequestContext;
+import com.mochaapi.runtime.executor.ExecutorManager;
+import com.mochaapi.runtime.router.Router;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for per-route HTTP metrics and the pre-rendered Prometheus scrape.
+ */
+public class MetricsEndpointTest {
+    
+    private PrometheusMeterRegistry registry;
+    private HttpMetrics metrics;
+    private MetricsEndpoint endpoint;
+    
+    @BeforeEach
+    public void setUp() {
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        metrics = new HttpMetrics(registry, new long[] {10, 100});
+        endpoint = new MetricsEndpoint(registry, 60000);
+    }
+    
+    @Test
+    public void testRequestsAreTaggedWithRouteTemplate() {
+        for (String id : new String[] {"1", "2"}) {
+            RequestContext context = request("GET", "/users/" + id);
+            context.setRouteKey("GET /users/{id}");
+            HttpMetrics.Exchange exchange = metrics.start(context, System.nanoTime(), 0);
+            exchange.finish(200, 42);
+            exchange.finish(500, 42);
+        }
+        metrics.start(request("BREW", "/coffee"), System.nanoTime(), 12);
+        endpoint.render();
+        
+        String text = scrape();
+        assertTrue(text.contains("mochaapi_http_server_requests_seconds_count{method=\"GET\",route=\"/users/{id}\",status=\"200\",} 2.0"), text);
+        assertTrue(text.contains("le=\"0.1\""), "the configured SLO boundaries should be the histogram buckets");
+        assertFalse(text.contains("status=\"500\""), "an exchange should only be finished once");
+        assertFalse(text.contains("/users/1"));
+        assertTrue(text.contains("mochaapi_http_server_requests_in_flight{method=\"OTHER\",route=\"UNMATCHED\",} 1.0"), text);
+        assertTrue(text.contains("mochaapi_http_server_response_size_bytes_sum{method=\"GET\",route=\"/users/{id}\",} 84.0"), text);
+    }
+    
+    @Test
+    public void testScrapeServesLastRendering() {
+        endpoint.render();
+        RequestContext context = request("GET", "/orders");
+        context.setRouteKey("GET /orders");
+        metrics.start(context, System.nanoTime(), 0).finish(200, 0);
+        
+        assertFalse(scrape().contains("route=\"/orders\""));
+        endpoint.render();
+        assertTrue(scrape().contains("route=\"/orders\""));
+    }
+    
+    @Test
+    public void testOnlyGetOfThePathIsAScrape() {
+        assertTrue(MetricsEndpoint.isGet(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/metrics?name=x"), "/metrics"));
+        assertFalse(MetricsEndpoint.isGet(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/metricsx"), "/metrics"));
+        assertFalse(MetricsEndpoint.isGet(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/metrics"), "/metrics"));
+        assertFalse(MetricsEndpoint.isGet(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/metrics"), null));
+    }
+    
+    @Test
+    public void testMetricsPortAnswersOnlyTheScrapePath() throws Exception {
+        MochaAPIConfig config = new MochaAPIConfig();
+        config.setHost("127.0.0.1");
+        config.setPort(freePort());
+        config.setMetricsPort(freePort());
+        MochaServer server = new MochaServer(config, new Router(), new ExecutorManager());
+        server.start().get(10, TimeUnit.SECONDS);
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            String base = "http://127.0.0.1:" + config.getMetricsPort();
+            HttpResponse<String> scrape = client.send(HttpRequest.newBuilder(URI.create(base + config.getMetricsPath())).build(),
+                HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, scrape.statusCode());
+            
+            HttpResponse<String> other = client.send(HttpRequest.newBuilder(URI.create(base + config.getMetricsPath() + "x")).build(),
+                HttpResponse.BodyHandlers.ofString());
+            assertEquals(404, other.statusCode());
+        } finally {
+            server.stop();
+        }
+    }
+    
+    private String scrape() {
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                endpoint.respond(ctx);
+            }
+        });
+        channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/metrics"));
+        FullHttpResponse response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.OK, response.status());
+        String text = response.content().toString(StandardCharsets.UTF_8);
+        response.release();
+        return text;
+    }
+    
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+    
+    private static RequestContext request(String method, String path) {
+        RequestContext context = new RequestContext();
+        context.setMethod(method);
+        context.setPath(path);
+        return context;
+    }
+}
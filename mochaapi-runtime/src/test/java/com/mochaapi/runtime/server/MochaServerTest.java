@@ -0,0 +1,77 @@
+package com.mochaapi.runtime.server;
+
+import com.mochaapi.runtime.MochaAPIConfig;
+import com.mochaapi.runtime.executor.ExecutorManager;
+import com.mochaapi.runtime.router.Router;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for how the server writes handler results.
+ */
+public class MochaServerTest {
+    
+    private MochaServer server;
+    private int port;
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        MochaAPIConfig config = new MochaAPIConfig();
+        config.setHost("127.0.0.1");
+        config.setPort(port);
+        Router router = new Router();
+        router.addRoute("POST", "/void", NothingController.class, "nothing", false);
+        router.addRoute("GET", "/null", NothingController.class, "none", false);
+        router.addRoute("GET", "/later", NothingController.class, "later", false);
+        server = new MochaServer(config, router, new ExecutorManager());
+        server.start().get(10, TimeUnit.SECONDS);
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        server.stop();
+    }
+    
+    @Test
+    public void testNullResultsAnswerOk() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        for (String path : new String[] {"/void", "/null", "/later"}) {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + path));
+            if (path.equals("/void")) {
+                request.POST(HttpRequest.BodyPublishers.noBody());
+            }
+            HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            
+            assertEquals(200, response.statusCode(), path);
+            assertEquals("null", response.body(), path);
+        }
+    }
+    
+    public static class NothingController {
+        
+        public void nothing() {
+        }
+        
+        public Object none() {
+            return null;
+        }
+        
+        public CompletableFuture<String> later() {
+            return CompletableFuture.supplyAsync(() -> null);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.mochaapi.runtime.server;
+
+import com.mochaapi.runtime.MochaAPIConfig;
+import com.mochaapi.runtime.executor.ExecutorManager;
+import com.mochaapi.runtime.router.Router;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for TLS termination with the self-signed certificate in the test resources.
+ */
+public class MochaServerTlsTest {
+    
+    private MochaServer server;
+    private SSLContext clientContext;
+    private int port;
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        MochaAPIConfig config = new MochaAPIConfig();
+        config.setHost("127.0.0.1");
+        config.setPort(port);
+        config.setTlsCertificatePath(resource("tls/server.crt"));
+        config.setTlsPrivateKeyPath(resource("tls/server.key"));
+        
+        server = new MochaServer(config, new Router(), new ExecutorManager());
+        server.start().get(10, TimeUnit.SECONDS);
+        clientContext = trustingClientContext();
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        server.stop();
+    }
+    
+    @Test
+    public void testAlpnNegotiatesHttp2() throws Exception {
+        try (SSLSocket socket = connect("h2", "http/1.1")) {
+            socket.startHandshake();
+            assertEquals("h2", socket.getApplicationProtocol());
+        }
+    }
+    
+    @Test
+    public void testReconnectResumesSession() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            try (SSLSocket socket = connect("http/1.1")) {
+                socket.getOutputStream().write("GET /missing HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().flush();
+                // Reading the response also consumes the session ticket sent after the handshake
+                String status = new String(socket.getInputStream().readNBytes(9), StandardCharsets.US_ASCII);
+                assertEquals("HTTP/1.1 ", status);
+            }
+        }
+        
+        assertEquals(0.5, server.getMeterRegistry().get("mochaapi_tls_resumption_ratio").gauge().value(), 0.001);
+        assertEquals(1.0, server.getMeterRegistry().get("mochaapi_tls_handshakes_total")
+            .tag("resumed", "true").counter().count());
+    }
+    
+    @Test
+    public void testSessionSeenBeforeCountsAsResumed() {
+        TlsHandshakeMetrics metrics = new TlsHandshakeMetrics(new SimpleMeterRegistry());
+        long now = System.currentTimeMillis();
+        // Created in the same millisecond the handshake started, so only the ID can tell
+        SSLSession session = mock(SSLSession.class);
+        when(session.getId()).thenReturn(new byte[] {1, 2, 3});
+        when(session.getCreationTime()).thenReturn(now);
+        
+        assertFalse(metrics.isResumed(session, now));
+        assertTrue(metrics.isResumed(session, now));
+        
+        // A ticket resumption gets a fresh ID but keeps the original creation time
+        SSLSession ticketed = mock(SSLSession.class);
+        when(ticketed.getId()).thenReturn(new byte[] {4, 5, 6});
+        when(ticketed.getCreationTime()).thenReturn(now - 1000);
+        assertTrue(metrics.isResumed(ticketed, now));
+    }
+    
+    private SSLSocket connect(String... protocols) throws Exception {
+        SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket("127.0.0.1", port);
+        SSLParameters parameters = socket.getSSLParameters();
+        parameters.setApplicationProtocols(protocols);
+        socket.setSSLParameters(parameters);
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+    
+    private static SSLContext trustingClientContext() throws Exception {
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        try (InputStream in = MochaServerTlsTest.class.getClassLoader().getResourceAsStream("tls/server.crt")) {
+            trustStore.setCertificateEntry("server", CertificateFactory.getInstance("X.509").generateCertificate(in));
+        }
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(trustStore);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trustManagers.getTrustManagers(), null);
+        return context;
+    }
+    
+    private static String resource(String name) throws Exception {
+        return Path.of(MochaServerTlsTest.class.getClassLoader().getResource(name).toURI()).toString();
+    }
+}
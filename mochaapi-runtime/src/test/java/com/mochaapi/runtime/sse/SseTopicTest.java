@@ -0,0 +1,96 @@
+package com.mochaapi.runtime.sse;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for SSE topic fan-out and replay.
+ */
+public class SseTopicTest {
+    
+    @Test
+    public void testPublishFansOutToAllSubscribers() {
+        SseTopic topic = new SseTopic("prices", 4, SlowSubscriberPolicy.DROP);
+        EmbeddedChannel first = new EmbeddedChannel();
+        EmbeddedChannel second = new EmbeddedChannel();
+        
+        topic.subscribe(first, null);
+        topic.subscribe(second, null);
+        assertEquals(2, topic.getSubscriberCount());
+        
+        topic.publish(SseEvent.of("tick", "42"));
+        
+        for (EmbeddedChannel channel : new EmbeddedChannel[]{first, second}) {
+            HttpResponse response = channel.readOutbound();
+            assertEquals("text/event-stream", response.headers().get("Content-Type"));
+            assertEquals("id: 1\nevent: tick\ndata: 42\n\n", readEvent(channel));
+        }
+    }
+    
+    @Test
+    public void testLastEventIdResumesFromReplayBuffer() {
+        SseTopic topic = new SseTopic("news", 2, SlowSubscriberPolicy.DROP);
+        topic.publish("a");
+        topic.publish("b");
+        topic.publish("c");
+        
+        EmbeddedChannel channel = new EmbeddedChannel();
+        topic.subscribe(channel, "2");
+        
+        assertInstanceOf(HttpResponse.class, channel.readOutbound());
+        assertEquals("id: 3\ndata: c\n\n", readEvent(channel));
+        assertNull(channel.readOutbound());
+    }
+    
+    @Test
+    public void testUnsubscribeOnClose() {
+        SseTopic topic = new SseTopic("alerts", 0, SlowSubscriberPolicy.DROP);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        topic.subscribe(channel, null);
+        
+        channel.close();
+        
+        assertEquals(0, topic.getSubscriberCount());
+    }
+    
+    @Test
+    public void testMultiLineDataIsSplit() {
+        SseTopic topic = new SseTopic("logs", 1, SlowSubscriberPolicy.DROP);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        topic.subscribe(channel, null);
+        
+        topic.publish("line1\nline2");
+        
+        channel.readOutbound();
+        assertEquals("id: 1\ndata: line1\ndata: line2\n\n", readEvent(channel));
+    }
+    
+    @Test
+    public void testLineBreaksCannotInjectFields() {
+        assertThrows(IllegalArgumentException.class, () -> new SseEvent("1\ndata: forged", null, "x"));
+        assertThrows(IllegalArgumentException.class, () -> new SseEvent("1\r\n\nid: 2", null, "x"));
+        assertThrows(IllegalArgumentException.class, () -> new SseEvent(null, "tick\nretry: 1", "x"));
+        
+        SseTopic topic = new SseTopic("logs", 1, SlowSubscriberPolicy.DROP);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        topic.subscribe(channel, null);
+        // A bare CR ends a line too, so it must not smuggle in an event of its own
+        topic.publish("a\rid: 9\r\rb\r\nc");
+        
+        channel.readOutbound();
+        assertEquals("id: 1\ndata: a\ndata: id: 9\ndata: \ndata: b\ndata: c\n\n", readEvent(channel));
+    }
+    
+    private static String readEvent(EmbeddedChannel channel) {
+        HttpContent content = channel.readOutbound();
+        try {
+            return content.content().toString(CharsetUtil.UTF_8);
+        } finally {
+            content.release();
+        }
+    }
+}
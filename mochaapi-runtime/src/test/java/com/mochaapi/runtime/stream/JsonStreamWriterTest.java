@@ -0,0 +1,141 @@
+package com.mochaapi.runtime.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mochaapi.runtime.codec.MediaCodecs;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for writing streamed results as chunked JSON arrays and newline-delimited JSON.
+ */
+public class JsonStreamWriterTest {
+    
+    @Test
+    public void testStreamIsWrittenAsJsonArrayInChunks() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicInteger closed = new AtomicInteger();
+        Stream<Map<String, Object>> rows = Stream.of(1, 2, 3, 4)
+            .map(i -> Map.<String, Object>of("id", i))
+            .onClose(closed::incrementAndGet);
+        
+        new JsonStreamWriter(channel, rows, MediaCodecs.json(), null, MediaCodecs.JSON, 16, 1000).write();
+        
+        HttpResponse head = channel.readOutbound();
+        assertEquals(MediaCodecs.JSON, head.headers().get(HttpHeaderNames.CONTENT_TYPE));
+        assertTrue(HttpUtil.isTransferEncodingChunked(head));
+        List<String> chunks = readChunks(channel);
+        assertEquals("[{\"id\":1},{\"id\":2},{\"id\":3},{\"id\":4}]", String.join("", chunks));
+        assertTrue(chunks.size() > 2, "elements should be sent as they fill chunks");
+        assertEquals("[{\"id\":1}", chunks.get(0), "the first element should not wait for a full chunk");
+        assertEquals(1, closed.get());
+    }
+    
+    @Test
+    public void testCursorIsWrittenAsLinesAndClosed() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicInteger closed = new AtomicInteger();
+        Cursor<String> cursor = Cursor.of(List.of("a", "b").iterator(), closed::incrementAndGet);
+        
+        new JsonStreamWriter(channel, cursor, MediaCodecs.json(), null, MediaCodecs.NDJSON, 1024, 1000).write();
+        
+        HttpResponse head = channel.readOutbound();
+        assertEquals(MediaCodecs.NDJSON, head.headers().get(HttpHeaderNames.CONTENT_TYPE));
+        assertEquals("\"a\"\n\"b\"\n", String.join("", readChunks(channel)));
+        assertEquals(1, closed.get());
+    }
+    
+    @Test
+    public void testDisconnectStopsReadingAndClosesCursor() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        Iterator<Integer> endless = Stream.iterate(0, i -> i + 1).peek(i -> read.incrementAndGet()).iterator();
+        Cursor<Integer> cursor = Cursor.of(endless, closed::incrementAndGet);
+        JsonStreamWriter writer = new JsonStreamWriter(channel, cursor, MediaCodecs.json(), null, MediaCodecs.JSON, 1024, 1000);
+        channel.close();
+        
+        assertThrows(CancellationException.class, writer::write);
+        writer.discard();
+        assertTrue(read.get() <= 1);
+        assertEquals(1, closed.get());
+    }
+    
+    @Test
+    public void testDiscardClosesUnwrittenResult() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        AtomicInteger closed = new AtomicInteger();
+        JsonStreamWriter writer = new JsonStreamWriter(channel, Stream.of(1).onClose(closed::incrementAndGet),
+            MediaCodecs.json(), null, MediaCodecs.JSON, 1024, 1000);
+        
+        writer.discard();
+        writer.write();
+        assertEquals(1, closed.get());
+        assertNull(channel.readOutbound());
+        assertFalse(writer.isStarted());
+    }
+    
+    @Test
+    public void testFailureBeforeFirstElementSendsNothing() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        Stream<Object> failing = Stream.of(1).map(i -> {
+            throw new IllegalStateException("query failed");
+        });
+        JsonStreamWriter writer = new JsonStreamWriter(channel, failing, MediaCodecs.json(), null, MediaCodecs.JSON, 1024, 1000);
+        
+        assertThrows(IllegalStateException.class, writer::write);
+        assertFalse(writer.isStarted());
+        assertNull(channel.readOutbound());
+        assertTrue(channel.isActive());
+    }
+    
+    @Test
+    public void testWhichResultsAreStreamed() {
+        assertTrue(JsonStreamWriter.isStreamable(Stream.of(1), false, 0));
+        assertTrue(JsonStreamWriter.isStreamable(Cursor.of(List.of().iterator(), () -> { }), false, 0));
+        assertFalse(JsonStreamWriter.isStreamable(List.of(1, 2), false, 10));
+        assertTrue(JsonStreamWriter.isStreamable(List.of(1, 2), false, 2));
+        assertTrue(JsonStreamWriter.isStreamable(List.of(1, 2), true, 0));
+        assertFalse(JsonStreamWriter.isStreamable(Map.of(), false, 1));
+        // Iterable, but serialized as the values they are
+        ObjectNode node = new ObjectMapper().createObjectNode().put("id", 7).put("name", "mocha");
+        assertFalse(JsonStreamWriter.isStreamable(node, false, 1));
+        assertFalse(JsonStreamWriter.isStreamable(node, true, 0));
+        assertFalse(JsonStreamWriter.isStreamable(Path.of("orders", "2024.csv"), false, 1));
+        assertEquals(List.of(1, 2), JsonStreamWriter.collect(Stream.of(1, 2)));
+    }
+    
+    private static List<String> readChunks(EmbeddedChannel channel) {
+        List<String> chunks = new ArrayList<>();
+        Object message;
+        while ((message = channel.readOutbound()) != null) {
+            ByteBuf content = ((HttpContent) message).content();
+            if (content.isReadable()) {
+                chunks.add(content.toString(StandardCharsets.UTF_8));
+            }
+            content.release();
+            if (message instanceof LastHttpContent) {
+                break;
+            }
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,134 @@
+package com.mochaapi.runtime.trace;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mochaapi.runtime.codec.ObjectMappers;
+import com.mochaapi.runtime.context.RequestContext;
+import com.mochaapi.runtime.monitor.RequestPhases;
+import com.mochaapi.runtime.monitor.RequestPhases.Phase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for span sampling, buffering and the OTLP/JSON file format.
+ */
+public class TracerTest {
+    
+    private final List<SpanData> exported = Collections.synchronizedList(new ArrayList<>());
+    
+    @Test
+    public void testCallerSamplingDecisionIsKept() {
+        Tracer tracer = new Tracer(0, 60_000, 16, exported::addAll, 16, 10);
+        RequestContext sampled = request("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01", 0);
+        RequestContext unsampled = request("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-00", 0);
+        RequestContext fresh = request(null, 0);
+        for (RequestContext context : List.of(sampled, unsampled, fresh)) {
+            tracer.start(context);
+        }
+        
+        assertTrue(tracer.finish(sampled, 200, null));
+        assertFalse(tracer.finish(unsampled, 200, null));
+        assertFalse(fresh.isTraceSampled(), "a zero ratio samples no new trace");
+        assertFalse(tracer.finish(fresh, 200, null));
+        tracer.close();
+        
+        assertEquals(1, exported.size());
+        SpanData span = exported.get(0);
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", span.traceId());
+        assertEquals("00f067aa0ba902b7", span.parentSpanId());
+        assertEquals("GET /users/{id}", span.name());
+        assertTrue(span.headSampled());
+    }
+    
+    @Test
+    public void testSlowAndFailedRequestsAreKeptUnsampled() {
+        Tracer tracer = new Tracer(0, 50, 16, exported::addAll, 16, 10);
+        RequestContext slow = request(null, 100);
+        RequestContext failed = request(null, 0);
+        tracer.start(slow);
+        tracer.start(failed);
+        
+        assertTrue(tracer.finish(slow, 200, null));
+        assertTrue(tracer.finish(failed, 503, new IllegalStateException("pool exhausted")));
+        tracer.close();
+        
+        assertEquals(2, exported.size());
+        assertFalse(exported.get(0).headSampled());
+        assertTrue(exported.get(0).endEpochNanos() - exported.get(0).startEpochNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals("pool exhausted", exported.get(1).error());
+        assertEquals(-1, exported.get(1).phaseNanos(Phase.QUEUE));
+        assertTrue(exported.get(1).phaseNanos(Phase.DECODE) >= 0);
+    }
+    
+    @Test
+    public void testFullRingDropsInsteadOfWaiting() {
+        SpanRing ring = new SpanRing(2);
+        assertEquals(2, ring.capacity());
+        ring.claim().publish();
+        SpanRing.Slot pending = ring.claim();
+        
+        assertNull(ring.claim());
+        assertEquals(1, ring.getDropped());
+        
+        // The drain stops at the slot still being filled
+        List<SpanData> drained = new ArrayList<>();
+        assertEquals(1, ring.drain(drained, 10));
+        pending.publish();
+        assertEquals(1, ring.drain(drained, 10));
+        assertNotNull(ring.claim());
+    }
+    
+    @Test
+    public void testOtlpJsonFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("traces/spans.jsonl");
+        long[] phases = new long[Phase.values().length];
+        Arrays.fill(phases, -1);
+        phases[Phase.EXECUTE.ordinal()] = 1500;
+        SpanData span = new SpanData("4bf92f3577b34da6a3ce929d0e0e4736", "00f067aa0ba902b7", null, null, "GET",
+            "/users/{id}", "/users/7", 500, 1_700_000_000_000_000_000L, 1_700_000_000_002_000_000L, "boom", false, phases);
+        try (OtlpJsonFileExporter exporter = new OtlpJsonFileExporter(file, "orders")) {
+            exporter.export(List.of(span));
+            exporter.export(List.of(span));
+        }
+        
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        JsonNode request = ObjectMappers.json().readTree(lines.get(0));
+        JsonNode resourceSpans = request.path("resourceSpans").path(0);
+        assertEquals("orders", resourceSpans.path("resource").path("attributes").path(0).path("value").path("stringValue").asText());
+        JsonNode exportedSpan = resourceSpans.path("scopeSpans").path(0).path("spans").path(0);
+        assertEquals("GET /users/{id}", exportedSpan.path("name").asText());
+        assertEquals(2, exportedSpan.path("kind").asInt());
+        assertEquals("1700000000000000000", exportedSpan.path("startTimeUnixNano").asText());
+        assertFalse(exportedSpan.has("parentSpanId"));
+        assertEquals(2, exportedSpan.path("status").path("code").asInt());
+        assertEquals("boom", exportedSpan.path("status").path("message").asText());
+        List<String> keys = new ArrayList<>();
+        exportedSpan.path("attributes").forEach(attribute -> keys.add(attribute.path("key").asText()));
+        assertEquals(List.of("http.request.method", "http.route", "url.path", "http.response.status_code",
+            "mochaapi.phase.execute_ns"), keys);
+    }
+    
+    private static RequestContext request(String traceparent, long ageMillis) {
+        RequestContext context = new RequestContext();
+        context.setMethod("GET");
+        context.setPath("/users/7");
+        context.setRouteKey("GET /users/{id}");
+        if (traceparent != null) {
+            context.setHeader(RequestContext.TRACEPARENT_HEADER, traceparent);
+        }
+        RequestPhases phases = new RequestPhases(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ageMillis));
+        phases.mark(Phase.DECODE);
+        context.setPhases(phases);
+        return context;
+    }
+}
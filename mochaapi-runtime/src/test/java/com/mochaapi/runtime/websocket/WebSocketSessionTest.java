@@ -0,0 +1,99 @@
+package com.mochaapi.runtime.websocket;
+
+import com.mochaapi.runtime.context.RequestContext;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
+import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the blocking WebSocket session API.
+ */
+public class WebSocketSessionTest {
+    
+    private EmbeddedChannel channel;
+    private WebSocketSession session;
+    
+    @BeforeEach
+    public void setUp() {
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/ws");
+        request.headers().set("Sec-WebSocket-Version", "13");
+        WebSocketServerHandshaker handshaker = new WebSocketServerHandshakerFactory("ws://localhost/ws", null, false)
+            .newHandshaker(request);
+        channel = new EmbeddedChannel();
+        session = new WebSocketSession(channel, handshaker, new RequestContext(), 4);
+    }
+    
+    @Test
+    public void testBinaryMessageIsReadOnlyViewReleasedOnNextReceive() throws InterruptedException {
+        ByteBuf first = Unpooled.directBuffer().writeBytes(new byte[]{1, 2, 3});
+        session.onMessage(new WebSocketMessage(false, first));
+        session.onMessage(new WebSocketMessage(true, Unpooled.copiedBuffer("hi", CharsetUtil.UTF_8)));
+        
+        WebSocketMessage message = session.receive();
+        ByteBuffer payload = message.getBinary();
+        assertTrue(payload.isReadOnly());
+        assertEquals(3, payload.remaining());
+        assertEquals(1, first.refCnt());
+        
+        assertEquals("hi", session.receive().getText());
+        assertEquals(0, first.refCnt());
+        assertThrows(IllegalStateException.class, message::getBinary);
+    }
+    
+    @Test
+    public void testReceiveReturnsNullAfterClose() throws InterruptedException {
+        session.onClosed();
+        
+        assertNull(session.receive());
+        assertNull(session.receive());
+        assertFalse(session.isOpen());
+    }
+    
+    @Test
+    public void testReadingPausesWhileHandlerFallsBehind() throws InterruptedException {
+        for (int i = 0; i < WebSocketSession.INBOUND_HIGH_WATER_MARK; i++) {
+            session.onMessage(new WebSocketMessage(true, Unpooled.copiedBuffer("m" + i, CharsetUtil.UTF_8)));
+        }
+        assertFalse(channel.config().isAutoRead());
+        
+        for (int i = 0; i <= WebSocketSession.INBOUND_HIGH_WATER_MARK / 2; i++) {
+            session.receive();
+        }
+        assertTrue(channel.config().isAutoRead());
+    }
+    
+    @Test
+    public void testSendTextWritesFrame() throws InterruptedException {
+        session.sendText("pong");
+        
+        TextWebSocketFrame frame = channel.readOutbound();
+        assertEquals("pong", frame.text());
+        frame.release();
+    }
+    
+    @Test
+    public void testHandshakeLocationUsesWssBehindTls() throws Exception {
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/ws");
+        request.headers().set("Host", "example.com");
+        assertEquals("ws://example.com/ws", WebSocketHandshake.location(new EmbeddedChannel(), request, "/ws"));
+        
+        EmbeddedChannel tls = new EmbeddedChannel();
+        tls.pipeline().addLast(SslContextBuilder.forClient().build().newHandler(tls.alloc()));
+        assertEquals("wss://example.com/ws", WebSocketHandshake.location(tls, request, "/ws"));
+        tls.finishAndReleaseAll();
+    }
+}